@@ -0,0 +1,99 @@
+package net.codebox.readableregex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates a deterministic corpus of text lines for the matching benchmarks: web server log lines,
+ * email addresses, URLs and CSV rows, interleaved in a fixed proportion. The same seed always produces
+ * the same lines, so results from different runs and different versions of the library are comparable.
+ */
+final class BenchmarkCorpus {
+    private static final String[] METHODS = {"GET", "GET", "GET", "POST", "PUT", "DELETE"};
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "order", "invoice", "user", "admin",
+        "search", "static", "images", "api", "v1", "v2", "report", "download"};
+    private static final String[] DOMAINS = {"example.com", "mail.example.org", "corp.example.net", "example.co.uk"};
+    private static final String[] SCHEMES = {"http", "https", "https", "ftp"};
+
+    private final Random random;
+
+    private BenchmarkCorpus(final long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates the corpus.
+     *
+     * @param seed the seed for the random number generator
+     * @param lineCount the number of lines to generate
+     *
+     * @return the lines, without line terminators
+     */
+    static String[] lines(final long seed, final int lineCount) {
+        final BenchmarkCorpus corpus = new BenchmarkCorpus(seed);
+        final String[] lines = new String[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            switch (i % 4) {
+                case 0:  lines[i] = corpus.logLine(); break;
+                case 1:  lines[i] = corpus.email();   break;
+                case 2:  lines[i] = corpus.url();     break;
+                default: lines[i] = corpus.csvRow();  break;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the number of bytes in the lines when encoded as UTF-8, including one byte per line for a terminator
+     */
+    static long utf8Length(final String[] lines) {
+        long length = 0;
+        for (String line : lines) {
+            length += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return length;
+    }
+
+    private String pick(final String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String word() {
+        return pick(WORDS) + (random.nextInt(4) == 0 ? Integer.toString(random.nextInt(100)) : "");
+    }
+
+    private String path() {
+        final StringBuilder sb = new StringBuilder();
+        final int segments = 1 + random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            sb.append('/').append(word());
+        }
+        return sb.toString();
+    }
+
+    private String ipAddress() {
+        return random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+    }
+
+    private String logLine() {
+        return String.format("2024-%02d-%02d %02d:%02d:%02d %s %s \"%s %s HTTP/1.1\" %d %d",
+            1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+            pick(LEVELS), ipAddress(), pick(METHODS), path(), random.nextInt(10) == 0 ? 404 : 200, random.nextInt(100000));
+    }
+
+    private String email() {
+        final String address = word() + (random.nextBoolean() ? "." + word() : "") + "@" + pick(DOMAINS);
+     // Some lines are not valid addresses, so that matches() fails part of the time
+        return random.nextInt(5) == 0 ? address.replace('@', ' ') : address;
+    }
+
+    private String url() {
+        return pick(SCHEMES) + "://" + pick(DOMAINS) + path() + (random.nextBoolean() ? "?id=" + random.nextInt(10000) : "");
+    }
+
+    private String csvRow() {
+        return random.nextInt(100000) + "," + word() + "," + word() + "@" + pick(DOMAINS) + "," +
+            random.nextInt(1000) + "." + random.nextInt(100) + "," + (random.nextBoolean() ? "true" : "false");
+    }
+}
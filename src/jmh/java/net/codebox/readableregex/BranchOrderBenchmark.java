@@ -0,0 +1,84 @@
+package net.codebox.readableregex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.oneOrMore;
+import static net.codebox.readableregex.Token.anyCharacterExcept;
+import static net.codebox.readableregex.Token.nonCapturingGroup;
+import static net.codebox.readableregex.Token.or;
+import static net.codebox.readableregex.Token.text;
+
+/**
+ * Classifies request lines by protocol, using an expression whose most common alternative is listed
+ * last, and compares it with the same expression after its alternatives have been reordered using a
+ * MatchProfiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BranchOrderBenchmark {
+    private static final String[] RARE = {"gopher", "finger", "ldap", "nntp", "pop3", "imap", "smtp", "ftp"};
+
+    private String[] lines;
+    private CompiledRegEx original, reordered;
+
+    @Setup
+    public void setUp() {
+        final Token[] protocols = new Token[RARE.length + 1];
+        for (int i = 0; i < RARE.length; i++) {
+            protocols[i] = text(RARE[i]);
+        }
+        protocols[RARE.length] = text("http");
+        original = RegExBuilder.compile(nonCapturingGroup(or(protocols)), text("://"), oneOrMore().of(anyCharacterExcept(characters(' '))));
+
+        final Random random = new Random(42);
+        lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            final String protocol = random.nextInt(20) == 0 ? RARE[random.nextInt(RARE.length)] : "http";
+            lines[i] = protocol + "://host" + random.nextInt(100) + "/path";
+        }
+        final MatchProfiler profiler = new MatchProfiler(original);
+        for (int i = 0; i < 100; i++) {
+            profiler.recordMatch(lines[i]);
+        }
+        reordered = profiler.reorderedRegEx();
+    }
+
+    @Benchmark
+    public int originalOrder() {
+        int matched = 0;
+        for (String line : lines) {
+            if (original.pattern().matcher(line).matches()) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int profiledOrder() {
+        int matched = 0;
+        for (String line : lines) {
+            if (reordered.pattern().matcher(line).matches()) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,96 @@
+package net.codebox.readableregex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.oneOrMore;
+import static net.codebox.readableregex.Token.anyCharacterExcept;
+import static net.codebox.readableregex.Token.anyDigit;
+import static net.codebox.readableregex.Token.anyLetter;
+import static net.codebox.readableregex.Token.text;
+
+/**
+ * Measures the cost of each CharacterProfile when counting the matches in the same ASCII data. The
+ * BYTES profile is run directly against the encoded bytes, the others against a decoded String, and
+ * 'decodeThenAscii' includes the cost of decoding the bytes first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharacterProfileBenchmark {
+    @Param({"words", "fields"})
+    public String expression;
+
+    private byte[] bytes;
+    private String text;
+    private CompiledRegEx ascii, unicode, bytesProfile;
+
+    @Setup
+    public void setUp() {
+        final Token[] tokens;
+        if (expression.equals("words")) {
+         // A word followed by a number, such as 'item42'
+            tokens = new Token[]{oneOrMore().of(anyLetter()), oneOrMore().of(anyDigit())};
+        } else {
+         // A quoted field, such as '"abc 123"'
+            tokens = new Token[]{text("\""), oneOrMore().of(anyCharacterExcept(characters('"'))), text("\"")};
+        }
+        ascii        = RegExBuilder.compile(CharacterProfile.ASCII, tokens);
+        unicode      = RegExBuilder.compile(CharacterProfile.UNICODE, tokens);
+        bytesProfile = RegExBuilder.compile(CharacterProfile.BYTES, tokens);
+
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1000000) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append("item").append(random.nextInt(1000));
+                    break;
+                case 1:
+                    sb.append('"').append("value ").append(random.nextInt(100)).append('"');
+                    break;
+                default:
+                    sb.append(" , ");
+            }
+        }
+        text  = sb.toString();
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int asciiProfile() {
+        return ascii.count(text);
+    }
+
+    @Benchmark
+    public int unicodeProfile() {
+        return unicode.count(text);
+    }
+
+    @Benchmark
+    public int bytesProfile() {
+        return bytesProfile.count(Latin1Text.of(bytes));
+    }
+
+    @Benchmark
+    public int decodeThenAscii() {
+        return ascii.count(new String(bytes, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package net.codebox.readableregex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.oneOrMore;
+import static net.codebox.readableregex.Token.anyLetter;
+import static net.codebox.readableregex.Token.anyOneOf;
+import static net.codebox.readableregex.Token.text;
+
+/**
+ * Compares searching for the first character of a match using the Vector API, the scalar scanner and
+ * Matcher.find(), on inputs where candidate characters are rare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FirstCharacterScanBenchmark {
+    @Param({"1000", "100000"})
+    public int candidateSpacing;
+
+    private String input;
+    private Pattern pattern;
+    private CompiledRegEx regex;
+    private CharacterScanner vectorScanner, scalarScanner;
+
+    @Setup
+    public void setUp() {
+     // Matches a simple HTML entity or tag name, such as '&amp;' or '<div;'
+        regex = RegExBuilder.compile(anyOneOf(characters('<', '&')), oneOrMore().of(anyLetter()), text(";"));
+        pattern = regex.pattern();
+
+        final CodePointSet firstCharacters = CodePointSet.of('<', '&');
+        vectorScanner = CharacterScanner.forCharacters(firstCharacters);
+        scalarScanner = CharacterScanner.scalar(firstCharacters);
+
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            sb.append(i % candidateSpacing == candidateSpacing - 1 ? '<' : (char) ('a' + random.nextInt(26)));
+        }
+        input = sb.append("&amp;").toString();
+    }
+
+    @Benchmark
+    public boolean matcherFind() {
+        return pattern.matcher(input).find();
+    }
+
+    @Benchmark
+    public boolean compiledFind() {
+        return regex.find(input);
+    }
+
+    @Benchmark
+    public int vectorScan() {
+        return scanAll(vectorScanner);
+    }
+
+    @Benchmark
+    public int scalarScan() {
+        return scanAll(scalarScanner);
+    }
+
+    private int scanAll(final CharacterScanner scanner) {
+        int count = 0, position = scanner.indexOf(input, 0, input.length());
+        while (position >= 0) {
+            count++;
+            position = scanner.indexOf(input, position + 1, input.length());
+        }
+        return count;
+    }
+}
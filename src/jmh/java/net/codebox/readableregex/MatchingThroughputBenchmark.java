@@ -0,0 +1,207 @@
+package net.codebox.readableregex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.atLeast;
+import static net.codebox.readableregex.Quantifier.between;
+import static net.codebox.readableregex.Quantifier.exactly;
+import static net.codebox.readableregex.Quantifier.oneOrMore;
+import static net.codebox.readableregex.Quantifier.zeroOrMore;
+import static net.codebox.readableregex.Quantifier.zeroOrOne;
+import static net.codebox.readableregex.Token.anyCharacterExcept;
+import static net.codebox.readableregex.Token.anyDigit;
+import static net.codebox.readableregex.Token.anyLetter;
+import static net.codebox.readableregex.Token.anyOneOf;
+import static net.codebox.readableregex.Token.groupOf;
+import static net.codebox.readableregex.Token.or;
+import static net.codebox.readableregex.Token.text;
+
+/**
+ * Measures end-to-end matching throughput for a catalogue of representative expressions, run over a
+ * deterministic corpus of log lines, email addresses, URLs and CSV rows (see BenchmarkCorpus). Each
+ * expression is run through matches() and find() on every line, counts every match in each line, and
+ * extracts every captured group of every match. The engine parameter selects the engine used by
+ * matches() and find(); counting and group extraction always use java.util.regex.
+ *
+ * Scores are in nanoseconds per line. Running this class directly, rather than through the jmh task,
+ * also prints the equivalent throughput in MB/s of UTF-8 input, so that new engines and optimisations
+ * can be compared against earlier results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingThroughputBenchmark {
+    private static final int LINES = 10000;
+    private static final long SEED = 42;
+
+    @Param({"email", "logRequest", "url", "ipAddress", "date", "csvRow", "keyword"})
+    public String expression;
+
+    @Param({"auto", "java.util.regex", "dfa"})
+    public String engine;
+
+    private String[] lines;
+    private CompiledRegEx regex;
+
+    /**
+     * @return the tokens of the named expression in the catalogue
+     */
+    static Token[] catalogue(final String name) {
+        switch (name) {
+            case "email":
+             // The example from the README
+                return new Token[]{
+                    oneOrMore().of(anyOneOf(characters('_', '-'), range('A', 'Z'), range('a', 'z'), range('0', '9'))),
+                    zeroOrMore().of(text("."), oneOrMore().of(anyOneOf(characters('_', '-'), range('A', 'Z'), range('a', 'z'), range('0', '9')))),
+                    text("@"),
+                    oneOrMore().of(anyOneOf(range('A', 'Z'), range('a', 'z'), range('0', '9'))),
+                    zeroOrMore().of(text("."), oneOrMore().of(anyOneOf(range('A', 'Z'), range('a', 'z'), range('0', '9')))),
+                    text("."),
+                    atLeast(2).of(anyLetter())
+                };
+            case "logRequest":
+                return new Token[]{
+                    text("\""),
+                    groupOf(or(text("GET"), text("POST"), text("PUT"), text("DELETE"))),
+                    text(" "),
+                    groupOf(oneOrMore().of(anyCharacterExcept(characters(' ', '"')))),
+                    text(" HTTP/1.1\" "),
+                    groupOf(exactly(3).of(anyDigit()))
+                };
+            case "url":
+                return new Token[]{
+                    groupOf(oneOrMore().of(anyLetter())),
+                    text("://"),
+                    groupOf(oneOrMore().of(anyOneOf(range('a', 'z'), range('0', '9'), characters('.', '-')))),
+                    groupOf(zeroOrMore().of(anyCharacterExcept(characters(' ', '?', '#')))),
+                    zeroOrOne().of(text("?"), oneOrMore().of(anyCharacterExcept(characters(' ', '#'))))
+                };
+            case "ipAddress":
+                return new Token[]{
+                    exactly(3).of(between(1, 3).of(anyDigit()), text(".")),
+                    between(1, 3).of(anyDigit())
+                };
+            case "date":
+                return new Token[]{
+                    groupOf(exactly(4).of(anyDigit())), text("-"), groupOf(exactly(2).of(anyDigit())), text("-"), groupOf(exactly(2).of(anyDigit()))
+                };
+            case "csvRow":
+                return new Token[]{
+                    groupOf(oneOrMore().of(anyDigit())),
+                    exactly(3).of(text(","), oneOrMore().of(anyCharacterExcept(characters(',')))),
+                    text(","),
+                    groupOf(or(text("true"), text("false")))
+                };
+            case "keyword":
+                return new Token[]{text("ERROR")};
+            default:
+                throw new IllegalArgumentException(String.format("There is no expression named '%s' in the catalogue", name));
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        lines = BenchmarkCorpus.lines(SEED, LINES);
+        final CompiledRegEx compiled = RegExBuilder.compile(catalogue(expression));
+        regex = engine.equals("auto") ? compiled : compiled.usingEngine(engine);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int matches() {
+        int matched = 0;
+        for (String line : lines) {
+            if (regex.matches(line)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int find() {
+        int found = 0;
+        for (String line : lines) {
+            if (regex.find(line)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int findAll() {
+        int count = 0;
+        for (String line : lines) {
+            count += regex.count(line);
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int extractGroups() {
+        int length = 0;
+        for (String line : lines) {
+            final Matcher matcher = regex.matcher(line);
+            while (matcher.find()) {
+                for (int group = 1; group <= matcher.groupCount(); group++) {
+                    final String value = matcher.group(group);
+                    if (value != null) {
+                        length += value.length();
+                    }
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Runs the benchmarks, and prints the results in MB/s as well as ns per line. Any arguments are
+     * treated as regular expressions selecting the benchmark methods to run, such as 'find'.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final OptionsBuilder options = new OptionsBuilder();
+        if (args.length == 0) {
+            options.include(MatchingThroughputBenchmark.class.getSimpleName());
+        }
+        for (String method : args) {
+            options.include(MatchingThroughputBenchmark.class.getSimpleName() + "\\." + method);
+        }
+        final double bytesPerLine = (double) BenchmarkCorpus.utf8Length(BenchmarkCorpus.lines(SEED, LINES)) / LINES;
+
+        System.out.printf("%n%-15s %-16s %-14s %12s %10s%n", "expression", "engine", "operation", "ns/line", "MB/s");
+        for (RunResult result : new Runner(options.build()).run()) {
+            final String benchmark = result.getParams().getBenchmark();
+            final double nanosPerLine = result.getPrimaryResult().getScore();
+            System.out.printf("%-15s %-16s %-14s %12.1f %10.1f%n",
+                result.getParams().getParam("expression"), result.getParams().getParam("engine"),
+                benchmark.substring(benchmark.lastIndexOf('.') + 1), nanosPerLine, bytesPerLine * 1000 / nanosPerLine);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package net.codebox.readableregex;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a CompiledRegEx, and periodically recompiles it with the alternatives of its 'or' tokens placed
+ * in order of how often they match, most frequent first. A sample of the inputs passed to matches() and
+ * find() is recorded by a MatchProfiler; once enough matches have been observed, the alternatives are
+ * reordered where this cannot change the results (see {@link MatchProfiler#reorderedRegEx()}) and a new
+ * profiling period begins. Expressions that the profiler cannot replay are used unchanged.
+ *
+ * Instances are thread-safe. Calls that arrive while the expression is being recompiled continue to use
+ * the previous version.
+ */
+public class AdaptiveRegEx {
+    private final int sampleInterval;
+    private final long matchesPerPeriod;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong recompilations = new AtomicLong();
+    private volatile CompiledRegEx current;
+    private volatile MatchProfiler profiler;
+
+    /**
+     * Initialises the instance.
+     *
+     * @param regex the expression to be matched
+     * @param sampleInterval one call in this many is recorded by the profiler
+     * @param matchesPerPeriod the number of recorded matches after which the order of the alternatives is reviewed
+     *
+     * @throws IllegalArgumentException if either count is less than 1
+     */
+    public AdaptiveRegEx(final CompiledRegEx regex, final int sampleInterval, final long matchesPerPeriod) {
+        if (sampleInterval < 1 || matchesPerPeriod < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "The sample interval (%d) and matches per period (%d) must both be at least 1", sampleInterval, matchesPerPeriod));
+        }
+        this.sampleInterval   = sampleInterval;
+        this.matchesPerPeriod = matchesPerPeriod;
+        this.current          = regex;
+        this.profiler         = profilerFor(regex);
+    }
+
+    private static MatchProfiler profilerFor(final CompiledRegEx regex) {
+        if (Nfa.findUnsupportedConstruct(regex.token()) != null) {
+            return null;
+        }
+        return new MatchProfiler(regex);
+    }
+
+    /**
+     * @param input the character sequence to be matched
+     *
+     * @return true if the entire input matches the expression
+     */
+    public boolean matches(final CharSequence input) {
+        final MatchProfiler sampler = sample();
+        if (sampler == null) {
+            return current.matches(input);
+        }
+        final boolean matched = sampler.recordMatch(input);
+        review(sampler);
+        return matched;
+    }
+
+    /**
+     * @param input the character sequence to be searched
+     *
+     * @return true if a match was found anywhere within the input
+     */
+    public boolean find(final CharSequence input) {
+        final MatchProfiler sampler = sample();
+        if (sampler == null) {
+            return current.find(input);
+        }
+        final boolean found = sampler.recordFind(input);
+        review(sampler);
+        return found;
+    }
+
+ // Returns the profiler if this call should be recorded, otherwise null
+    private MatchProfiler sample() {
+        final MatchProfiler sampler = profiler;
+        if (sampler == null || calls.getAndIncrement() % sampleInterval != 0) {
+            return null;
+        }
+        return sampler;
+    }
+
+    private void review(final MatchProfiler sampler) {
+        if (sampler.matches() < matchesPerPeriod) {
+            return;
+        }
+        synchronized (this) {
+         // Another thread may already have started a new period
+            if (profiler != sampler) {
+                return;
+            }
+            final CompiledRegEx reordered = sampler.reorderedRegEx();
+            if (reordered != current) {
+                current = reordered;
+                recompilations.incrementAndGet();
+            }
+            profiler = new MatchProfiler(current);
+        }
+    }
+
+    /**
+     * @return the version of the expression that is currently in use
+     */
+    public CompiledRegEx current() {
+        return current;
+    }
+
+    /**
+     * @return the number of times that the expression has been recompiled with a different order
+     */
+    public long recompilations() {
+        return recompilations.get();
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package net.codebox.readableregex;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Reorders the alternatives of 'or' tokens so that the most frequently matched alternatives are tried
+ * first. The regex engine tries alternatives in order and uses the first one that leads to a match, so
+ * changing the order is only safe for alternatives that can never both match at the same position. Two
+ * alternatives are treated as disjoint if the characters that can begin them do not overlap, or if they
+ * are both literals and neither is a prefix of the other. Alternatives containing capturing groups are
+ * never moved, since that would change the numbering of the groups.
+ */
+final class BranchOrder {
+    private BranchOrder() {
+    }
+
+    /**
+     * Reorders the alternatives of each 'or' token that has been observed by the profiler.
+     *
+     * @param token the root of the tree, which must be the tree that was profiled
+     * @param sites the statistics collected by a MatchProfiler
+     *
+     * @return the reordered tree, or the original token if no alternatives could usefully be moved
+     */
+    static Token reorder(final Token token, final Iterable<MatchProfiler.Site> sites) {
+        final Map<Token, int[]> orders = new IdentityHashMap<Token, int[]>();
+        for (MatchProfiler.Site site : sites) {
+            if (site.isAlternation()) {
+                final int[] order = order(site.token().children(), site.branchCounts());
+                if (order != null) {
+                    orders.put(site.token(), order);
+                }
+            }
+        }
+        return orders.isEmpty() ? token : token.withBranchOrders(orders);
+    }
+
+    /**
+     * Sorts the alternatives by decreasing frequency, only ever exchanging neighbouring alternatives
+     * that are disjoint, so the relative order of any two alternatives that overlap is preserved.
+     *
+     * @return the new order, as indexes into the original list, or null if the order is unchanged
+     */
+    static int[] order(final Token[] branches, final long[] counts) {
+        final int[] order = new int[branches.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        boolean changed = false;
+        for (int i = 1; i < order.length; i++) {
+            for (int j = i; j > 0 && counts[order[j]] > counts[order[j - 1]] && areDisjoint(branches[order[j]], branches[order[j - 1]]); j--) {
+                final int swapped = order[j];
+                order[j]     = order[j - 1];
+                order[j - 1] = swapped;
+                changed = true;
+            }
+        }
+        return changed ? order : null;
+    }
+
+    /**
+     * @return true if the two alternatives can never both match at the same position, and neither
+     * contains a capturing group
+     */
+    static boolean areDisjoint(final Token a, final Token b) {
+        if (TokenRenderer.capturingGroupCount(a) > 0 || TokenRenderer.capturingGroupCount(b) > 0) {
+            return false;
+        }
+        final String literalA = ExpressionFeatures.literalText(a), literalB = ExpressionFeatures.literalText(b);
+        if (literalA != null && literalB != null && !literalA.isEmpty() && !literalB.isEmpty()) {
+            return !literalA.startsWith(literalB) && !literalB.startsWith(literalA);
+        }
+        final CodePointSet firstA = Prefilter.firstCharacters(a), firstB = Prefilter.firstCharacters(b);
+        return firstA != null && firstB != null && firstA.intersect(firstB).isEmpty();
+    }
+}
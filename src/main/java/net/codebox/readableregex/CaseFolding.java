@@ -0,0 +1,104 @@
+package net.codebox.readableregex;
+
+import java.util.Arrays;
+
+/**
+ * Groups code points that are equivalent when case is ignored, using the same simple (one code point
+ * to one code point) case mapping as Pattern does when the CASE_INSENSITIVE and UNICODE_CASE flags are
+ * set: two code points are equivalent if Character.toLowerCase(Character.toUpperCase(c)) gives the same
+ * result for both.
+ */
+final class CaseFolding {
+    private CaseFolding() {
+    }
+
+    static int fold(final int codePoint) {
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+
+    /**
+     * @return true if the code point has at least one case variant
+     */
+    static boolean isCased(final int codePoint) {
+        return variantsOf(codePoint).size() > 1;
+    }
+
+    /**
+     * @return the set of code points that are equivalent to the specified code point, including itself
+     */
+    static CodePointSet variantsOf(final int codePoint) {
+        return closure(CodePointSet.of(codePoint));
+    }
+
+    /**
+     * Adds to the set every code point that is equivalent to one of its members.
+     *
+     * @param set the set to be closed
+     *
+     * @return the closed set, which is the original instance if nothing needed to be added
+     */
+    static CodePointSet closure(final CodePointSet set) {
+        final int[] members = Groups.MEMBERS, groupStarts = Groups.STARTS;
+        final int[] added = new int[members.length];
+        int addedCount = 0;
+        for (int group = 0; group < groupStarts.length - 1; group++) {
+            final int from = groupStarts[group], to = groupStarts[group + 1];
+            boolean present = false, missing = false;
+            for (int i = from; i < to; i++) {
+                if (set.contains(members[i])) {
+                    present = true;
+                } else {
+                    missing = true;
+                }
+            }
+            if (present && missing) {
+                for (int i = from; i < to; i++) {
+                    added[addedCount++] = members[i];
+                }
+            }
+        }
+        return addedCount == 0 ? set : set.union(CodePointSet.of(Arrays.copyOf(added, addedCount)));
+    }
+
+    private static final class Groups {
+     // Each cased code point, sorted by its folded form, and the index of the first member of each group
+        static final int[] MEMBERS;
+        static final int[] STARTS;
+
+        static {
+         // Pack the folded form and the code point into one value, so that sorting brings each group together
+            long[] pairs = new long[1024];
+            int count = 0;
+            for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+                final int folded = fold(codePoint);
+                if (folded != codePoint) {
+                    if (count + 2 > pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[count++] = ((long) folded << 32) | codePoint;
+                    pairs[count++] = ((long) folded << 32) | folded;
+                }
+            }
+            Arrays.sort(pairs, 0, count);
+
+            final int[] sortedMembers = new int[count];
+            final int[] starts = new int[count + 1];
+            int memberCount = 0, groupCount = 0;
+            long previousFolded = -1;
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && pairs[i] == pairs[i - 1]) {
+                    continue;
+                }
+                final long folded = pairs[i] >>> 32;
+                if (folded != previousFolded) {
+                    starts[groupCount++] = memberCount;
+                    previousFolded = folded;
+                }
+                sortedMembers[memberCount++] = (int) pairs[i];
+            }
+            starts[groupCount] = memberCount;
+            STARTS  = Arrays.copyOf(starts, groupCount + 1);
+            MEMBERS = Arrays.copyOf(sortedMembers, memberCount);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.codebox.readableregex;
+
+import java.util.regex.Pattern;
+
+/**
+ * Determines how the predefined character classes, such as {@link Token#anyDigit()} and
+ * {@link Token#anyLetter()}, are rendered, and which characters the classes in an expression are
+ * assumed to be able to match. Each profile uses the representation that is cheapest for the kind of
+ * input it is intended for. Classes that have been made case-insensitive using Token.ignoreCase() list
+ * their characters explicitly, and are not affected by the profile.
+ */
+public enum CharacterProfile {
+    /**
+     * Predefined classes match ASCII characters only, for example [0-9] and [a-zA-Z]. This is the
+     * default, and is the fastest choice for text.
+     */
+    ASCII(0),
+
+    /**
+     * Predefined classes match any Unicode character of the corresponding category, for example \p{Nd}
+     * and \p{L}. Expressions are compiled with the UNICODE_CHARACTER_CLASS flag, so that any \d, \w or
+     * \b in unrecognised text also has Unicode semantics.
+     */
+    UNICODE(Pattern.UNICODE_CHARACTER_CLASS),
+
+    /**
+     * For matching byte data through a Latin1Text view, in which every char represents one byte.
+     * Predefined classes are rendered as for ASCII, and every class is assumed to match only characters
+     * in the range U+0000 to U+00FF. This keeps the sets of characters small, so that negated classes
+     * and anything() can be used for first-character scanning and produce compact automata.
+     */
+    BYTES(0);
+
+    private static final CodePointSet BYTE_VALUES = CodePointSet.range(0, 0xFF);
+
+    private final int flags;
+
+    CharacterProfile(final int flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * @return the flags that must be passed to Pattern.compile() for expressions rendered with this profile
+     */
+    public int flags() {
+        return flags;
+    }
+
+    String render(final Token.PredefinedClass predefinedClass) {
+        switch (predefinedClass) {
+            case DIGIT:
+                return this == UNICODE ? "\\p{Nd}" : "[0-9]";
+            default:
+                return this == UNICODE ? "\\p{L}" : "[a-zA-Z]";
+        }
+    }
+
+    CodePointSet characters(final Token.PredefinedClass predefinedClass) {
+        switch (predefinedClass) {
+            case DIGIT:
+                return this == UNICODE ? UnicodeClasses.DECIMAL_DIGITS : CodePointSet.range('0', '9');
+            default:
+                return this == UNICODE ? UnicodeClasses.LETTERS : CodePointSet.range('a', 'z').union(CodePointSet.range('A', 'Z'));
+        }
+    }
+
+    CodePointSet restrict(final CodePointSet characters) {
+        return this == BYTES ? characters.intersect(BYTE_VALUES) : characters;
+    }
+
+ // Built on first use, since scanning the whole of Unicode takes a few milliseconds
+    private static final class UnicodeClasses {
+        static final CodePointSet DECIMAL_DIGITS = CodePointSet.matching(c -> Character.getType(c) == Character.DECIMAL_DIGIT_NUMBER);
+        static final CodePointSet LETTERS = CodePointSet.matching(Character::isLetter);
+    }
+}
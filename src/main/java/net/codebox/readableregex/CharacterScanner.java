@@ -0,0 +1,113 @@
+package net.codebox.readableregex;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Searches text for the next occurrence of any character belonging to a CodePointSet.
+ *
+ * When the library is running on Java 17 or later, with the jdk.incubator.vector module available,
+ * a SIMD implementation supplied by the multi-release layer of the jar is used for sets that it
+ * supports. In all other cases a scalar implementation is used. The vector implementation can be
+ * disabled by setting the system property 'net.codebox.readableregex.disableVectorScanning' to true.
+ */
+abstract class CharacterScanner {
+    static final String DISABLE_VECTOR_PROPERTY = "net.codebox.readableregex.disableVectorScanning";
+    private static final String VECTOR_SCANNER_CLASS = "net.codebox.readableregex.VectorCharacterScanner";
+    private static final Constructor<?> VECTOR_SCANNER_CONSTRUCTOR = findVectorScannerConstructor();
+
+    protected final CodePointSet characters;
+
+    protected CharacterScanner(final CodePointSet characters) {
+        this.characters = characters;
+    }
+
+    /**
+     * Finds the first character, between 'from' (inclusive) and 'to' (exclusive), that belongs to the set.
+     *
+     * @param input the text to be searched
+     * @param from the index at which to start searching
+     * @param to the index at which to stop searching
+     *
+     * @return the index of the character that was found, or -1 if there were none
+     */
+    abstract int indexOf(CharSequence input, int from, int to);
+
+    /**
+     * Constructs the fastest available CharacterScanner for the specified set of characters.
+     *
+     * @param characters the characters to be searched for
+     *
+     * @return a new CharacterScanner instance
+     */
+    static CharacterScanner forCharacters(final CodePointSet characters) {
+        if (VECTOR_SCANNER_CONSTRUCTOR != null && isVectorisable(characters)) {
+            try {
+                return (CharacterScanner) VECTOR_SCANNER_CONSTRUCTOR.newInstance(characters);
+            } catch (Exception ex) {
+             // Fall through to the scalar implementation
+            } catch (LinkageError err) {
+             // Fall through to the scalar implementation
+            }
+        }
+        return new ScalarCharacterScanner(characters);
+    }
+
+    /**
+     * Constructs a CharacterScanner which does not use the Vector API, regardless of its availability.
+     *
+     * @param characters the characters to be searched for
+     *
+     * @return a new CharacterScanner instance
+     */
+    static CharacterScanner scalar(final CodePointSet characters) {
+        return new ScalarCharacterScanner(characters);
+    }
+
+ // The vector implementation compares individual chars, so surrogates must be handled by the scalar one
+    static boolean isVectorisable(final CodePointSet characters) {
+        return characters.rangeCount() <= 8 && !characters.hasSupplementary()
+                && characters.intersect(CodePointSet.range(Character.MIN_SURROGATE, Character.MAX_SURROGATE)).isEmpty();
+    }
+
+    private static Constructor<?> findVectorScannerConstructor() {
+        if (Boolean.getBoolean(DISABLE_VECTOR_PROPERTY)) {
+            return null;
+        }
+        try {
+            final Constructor<?> constructor = Class.forName(VECTOR_SCANNER_CLASS).getDeclaredConstructor(CodePointSet.class);
+         // Force the Vector API classes to load now, so that a missing module is detected here
+            constructor.newInstance(CodePointSet.of('a'));
+            return constructor;
+        } catch (Exception ex) {
+            return null;
+        } catch (LinkageError err) {
+            return null;
+        }
+    }
+
+    private static class ScalarCharacterScanner extends CharacterScanner {
+        private final boolean[] ascii = new boolean[128];
+
+        ScalarCharacterScanner(final CodePointSet characters) {
+            super(characters);
+            for (int c = 0; c < ascii.length; c++) {
+                ascii[c] = characters.contains(c);
+            }
+        }
+
+        @Override
+        int indexOf(final CharSequence input, final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                final char c = input.charAt(i);
+                if (c < 128) {
+                    if (ascii[c]) {
+                        return i;
+                    }
+                } else if (characters.contains(Character.codePointAt(input, i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -18,6 +18,7 @@ public abstract class CharacterTokenPart{
     
     protected abstract CharacterTokenPart copyAndSetFirstPartInToken();
     protected abstract CharacterTokenPart copyAndSetLastPartInToken();
+    abstract CodePointSet toCodePointSet();
     
     private static class SimpleCharacterTokenPart extends CharacterTokenPart{
         private final Character[] characters;
@@ -53,6 +54,14 @@ public abstract class CharacterTokenPart{
         protected CharacterTokenPart copyAndSetLastPartInToken() {
             return new SimpleCharacterTokenPart(characters, isFirstPartInToken, true);
         }
+        @Override
+        CodePointSet toCodePointSet() {
+            final int[] codePoints = new int[characters.length];
+            for (int i = 0; i < characters.length; i++) {
+                codePoints[i] = characters[i];
+            }
+            return CodePointSet.of(codePoints);
+        }
     }
     
     /**
@@ -88,6 +97,10 @@ public abstract class CharacterTokenPart{
         protected CharacterTokenPart copyAndSetLastPartInToken() {
             return new RangeCharacterTokenPart(from, to, isFirstPartInToken, true);
         }
+        @Override
+        CodePointSet toCodePointSet() {
+            return CodePointSet.range(from, to);
+        }
     }
     
     /**
@@ -104,12 +117,13 @@ public abstract class CharacterTokenPart{
     
     private static String escapeCharacter(final char c, final boolean isFirstCharInToken, final boolean isLastCharInToken){
         final char[] specialCharacters;
-        
+
+     // '[' would start a nested class, and '&&' an intersection
         if (isFirstCharInToken){
-            specialCharacters = new char[]{'\\', ']', '^'};
+            specialCharacters = new char[]{'\\', ']', '^', '[', '&'};
 
         } else {
-            specialCharacters = new char[]{'\\', ']', '-'};
+            specialCharacters = new char[]{'\\', ']', '-', '[', '&'};
         }
         
         return Utils.escapeSpecial(c, specialCharacters);
@@ -0,0 +1,272 @@
+package net.codebox.readableregex;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Immutable set of Unicode code points, stored as a sorted list of non-overlapping, non-adjacent
+ * inclusive ranges. Instances are used to describe the characters that a Token is able to match.
+ */
+public final class CodePointSet {
+    static final CodePointSet EMPTY = new CodePointSet(new int[0]);
+    static final CodePointSet ALL   = new CodePointSet(new int[]{0, Character.MAX_CODE_POINT});
+
+ // The characters that '.' will not match when the DOTALL flag is not in use
+    static final CodePointSet LINE_TERMINATORS = of('\n', '\r', '\u0085', '\u2028', '\u2029');
+    static final CodePointSet DOT = LINE_TERMINATORS.complement();
+
+    private final int[] ranges;
+
+    private CodePointSet(final int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * Constructs a set containing each of the specified code points.
+     *
+     * @param codePoints the code points to be included in the set
+     *
+     * @return a new CodePointSet instance
+     */
+    static CodePointSet of(final int... codePoints) {
+        final int[] pairs = new int[codePoints.length * 2];
+        for (int i = 0; i < codePoints.length; i++) {
+            pairs[i * 2] = pairs[i * 2 + 1] = codePoints[i];
+        }
+        return normalise(pairs, codePoints.length);
+    }
+
+    /**
+     * Constructs a set containing all the code points between the two values, inclusive.
+     *
+     * @param from the first code point in the range
+     * @param to the last code point in the range
+     *
+     * @return a new CodePointSet instance, which will be empty if 'from' is greater than 'to'
+     */
+    static CodePointSet range(final int from, final int to) {
+        if (from > to) {
+            return EMPTY;
+        }
+        return new CodePointSet(new int[]{from, to});
+    }
+
+    /**
+     * Constructs a set from a list of ranges, in the form returned by rangeFrom() and rangeTo().
+     *
+     * @param ranges pairs of inclusive bounds, sorted, with a gap of at least one code point between each range and the next
+     *
+     * @return a new CodePointSet instance
+     *
+     * @throws IllegalArgumentException if the ranges are not in this form
+     */
+    static CodePointSet fromRanges(final int[] ranges) {
+        if (ranges.length % 2 != 0) {
+            throw new IllegalArgumentException("The ranges must be given as pairs of bounds");
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] < 0 || ranges[i] > ranges[i + 1] || ranges[i + 1] > Character.MAX_CODE_POINT || (i > 0 && ranges[i] <= ranges[i - 1] + 1)) {
+                throw new IllegalArgumentException(String.format("The range %d-%d is not valid in this position", ranges[i], ranges[i + 1]));
+            }
+        }
+        return ranges.length == 0 ? EMPTY : new CodePointSet(ranges.clone());
+    }
+
+    /**
+     * Constructs a set containing every code point that satisfies the predicate.
+     *
+     * @param predicate the test applied to each code point
+     *
+     * @return a new CodePointSet instance
+     */
+    static CodePointSet matching(final IntPredicate predicate) {
+        int[] ranges = new int[64];
+        int count = 0;
+        for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+            if (!predicate.test(codePoint)) {
+                continue;
+            }
+            if (count > 0 && ranges[count - 1] == codePoint - 1) {
+                ranges[count - 1] = codePoint;
+            } else {
+                if (count == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, count * 2);
+                }
+                ranges[count++] = codePoint;
+                ranges[count++] = codePoint;
+            }
+        }
+        return new CodePointSet(Arrays.copyOf(ranges, count));
+    }
+
+    CodePointSet union(final CodePointSet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        final int[] pairs = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, pairs, ranges.length, other.ranges.length);
+        return normalise(pairs, pairs.length / 2);
+    }
+
+    CodePointSet intersect(final CodePointSet other) {
+        final int[] result = new int[ranges.length + other.ranges.length];
+        int count = 0, i = 0, j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            final int from = Math.max(ranges[i], other.ranges[j]);
+            final int to   = Math.min(ranges[i + 1], other.ranges[j + 1]);
+            if (from <= to) {
+                result[count++] = from;
+                result[count++] = to;
+            }
+            if (ranges[i + 1] < other.ranges[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return new CodePointSet(Arrays.copyOf(result, count));
+    }
+
+    CodePointSet complement() {
+        final int[] result = new int[ranges.length + 2];
+        int count = 0, next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[count++] = next;
+                result[count++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_CODE_POINT) {
+            result[count++] = next;
+            result[count++] = Character.MAX_CODE_POINT;
+        }
+        return new CodePointSet(Arrays.copyOf(result, count));
+    }
+
+    CodePointSet minus(final CodePointSet other) {
+        return intersect(other.complement());
+    }
+
+    /**
+     * @param codePoint a Unicode code point
+     *
+     * @return true if the set contains the code point
+     */
+    public boolean contains(final int codePoint) {
+        int low = 0, high = ranges.length / 2 - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (codePoint < ranges[mid * 2]) {
+                high = mid - 1;
+            } else if (codePoint > ranges[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the set contains no code points
+     */
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    /**
+     * @return the number of code points in the set
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            size += ranges[i + 1] - ranges[i] + 1;
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of ranges in the set, which are in ascending order and neither overlap nor touch
+     */
+    public int rangeCount() {
+        return ranges.length / 2;
+    }
+
+    /**
+     * @param index the position of a range, from 0 to rangeCount() - 1
+     *
+     * @return the first code point in the range
+     */
+    public int rangeFrom(final int index) {
+        return ranges[index * 2];
+    }
+
+    /**
+     * @param index the position of a range, from 0 to rangeCount() - 1
+     *
+     * @return the last code point in the range, which is included in the set
+     */
+    public int rangeTo(final int index) {
+        return ranges[index * 2 + 1];
+    }
+
+    /**
+     * @return true if the set contains any code points that are represented by a surrogate pair
+     */
+    public boolean hasSupplementary() {
+        return ranges.length > 0 && ranges[ranges.length - 1] >= Character.MIN_SUPPLEMENTARY_CODE_POINT;
+    }
+
+    private static CodePointSet normalise(final int[] pairs, final int pairCount) {
+        final long[] sorted = new long[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            sorted[i] = ((long) pairs[i * 2] << 32) | pairs[i * 2 + 1];
+        }
+        Arrays.sort(sorted);
+
+        final int[] result = new int[pairCount * 2];
+        int count = 0;
+        for (long pair : sorted) {
+            final int from = (int) (pair >>> 32), to = (int) pair;
+            if (from > to) {
+                continue;
+            }
+            if (count > 0 && from <= result[count - 1] + 1) {
+                result[count - 1] = Math.max(result[count - 1], to);
+            } else {
+                result[count++] = from;
+                result[count++] = to;
+            }
+        }
+        return new CodePointSet(Arrays.copyOf(result, count));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof CodePointSet && Arrays.equals(ranges, ((CodePointSet) other).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i += 2) {
+            sb.append(String.format("%X", ranges[i]));
+            if (ranges[i + 1] != ranges[i]) {
+                sb.append('-').append(String.format("%X", ranges[i + 1]));
+            }
+            if (i + 2 < ranges.length) {
+                sb.append(',');
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
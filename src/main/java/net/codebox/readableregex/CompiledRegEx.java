@@ -0,0 +1,393 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled regular expression, created from a series of Token instances. In addition to the
+ * underlying Pattern object, instances retain information obtained by analysing the Token tree,
+ * which is used to avoid running the regex engine against inputs that cannot possibly match.
+ *
+ * The matches() and find() methods are performed by the MatchEngine best suited to the features
+ * of the expression, which is chosen when it is compiled; see {@link MatchEngines}. The other
+ * methods always use the Pattern object, so they are not available for expressions containing a
+ * keyword dictionary, which have no Pattern.
+ */
+public class CompiledRegEx {
+ // Number of positions examined when looking for a point at which the input can be divided between threads
+    private static final int MAX_SPLIT_POINT_PROBES = 64;
+
+    private final Token token;
+    private final CharacterProfile profile;
+    private final Pattern pattern;
+    private final Prefilter prefilter;
+    private final ExpressionFeatures features;
+    private final MatchEngines.Selection engine;
+ // A simplified form of the expression used by find(), or null if no simplification was possible
+    private final CompiledRegEx findRegEx;
+    private final List<String> diagnostics;
+ // Built on demand, the automaton is only needed when dividing input between threads
+    private volatile Dfa dfa;
+    private volatile boolean dfaUnavailable;
+
+    CompiledRegEx(final Token token) {
+        this(token, CharacterProfile.ASCII);
+    }
+
+    CompiledRegEx(final Token token, final CharacterProfile profile) {
+        this(token, profile, null, Prefilter.of(token));
+    }
+
+ // Used when the expression has already been analysed, see TokenCodec
+    CompiledRegEx(final Token token, final CharacterProfile profile, final Prefilter prefilter) {
+        this(token, profile, null, prefilter);
+    }
+
+    private CompiledRegEx(final Token token, final CharacterProfile profile, final String engineName, final Prefilter prefilter) {
+        this.token     = token;
+        this.profile   = profile;
+        this.prefilter = prefilter;
+        this.features  = ExpressionFeatures.of(token, profile, prefilter);
+        this.engine    = engineName == null ? MatchEngines.select(token, features) : MatchEngines.select(engineName, token, features);
+
+     // The regex engine's Pattern is re-used, rather than compiling the expression twice
+        if (engine.program instanceof RegexEngine.RegexProgram) {
+            this.pattern = ((RegexEngine.RegexProgram) engine.program).pattern();
+        } else if (features.hasDictionaries()) {
+            this.pattern = null;
+        } else {
+            this.pattern = Pattern.compile(token.toString(), profile.flags());
+        }
+
+        final List<String> notes = new ArrayList<String>();
+        final Token findToken = FindRewriter.rewrite(token, features, notes);
+        this.findRegEx = findToken == token ? null : new CompiledRegEx(findToken, profile, engineName, Prefilter.of(findToken));
+        final CompiledRegEx finder = findRegEx == null ? this : findRegEx;
+        if (finder.engine.engine instanceof RegexEngine) {
+            FindRewriter.checkForWildcards(findToken, notes);
+        }
+        this.diagnostics = Collections.unmodifiableList(notes);
+    }
+
+    /**
+     * Creates a copy of this expression that is matched by a specific engine, overriding the automatic
+     * choice. This is mainly useful for diagnosing problems, and for comparing the performance of engines.
+     *
+     * @param engineName the name of the engine, as returned by MatchEngine.name()
+     *
+     * @return a new CompiledRegEx instance
+     *
+     * @throws IllegalArgumentException if there is no engine with that name, or if it cannot match this expression
+     */
+    public CompiledRegEx usingEngine(final String engineName) {
+        return new CompiledRegEx(token, profile, engineName, prefilter);
+    }
+
+    /**
+     * @return the engine that performs the matches() and find() methods for this expression
+     */
+    public MatchEngine engine() {
+        return engine.engine;
+    }
+
+    /**
+     * @return the features of this expression that were considered when choosing its engine
+     */
+    public ExpressionFeatures features() {
+        return features;
+    }
+
+    /**
+     * Describes the ways in which this expression was simplified when it was compiled, and any parts of
+     * it that may make matching slow, such as an anything() token that could cause find() to take time
+     * quadratic in the length of the input.
+     *
+     * @return a list of diagnostic messages, which is empty if there is nothing to report
+     */
+    public List<String> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Describes how the engine for this expression was chosen, listing the features of the expression and
+     * the reasons that any engines with a higher priority were rejected.
+     *
+     * @return a diagnostic message
+     */
+    public String engineSelection() {
+        return engine.report;
+    }
+
+    /**
+     * @return the Pattern object used to perform matching
+     *
+     * @throws UnsupportedOperationException if the expression contains a keyword dictionary
+     */
+    public Pattern pattern() {
+        if (pattern == null) {
+            throw new UnsupportedOperationException(String.format(
+                    "The expression '%s' contains a keyword dictionary, so it has no Pattern and only supports matches() and find()", token));
+        }
+        return pattern;
+    }
+
+    /**
+     * @return the profile used to render the character classes in this expression
+     */
+    public CharacterProfile profile() {
+        return profile;
+    }
+
+    /**
+     * Creates a Matcher that will match the specified input against this expression.
+     *
+     * @param input the character sequence to be matched
+     *
+     * @return a new Matcher instance
+     */
+    public Matcher matcher(final CharSequence input) {
+        return pattern().matcher(input);
+    }
+
+    /**
+     * Attempts to match the entire input against this expression. Inputs that are shorter than
+     * {@link #minLength()} or longer than {@link #maxLength()}, or that do not contain the literal
+     * text required by the expression, are rejected without being passed to the regex engine.
+     *
+     * @param input the character sequence to be matched
+     *
+     * @return true if the entire input matches this expression
+     */
+    public boolean matches(final CharSequence input) {
+        final int length = input.length();
+        if (length < token.minLength() || length > token.maxLength()) {
+            return false;
+        }
+        if (!prefilter.mightMatch(input)) {
+            return false;
+        }
+        return engine.program.matches(input);
+    }
+
+    /**
+     * Determines whether any part of the input matches this expression. Inputs that are shorter
+     * than {@link #minLength()} are rejected without being passed to the engine. When the regex
+     * engine is used, inputs that do not contain the literal text or characters required by the
+     * expression are also rejected. When the expression contains a required literal and has a small
+     * maximum length, only the text surrounding each occurrence of the literal is examined by the
+     * regex engine. Otherwise, if the set of characters that can begin a match is small, the regex
+     * engine is only invoked at positions where one of those characters appears. An anything() token
+     * at the start or end of the expression cannot affect whether a match exists, so it is ignored.
+     *
+     * @param input the character sequence to be searched
+     *
+     * @return true if a match was found anywhere within the input
+     */
+    public boolean find(final CharSequence input) {
+        if (input.length() < token.minLength()) {
+            return false;
+        }
+        if (findRegEx != null) {
+            return findRegEx.find(input);
+        }
+        return engine.program.find(input);
+    }
+
+    /**
+     * Finds the first match of this expression within the input, as matcher(input).find() does, but also
+     * for expressions that contain a keyword dictionary and so have no Pattern.
+     *
+     * @param input the character sequence to be searched
+     * @param bounds receives the offsets at which the match begins and ends, in elements 0 and 1
+     *
+     * @return true if a match was found anywhere within the input
+     */
+    boolean findFirst(final CharSequence input, final int[] bounds) {
+        if (pattern == null) {
+            return input.length() >= token.minLength() && engine.program.find(input, bounds);
+        }
+        final Matcher matcher = pattern.matcher(input);
+        if (!matcher.find()) {
+            return false;
+        }
+        bounds[0] = matcher.start();
+        bounds[1] = matcher.end();
+        return true;
+    }
+
+    /**
+     * Creates a cursor that iterates over the matches of this expression within the input, returning the
+     * offsets of each one. Advancing the cursor does not allocate any objects.
+     *
+     * @param input the character sequence to be searched
+     *
+     * @return a new OffsetCursor instance
+     */
+    public OffsetCursor matchCursor(final CharSequence input) {
+        return new OffsetCursor(pattern(), input, 0, input.length(), false);
+    }
+
+    /**
+     * Creates a cursor that iterates over the fields of the input that are separated by matches of this
+     * expression, returning the offsets of each one. The fields are the same as those returned by
+     * Pattern.split(input, -1), but no Strings or arrays are created.
+     *
+     * @param input the character sequence to be split
+     *
+     * @return a new OffsetCursor instance
+     */
+    public OffsetCursor fieldCursor(final CharSequence input) {
+        return new OffsetCursor(pattern(), input, 0, input.length(), true);
+    }
+
+    /**
+     * Counts the matches of this expression within the input, without allocating an object for each one.
+     *
+     * @param input the character sequence to be searched
+     *
+     * @return the number of matches found
+     */
+    public int count(final CharSequence input) {
+        if (input.length() < token.minLength() || !prefilter.mightMatch(input)) {
+            return 0;
+        }
+        return matchCursor(input).count();
+    }
+
+    /**
+     * Creates a Spliterator over the matches of this expression within the input, for use with
+     * StreamSupport.stream(). Matches are found lazily, and when the stream is parallel the input is
+     * divided between threads at positions that no match can span, so the results are the same as for
+     * a sequential search. Each MatchResult refers to the input, rather than holding a copy of it.
+     *
+     * @param input the character sequence to be searched
+     *
+     * @return a new Spliterator instance
+     */
+    public Spliterator<MatchResult> matchSpliterator(final CharSequence input) {
+        return RegExSpliterator.matches(this, input);
+    }
+
+    /**
+     * Creates a Spliterator over the fields of the input that are separated by matches of this expression,
+     * for use with StreamSupport.stream(). The fields are the same as those returned by
+     * Pattern.split(input, -1), and are found lazily. When the stream is parallel the input is divided
+     * between threads at field boundaries.
+     *
+     * @param input the character sequence to be split
+     *
+     * @return a new Spliterator instance
+     */
+    public Spliterator<String> fieldSpliterator(final CharSequence input) {
+        return RegExSpliterator.fields(this, input);
+    }
+
+    /**
+     * Looks for a position at which the input can be divided, such that no match of this expression can
+     * begin before the position and end after it. Only expressions with a bounded maximum length are
+     * considered; unless matches are a single character long, the expression must also be convertible
+     * into an automaton, which is used to check each candidate position.
+     *
+     * @return a position between 'from' and 'to', or -1 if none was found
+     */
+    int findSplitPoint(final CharSequence input, final int from, final int to) {
+        final int maxLength = token.maxLength();
+        if (maxLength == Token.UNBOUNDED) {
+            return -1;
+        }
+        final Dfa automaton = maxLength == 1 ? null : dfa();
+        if (maxLength > 1 && automaton == null) {
+            return -1;
+        }
+        final int lastProbe = Math.min(to, from + MAX_SPLIT_POINT_PROBES);
+        for (int position = from; position < lastProbe; position++) {
+            if (isCodePointBoundary(input, position) && (automaton == null || !canMatchAcross(automaton, input, position))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private boolean canMatchAcross(final Dfa automaton, final CharSequence input, final int position) {
+        final int maxLength = token.maxLength();
+        for (int start = Math.max(0, position - maxLength + 1); start < position; start++) {
+            if (!isCodePointBoundary(input, start)) {
+                continue;
+            }
+            final int limit = Math.min(input.length(), start + maxLength);
+            int state = 0, i = start;
+            while (i < limit) {
+                final int codePoint = Character.codePointAt(input, i);
+                i += Character.charCount(codePoint);
+                state = automaton.next(state, codePoint);
+                if (state == Dfa.DEAD) {
+                    break;
+                }
+                if (i > position && automaton.acceptedRule(state) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCodePointBoundary(final CharSequence input, final int position) {
+        return position == 0 || position >= input.length()
+                || !(Character.isLowSurrogate(input.charAt(position)) && Character.isHighSurrogate(input.charAt(position - 1)));
+    }
+
+    private Dfa dfa() {
+        Dfa result = dfa;
+        if (result == null && !dfaUnavailable) {
+            if (Nfa.findUnsupportedConstruct(token) != null) {
+                dfaUnavailable = true;
+                return null;
+            }
+            try {
+                result = dfa = Dfa.build(token);
+            } catch (IllegalArgumentException ex) {
+                dfaUnavailable = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the minimum number of characters that any match of this expression will contain
+     */
+    public int minLength() {
+        return token.minLength();
+    }
+
+    /**
+     * Returns the maximum number of characters that any match of this expression can contain. Code
+     * that scans input in chunks can use this value to size the overlap between consecutive chunks,
+     * a match can never span more than this many characters.
+     *
+     * @return the maximum length of a match, or Token.UNBOUNDED if there is no upper limit
+     */
+    public int maxLength() {
+        return token.maxLength();
+    }
+
+    /**
+     * @return the Token tree of this expression, as it is passed to the MatchEngine that matches it
+     */
+    public Token token() {
+        return token;
+    }
+
+    Prefilter prefilter() {
+        return prefilter;
+    }
+
+    @Override
+    public String toString() {
+        return pattern == null ? token.toString() : pattern.pattern();
+    }
+}
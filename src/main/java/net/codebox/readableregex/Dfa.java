@@ -0,0 +1,372 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deterministic finite automaton, built from an Nfa using the subset construction. The input
+ * alphabet is divided into classes of code points that are never distinguished by the automaton,
+ * so that the transition table has one column per class rather than one per character.
+ *
+ * Instances are immutable once constructed, and can be shared between threads.
+ */
+final class Dfa {
+ // Expressions whose automata would exceed this size must be matched some other way
+    static final int MAX_STATES = 10000;
+
+    static final int DEAD = -1;
+
+    private final int[] classStarts;
+    private final int[] latin1Classes = new int[256];
+    private final int classCount;
+    private final int[] transitions;
+    private final int[] acceptedRules;
+    private final int stateCount;
+
+    private Dfa(final int[] classStarts, final int[] transitions, final int[] acceptedRules, final int stateCount) {
+        this.classStarts   = classStarts;
+        this.classCount    = classStarts.length;
+        this.transitions   = transitions;
+        this.acceptedRules = acceptedRules;
+        this.stateCount    = stateCount;
+        for (int c = 0; c < latin1Classes.length; c++) {
+            latin1Classes[c] = findClass(c);
+        }
+    }
+
+    /**
+     * Converts the specified tokens into a Dfa. State 0 is the start state.
+     *
+     * @param rules the tokens to be converted
+     *
+     * @return a new Dfa instance
+     *
+     * @throws IllegalArgumentException if the tokens cannot be represented by an automaton, or if the
+     * automaton would be too large
+     */
+    static Dfa build(final Token... rules) {
+        return build(Nfa.build(rules));
+    }
+
+    static Dfa build(final Nfa nfa) {
+        final int[] classStarts = alphabet(nfa);
+        final int classCount = classStarts.length;
+
+     // For each state that consumes a character, the alphabet classes that it accepts
+        final int[][] stateClasses = new int[nfa.stateCount()][];
+        final int[] accepted = new int[classCount];
+        for (int state = 0; state < nfa.stateCount(); state++) {
+            final CodePointSet characters = nfa.characters(state);
+            if (characters != null) {
+                int count = 0;
+                for (int c = 0; c < classCount; c++) {
+                    if (characters.contains(classStarts[c])) {
+                        accepted[count++] = c;
+                    }
+                }
+                stateClasses[state] = Arrays.copyOf(accepted, count);
+            }
+        }
+
+        final Map<StateSet, Integer> ids = new HashMap<StateSet, Integer>();
+        final List<int[]> states = new ArrayList<int[]>();
+        int[] transitions = new int[16 * classCount];
+        final Closure closure = new Closure(nfa);
+
+        final int[] startSet = closure.of(new int[]{nfa.start()}, 1);
+        ids.put(new StateSet(startSet), 0);
+        states.add(startSet);
+
+ // The states reached by the same set of moves share a closure, which is large when searching, since every
+ // set includes the states that restart the search, so the target of each set of moves is only found once
+        final Map<StateSet, Integer> targets = new HashMap<StateSet, Integer>();
+        final int[] moved = new int[nfa.stateCount()];
+        final int[] classEnds = new int[classCount], classFill = new int[classCount];
+        int[] moves = new int[16];
+        for (int current = 0; current < states.size(); current++) {
+            final int[] nfaStates = states.get(current);
+
+         // The moves from this state, grouped by alphabet class, visiting each Nfa state once rather than once per class
+            Arrays.fill(classEnds, 0);
+            int moveCount = 0;
+            for (int nfaState : nfaStates) {
+                if (stateClasses[nfaState] != null) {
+                    for (int c : stateClasses[nfaState]) {
+                        classEnds[c]++;
+                    }
+                    moveCount += stateClasses[nfaState].length;
+                }
+            }
+            for (int c = 0, offset = 0; c < classCount; c++) {
+                classFill[c] = offset;
+                offset += classEnds[c];
+                classEnds[c] = offset;
+            }
+            if (moves.length < moveCount) {
+                moves = new int[Math.max(moveCount, moves.length * 2)];
+            }
+            for (int nfaState : nfaStates) {
+                if (stateClasses[nfaState] != null) {
+                    for (int c : stateClasses[nfaState]) {
+                        moves[classFill[c]++] = nfa.target(nfaState);
+                    }
+                }
+            }
+
+            for (int c = 0; c < classCount; c++) {
+                final int movesFrom = c == 0 ? 0 : classEnds[c - 1];
+                final int movedCount = classEnds[c] - movesFrom;
+                System.arraycopy(moves, movesFrom, moved, 0, movedCount);
+                int target = DEAD;
+                if (movedCount > 0) {
+                    final StateSet movedSet = new StateSet(distinct(moved, movedCount));
+                    final Integer known = targets.get(movedSet);
+                    if (known != null) {
+                        target = known;
+                    } else {
+                        final int[] targetSet = closure.of(moved, movedCount);
+                        if (targetSet.length > 0) {
+                            final StateSet key = new StateSet(targetSet);
+                            Integer id = ids.get(key);
+                            if (id == null) {
+                                if (states.size() >= MAX_STATES) {
+                                    throw new IllegalArgumentException("The expression is too complex to be converted into an automaton");
+                                }
+                                id = states.size();
+                                ids.put(key, id);
+                                states.add(targetSet);
+                            }
+                            target = id;
+                        }
+                        targets.put(movedSet, target);
+                    }
+                }
+                final int index = current * classCount + c;
+                if (index >= transitions.length) {
+                    transitions = Arrays.copyOf(transitions, transitions.length * 2);
+                }
+                transitions[index] = target;
+            }
+        }
+
+        final int[] acceptedRules = new int[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            acceptedRules[i] = -1;
+            for (int nfaState : states.get(i)) {
+                final int rule = nfa.acceptedRule(nfaState);
+                if (rule >= 0 && (acceptedRules[i] < 0 || rule < acceptedRules[i])) {
+                    acceptedRules[i] = rule;
+                }
+            }
+        }
+        return new Dfa(classStarts, Arrays.copyOf(transitions, states.size() * classCount), acceptedRules, states.size());
+    }
+
+ // Returns the first 'count' values, sorted and without duplicates
+    private static int[] distinct(final int[] values, final int count) {
+        final int[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int kept = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (kept == 0 || sorted[i] != sorted[kept - 1]) {
+                sorted[kept++] = sorted[i];
+            }
+        }
+        return kept == sorted.length ? sorted : Arrays.copyOf(sorted, kept);
+    }
+
+ // Divides the code points into classes, such that every character set in the Nfa contains either all or none of each class
+    private static int[] alphabet(final Nfa nfa) {
+        final List<Integer> boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+        for (int state = 0; state < nfa.stateCount(); state++) {
+            final CodePointSet characters = nfa.characters(state);
+            if (characters != null) {
+                for (int i = 0; i < characters.rangeCount(); i++) {
+                    boundaries.add(characters.rangeFrom(i));
+                    if (characters.rangeTo(i) < Character.MAX_CODE_POINT) {
+                        boundaries.add(characters.rangeTo(i) + 1);
+                    }
+                }
+            }
+        }
+        final int[] sorted = new int[boundaries.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = boundaries.get(i);
+        }
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * Calculates epsilon closures of sets of Nfa states, re-using its working storage between calls.
+     */
+    private static final class Closure {
+        private final Nfa nfa;
+        private final boolean[] visited;
+        private final int[] stack, result;
+
+        Closure(final Nfa nfa) {
+            this.nfa     = nfa;
+            this.visited = new boolean[nfa.stateCount()];
+            this.stack   = new int[nfa.stateCount()];
+            this.result  = new int[nfa.stateCount()];
+        }
+
+     // Returns the sorted states reachable from the first 'count' states, keeping only those that affect matching
+        int[] of(final int[] states, final int count) {
+            int stackSize = 0, resultSize = 0;
+            for (int i = 0; i < count; i++) {
+                if (!visited[states[i]]) {
+                    visited[states[i]] = true;
+                    stack[stackSize++] = states[i];
+                }
+            }
+            while (stackSize > 0) {
+                final int state = stack[--stackSize];
+                result[resultSize++] = state;
+                for (int next : nfa.epsilons(state)) {
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        stack[stackSize++] = next;
+                    }
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < resultSize; i++) {
+                visited[result[i]] = false;
+                if (nfa.characters(result[i]) != null || nfa.acceptedRule(result[i]) >= 0) {
+                    result[kept++] = result[i];
+                }
+            }
+            final int[] sorted = Arrays.copyOf(result, kept);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private int findClass(final int codePoint) {
+        int low = 0, high = classCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (classStarts[mid] <= codePoint) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the alphabet class to which the code point belongs
+     */
+    int classOf(final int codePoint) {
+        return codePoint < 256 ? latin1Classes[codePoint] : findClass(codePoint);
+    }
+
+    /**
+     * @return the state reached from 'state' on reading the code point, or DEAD if there is none
+     */
+    int next(final int state, final int codePoint) {
+        return transitions[state * classCount + classOf(codePoint)];
+    }
+
+    /**
+     * @return the index of the rule accepted in this state, or -1 if it is not an accepting state
+     */
+    int acceptedRule(final int state) {
+        return acceptedRules[state];
+    }
+
+    int stateCount() {
+        return stateCount;
+    }
+
+    int classCount() {
+        return classCount;
+    }
+
+    /**
+     * @return the lowest code point in the alphabet class
+     */
+    int classStart(final int alphabetClass) {
+        return classStarts[alphabetClass];
+    }
+
+    /**
+     * @return the state reached from 'state' on reading any code point in the alphabet class, or DEAD if there is none
+     */
+    int transition(final int state, final int alphabetClass) {
+        return transitions[state * classCount + alphabetClass];
+    }
+
+    /**
+     * Finds the longest match that starts at the specified position.
+     *
+     * @param input the text to be matched
+     * @param from the index at which the match must start
+     * @param to the index beyond which the match cannot extend
+     * @param rule a single element array, which will be updated with the index of the rule that matched
+     *
+     * @return the end index of the longest match, or -1 if there was no match
+     */
+    int longestMatch(final CharSequence input, final int from, final int to, final int[] rule) {
+        int state = 0, matchEnd = -1;
+        if (acceptedRules[0] >= 0) {
+            matchEnd = from;
+            rule[0] = acceptedRules[0];
+        }
+        int i = from;
+        while (i < to) {
+            final char c = input.charAt(i);
+            final int codePoint;
+            if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(input.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, input.charAt(i + 1));
+                i += 2;
+            } else {
+                codePoint = c;
+                i++;
+            }
+            state = transitions[state * classCount + classOf(codePoint)];
+            if (state == DEAD) {
+                break;
+            }
+            if (acceptedRules[state] >= 0) {
+                matchEnd = i;
+                rule[0] = acceptedRules[state];
+            }
+        }
+        return matchEnd;
+    }
+
+ // Key used to identify Dfa states by the set of Nfa states that they represent
+    private static final class StateSet {
+        private final int[] states;
+        private final int hashCode;
+
+        StateSet(final int[] states) {
+            this.states   = states;
+            this.hashCode = Arrays.hashCode(states);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof StateSet && Arrays.equals(states, ((StateSet) other).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.codebox.readableregex;
+
+/**
+ * A MatchEngine that converts the expression into deterministic finite automata, so that matching
+ * takes time proportional to the length of the input, regardless of how much backtracking the regex
+ * engine would need. Only the regular subset of the Token API is supported.
+ */
+final class DfaEngine implements MatchEngine {
+    static final String NAME = "dfa";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String unsupportedReason(final ExpressionFeatures features) {
+        if (features.hasBackReferences()) {
+            return "back-references cannot be matched by an automaton";
+        }
+        if (features.hasLookArounds()) {
+            return "look-arounds cannot be matched by an automaton";
+        }
+        if (features.hasAtomicConstructs()) {
+            return "independent groups, possessive quantifiers and quantified anything() cannot be matched by an automaton";
+        }
+        if (features.hasUnrecognisedText()) {
+            return "the expression contains text that could not be analysed";
+        }
+        if (features.hasDictionaries()) {
+            return "keyword dictionaries are too large to be converted into an automaton";
+        }
+        return null;
+    }
+
+    @Override
+    public int priority(final ExpressionFeatures features) {
+     // The regex engine only examines the text around each required literal, which is faster for short matches
+        return RegexEngine.usesCandidateWindows(features) ? -10 : 50;
+    }
+
+    @Override
+    public Program compile(final Token token, final ExpressionFeatures features) {
+        final Dfa anchored  = Dfa.build(token);
+        final Dfa searching = Dfa.build(Nfa.buildSearching(token));
+        final Prefilter prefilter = Prefilter.of(token);
+        return new Program() {
+            @Override
+            public boolean matches(final CharSequence input) {
+                return anchored.longestMatch(input, 0, input.length(), new int[1]) == input.length();
+            }
+
+            @Override
+            public boolean find(final CharSequence input) {
+                if (searching.acceptedRule(0) >= 0) {
+                    return true;
+                }
+                if (!prefilter.mightMatch(input)) {
+                    return false;
+                }
+                int state = 0, i = 0;
+                final int length = input.length();
+                while (i < length) {
+                    final int codePoint = Character.codePointAt(input, i);
+                    i += Character.charCount(codePoint);
+                    state = searching.next(state, codePoint);
+                    if (state == Dfa.DEAD) {
+                        return false;
+                    }
+                    if (searching.acceptedRule(state) >= 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+}
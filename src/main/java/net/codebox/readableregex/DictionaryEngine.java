@@ -0,0 +1,187 @@
+package net.codebox.readableregex;
+
+/**
+ * The MatchEngine for expressions containing keyword dictionaries, which java.util.regex cannot match and
+ * which are too large to be converted into an automaton. The Token tree is matched by a backtracking
+ * interpreter, which looks up each dictionary in its trie and tries the keywords found there from the
+ * longest to the shortest. Apart from dictionaries, only the regular subset of the Token API is supported.
+ *
+ * Runs of a quantified character class are matched in a loop, but other repeated tokens recurse once
+ * per iteration, so an expression that repeats a group many times should not be applied to very long inputs.
+ */
+final class DictionaryEngine implements MatchEngine {
+    static final String NAME = "dictionary";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String unsupportedReason(final ExpressionFeatures features) {
+        if (!features.hasDictionaries()) {
+            return "the expression does not contain a keyword dictionary";
+        }
+        if (features.hasBackReferences() || features.hasLookArounds() || features.hasAtomicConstructs() || features.hasUnrecognisedText()) {
+            return "only keyword dictionaries and the regular subset of the Token API are supported";
+        }
+        return null;
+    }
+
+    @Override
+    public int priority(final ExpressionFeatures features) {
+     // Expressions without a dictionary are never matched by this engine, so it is considered last
+        return features.hasDictionaries() ? 10 : -100;
+    }
+
+    @Override
+    public Program compile(final Token token, final ExpressionFeatures features) {
+        final Prefilter prefilter = Prefilter.of(token);
+        return new Program() {
+            @Override
+            public boolean matches(final CharSequence input) {
+                final int length = input.length();
+                return new Interpreter(input).match(token, 0, position -> position == length);
+            }
+
+            @Override
+            public boolean find(final CharSequence input) {
+                return find(input, null);
+            }
+
+            @Override
+            public boolean find(final CharSequence input, final int[] bounds) {
+                if (!prefilter.mightMatch(input)) {
+                    return false;
+                }
+                final Interpreter interpreter = new Interpreter(input);
+                final int length = input.length();
+                int start = 0;
+                while (true) {
+                    final int matchStart = start;
+                    if (interpreter.match(token, start, position -> {
+                        if (bounds != null) {
+                            bounds[0] = matchStart;
+                            bounds[1] = position;
+                        }
+                        return true;
+                    })) {
+                        return true;
+                    }
+                    if (start >= length) {
+                        return false;
+                    }
+                    start += Character.charCount(Character.codePointAt(input, start));
+                }
+            }
+        };
+    }
+
+    private interface Continuation {
+        boolean resume(int position);
+    }
+
+    private static final class Interpreter {
+        private final CharSequence input;
+
+        Interpreter(final CharSequence input) {
+            this.input = input;
+        }
+
+        boolean match(final Token token, final int position, final Continuation next) {
+            final Quantifier quantifier = token.quantifier();
+            if (quantifier == null || token.kind() == Token.Kind.ANYTHING) {
+                return matchUnquantified(token, position, next);
+            }
+            if (token.kind() == Token.Kind.CHARACTER_CLASS) {
+                return matchRun(token.characters(), quantifier.min(), quantifier.max(), position, next);
+            }
+            return repeat(token, quantifier, 0, position, next);
+        }
+
+        private boolean repeat(final Token token, final Quantifier quantifier, final int count, final int position, final Continuation next) {
+            final boolean canRepeat = quantifier.max() == Token.UNBOUNDED || count < quantifier.max();
+            final boolean canStop = count >= quantifier.min();
+         // An iteration that matches nothing cannot lead anywhere that stopping would not
+            final Continuation again = after -> (after == position && canStop) ? false : repeat(token, quantifier, count + 1, after, next);
+            if (canRepeat && matchUnquantified(token, position, again)) {
+                return true;
+            }
+            return canStop && next.resume(position);
+        }
+
+        private boolean matchUnquantified(final Token token, final int position, final Continuation next) {
+            switch (token.kind()) {
+                case LITERAL:
+                    final String text = token.text();
+                    if (position + text.length() > input.length()) {
+                        return false;
+                    }
+                    for (int i = 0; i < text.length(); i++) {
+                        if (input.charAt(position + i) != text.charAt(i)) {
+                            return false;
+                        }
+                    }
+                    return next.resume(position + text.length());
+                case CHARACTER_CLASS:
+                    return matchRun(token.characters(), 1, 1, position, next);
+                case ANYTHING:
+                    return matchRun(token.characters(), 0, Token.UNBOUNDED, position, next);
+                case SEQUENCE:
+                    return matchSequence(token.children(), 0, position, next);
+                case ALTERNATION:
+                    for (Token branch : token.children()) {
+                        if (match(branch, position, next)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case GROUP:
+                    return match(token.children()[0], position, next);
+                case DICTIONARY:
+                    final int[] ends = token.dictionary().matchEnds(input, position, input.length());
+                    for (int i = ends.length - 1; i >= 0; i--) {
+                        if (next.resume(ends[i])) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    throw new IllegalStateException("Unexpected token kind " + token.kind());
+            }
+        }
+
+     // Matches between min and max characters from the set, trying the longest run first
+        private boolean matchRun(final CodePointSet characters, final int min, final int max, final int position, final Continuation next) {
+            final int length = input.length();
+            int end = position, count = 0;
+            while (count < max && end < length) {
+                final int codePoint = Character.codePointAt(input, end);
+                if (!characters.contains(codePoint)) {
+                    break;
+                }
+                end += Character.charCount(codePoint);
+                count++;
+            }
+            while (count >= min) {
+                if (next.resume(end)) {
+                    return true;
+                }
+                if (count == 0) {
+                    return false;
+                }
+                end -= Character.isLowSurrogate(input.charAt(end - 1)) && end - 2 >= position
+                        && Character.isHighSurrogate(input.charAt(end - 2)) ? 2 : 1;
+                count--;
+            }
+            return false;
+        }
+
+        private boolean matchSequence(final Token[] children, final int index, final int position, final Continuation next) {
+            if (index == children.length) {
+                return next.resume(position);
+            }
+            return match(children[index], position, after -> matchSequence(children, index + 1, after, next));
+        }
+    }
+}
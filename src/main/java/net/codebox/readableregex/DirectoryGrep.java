@@ -0,0 +1,398 @@
+package net.codebox.readableregex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Searches the files in a directory tree for lines that match one or more expressions. The tree is walked
+ * by the calling thread; each file is read by a task submitted to an I/O Executor, and its contents are
+ * then matched by a task submitted to a separate Executor intended for CPU-bound work. The number of files
+ * being read or matched at any one time is limited, which also limits the memory used for file contents.
+ *
+ * On Java 21 and later, an Executor that creates a virtual thread per task is a good choice for the I/O
+ * Executor, since the threads spend most of their time blocked; on earlier versions a cached or fixed thread
+ * pool can be used. A fixed pool with one thread per processor is suitable for the matching Executor.
+ *
+ * The results for each file are delivered to a Consumer in a single call, containing the matching lines
+ * in order. Calls to the Consumer are never made concurrently, but files are reported in the order in
+ * which they finish, which is not necessarily the order in which they were found.
+ *
+ * Instances are immutable, and can be used by several threads at once.
+ */
+public class DirectoryGrep {
+    private final Map<String, CompiledRegEx> expressions;
+    private final Executor ioExecutor, matchExecutor;
+    private final int maxConcurrentFiles;
+
+    /**
+     * A line that matched one of the expressions.
+     */
+    public static final class Match {
+        private final int lineNumber;
+        private final String line;
+        private final String expression;
+        private final int start, end;
+
+        private Match(final int lineNumber, final String line, final String expression, final int start, final int end) {
+            this.lineNumber = lineNumber;
+            this.line       = line;
+            this.expression = expression;
+            this.start      = start;
+            this.end        = end;
+        }
+
+        /**
+         * @return the number of the line within the file, starting from 1
+         */
+        public int lineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the text of the line, excluding the line terminator
+         */
+        public String line() {
+            return line;
+        }
+
+        /**
+         * @return the name of the expression that matched
+         */
+        public String expression() {
+            return expression;
+        }
+
+        /**
+         * @return the offset within the line at which the first match of the expression begins
+         */
+        public int start() {
+            return start;
+        }
+
+        /**
+         * @return the offset within the line at which the first match of the expression ends
+         */
+        public int end() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return lineNumber + ":" + expression + ":" + line;
+        }
+    }
+
+    /**
+     * The matching lines found in a single file.
+     */
+    public static final class FileResult {
+        private final Path path;
+        private final List<Match> matches;
+
+        private FileResult(final Path path, final List<Match> matches) {
+            this.path    = path;
+            this.matches = Collections.unmodifiableList(matches);
+        }
+
+        /**
+         * @return the path of the file
+         */
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * @return the matches, in order of line number, and in the order in which the expressions were
+         * supplied for matches on the same line
+         */
+        public List<Match> matches() {
+            return matches;
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + matches;
+        }
+    }
+
+    /**
+     * Statistics describing a completed search.
+     */
+    public static final class Summary {
+        private final long filesSearched, filesMatched, matches;
+        private final Map<Path, IOException> failures;
+
+        private Summary(final long filesSearched, final long filesMatched, final long matches, final Map<Path, IOException> failures) {
+            this.filesSearched = filesSearched;
+            this.filesMatched  = filesMatched;
+            this.matches       = matches;
+            this.failures      = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * @return the number of files that were read and matched successfully
+         */
+        public long filesSearched() {
+            return filesSearched;
+        }
+
+        /**
+         * @return the number of files containing at least one matching line
+         */
+        public long filesMatched() {
+            return filesMatched;
+        }
+
+        /**
+         * @return the total number of matches reported
+         */
+        public long matches() {
+            return matches;
+        }
+
+        /**
+         * @return the files that could not be read or matched, and the reason for each one
+         */
+        public Map<Path, IOException> failures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files searched, %d matched, %d matches, %d failures", filesSearched, filesMatched, matches, failures.size());
+        }
+    }
+
+    /**
+     * Initialises the instance, to search using a single expression. Matches are reported using the
+     * text of the expression as its name.
+     *
+     * @param regex the expression to search for
+     * @param ioExecutor the Executor used to read files
+     * @param matchExecutor the Executor used to match the contents of files
+     * @param maxConcurrentFiles the largest number of files that may be read or matched at once
+     *
+     * @throws IllegalArgumentException if maxConcurrentFiles is less than 1
+     */
+    public DirectoryGrep(final CompiledRegEx regex, final Executor ioExecutor, final Executor matchExecutor, final int maxConcurrentFiles) {
+        this(Collections.singletonMap(regex.toString(), regex), ioExecutor, matchExecutor, maxConcurrentFiles);
+    }
+
+    /**
+     * Initialises the instance, to search using several named expressions.
+     *
+     * @param expressions the expressions to search for, by name, in the order in which they should be applied
+     * @param ioExecutor the Executor used to read files
+     * @param matchExecutor the Executor used to match the contents of files
+     * @param maxConcurrentFiles the largest number of files that may be read or matched at once
+     *
+     * @throws IllegalArgumentException if no expressions are supplied, or if maxConcurrentFiles is less than 1
+     */
+    public DirectoryGrep(final Map<String, CompiledRegEx> expressions, final Executor ioExecutor, final Executor matchExecutor,
+            final int maxConcurrentFiles) {
+        if (expressions.isEmpty()) {
+            throw new IllegalArgumentException("At least one expression must be supplied");
+        }
+        if (maxConcurrentFiles < 1) {
+            throw new IllegalArgumentException(String.format("The maximum number of concurrent files (%d) must be at least 1", maxConcurrentFiles));
+        }
+        this.expressions        = Collections.unmodifiableMap(new LinkedHashMap<String, CompiledRegEx>(expressions));
+        this.ioExecutor         = ioExecutor;
+        this.matchExecutor      = matchExecutor;
+        this.maxConcurrentFiles = maxConcurrentFiles;
+    }
+
+    /**
+     * Searches every regular file beneath the root, decoding the files as UTF-8.
+     *
+     * @param root the directory to be searched
+     * @param sink receives the matches found in each file that contains any
+     *
+     * @return statistics describing the search
+     *
+     * @throws IOException if the directory tree cannot be walked
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Summary search(final Path root, final Consumer<? super FileResult> sink) throws IOException, InterruptedException {
+        return search(root, path -> true, StandardCharsets.UTF_8, sink);
+    }
+
+    /**
+     * Searches the regular files beneath the root that are accepted by the filter. Bytes that are not valid
+     * in the charset are replaced, rather than causing the file to be skipped. This method returns once
+     * every file has been searched and reported.
+     *
+     * @param root the directory to be searched
+     * @param filter selects the files to be searched
+     * @param charset the encoding of the files
+     * @param sink receives the matches found in each file that contains any
+     *
+     * @return statistics describing the search
+     *
+     * @throws IOException if the directory tree cannot be walked
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Summary search(final Path root, final Predicate<? super Path> filter, final Charset charset,
+            final Consumer<? super FileResult> sink) throws IOException, InterruptedException {
+        final Search search = new Search(charset, sink);
+        try (Stream<Path> paths = Files.walk(root)) {
+            final Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                final Path path = iterator.next();
+                if (!Files.isRegularFile(path) || !filter.test(path)) {
+                    continue;
+                }
+             // Blocks the walk while the maximum number of files are in progress
+                search.permits.acquire();
+                try {
+                    ioExecutor.execute(() -> search.read(path));
+                } catch (RejectedExecutionException ex) {
+                    search.permits.release();
+                    throw ex;
+                }
+            }
+        } finally {
+         // Every permit is returned once the last file has been reported
+            search.permits.acquireUninterruptibly(maxConcurrentFiles);
+            search.permits.release(maxConcurrentFiles);
+        }
+        final RuntimeException sinkFailure = search.sinkFailure.get();
+        if (sinkFailure != null) {
+            throw sinkFailure;
+        }
+        return new Summary(search.filesSearched.get(), search.filesMatched.get(), search.matches.get(),
+                new LinkedHashMap<Path, IOException>(search.failures));
+    }
+
+    /**
+     * The state of a single call to search().
+     */
+    private final class Search {
+        private final Charset charset;
+        private final Consumer<? super FileResult> sink;
+        private final Semaphore permits = new Semaphore(maxConcurrentFiles);
+        private final AtomicLong filesSearched = new AtomicLong(), filesMatched = new AtomicLong(), matches = new AtomicLong();
+        private final Map<Path, IOException> failures = new ConcurrentHashMap<Path, IOException>();
+        private final AtomicReference<RuntimeException> sinkFailure = new AtomicReference<RuntimeException>();
+
+        Search(final Charset charset, final Consumer<? super FileResult> sink) {
+            this.charset = charset;
+            this.sink    = sink;
+        }
+
+        void read(final Path path) {
+            final String text;
+            try {
+                text = decode(Files.readAllBytes(path));
+            } catch (IOException ex) {
+                failures.put(path, ex);
+                permits.release();
+                return;
+            } catch (RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+            try {
+                matchExecutor.execute(() -> {
+                    try {
+                        match(path, text);
+                    } catch (RuntimeException | Error ex) {
+                     // Otherwise the failure would be lost in the Executor, and the file reported as searched
+                        failures.put(path, new IOException("The file could not be matched: " + ex, ex));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                failures.put(path, new IOException("The file could not be matched: " + ex.getMessage(), ex));
+                permits.release();
+            }
+        }
+
+        private String decode(final byte[] bytes) throws CharacterCodingException {
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        }
+
+        private void match(final Path path, final String text) {
+            final List<Match> found = new ArrayList<Match>();
+            final List<Map.Entry<String, CompiledRegEx>> candidates = candidates(text);
+            if (!candidates.isEmpty()) {
+                int lineNumber = 1, lineStart = 0;
+                final int length = text.length();
+                while (lineStart < length) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < length && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r') {
+                        lineEnd++;
+                    }
+                    matchLine(text.substring(lineStart, lineEnd), lineNumber, candidates, found);
+                    lineStart = lineEnd + (lineEnd + 1 < length && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n' ? 2 : 1);
+                    lineNumber++;
+                }
+            }
+            filesSearched.incrementAndGet();
+            if (found.isEmpty()) {
+                return;
+            }
+            filesMatched.incrementAndGet();
+            matches.addAndGet(found.size());
+            synchronized (this) {
+                if (sinkFailure.get() == null) {
+                    try {
+                        sink.accept(new FileResult(path, found));
+                    } catch (RuntimeException ex) {
+                        sinkFailure.set(ex);
+                    }
+                }
+            }
+        }
+
+     // Expressions that cannot match anywhere in the file need not be tried against each line
+        private List<Map.Entry<String, CompiledRegEx>> candidates(final String text) {
+            final List<Map.Entry<String, CompiledRegEx>> candidates = new ArrayList<Map.Entry<String, CompiledRegEx>>();
+            for (Map.Entry<String, CompiledRegEx> entry : expressions.entrySet()) {
+                final ExpressionFeatures features = entry.getValue().features();
+             // A look-around at the end of a line may behave differently when the following line is visible
+                if (features.hasLookArounds() || features.hasUnrecognisedText() || entry.getValue().find(text)) {
+                    candidates.add(entry);
+                }
+            }
+            return candidates;
+        }
+
+        private void matchLine(final String line, final int lineNumber, final List<Map.Entry<String, CompiledRegEx>> candidates,
+                final List<Match> found) {
+            final int[] bounds = new int[2];
+            for (Map.Entry<String, CompiledRegEx> entry : candidates) {
+             // find() rejects most lines more cheaply than locating the match
+                if (entry.getValue().find(line) && entry.getValue().findFirst(line, bounds)) {
+                    found.add(new Match(lineNumber, line, entry.getKey(), bounds[0], bounds[1]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package net.codebox.readableregex;
+
+/**
+ * Describes the constructs used by an expression, so that a MatchEngine can decide whether it is able
+ * to match it. Instances are created by analysing the Token tree when an expression is compiled.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public final class ExpressionFeatures {
+    private final boolean backReferences;
+    private final boolean lookArounds;
+    private final boolean atomicConstructs;
+    private final boolean unrecognisedText;
+    private final boolean dictionaries;
+    private final boolean requiredLiterals;
+    private final String literal;
+    private final int minLength, maxLength;
+    private final int patternFlags;
+
+    private ExpressionFeatures(final Token token, final int patternFlags, final boolean requiredLiterals) {
+        final boolean[] found = new boolean[5];
+        scan(token, found);
+        this.backReferences   = found[0];
+        this.lookArounds      = found[1];
+        this.atomicConstructs = found[2];
+        this.unrecognisedText = found[3];
+        this.dictionaries     = found[4];
+        this.requiredLiterals = requiredLiterals;
+        this.literal          = literalText(token);
+        this.minLength        = token.minLength();
+        this.maxLength        = token.maxLength();
+        this.patternFlags     = patternFlags;
+    }
+
+    static ExpressionFeatures of(final Token token, final CharacterProfile profile, final Prefilter prefilter) {
+        return new ExpressionFeatures(token, profile.flags(), prefilter.hasRequiredLiterals());
+    }
+
+    private static void scan(final Token token, final boolean[] found) {
+        final Quantifier quantifier = token.quantifier();
+     // Pattern renders a quantified anything() as a possessive '.*+', or ignores the repetition count
+        if (quantifier != null && (quantifier.isPossessive() || token.kind() == Token.Kind.ANYTHING)) {
+            found[2] = true;
+        }
+        switch (token.kind()) {
+            case BACKREFERENCE:
+                found[0] = true;
+                break;
+            case GROUP:
+                found[1] |= token.groupType().isLookAround();
+                found[2] |= token.groupType() == Token.GroupType.INDEPENDENT;
+                break;
+            case RAW:
+                found[3] = true;
+                break;
+            case DICTIONARY:
+                found[4] = true;
+                break;
+            default:
+                break;
+        }
+        for (Token child : token.children()) {
+            scan(child, found);
+        }
+    }
+
+ // Used where a token must be checked before it is compiled, for example because it will be combined with others
+    static boolean containsBackReference(final Token token) {
+        if (token.kind() == Token.Kind.BACKREFERENCE) {
+            return true;
+        }
+        for (Token child : token.children()) {
+            if (containsBackReference(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+ // Returns the text matched by the token if it can only match a single, fixed string
+    static String literalText(final Token token) {
+        if (token.quantifier() != null) {
+            return null;
+        }
+        switch (token.kind()) {
+            case LITERAL:
+                return token.text();
+            case CHARACTER_CLASS:
+                final CodePointSet characters = token.characters();
+                if (characters.size() == 1) {
+                    return new String(Character.toChars(characters.rangeFrom(0)));
+                }
+                return null;
+            case SEQUENCE:
+                final StringBuilder sb = new StringBuilder();
+                for (Token child : token.children()) {
+                    final String text = literalText(child);
+                    if (text == null) {
+                        return null;
+                    }
+                    sb.append(text);
+                }
+                return sb.toString();
+            case GROUP:
+                return token.groupType().isLookAround() ? null : literalText(token.children()[0]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true if the expression contains a reference to a capturing group
+     */
+    public boolean hasBackReferences() {
+        return backReferences;
+    }
+
+    /**
+     * @return true if the expression contains a look-ahead or look-behind
+     */
+    public boolean hasLookArounds() {
+        return lookArounds;
+    }
+
+    /**
+     * @return true if the expression contains an independent group or a possessive quantifier, which
+     * prevent backtracking into part of a match, or a quantifier applied to anything(), which Pattern may
+     * treat as possessive
+     */
+    public boolean hasAtomicConstructs() {
+        return atomicConstructs;
+    }
+
+    /**
+     * @return true if the expression contains text that was not created through the Token API, and so
+     * could not be analysed
+     */
+    public boolean hasUnrecognisedText() {
+        return unrecognisedText;
+    }
+
+    /**
+     * @return true if the expression contains a keyword dictionary, which only the 'dictionary' engine can match
+     */
+    public boolean hasDictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * @return true if every match must contain one of a known set of literal strings
+     */
+    public boolean hasRequiredLiterals() {
+        return requiredLiterals;
+    }
+
+    /**
+     * @return true if the expression can only match one fixed string
+     */
+    public boolean isLiteral() {
+        return literal != null;
+    }
+
+    /**
+     * @return the string matched by the expression, or null if it is not a literal
+     */
+    public String literal() {
+        return literal;
+    }
+
+    /**
+     * @return the minimum length of a match
+     */
+    public int minLength() {
+        return minLength;
+    }
+
+    /**
+     * @return the maximum length of a match, or Token.UNBOUNDED if there is no limit
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return true if there is a limit on the length of a match
+     */
+    public boolean isBounded() {
+        return maxLength != Token.UNBOUNDED;
+    }
+
+    /**
+     * @return the flags with which the text of the expression must be compiled by Pattern
+     */
+    public int patternFlags() {
+        return patternFlags;
+    }
+
+    /**
+     * @return true if the expression uses only constructs that can be converted into a finite automaton
+     */
+    public boolean isRegular() {
+        return !backReferences && !lookArounds && !atomicConstructs && !unrecognisedText && !dictionaries;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("length ").append(minLength).append("..");
+        sb.append(isBounded() ? String.valueOf(maxLength) : "unbounded");
+        if (literal != null) {
+            sb.append(", literal");
+        }
+        if (backReferences) {
+            sb.append(", back-references");
+        }
+        if (lookArounds) {
+            sb.append(", look-arounds");
+        }
+        if (atomicConstructs) {
+            sb.append(", atomic constructs");
+        }
+        if (unrecognisedText) {
+            sb.append(", unrecognised text");
+        }
+        if (dictionaries) {
+            sb.append(", keyword dictionaries");
+        }
+        if (requiredLiterals) {
+            sb.append(", required literals");
+        }
+        return sb.toString();
+    }
+}
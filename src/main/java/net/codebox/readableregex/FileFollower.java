@@ -0,0 +1,409 @@
+package net.codebox.readableregex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Follows a file that is being appended to, such as a log file, and reports the matches of an expression
+ * in the text that is added to it. Each call to poll() reads only the bytes appended since the previous
+ * call, and matches that span the boundary between two reads are found as they would be if the whole file
+ * were read at once (see StreamMatcher).
+ *
+ * If the file is truncated, it is read again from the start. If it is rotated, that is, the path is found
+ * to refer to a different file, the remainder of the old file is read before following the new one. In
+ * both cases the match offsets start again from zero, and generation() is incremented.
+ *
+ * The state of the follower can be saved as a compact Checkpoint, holding the position in the file and any
+ * text that is still undecided, so that a new instance can resume where this one stopped without reading
+ * the file again.
+ *
+ * Instances are mutable, and should not be shared between threads.
+ */
+public class FileFollower {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CompiledRegEx regex;
+    private final Path path;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private StreamMatcher matcher;
+    private FileChannel channel;
+    private String identity;
+    private long position;
+    private long generation;
+
+    /**
+     * The state of a FileFollower, from which another instance can resume following the same file.
+     *
+     * Instances are immutable, and can be shared between threads.
+     */
+    public static final class Checkpoint {
+        private static final int VERSION = 1;
+
+        private final int expressionHash;
+        private final String identity;
+        private final long position, generation;
+        private final byte[] pendingBytes;
+        private final String carried;
+        private final long carriedStart, lastEmptyMatch;
+        private final int scanFrom;
+
+        private Checkpoint(final int expressionHash, final String identity, final long position, final long generation, final byte[] pendingBytes,
+                final String carried, final long carriedStart, final int scanFrom, final long lastEmptyMatch) {
+            this.expressionHash = expressionHash;
+            this.identity       = identity;
+            this.position       = position;
+            this.generation     = generation;
+            this.pendingBytes   = pendingBytes;
+            this.carried        = carried;
+            this.carriedStart   = carriedStart;
+            this.scanFrom       = scanFrom;
+            this.lastEmptyMatch = lastEmptyMatch;
+        }
+
+        /**
+         * @return the number of bytes of the file that had been read
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Writes the checkpoint in a compact binary form.
+         *
+         * @param out the stream to which the checkpoint is written
+         *
+         * @throws IOException if the stream cannot be written
+         */
+        public void writeTo(final OutputStream out) throws IOException {
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeByte(VERSION);
+            data.writeInt(expressionHash);
+            writeBytes(data, identity.getBytes(StandardCharsets.UTF_8));
+            data.writeLong(position);
+            data.writeLong(generation);
+            writeBytes(data, pendingBytes);
+            writeBytes(data, carried.getBytes(StandardCharsets.UTF_8));
+            data.writeLong(carriedStart);
+            data.writeInt(scanFrom);
+            data.writeLong(lastEmptyMatch);
+            data.flush();
+        }
+
+        /**
+         * Reads a checkpoint that was written by writeTo().
+         *
+         * @param in the stream from which the checkpoint is read
+         *
+         * @return a new Checkpoint instance
+         *
+         * @throws IOException if the stream cannot be read, or does not contain a checkpoint
+         */
+        public static Checkpoint readFrom(final InputStream in) throws IOException {
+            final DataInputStream data = new DataInputStream(in);
+            final int version = data.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException(String.format("The checkpoint has version %d, only version %d is supported", version, VERSION));
+            }
+            final int expressionHash = data.readInt();
+            final String identity = new String(readBytes(data), StandardCharsets.UTF_8);
+            final long position = data.readLong(), generation = data.readLong();
+            final byte[] pendingBytes = readBytes(data);
+            final String carried = new String(readBytes(data), StandardCharsets.UTF_8);
+            return new Checkpoint(expressionHash, identity, position, generation, pendingBytes, carried, data.readLong(), data.readInt(), data.readLong());
+        }
+
+        /**
+         * Writes the checkpoint to a file, replacing it atomically where the file system allows, so that an
+         * earlier checkpoint is not lost if the process stops part way through.
+         *
+         * @param file the file to be written
+         *
+         * @throws IOException if the file cannot be written
+         */
+        public void save(final Path file) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, out.toByteArray());
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        /**
+         * Reads a checkpoint that was written by save().
+         *
+         * @param file the file to be read
+         *
+         * @return a new Checkpoint instance
+         *
+         * @throws IOException if the file cannot be read, or does not contain a checkpoint
+         */
+        public static Checkpoint load(final Path file) throws IOException {
+            return readFrom(new ByteArrayInputStream(Files.readAllBytes(file)));
+        }
+
+        private static void writeBytes(final DataOutputStream data, final byte[] value) throws IOException {
+            data.writeInt(value.length);
+            data.write(value);
+        }
+
+        private static byte[] readBytes(final DataInputStream data) throws IOException {
+            final int length = data.readInt();
+            if (length < 0) {
+                throw new IOException("The checkpoint is corrupt");
+            }
+            final byte[] value = new byte[length];
+            data.readFully(value);
+            return value;
+        }
+    }
+
+    /**
+     * Initialises the instance, to follow the file from its beginning. The file need not exist yet.
+     *
+     * @param regex the expression to be matched
+     * @param path the file to be followed
+     * @param charset the encoding of the file; bytes that are not valid are replaced
+     */
+    public FileFollower(final CompiledRegEx regex, final Path path, final Charset charset) {
+        this.regex   = regex;
+        this.path    = path;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.matcher = new StreamMatcher(regex);
+    }
+
+    /**
+     * Initialises the instance, to resume following the file from a checkpoint. If the file has since been
+     * rotated or truncated, the text held in the checkpoint is treated as the end of the old file, and
+     * the new file is followed from its beginning.
+     *
+     * @param regex the expression to be matched, which must be the expression used when the checkpoint was taken
+     * @param path the file to be followed
+     * @param charset the encoding of the file, which must be the encoding used when the checkpoint was taken
+     * @param checkpoint the state from which to resume
+     *
+     * @throws IllegalArgumentException if the checkpoint was taken using a different expression
+     */
+    public FileFollower(final CompiledRegEx regex, final Path path, final Charset charset, final Checkpoint checkpoint) {
+        this(regex, path, charset);
+        if (checkpoint.expressionHash != expressionHash(regex)) {
+            throw new IllegalArgumentException(String.format("The checkpoint was not taken while matching the expression '%s'", regex));
+        }
+        this.matcher    = new StreamMatcher(regex, checkpoint.carried, checkpoint.carriedStart, checkpoint.scanFrom, checkpoint.lastEmptyMatch);
+        this.identity   = checkpoint.identity.isEmpty() ? null : checkpoint.identity;
+        this.position   = checkpoint.position;
+        this.generation = checkpoint.generation;
+        bytes.put(checkpoint.pendingBytes);
+    }
+
+    private static int expressionHash(final CompiledRegEx regex) {
+        return regex.toString().hashCode();
+    }
+
+    /**
+     * Reads any bytes that have been appended to the file since the last call, and reports the matches
+     * that can now be decided. Matches at the very end of the text are held back until it is certain
+     * that more text cannot change them.
+     *
+     * @param sink receives the matches, in the order in which they occur
+     *
+     * @return the number of bytes read
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public long poll(final Consumer<? super MatchEvent> sink) throws IOException {
+        final String current = identityOf(path);
+        long read = 0;
+        if (channel == null) {
+            if (current == null) {
+                return 0;
+            }
+            if (identity != null && !identity.equals(current)) {
+             // The file was replaced while no instance was following it
+                restart(sink);
+            }
+            open(current);
+        }
+        read += drain(sink);
+        if (current == null) {
+         // The file has been moved away and not yet replaced, it may still be written through its old name
+            return read;
+        }
+        if (!current.equals(identity)) {
+            restart(sink);
+            open(current);
+            read += drain(sink);
+        } else if (channel.size() < position) {
+            restart(sink);
+            open(current);
+            read += drain(sink);
+        }
+        return read;
+    }
+
+    /**
+     * Polls the file repeatedly, until the calling thread is interrupted. A WatchService is used to wake up
+     * as soon as the file changes; since some file systems do not report changes promptly, the file is also
+     * polled at a regular interval regardless.
+     *
+     * @param sink receives the matches, in the order in which they occur
+     * @param interval the longest time to wait between polls
+     * @param unit the unit of the interval
+     * @param checkpointFile if not null, a checkpoint is saved to this file after each poll that reads new bytes
+     *
+     * @throws IOException if the file cannot be read, or the checkpoint cannot be saved
+     * @throws InterruptedException when the calling thread is interrupted
+     */
+    public void follow(final Consumer<? super MatchEvent> sink, final long interval, final TimeUnit unit, final Path checkpointFile)
+            throws IOException, InterruptedException {
+        final Path directory = path.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                if (poll(sink) > 0 && checkpointFile != null) {
+                    checkpoint().save(checkpointFile);
+                }
+                final WatchKey key = watcher.poll(interval, unit);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException ex) {
+            throw new InterruptedException("The watch service was closed");
+        } catch (ClosedByInterruptException ex) {
+         // The channel is closed by the interrupt, and is reopened at the same position by the next poll
+            channel = null;
+            throw new InterruptedException("Interrupted while reading the file");
+        }
+    }
+
+    /**
+     * Marks the end of the stream, reporting any matches that were being held back, and closes the file.
+     * After this, polling starts following the file again from its beginning.
+     *
+     * @param sink receives the matches, in the order in which they occur
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void finish(final Consumer<? super MatchEvent> sink) throws IOException {
+        restart(sink);
+    }
+
+    /**
+     * @return the state of the follower, from which another instance can resume
+     */
+    public Checkpoint checkpoint() {
+        final byte[] pending = Arrays.copyOf(bytes.array(), bytes.position());
+        return new Checkpoint(expressionHash(regex), identity == null ? "" : identity, position, generation, pending,
+            matcher.carriedText(), matcher.carriedStart(), matcher.scanFrom(), matcher.lastEmptyMatch());
+    }
+
+    /**
+     * @return the number of bytes of the current file that have been read
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return the number of times the file has been found to be rotated or truncated
+     */
+    public long generation() {
+        return generation;
+    }
+
+    private void open(final String current) throws IOException {
+        channel  = FileChannel.open(path, StandardOpenOption.READ);
+        identity = current;
+    }
+
+    private void restart(final Consumer<? super MatchEvent> sink) throws IOException {
+        bytes.flip();
+        decode(true, sink);
+        bytes.clear();
+        decoder.reset();
+        matcher.finish(sink);
+        matcher = new StreamMatcher(regex);
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        identity = null;
+        position = 0;
+        generation++;
+    }
+
+    private long drain(final Consumer<? super MatchEvent> sink) throws IOException {
+        long total = 0;
+        int read;
+        while ((read = channel.read(bytes, position)) > 0) {
+            position += read;
+            total    += read;
+            bytes.flip();
+            decode(false, sink);
+            bytes.compact();
+        }
+        return total;
+    }
+
+ // Decodes the bytes in the buffer, leaving any incomplete character for the next read unless this is the end of the input
+    private void decode(final boolean endOfInput, final Consumer<? super MatchEvent> sink) {
+        while (true) {
+            final CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(chars);
+            }
+            chars.flip();
+            if (chars.hasRemaining()) {
+                matcher.append(chars, sink);
+            }
+            chars.clear();
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+ // Returns a description of the file that changes when the path refers to a different file, or null if it does not exist
+    private static String identityOf(final Path path) throws IOException {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey().toString() : attributes.creationTime().toString();
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+}
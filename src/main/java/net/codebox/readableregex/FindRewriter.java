@@ -0,0 +1,135 @@
+package net.codebox.readableregex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simplifies an expression for use by CompiledRegEx.find(), which only reports whether a match exists.
+ * An unquantified anything() token at the start or end of an expression can always match an empty
+ * string, so a match with it exists exactly when a match without it exists, and removing it avoids the
+ * regex engine scanning to the end of the line from every start position, which takes time quadratic
+ * in the length of a line that contains no match.
+ *
+ * Expressions containing back-references are left unchanged, since removing text from a capturing
+ * group could change the text that the back-reference must match.
+ */
+final class FindRewriter {
+    private FindRewriter() {
+    }
+
+    /**
+     * Removes any unquantified anything() tokens from the start and end of the expression, and from the
+     * start and end of each alternative of a top-level 'or' token.
+     *
+     * @param token the root of the tree
+     * @param features the features of the expression
+     * @param diagnostics a list to which a description of any change, or of any anything() token that
+     * could not be removed, is added
+     *
+     * @return the simplified tree, which is the original token if nothing changed
+     */
+    static Token rewrite(final Token token, final ExpressionFeatures features, final List<String> diagnostics) {
+        if (features.hasBackReferences()) {
+            return token;
+        }
+        Token stripped = strip(token, true);
+        if (stripped != null) {
+            stripped = strip(stripped, false);
+        }
+        if (stripped == token) {
+            return token;
+        }
+        if (stripped == null) {
+            stripped = Token.sequence(new Token[0], false);
+            diagnostics.add(String.format("find() always succeeds, the expression '%s' can match an empty string at any position", token));
+        } else {
+            diagnostics.add(String.format("find() searches for '%s', the anything() at the start or end of '%s' cannot change whether a match exists", stripped, token));
+        }
+        return stripped;
+    }
+
+    /**
+     * Describes any anything() token that could not be removed from the expression, for which the regex
+     * engine may take quadratic time to search a long line that contains no match.
+     *
+     * @param token the root of the tree that will be searched by the regex engine
+     * @param diagnostics a list to which a description of the problem is added
+     */
+    static void checkForWildcards(final Token token, final List<String> diagnostics) {
+        if (containsAnything(token)) {
+            diagnostics.add(String.format("find() may take quadratic time on long lines without a match, the anything() in '%s' could not be removed", token));
+        }
+    }
+
+    private static boolean containsAnything(final Token token) {
+        if (token.kind() == Token.Kind.ANYTHING) {
+            return true;
+        }
+        for (Token child : token.children()) {
+            if (containsAnything(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+ // Returns the token without a wildcard at its start (or end), or null if nothing is left
+    private static Token strip(final Token token, final boolean leading) {
+        if (token.quantifier() != null) {
+            return token;
+        }
+        switch (token.kind()) {
+            case ANYTHING:
+                return null;
+            case SEQUENCE:
+                final Token[] children = token.children();
+                if (children.length == 0) {
+                    return token;
+                }
+                int from = 0, to = children.length;
+                Token edge = null;
+                while (from < to) {
+                    edge = strip(children[leading ? from : to - 1], leading);
+                    if (edge != null) {
+                        break;
+                    }
+                    if (leading) {
+                        from++;
+                    } else {
+                        to--;
+                    }
+                }
+                if (from == to) {
+                    return null;
+                }
+                final Token[] remaining = Arrays.copyOfRange(children, from, to);
+                remaining[leading ? 0 : remaining.length - 1] = edge;
+                return from == 0 && to == children.length && edge == children[leading ? 0 : children.length - 1]
+                        ? token : token.withChildren(remaining);
+            case ALTERNATION:
+                final Token[] branches = token.children().clone();
+                boolean changed = false;
+                for (int i = 0; i < branches.length; i++) {
+                    final Token branch = strip(branches[i], leading);
+                    if (branch == null) {
+                     // This alternative can match an empty string, so a match exists at every position
+                        return null;
+                    }
+                    changed |= branch != branches[i];
+                    branches[i] = branch;
+                }
+                return changed ? token.withChildren(branches) : token;
+            case GROUP:
+                if (token.groupType() != Token.GroupType.CAPTURING && token.groupType() != Token.GroupType.NON_CAPTURING) {
+                    return token;
+                }
+                final Token child = strip(token.children()[0], leading);
+                if (child == null) {
+                    return null;
+                }
+                return child == token.children()[0] ? token : token.withChildren(new Token[]{child});
+            default:
+                return token;
+        }
+    }
+}
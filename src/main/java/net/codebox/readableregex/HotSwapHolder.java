@@ -0,0 +1,239 @@
+package net.codebox.readableregex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the current version of a value that is replaced while other threads are using it, such as a
+ * CompiledRegEx, a ShardedAlternation or a Lexer built from rules that are reloaded at runtime.
+ *
+ * A new version is published by swapping an atomic reference, so threads on the match path never block and
+ * never take a lock: {@link #apply(Function)} reads the current version, registers itself as a user of it
+ * with a compare-and-set, and runs to completion on that version even if a newer one is published meanwhile.
+ * Once a version has been replaced and its last user has finished, it is passed to the release action, which
+ * can free any resources that it holds (on whichever thread finished last).
+ *
+ * Each published version is numbered, starting from 1 for the initial value, and the time taken by each
+ * reload, from the start of building the new value to its publication, is recorded.
+ *
+ * Instances are thread-safe.
+ *
+ * @param <T> the type of the value
+ */
+public class HotSwapHolder<T> {
+    private final AtomicReference<Version<T>> current;
+    private final Consumer<? super T> releaseAction;
+    private final AtomicInteger retainedVersions = new AtomicInteger();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong totalReloadNanos = new AtomicLong();
+    private final AtomicLong maxReloadNanos = new AtomicLong();
+    private volatile long lastReloadNanos = -1;
+
+    private static final class Version<T> {
+        final T value;
+        final long number;
+     // The number of threads using this version, plus one while it is current; zero once it has been released
+        final AtomicInteger users = new AtomicInteger(1);
+
+        Version(final T value, final long number) {
+            this.value  = value;
+            this.number = number;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                final int count = users.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a holder whose replaced versions are simply left to the garbage collector.
+     *
+     * @param initial the first version of the value
+     */
+    public HotSwapHolder(final T initial) {
+        this(initial, value -> {});
+    }
+
+    /**
+     * Creates a holder.
+     *
+     * @param initial the first version of the value
+     * @param releaseAction called once for each version that has been replaced, after the last thread using it has finished
+     */
+    public HotSwapHolder(final T initial, final Consumer<? super T> releaseAction) {
+        if (initial == null) {
+            throw new IllegalArgumentException("The initial value must not be null");
+        }
+        this.current       = new AtomicReference<Version<T>>(new Version<T>(initial, 1));
+        this.releaseAction = releaseAction;
+    }
+
+    /**
+     * Applies a function to the current version. The version cannot be released until the function returns,
+     * even if a newer version is published while it runs. This method never blocks.
+     *
+     * @param function the work to be done, such as {@code regex -> regex.find(line)}
+     * @param <R> the type of the result
+     *
+     * @return the result of the function
+     */
+    public <R> R apply(final Function<? super T, R> function) {
+        Version<T> version;
+        do {
+         // A version can only have been released after it was replaced, so the next read finds a newer one
+            version = current.get();
+        } while (!version.tryAcquire());
+        try {
+            return function.apply(version.value);
+        } finally {
+            release(version);
+        }
+    }
+
+    /**
+     * Returns the current version, without registering the caller as a user of it. This is suitable where
+     * there is no release action, or the value does not need to outlive the next reload.
+     *
+     * @return the current version of the value
+     */
+    public T get() {
+        return current.get().value;
+    }
+
+    /**
+     * @return the number of the current version; the initial value is version 1, and each reload adds 1
+     */
+    public long version() {
+        return current.get().number;
+    }
+
+    /**
+     * Publishes a new version.
+     *
+     * @param value the new version of the value
+     *
+     * @return the number of the new version
+     */
+    public long swap(final T value) {
+        return reload(() -> value);
+    }
+
+    /**
+     * Builds and publishes a new version, recording the time taken to do both.
+     *
+     * @param builder creates the new version of the value, for example by compiling reloaded rules
+     *
+     * @return the number of the new version
+     */
+    public long reload(final Supplier<? extends T> builder) {
+        final long start = System.nanoTime();
+        final T value = checked(builder.get());
+        Version<T> previous, next;
+        do {
+            previous = current.get();
+            next = new Version<T>(value, previous.number + 1);
+        } while (!current.compareAndSet(previous, next));
+        published(previous, start);
+        return next.number;
+    }
+
+    /**
+     * Builds a new version from the current one and publishes it. If another thread publishes a version
+     * first, the update is applied again to that version, so concurrent updates are never lost; the
+     * function may therefore be called more than once, and should have no side effects.
+     *
+     * @param update creates the new version from the current one, for example {@code rules -> rules.with(rule)}
+     *
+     * @return the number of the new version
+     */
+    public long update(final UnaryOperator<T> update) {
+        final long start = System.nanoTime();
+        Version<T> previous, next;
+        do {
+            previous = current.get();
+            next = new Version<T>(checked(update.apply(previous.value)), previous.number + 1);
+        } while (!current.compareAndSet(previous, next));
+        published(previous, start);
+        return next.number;
+    }
+
+    private static <T> T checked(final T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("A new version must not be null");
+        }
+        return value;
+    }
+
+    private void published(final Version<T> previous, final long start) {
+        final long nanos = System.nanoTime() - start;
+        reloads.incrementAndGet();
+        totalReloadNanos.addAndGet(nanos);
+        maxReloadNanos.accumulateAndGet(nanos, Math::max);
+        lastReloadNanos = nanos;
+        retainedVersions.incrementAndGet();
+     // Gives up the reference held while the version was current
+        release(previous);
+    }
+
+    private void release(final Version<T> version) {
+     // The count only reaches zero once the version has been replaced, and cannot then be increased
+        if (version.users.decrementAndGet() == 0) {
+            retainedVersions.decrementAndGet();
+            releaseAction.accept(version.value);
+        }
+    }
+
+    /**
+     * @return the number of replaced versions that are still being used, and so have not yet been released
+     */
+    public int retainedVersions() {
+        return retainedVersions.get();
+    }
+
+    /**
+     * @return the number of versions published since the initial one
+     */
+    public long reloads() {
+        return reloads.get();
+    }
+
+    /**
+     * @return the number of nanoseconds taken by the most recent reload, or -1 if there has been none
+     */
+    public long lastReloadNanos() {
+        return lastReloadNanos;
+    }
+
+    /**
+     * @return the number of nanoseconds taken by the slowest reload, or 0 if there has been none
+     */
+    public long maxReloadNanos() {
+        return maxReloadNanos.get();
+    }
+
+    /**
+     * @return the mean number of nanoseconds taken by a reload, or 0 if there has been none
+     */
+    public long meanReloadNanos() {
+        final long count = reloads.get();
+        return count == 0 ? 0 : totalReloadNanos.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("version %d, %d reloads, %d retained", version(), reloads(), retainedVersions());
+    }
+}
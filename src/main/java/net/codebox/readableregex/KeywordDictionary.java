@@ -0,0 +1,501 @@
+package net.codebox.readableregex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
+
+/**
+ * A set of keywords stored outside the Java heap, for dictionaries that are too large to be matched as
+ * an alternation of text() tokens. The keywords are held in a double-array trie over their UTF-8 bytes:
+ * each state of the trie occupies one unit of two ints (a base and a check), and the transition from
+ * state s on byte b leads to state base[s] + b + 1 if the check of that state is s. Looking up a
+ * keyword therefore takes a few memory reads per byte, however many keywords there are.
+ *
+ * A dictionary is built once, for example by a batch job, and written to a file with {@link #write(Path)}.
+ * The file holds the units exactly as they are used, so {@link #map(Path)} memory-maps it without
+ * reading or decoding anything: loading takes the same time for ten keywords as for twenty million, and
+ * the pages are shared by every process that maps the same file. Use {@link Token#dictionary(KeywordDictionary)}
+ * to match the keywords as one part of a larger expression.
+ *
+ * Unpaired surrogates are encoded as if they were code points, so that every CharSequence can be looked
+ * up. A file can hold at most about 268 million states.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public final class KeywordDictionary {
+    private static final int MAGIC = 0x44585252; // "RRXD", little-endian
+    private static final int VERSION = 1;
+ // magic, version, keyword count, unit count, shortest and longest keyword (in chars), checksum, reserved
+    private static final int HEADER_INTS = 8;
+    private static final int HEADER_SIZE = HEADER_INTS * 4;
+    private static final int MAX_UNITS = (Integer.MAX_VALUE - HEADER_SIZE) / 8;
+ // Set in the base of a state at which a keyword ends
+    private static final int TERMINAL = 0x80000000;
+    private static final int FREE = -1, ROOT_CHECK = -2;
+    private static final int[] NO_ENDS = new int[0];
+
+    private final ByteBuffer buffer;
+    private final IntBuffer units;
+    private final int keywordCount, unitCount, minLength, maxLength, checksum;
+
+    private KeywordDictionary(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        final IntBuffer ints = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        this.keywordCount = ints.get(2);
+        this.unitCount    = ints.get(3);
+        this.minLength    = ints.get(4);
+        this.maxLength    = ints.get(5);
+        this.checksum     = ints.get(6);
+        ints.position(HEADER_INTS);
+        this.units = ints.slice();
+    }
+
+    /**
+     * Builds a dictionary in off-heap memory. The keywords are sorted and encoded on the heap while the
+     * trie is built, so building a very large dictionary needs a correspondingly large heap; the result
+     * only occupies the Java heap for a few fields.
+     *
+     * @param keywords the keywords, in any order, duplicates are ignored
+     *
+     * @return a new KeywordDictionary instance
+     *
+     * @throws IllegalArgumentException if there are no keywords, or too many to be stored
+     */
+    public static KeywordDictionary build(final Collection<? extends CharSequence> keywords) {
+        if (keywords.isEmpty()) {
+            throw new IllegalArgumentException("A keyword dictionary must contain at least one keyword");
+        }
+        byte[][] encoded = new byte[keywords.size()][];
+        int count = 0, minLength = Integer.MAX_VALUE, maxLength = 0;
+        for (CharSequence keyword : keywords) {
+            encoded[count++] = encode(keyword);
+            minLength = Math.min(minLength, keyword.length());
+            maxLength = Math.max(maxLength, keyword.length());
+        }
+        Arrays.sort(encoded, KeywordDictionary::compareUnsigned);
+        count = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            if (count == 0 || compareUnsigned(encoded[i], encoded[count - 1]) != 0) {
+                encoded[count++] = encoded[i];
+            }
+        }
+        encoded = Arrays.copyOf(encoded, count);
+
+        final Builder builder = new Builder();
+        builder.build(encoded);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + builder.unitCount * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < builder.unitCount; i++) {
+            buffer.putInt(builder.base[i]).putInt(builder.check[i]);
+        }
+        final CRC32 crc = new CRC32();
+        final byte[] chunk = new byte[8192];
+        buffer.position(HEADER_SIZE);
+        while (buffer.hasRemaining()) {
+            final int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, count).putInt(12, builder.unitCount)
+                .putInt(16, minLength).putInt(20, maxLength).putInt(24, (int) crc.getValue()).putInt(28, 0);
+        buffer.clear();
+        return new KeywordDictionary(buffer);
+    }
+
+    /**
+     * Memory-maps a dictionary that was written by {@link #write(Path)}. Only the header is read; the
+     * trie is paged in by the operating system as lookups reach it. The file must not be modified while
+     * the dictionary is in use.
+     *
+     * @param file the file to be mapped
+     *
+     * @return a new KeywordDictionary instance
+     *
+     * @throws IOException if the file cannot be read, or does not contain a dictionary in a supported version of the format
+     */
+    public static KeywordDictionary map(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("The file '%s' is too large to contain a keyword dictionary", file));
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException(String.format("The file '%s' does not contain a keyword dictionary", file));
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(String.format("The dictionary has version %d, only version %d is supported", buffer.getInt(4), VERSION));
+            }
+            final int unitCount = buffer.getInt(12);
+            if (unitCount < 1 || size != HEADER_SIZE + (long) unitCount * 8) {
+                throw new IOException(String.format("The dictionary in '%s' is incomplete", file));
+            }
+            return new KeywordDictionary(buffer);
+        }
+    }
+
+    /**
+     * Writes the dictionary to a file, in the form that {@link #map(Path)} reads.
+     *
+     * @param file the file to be written, which is replaced if it exists
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer contents = buffer.duplicate();
+            contents.clear();
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct keywords
+     */
+    public int size() {
+        return keywordCount;
+    }
+
+    /**
+     * @return the number of bytes occupied by the dictionary, which is also the size of its file
+     */
+    public long sizeInBytes() {
+        return HEADER_SIZE + (long) unitCount * 8;
+    }
+
+    /**
+     * @return the length in chars of the shortest keyword
+     */
+    public int minLength() {
+        return minLength;
+    }
+
+    /**
+     * @return the length in chars of the longest keyword
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return a CRC-32 checksum of the trie, calculated when the dictionary was built
+     */
+    public int checksum() {
+        return checksum;
+    }
+
+    /**
+     * @param keyword a string
+     *
+     * @return true if the string is one of the keywords
+     */
+    public boolean contains(final CharSequence keyword) {
+        final int[] ends = matchEnds(keyword, 0, keyword.length());
+        return ends.length > 0 && ends[ends.length - 1] == keyword.length();
+    }
+
+    /**
+     * Finds the longest keyword that begins at a position in the input.
+     *
+     * @param input the text to be searched
+     * @param from the index at which the keyword must begin
+     *
+     * @return the end index of the longest keyword found, or -1 if no keyword begins at that position
+     */
+    public int longestMatch(final CharSequence input, final int from) {
+        final int[] ends = matchEnds(input, from, input.length());
+        return ends.length == 0 ? -1 : ends[ends.length - 1];
+    }
+
+    /**
+     * Finds every keyword that begins at a position in the input.
+     *
+     * @return the end indexes of the keywords, in increasing order
+     */
+    int[] matchEnds(final CharSequence input, final int from, final int to) {
+        int[] ends = NO_ENDS;
+        int count = 0, state = 0, i = from;
+        if ((base(state) & TERMINAL) != 0) {
+            ends = new int[4];
+            ends[count++] = from;
+        }
+        final int limit = to - from > maxLength ? from + maxLength : to;
+        while (i < limit) {
+            final char c = input.charAt(i);
+            int codePoint = c;
+            int width = 1;
+            if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(input.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, input.charAt(i + 1));
+                width = 2;
+            }
+            state = next(state, codePoint);
+            if (state < 0) {
+                break;
+            }
+            i += width;
+            if ((base(state) & TERMINAL) != 0) {
+                if (count == ends.length) {
+                    ends = Arrays.copyOf(ends, Math.max(4, count * 2));
+                }
+                ends[count++] = i;
+            }
+        }
+        return count == ends.length ? ends : Arrays.copyOf(ends, count);
+    }
+
+ // Follows the UTF-8 bytes of a code point, returning the state reached or -1 if there is none
+    private int next(final int state, final int codePoint) {
+        if (codePoint < 0x80) {
+            return child(state, codePoint);
+        }
+        int s;
+        if (codePoint < 0x800) {
+            s = child(state, 0xC0 | codePoint >> 6);
+        } else if (codePoint < 0x10000) {
+            s = child(state, 0xE0 | codePoint >> 12);
+            s = s < 0 ? s : child(s, 0x80 | (codePoint >> 6 & 0x3F));
+        } else {
+            s = child(state, 0xF0 | codePoint >> 18);
+            s = s < 0 ? s : child(s, 0x80 | (codePoint >> 12 & 0x3F));
+            s = s < 0 ? s : child(s, 0x80 | (codePoint >> 6 & 0x3F));
+        }
+        return s < 0 ? s : child(s, 0x80 | (codePoint & 0x3F));
+    }
+
+    private int child(final int state, final int label) {
+        final int target = (base(state) & ~TERMINAL) + label + 1;
+        return target < unitCount && units.get(target * 2 + 1) == state ? target : -1;
+    }
+
+    private int base(final int state) {
+        return units.get(state * 2);
+    }
+
+    /**
+     * Chooses a keyword by walking the trie from the root, stopping or following each transition with
+     * equal probability. Every keyword can be chosen, although not with equal probability.
+     */
+    String randomKeyword(final SplittableRandom random) {
+        final byte[] bytes = new byte[maxLength * 3];
+        final int[] labels = new int[256];
+        int length = 0, state = 0;
+        while (true) {
+            final int base = base(state) & ~TERMINAL;
+            int options = 0;
+            for (int label = 0; label < 256 && base + label + 1 < unitCount; label++) {
+                if (units.get((base + label + 1) * 2 + 1) == state) {
+                    labels[options++] = label;
+                }
+            }
+            final boolean terminal = (base(state) & TERMINAL) != 0;
+            final int choice = random.nextInt(options + (terminal ? 1 : 0));
+            if (choice == options) {
+                return decode(bytes, length);
+            }
+            bytes[length++] = (byte) labels[choice];
+            state = base + labels[choice] + 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("dictionary of %d keywords, %08x", keywordCount, checksum);
+    }
+
+ // UTF-8, except that unpaired surrogates are encoded in the same way as other 3-byte code points
+    private static byte[] encode(final CharSequence text) {
+        final byte[] bytes = new byte[text.length() * 3];
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(++i));
+            }
+            if (codePoint < 0x80) {
+                bytes[length++] = (byte) codePoint;
+            } else if (codePoint < 0x800) {
+                bytes[length++] = (byte) (0xC0 | codePoint >> 6);
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                bytes[length++] = (byte) (0xE0 | codePoint >> 12);
+                bytes[length++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[length++] = (byte) (0x80 | (codePoint >> 12 & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static String decode(final byte[] bytes, final int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            final int b = bytes[i] & 0xFF;
+            final int extra = b < 0x80 ? 0 : b < 0xE0 ? 1 : b < 0xF0 ? 2 : 3;
+            int codePoint = extra == 0 ? b : b & (0x3F >> extra);
+            for (int j = 1; j <= extra; j++) {
+                codePoint = codePoint << 6 | (bytes[i + j] & 0x3F);
+            }
+            sb.appendCodePoint(codePoint);
+            i += extra + 1;
+        }
+        return sb.toString();
+    }
+
+    private static int compareUnsigned(final byte[] a, final byte[] b) {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xFF) - (b[i] & 0xFF);
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Places the states of the trie in the arrays, giving each state with children the lowest base at
+     * which every child's unit is free. The free units are kept in a linked list, so that the search
+     * skips the units already in use, and it gives up after a fixed number of candidates, placing the
+     * children beyond the last unit in use instead.
+     */
+    private static final class Builder {
+        private static final int MAX_CANDIDATES = 256;
+
+        int[] base = new int[0], check = new int[0];
+        int unitCount = 1;
+     // The free units below the capacity of the arrays, in ascending order; -1 ends the list
+        private int[] nextFree = new int[0], previousFree = new int[0];
+        private int firstFree = -1, lastFree = -1;
+
+        void build(final byte[][] keywords) {
+            ensureCapacity(1024);
+            occupy(0, ROOT_CHECK);
+         // Each entry is a state, and the range of sorted keywords that pass through it at a given depth
+            final Deque<int[]> pending = new ArrayDeque<int[]>();
+            pending.push(new int[]{0, 0, keywords.length, 0});
+            final int[] labels = new int[256];
+            while (!pending.isEmpty()) {
+                final int[] entry = pending.pop();
+                final int state = entry[0], depth = entry[3];
+                int from = entry[1];
+                final int to = entry[2];
+                boolean terminal = false;
+                if (keywords[from].length == depth) {
+                    terminal = true;
+                    from++;
+                }
+                int labelCount = 0;
+                for (int i = from; i < to; i++) {
+                    final int label = keywords[i][depth] & 0xFF;
+                    if (labelCount == 0 || labels[labelCount - 1] != label) {
+                        labels[labelCount++] = label;
+                    }
+                }
+                if (labelCount == 0) {
+                    base[state] = TERMINAL;
+                    continue;
+                }
+
+                final int stateBase = findBase(labels, labelCount);
+                base[state] = stateBase | (terminal ? TERMINAL : 0);
+                for (int i = 0; i < labelCount; i++) {
+                    occupy(stateBase + labels[i] + 1, state);
+                }
+                int childFrom = from;
+                for (int i = 0; i < labelCount; i++) {
+                    int childTo = childFrom;
+                    while (childTo < to && (keywords[childTo][depth] & 0xFF) == labels[i]) {
+                        childTo++;
+                    }
+                    pending.push(new int[]{stateBase + labels[i] + 1, childFrom, childTo, depth + 1});
+                    childFrom = childTo;
+                }
+            }
+        }
+
+        private int findBase(final int[] labels, final int labelCount) {
+            int candidates = 0;
+            for (int unit = firstFree; unit >= 0 && candidates < MAX_CANDIDATES; unit = nextFree[unit], candidates++) {
+                final int candidate = unit - labels[0] - 1;
+                if (candidate >= 0 && fits(candidate, labels, labelCount)) {
+                    return candidate;
+                }
+            }
+         // Every unit from unitCount onwards is free
+            final int candidate = Math.max(unitCount, labels[0] + 1) - labels[0] - 1;
+            ensureCapacity(candidate + labels[labelCount - 1] + 2);
+            return candidate;
+        }
+
+        private boolean fits(final int candidate, final int[] labels, final int labelCount) {
+            ensureCapacity(candidate + labels[labelCount - 1] + 2);
+            for (int i = 1; i < labelCount; i++) {
+                if (check[candidate + labels[i] + 1] != FREE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void occupy(final int unit, final int state) {
+            check[unit] = state;
+            unitCount = Math.max(unitCount, unit + 1);
+            final int previous = previousFree[unit], next = nextFree[unit];
+            if (previous < 0) {
+                firstFree = next;
+            } else {
+                nextFree[previous] = next;
+            }
+            if (next < 0) {
+                lastFree = previous;
+            } else {
+                previousFree[next] = previous;
+            }
+        }
+
+        private void ensureCapacity(final int units) {
+            if (units > MAX_UNITS) {
+                throw new IllegalArgumentException(String.format("The dictionary is too large, at most %d states can be stored", MAX_UNITS));
+            }
+            if (units > check.length) {
+                final int oldLength = check.length;
+                final int newLength = (int) Math.min(MAX_UNITS, Math.max(units, (long) oldLength * 2));
+                base         = Arrays.copyOf(base, newLength);
+                check        = Arrays.copyOf(check, newLength);
+                nextFree     = Arrays.copyOf(nextFree, newLength);
+                previousFree = Arrays.copyOf(previousFree, newLength);
+                Arrays.fill(check, oldLength, newLength, FREE);
+             // The new units are appended to the free list
+                for (int unit = oldLength; unit < newLength; unit++) {
+                    previousFree[unit] = lastFree;
+                    nextFree[unit] = -1;
+                    if (lastFree < 0) {
+                        firstFree = unit;
+                    } else {
+                        nextFree[lastFree] = unit;
+                    }
+                    lastFree = unit;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package net.codebox.readableregex;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence view of an array of bytes, in which each byte is read as the character with the same
+ * value (as in the ISO-8859-1 encoding). This allows expressions to be matched against byte data without
+ * decoding or copying it. Multi-byte characters in encodings such as UTF-8 appear as several characters,
+ * so expressions used with this class should normally be compiled with {@link CharacterProfile#BYTES}.
+ *
+ * The view reflects any later changes to the contents of the array.
+ */
+public final class Latin1Text implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    private Latin1Text(final byte[] bytes, final int offset, final int length) {
+        this.bytes  = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Creates a view of an entire array.
+     *
+     * @param bytes the data to be viewed
+     *
+     * @return a new Latin1Text instance
+     */
+    public static Latin1Text of(final byte[] bytes) {
+        return new Latin1Text(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Creates a view of part of an array.
+     *
+     * @param bytes the data to be viewed
+     * @param offset the index of the first byte in the view
+     * @param length the number of bytes in the view
+     *
+     * @return a new Latin1Text instance
+     */
+    public static Latin1Text of(final byte[] bytes, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) is outside the array of length %d",
+                    offset, offset + length, bytes.length));
+        }
+        return new Latin1Text(bytes, offset, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside the text of length " + length);
+        }
+        return (char) (bytes[offset + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) is outside the text of length %d", start, end, length));
+        }
+        return new Latin1Text(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
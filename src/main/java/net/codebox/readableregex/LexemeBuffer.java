@@ -0,0 +1,91 @@
+package net.codebox.readableregex;
+
+import java.util.Arrays;
+
+/**
+ * A re-usable buffer holding the output of a Lexer. Each lexeme is stored as a triple of primitive
+ * values - the id of the rule that matched, and the start and end indexes of the text - so no objects
+ * are allocated per lexeme once the buffer has grown to a suitable size.
+ *
+ * Instances are mutable, and should not be shared between threads.
+ */
+public class LexemeBuffer {
+    private int[] values;
+    private int size;
+
+    /**
+     * Initialises the instance with a default capacity.
+     */
+    public LexemeBuffer() {
+        this(64);
+    }
+
+    /**
+     * Initialises the instance.
+     *
+     * @param initialCapacity the number of lexemes that can be stored before the buffer needs to grow
+     */
+    public LexemeBuffer(final int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity) * 3];
+    }
+
+    void add(final int ruleId, final int start, final int end) {
+        if ((size + 1) * 3 > values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size * 3]     = ruleId;
+        values[size * 3 + 1] = start;
+        values[size * 3 + 2] = end;
+        size++;
+    }
+
+    /**
+     * Removes all lexemes from the buffer, without releasing its storage.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of lexemes in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the zero-based index of the lexeme
+     *
+     * @return the id of the rule that matched the lexeme
+     */
+    public int ruleId(final int index) {
+        checkIndex(index);
+        return values[index * 3];
+    }
+
+    /**
+     * @param index the zero-based index of the lexeme
+     *
+     * @return the index of the first character of the lexeme
+     */
+    public int start(final int index) {
+        checkIndex(index);
+        return values[index * 3 + 1];
+    }
+
+    /**
+     * @param index the zero-based index of the lexeme
+     *
+     * @return the index after the last character of the lexeme
+     */
+    public int end(final int index) {
+        checkIndex(index);
+        return values[index * 3 + 2];
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside the range 0-" + (size - 1));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.codebox.readableregex;
+
+/**
+ * Splits text into lexemes using an ordered list of named rules. All the rules are compiled into a single
+ * deterministic automaton, so the text is examined only once regardless of how many rules there are.
+ *
+ * At each position the longest possible match is chosen. If more than one rule matches text of that
+ * length, the rule that appears first in the list wins. Greedy and lazy quantifiers are not distinguished,
+ * since the longest match is always used. Rules may not contain possessive quantifiers, quantifiers applied
+ * to anything(), back-references, look-arounds or independent groups.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public class Lexer {
+    private final String[] ruleNames;
+    private final Dfa dfa;
+
+    /**
+     * A named rule, used to construct a Lexer.
+     */
+    public static class Rule {
+        private final String name;
+        private final Token token;
+
+        private Rule(final String name, final Token token) {
+            this.name  = name;
+            this.token = token;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + token;
+        }
+    }
+
+    /**
+     * Creates a new rule.
+     *
+     * @param name the name of the rule
+     * @param tokens a series of tokens which together define the text matched by the rule
+     *
+     * @return a new Rule instance
+     */
+    public static Rule rule(final String name, final Token... tokens) {
+        return new Rule(name, Token.sequence(tokens, false));
+    }
+
+    /**
+     * Initialises the instance. The id of each rule is its zero-based position in the argument list.
+     *
+     * @param rules the rules, in priority order
+     *
+     * @throws IllegalArgumentException if any rule can match an empty string, or uses an unsupported construct
+     */
+    public Lexer(final Rule... rules) {
+        final Token[] tokens = new Token[rules.length];
+        this.ruleNames = new String[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].token.minLength() == 0) {
+                throw new IllegalArgumentException(String.format("The rule '%s' can match an empty string", rules[i].name));
+            }
+            final String unsupported = Nfa.findUnsupportedConstruct(rules[i].token);
+            if (unsupported != null) {
+                throw new IllegalArgumentException(String.format("The rule '%s' contains a %s, which cannot be used in a Lexer",
+                        rules[i].name, unsupported));
+            }
+            tokens[i] = rules[i].token;
+            ruleNames[i] = rules[i].name;
+        }
+        this.dfa = Dfa.build(tokens);
+    }
+
+    /**
+     * Splits the input into lexemes, starting at the beginning, until the end of the input is reached or
+     * no rule matches. Any existing contents of the buffer are discarded.
+     *
+     * @param input the text to be split
+     * @param buffer the buffer that will receive the lexemes
+     *
+     * @return the index at which tokenization stopped, which will equal the length of the input if all
+     * the text was matched
+     */
+    public int tokenize(final CharSequence input, final LexemeBuffer buffer) {
+        return tokenize(input, 0, input.length(), buffer);
+    }
+
+    /**
+     * Splits the specified part of the input into lexemes, until the end of the range is reached or no
+     * rule matches. Any existing contents of the buffer are discarded.
+     *
+     * @param input the text to be split
+     * @param from the index at which to start
+     * @param to the index at which to stop, no lexeme will extend beyond this point
+     * @param buffer the buffer that will receive the lexemes
+     *
+     * @return the index at which tokenization stopped, which will equal 'to' if all the text was matched
+     */
+    public int tokenize(final CharSequence input, final int from, final int to, final LexemeBuffer buffer) {
+        buffer.clear();
+        final int[] rule = new int[1];
+        int position = from;
+        while (position < to) {
+            final int end = dfa.longestMatch(input, position, to, rule);
+            if (end < 0) {
+                break;
+            }
+            buffer.add(rule[0], position, end);
+            position = end;
+        }
+        return position;
+    }
+
+    /**
+     * @return the number of rules used by this Lexer
+     */
+    public int ruleCount() {
+        return ruleNames.length;
+    }
+
+    /**
+     * @param ruleId the id of a rule
+     *
+     * @return the name of the rule
+     */
+    public String ruleName(final int ruleId) {
+        return ruleNames[ruleId];
+    }
+}
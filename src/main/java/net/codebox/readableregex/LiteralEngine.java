@@ -0,0 +1,56 @@
+package net.codebox.readableregex;
+
+/**
+ * A MatchEngine for expressions that can only match one fixed string, which compares characters
+ * directly instead of running a regex engine.
+ */
+final class LiteralEngine implements MatchEngine {
+    static final String NAME = "literal";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String unsupportedReason(final ExpressionFeatures features) {
+        final String literal = features.literal();
+        if (literal == null) {
+            return "the expression is not a literal";
+        }
+     // Pattern never matches half of a surrogate pair, but a plain string search would
+        if (!literal.isEmpty() && (Character.isLowSurrogate(literal.charAt(0)) || Character.isHighSurrogate(literal.charAt(literal.length() - 1)))) {
+            return "the literal begins or ends with an unpaired surrogate";
+        }
+        return null;
+    }
+
+    @Override
+    public int priority(final ExpressionFeatures features) {
+        return 100;
+    }
+
+    @Override
+    public Program compile(final Token token, final ExpressionFeatures features) {
+        final String literal = features.literal();
+        return new Program() {
+            @Override
+            public boolean matches(final CharSequence input) {
+                if (input.length() != literal.length()) {
+                    return false;
+                }
+                for (int i = 0; i < literal.length(); i++) {
+                    if (input.charAt(i) != literal.charAt(i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean find(final CharSequence input) {
+                return Prefilter.indexOf(input, literal, 0) >= 0;
+            }
+        };
+    }
+}
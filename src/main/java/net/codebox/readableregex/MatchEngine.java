@@ -0,0 +1,90 @@
+package net.codebox.readableregex;
+
+/**
+ * A service-provider interface for the engines that can be used to match a CompiledRegEx. Each engine
+ * is given the Token tree of the expression, together with a description of the features that it uses,
+ * and can decline any expression that it is unable to match correctly. The tree is read through
+ * Token.kind(), Token.child() and the accessors that describe each kind of Token.
+ *
+ * The library contains built-in engines based on java.util.regex, on a deterministic finite automaton,
+ * on plain string comparison, and on a walk of the Token tree for expressions containing keyword
+ * dictionaries. Additional engines can be registered using java.util.ServiceLoader,
+ * by listing the implementing class in 'META-INF/services/net.codebox.readableregex.MatchEngine'. Each
+ * expression is matched by the supported engine with the highest priority; see {@link MatchEngines}.
+ *
+ * Implementations must be thread-safe, and so must the Program instances that they create.
+ */
+public interface MatchEngine {
+    /**
+     * A compiled form of an expression, produced by a MatchEngine.
+     */
+    interface Program {
+        /**
+         * @param input the character sequence to be matched
+         *
+         * @return true if the entire input matches the expression
+         */
+        boolean matches(CharSequence input);
+
+        /**
+         * @param input the character sequence to be searched
+         *
+         * @return true if a match was found anywhere within the input
+         */
+        boolean find(CharSequence input);
+
+        /**
+         * Finds the first match within the input, and reports where it begins and ends. This is only used
+         * for expressions that have no Pattern, since a Matcher can locate the matches of any other expression,
+         * so engines that never match keyword dictionaries need not implement it.
+         *
+         * @param input the character sequence to be searched
+         * @param bounds receives the offsets at which the match begins and ends, in elements 0 and 1
+         *
+         * @return true if a match was found anywhere within the input
+         *
+         * @throws UnsupportedOperationException if the engine does not report the offsets of matches
+         */
+        default boolean find(CharSequence input, int[] bounds) {
+            throw new UnsupportedOperationException("The engine does not report the offsets of matches");
+        }
+    }
+
+    /**
+     * @return a unique name for the engine, which can be used to request it explicitly
+     */
+    String name();
+
+    /**
+     * Determines whether the engine is able to match an expression.
+     *
+     * @param features the features used by the expression
+     *
+     * @return a description of the reason that the expression cannot be matched, or null if it is supported
+     */
+    String unsupportedReason(ExpressionFeatures features);
+
+    /**
+     * Estimates how well suited the engine is to an expression, relative to the other engines. The built-in
+     * engine based on java.util.regex, which supports every expression without a keyword dictionary, has a
+     * priority of 0.
+     *
+     * @param features the features used by the expression
+     *
+     * @return the priority of the engine, higher values are preferred
+     */
+    int priority(ExpressionFeatures features);
+
+    /**
+     * Compiles an expression that the engine supports.
+     *
+     * @param token the root of the Token tree
+     * @param features the features used by the expression
+     *
+     * @return a new Program instance
+     *
+     * @throws IllegalArgumentException if the expression cannot be compiled after all, in which case the
+     * next engine in order of priority is tried
+     */
+    Program compile(Token token, ExpressionFeatures features);
+}
@@ -0,0 +1,161 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Provides access to the MatchEngine implementations, and chooses the engine used for each expression.
+ * The built-in engines are always available; engines registered through java.util.ServiceLoader are
+ * located once, the first time that they are needed.
+ *
+ * The engine for an expression is chosen by considering the available engines in order of decreasing
+ * priority, and using the first one that supports the features of the expression and compiles it
+ * successfully. The engine based on java.util.regex supports every expression except those containing a
+ * keyword dictionary, which the 'dictionary' engine supports, so there is always a result.
+ */
+public final class MatchEngines {
+    private static final List<MatchEngine> BUILT_IN = Collections.unmodifiableList(
+            new ArrayList<MatchEngine>(Arrays.asList(new LiteralEngine(), new DfaEngine(), new RegexEngine(), new DictionaryEngine())));
+
+    private MatchEngines() {
+    }
+
+ // Loaded on first use, so that expressions which never reach the selection step do not pay for classpath scanning
+    private static final class Registered {
+        static final List<MatchEngine> ENGINES = load();
+
+        private static List<MatchEngine> load() {
+            final List<MatchEngine> engines = new ArrayList<MatchEngine>(BUILT_IN);
+            final Iterator<MatchEngine> iterator = ServiceLoader.load(MatchEngine.class, MatchEngine.class.getClassLoader()).iterator();
+            while (true) {
+                try {
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+                    final MatchEngine engine = iterator.next();
+                    if (find(engines, engine.name()) == null) {
+                        engines.add(engine);
+                    }
+                } catch (ServiceConfigurationError err) {
+                 // A provider that cannot be loaded is ignored, the built-in engines can match every expression
+                }
+            }
+            return Collections.unmodifiableList(engines);
+        }
+    }
+
+    /**
+     * @return the available engines, the built-in engines first followed by any that were registered
+     */
+    public static List<MatchEngine> available() {
+        return Registered.ENGINES;
+    }
+
+    /**
+     * @param name the name of an engine
+     *
+     * @return the engine with that name, or null if there is none
+     */
+    public static MatchEngine named(final String name) {
+        return find(Registered.ENGINES, name);
+    }
+
+    private static MatchEngine find(final List<MatchEngine> engines, final String name) {
+        for (MatchEngine engine : engines) {
+            if (engine.name().equals(name)) {
+                return engine;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The outcome of choosing an engine for an expression.
+     */
+    static final class Selection {
+        final MatchEngine engine;
+        final MatchEngine.Program program;
+        final String report;
+
+        private Selection(final MatchEngine engine, final MatchEngine.Program program, final String report) {
+            this.engine  = engine;
+            this.program = program;
+            this.report  = report;
+        }
+    }
+
+    /**
+     * Chooses the engine with the highest priority that is able to match the expression.
+     *
+     * @param token the root of the Token tree
+     * @param features the features used by the expression
+     *
+     * @return the chosen engine, together with the compiled program and a description of the engines that were considered
+     *
+     * @throws IllegalArgumentException if no engine could compile the expression
+     */
+    static Selection select(final Token token, final ExpressionFeatures features) {
+        final List<MatchEngine> candidates = new ArrayList<MatchEngine>(Registered.ENGINES);
+        final List<Integer> priorities = new ArrayList<Integer>();
+        for (MatchEngine engine : candidates) {
+            priorities.add(engine.priority(features));
+        }
+     // A stable insertion sort, engines with equal priority keep their registration order
+        for (int i = 1; i < candidates.size(); i++) {
+            for (int j = i; j > 0 && priorities.get(j) > priorities.get(j - 1); j--) {
+                Collections.swap(candidates, j, j - 1);
+                Collections.swap(priorities, j, j - 1);
+            }
+        }
+
+        final StringBuilder report = new StringBuilder();
+        IllegalArgumentException failure = null;
+        for (MatchEngine engine : candidates) {
+            String reason = engine.unsupportedReason(features);
+            if (reason == null) {
+                try {
+                    final MatchEngine.Program program = engine.compile(token, features);
+                    report.insert(0, String.format("%s (%s)", engine.name(), features));
+                    return new Selection(engine, program, report.toString());
+                } catch (IllegalArgumentException ex) {
+                    failure = ex;
+                    reason  = ex.getMessage();
+                }
+            }
+            report.append(String.format("; %s rejected: %s", engine.name(), reason));
+        }
+     // The last error, typically a PatternSyntaxException for an invalid expression, is the most useful to report
+        if (failure != null) {
+            throw failure;
+        }
+        throw new IllegalStateException("No engine is able to match the expression " + token);
+    }
+
+    /**
+     * Compiles an expression using a specific engine.
+     *
+     * @param name the name of the engine
+     * @param token the root of the Token tree
+     * @param features the features used by the expression
+     *
+     * @return the engine, together with the compiled program
+     *
+     * @throws IllegalArgumentException if there is no engine with that name, or if it cannot match the expression
+     */
+    static Selection select(final String name, final Token token, final ExpressionFeatures features) {
+        final MatchEngine engine = named(name);
+        if (engine == null) {
+            throw new IllegalArgumentException(String.format("There is no engine named '%s'", name));
+        }
+        final String reason = engine.unsupportedReason(features);
+        if (reason != null) {
+            throw new IllegalArgumentException(String.format("The engine '%s' cannot match the expression '%s': %s", name, token, reason));
+        }
+        return new Selection(engine, engine.compile(token, features), String.format("%s (%s); requested explicitly", name, features));
+    }
+}
@@ -0,0 +1,44 @@
+package net.codebox.readableregex;
+
+/**
+ * A match found in a stream of text, identified by its position relative to the start of the stream.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public final class MatchEvent {
+    private final long start;
+    private final long end;
+    private final String text;
+
+    MatchEvent(final long start, final long end, final String text) {
+        this.start = start;
+        this.end   = end;
+        this.text  = text;
+    }
+
+    /**
+     * @return the offset of the first character of the match, counted in chars from the start of the stream
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * @return the offset immediately following the last character of the match
+     */
+    public long end() {
+        return end;
+    }
+
+    /**
+     * @return the text that was matched
+     */
+    public String text() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end + ":" + text;
+    }
+}
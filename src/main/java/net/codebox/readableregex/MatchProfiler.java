@@ -0,0 +1,513 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records which parts of an expression are used when it matches a sample of inputs. For each 'or'
+ * token, the profiler counts how often each alternative was the one that matched; for each quantified
+ * token, it counts how often the quantifier took part in a match and how many iterations it ran.
+ *
+ * Matches are located by the regex engine, and each one is then replayed by a backtracking interpreter
+ * that walks the Token tree, trying alternatives and iterations in the same order as java.util.regex.
+ * Because the interpreter is only asked to reproduce a match that is already known, it follows the same
+ * path as the regex engine. Only expressions that could be converted into an automaton are supported,
+ * and the interpreter recurses once for each character of a match, so it is intended for sampled inputs
+ * of moderate length rather than for every input in production. Matches longer than 1000 characters,
+ * or too deeply nested to replay on the calling thread's stack, are counted but not replayed.
+ *
+ * Instances are thread-safe, so a single profiler can collect samples from several threads.
+ */
+public class MatchProfiler {
+ // The interpreter recurses for each character, so longer matches are counted but not replayed
+    static final int MAX_REPLAY_LENGTH = 1000;
+
+    private final CompiledRegEx regex;
+    private final Map<Token, Integer> alternationSites = new IdentityHashMap<Token, Integer>();
+    private final Map<Token, Integer> quantifierSites  = new IdentityHashMap<Token, Integer>();
+    private final List<Token> siteTokens = new ArrayList<Token>();
+    private final List<String> sitePaths = new ArrayList<String>();
+    private final List<Boolean> siteIsAlternation = new ArrayList<Boolean>();
+ // For an 'or' site, one counter per alternative; for a quantifier site, the number of matches, total iterations and most iterations
+    private final AtomicLongArray[] counters;
+    private final AtomicLong inputs = new AtomicLong(), matches = new AtomicLong(), unattributed = new AtomicLong(), skipped = new AtomicLong();
+
+    /**
+     * The statistics recorded for one 'or' token or quantified token.
+     */
+    public static final class Site {
+        private final Token token;
+        private final String path;
+        private final long[] branchCounts;
+        private final long matches, iterations, maxIterations;
+
+        private Site(final Token token, final String path, final long[] branchCounts, final long matches,
+                final long iterations, final long maxIterations) {
+            this.token         = token;
+            this.path          = path;
+            this.branchCounts  = branchCounts;
+            this.matches       = matches;
+            this.iterations    = iterations;
+            this.maxIterations = maxIterations;
+        }
+
+        /**
+         * @return the position of the token within the expression, as a list of child indexes starting
+         * from the root, for example '/1/0'
+         */
+        public String path() {
+            return path;
+        }
+
+        /**
+         * @return the text of the token, excluding its quantifier in the case of an 'or' token
+         */
+        public String expression() {
+            return isAlternation() ? TokenRenderer.unquantifiedText(token) : token.toString();
+        }
+
+        /**
+         * @return true if this site is an 'or' token, false if it is a quantified token
+         */
+        public boolean isAlternation() {
+            return branchCounts != null;
+        }
+
+        /**
+         * @return the text of each alternative, for an 'or' token
+         */
+        public List<String> branches() {
+            final List<String> branches = new ArrayList<String>();
+            if (isAlternation()) {
+                for (Token branch : token.children()) {
+                    branches.add(branch.toString());
+                }
+            }
+            return branches;
+        }
+
+        /**
+         * @return the number of matches in which each alternative was chosen, for an 'or' token, or an
+         * empty array for a quantified token
+         */
+        public long[] branchCounts() {
+            return branchCounts == null ? new long[0] : branchCounts.clone();
+        }
+
+        /**
+         * @return the number of times this token took part in a match; when a token lies inside a
+         * quantifier, it may be counted more than once for each match of the whole expression
+         */
+        public long matches() {
+            if (branchCounts == null) {
+                return matches;
+            }
+            long total = 0;
+            for (long count : branchCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return the total number of iterations run by a quantified token, across all of its matches
+         */
+        public long iterations() {
+            return iterations;
+        }
+
+        /**
+         * @return the largest number of iterations run by a quantified token in a single match
+         */
+        public long maxIterations() {
+            return maxIterations;
+        }
+
+        Token token() {
+            return token;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(path).append(' ').append(expression()).append(": ");
+            if (branchCounts != null) {
+                final List<String> branches = branches();
+                for (int i = 0; i < branchCounts.length; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(branches.get(i)).append('=').append(branchCounts[i]);
+                }
+            } else {
+                sb.append(matches).append(" matches, ").append(iterations).append(" iterations, at most ").append(maxIterations);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Initialises the instance.
+     *
+     * @param regex the expression to be profiled
+     *
+     * @throws IllegalArgumentException if the expression contains a construct that the profiler cannot replay
+     */
+    public MatchProfiler(final CompiledRegEx regex) {
+        final String unsupported = Nfa.findUnsupportedConstruct(regex.token());
+        if (unsupported != null) {
+            throw new IllegalArgumentException(String.format("The expression '%s' cannot be profiled, it contains an unsupported construct: %s", regex, unsupported));
+        }
+        this.regex = regex;
+        addSites(regex.token(), "");
+        this.counters = new AtomicLongArray[siteTokens.size()];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLongArray(siteIsAlternation.get(i) ? siteTokens.get(i).children().length : 3);
+        }
+    }
+
+ // A quantified 'or' token has two sites, one for the quantifier and one for its alternatives
+    private void addSites(final Token token, final String path) {
+        if (token.quantifier() != null) {
+            addSite(quantifierSites, token, path, false);
+        }
+        if (token.kind() == Token.Kind.ALTERNATION) {
+            addSite(alternationSites, token, path, true);
+        }
+        final Token[] children = token.children();
+        for (int i = 0; i < children.length; i++) {
+            addSites(children[i], path + "/" + i);
+        }
+    }
+
+    private void addSite(final Map<Token, Integer> sites, final Token token, final String path, final boolean alternation) {
+        sites.put(token, siteTokens.size());
+        siteTokens.add(token);
+        sitePaths.add(path.isEmpty() ? "/" : path);
+        siteIsAlternation.add(alternation);
+    }
+
+    /**
+     * Finds every match of the expression within the input, and records the parts of the expression
+     * that were used by each one.
+     *
+     * @param input a sample input
+     *
+     * @return the number of matches found
+     */
+    public int record(final CharSequence input) {
+        inputs.incrementAndGet();
+        final OffsetCursor cursor = regex.matchCursor(input);
+        final Replay replay = new Replay(input);
+        int found = 0;
+        for (int start = cursor.nextStart(); start >= 0; start = cursor.nextStart()) {
+            found++;
+            matches.incrementAndGet();
+            replay(replay, start, cursor.nextEnd());
+        }
+        return found;
+    }
+
+    /**
+     * Searches the input for a match of the expression, as CompiledRegEx.find() does, and if one is found,
+     * records the parts of the expression used by the first match.
+     *
+     * @param input a sample input
+     *
+     * @return true if a match was found anywhere within the input
+     */
+    public boolean recordFind(final CharSequence input) {
+        inputs.incrementAndGet();
+        final OffsetCursor cursor = regex.matchCursor(input);
+        final int start = cursor.nextStart();
+        if (start < 0) {
+            return false;
+        }
+        matches.incrementAndGet();
+        replay(new Replay(input), start, cursor.nextEnd());
+        return true;
+    }
+
+    /**
+     * Matches the entire input against the expression, as CompiledRegEx.matches() does, and if it matches,
+     * records the parts of the expression that were used.
+     *
+     * @param input a sample input
+     *
+     * @return true if the entire input matches the expression
+     */
+    public boolean recordMatch(final CharSequence input) {
+        inputs.incrementAndGet();
+        if (!regex.matches(input)) {
+            return false;
+        }
+        matches.incrementAndGet();
+        replay(new Replay(input), 0, input.length());
+        return true;
+    }
+
+ // A sample that cannot be replayed is dropped, rather than failing the call that supplied it
+    private void replay(final Replay replay, final int start, final int end) {
+        if (end - start > MAX_REPLAY_LENGTH) {
+            skipped.incrementAndGet();
+            return;
+        }
+        final boolean replayed;
+        try {
+            replayed = replay.run(start, end);
+        } catch (StackOverflowError ex) {
+            skipped.incrementAndGet();
+            return;
+        }
+        if (replayed) {
+            replay.commit();
+        } else {
+            unattributed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Creates a copy of the expression in which the alternatives of each 'or' token are ordered by the
+     * number of times that they have matched so far, most frequent first. Alternatives are only moved
+     * when this cannot change the results of matching: they must not be able to match at the same
+     * position, and must not contain capturing groups.
+     *
+     * @return a new CompiledRegEx instance, or the profiled expression if no alternatives were moved
+     */
+    public CompiledRegEx reorderedRegEx() {
+        final Token reordered = BranchOrder.reorder(regex.token(), sites());
+        return reordered == regex.token() ? regex : new CompiledRegEx(reordered, regex.profile());
+    }
+
+    /**
+     * @return the number of inputs that have been recorded
+     */
+    public long inputs() {
+        return inputs.get();
+    }
+
+    /**
+     * @return the number of matches that have been recorded
+     */
+    public long matches() {
+        return matches.get();
+    }
+
+    /**
+     * @return the number of matches that the interpreter failed to reproduce, which are not included in
+     * the statistics, this should always be zero
+     */
+    public long unattributedMatches() {
+        return unattributed.get();
+    }
+
+    /**
+     * @return the number of matches that were not replayed, because they were longer than 1000 characters
+     * or too deeply nested, which are not included in the statistics
+     */
+    public long skippedMatches() {
+        return skipped.get();
+    }
+
+    /**
+     * @return a snapshot of the statistics for every 'or' token and quantified token, in the order in
+     * which they appear in the expression
+     */
+    public List<Site> sites() {
+        final List<Site> sites = new ArrayList<Site>();
+        for (int i = 0; i < siteTokens.size(); i++) {
+            final Token token = siteTokens.get(i);
+            final AtomicLongArray counter = counters[i];
+            if (siteIsAlternation.get(i)) {
+                final long[] counts = new long[counter.length()];
+                for (int j = 0; j < counts.length; j++) {
+                    counts[j] = counter.get(j);
+                }
+                sites.add(new Site(token, sitePaths.get(i), counts, 0, 0, 0));
+            } else {
+                sites.add(new Site(token, sitePaths.get(i), null, counter.get(0), counter.get(1), counter.get(2)));
+            }
+        }
+        return Collections.unmodifiableList(sites);
+    }
+
+    /**
+     * @return a description of the statistics, with one line for each 'or' token and quantified token
+     */
+    public String report() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(regex).append(": ").append(inputs()).append(" inputs, ").append(matches()).append(" matches");
+        if (unattributedMatches() > 0) {
+            sb.append(", ").append(unattributedMatches()).append(" not attributed");
+        }
+        if (skippedMatches() > 0) {
+            sb.append(", ").append(skippedMatches()).append(" not replayed");
+        }
+        for (Site site : sites()) {
+            sb.append('\n').append(site);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+
+    private interface Continuation {
+        boolean resume(int position);
+    }
+
+    /**
+     * Replays a single match, recording the alternatives and iteration counts on the successful path.
+     */
+    private final class Replay {
+        private final CharSequence input;
+        private int matchEnd;
+     // Pairs of (site, value): the alternative chosen at an 'or' site, or the iterations run at a quantifier site
+        private int[] trail = new int[32];
+        private int trailSize;
+
+        Replay(final CharSequence input) {
+            this.input = input;
+        }
+
+        boolean run(final int start, final int end) {
+            matchEnd  = end;
+            trailSize = 0;
+            return match(regex.token(), start, position -> position == matchEnd);
+        }
+
+        void commit() {
+            for (int i = 0; i < trailSize; i += 2) {
+                final int site = trail[i], value = trail[i + 1];
+                final AtomicLongArray counter = counters[site];
+                if (siteIsAlternation.get(site)) {
+                    counter.incrementAndGet(value);
+                } else {
+                    counter.incrementAndGet(0);
+                    counter.addAndGet(1, value);
+                    long max = counter.get(2);
+                    while (value > max && !counter.compareAndSet(2, max, value)) {
+                        max = counter.get(2);
+                    }
+                }
+            }
+        }
+
+        private void push(final int site, final int value) {
+            if (trailSize == trail.length) {
+                final int[] larger = new int[trail.length * 2];
+                System.arraycopy(trail, 0, larger, 0, trailSize);
+                trail = larger;
+            }
+            trail[trailSize++] = site;
+            trail[trailSize++] = value;
+        }
+
+        private void pop() {
+            trailSize -= 2;
+        }
+
+        private boolean match(final Token token, final int position, final Continuation next) {
+            final Quantifier quantifier = token.quantifier();
+            if (quantifier == null) {
+                return matchUnquantified(token, position, next);
+            }
+            return repeat(token, quantifier, quantifierSites.get(token), 0, position, next);
+        }
+
+     // Greedy quantifiers try another iteration before stopping, lazy ones the reverse, as java.util.regex does
+        private boolean repeat(final Token token, final Quantifier quantifier, final int site, final int count,
+                final int position, final Continuation next) {
+            final boolean canRepeat = quantifier.max() == Token.UNBOUNDED || count < quantifier.max();
+            final boolean canStop = count >= quantifier.min();
+            final Continuation again = after -> (after == position && canStop)
+                    ? false : repeat(token, quantifier, site, count + 1, after, next);
+
+            if (!quantifier.isLazy() && canRepeat && matchUnquantified(token, position, again)) {
+                return true;
+            }
+            if (canStop) {
+                push(site, count);
+                if (next.resume(position)) {
+                    return true;
+                }
+                pop();
+            }
+            return quantifier.isLazy() && canRepeat && matchUnquantified(token, position, again);
+        }
+
+        private boolean matchUnquantified(final Token token, final int position, final Continuation next) {
+            switch (token.kind()) {
+                case LITERAL:
+                    final String text = token.text();
+                    if (position + text.length() > input.length()) {
+                        return false;
+                    }
+                    for (int i = 0; i < text.length(); i++) {
+                        if (input.charAt(position + i) != text.charAt(i)) {
+                            return false;
+                        }
+                    }
+                    return next.resume(position + text.length());
+                case CHARACTER_CLASS:
+                    if (position < input.length()) {
+                        final int codePoint = Character.codePointAt(input, position);
+                        if (token.characters().contains(codePoint)) {
+                            return next.resume(position + Character.charCount(codePoint));
+                        }
+                    }
+                    return false;
+                case ANYTHING:
+                    return matchAnything(token.characters(), position, next);
+                case SEQUENCE:
+                    return matchSequence(token.children(), 0, position, next);
+                case ALTERNATION:
+                    final Token[] branches = token.children();
+                    final int site = alternationSites.get(token);
+                    for (int i = 0; i < branches.length; i++) {
+                        push(site, i);
+                        if (match(branches[i], position, next)) {
+                            return true;
+                        }
+                        pop();
+                    }
+                    return false;
+                case GROUP:
+                    return match(token.children()[0], position, next);
+                default:
+                    throw new IllegalStateException("Unexpected token kind " + token.kind());
+            }
+        }
+
+        private boolean matchAnything(final CodePointSet characters, final int position, final Continuation next) {
+            int end = position;
+            while (end < input.length() && characters.contains(Character.codePointAt(input, end))) {
+                end += Character.charCount(Character.codePointAt(input, end));
+            }
+         // Greedy, so the longest run is tried first
+            while (true) {
+                if (next.resume(end)) {
+                    return true;
+                }
+                if (end == position) {
+                    return false;
+                }
+                end -= Character.isLowSurrogate(input.charAt(end - 1)) && end - 2 >= position
+                        && Character.isHighSurrogate(input.charAt(end - 2)) ? 2 : 1;
+            }
+        }
+
+        private boolean matchSequence(final Token[] children, final int index, final int position, final Continuation next) {
+            if (index == children.length) {
+                return next.resume(position);
+            }
+            return match(children[index], position, after -> matchSequence(children, index + 1, after, next));
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A non-deterministic finite automaton, constructed from one or more Token trees using Thompson's
+ * construction. Each state either consumes a single character belonging to a CodePointSet, or has
+ * a list of epsilon transitions to other states.
+ *
+ * Only the regular subset of the Token API can be converted into an automaton. Back-references,
+ * look-arounds, independent groups, possessive quantifiers, quantifiers applied to anything(), keyword
+ * dictionaries and tokens created from raw text are not supported.
+ */
+final class Nfa {
+ // Prevents quantifiers with very large counts from exhausting memory
+    static final int MAX_STATES = 100000;
+
+    private final List<CodePointSet> sets = new ArrayList<CodePointSet>();
+    private final List<Integer> targets   = new ArrayList<Integer>();
+    private final List<int[]> epsilons    = new ArrayList<int[]>();
+    private final List<Integer> accepts   = new ArrayList<Integer>();
+    private int start;
+
+    private Nfa() {
+    }
+
+    /**
+     * Constructs an automaton that accepts the strings matched by any of the tokens. When a string is
+     * accepted, the index of the token that matched it is available through {@link #acceptedRule(int)}.
+     *
+     * @param rules the tokens to be converted
+     *
+     * @return a new Nfa instance
+     *
+     * @throws IllegalArgumentException if any of the tokens cannot be represented by an automaton
+     */
+    static Nfa build(final Token... rules) {
+        final Nfa nfa = new Nfa();
+        final int[] ruleStarts = new int[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            final int[] fragment = nfa.add(rules[i]);
+            final int accept = nfa.newState();
+            nfa.accepts.set(accept, i);
+            nfa.connect(fragment[1], accept);
+            ruleStarts[i] = fragment[0];
+        }
+        nfa.start = nfa.newState();
+        nfa.epsilons.set(nfa.start, ruleStarts);
+        return nfa;
+    }
+
+    /**
+     * Constructs an automaton that accepts any string ending with a match of the token, by allowing any
+     * number of characters to be skipped before the match begins. A Dfa built from the result can search
+     * for a match in a single pass, stopping at the first accepting state.
+     *
+     * @param token the token to be converted
+     *
+     * @return a new Nfa instance
+     *
+     * @throws IllegalArgumentException if the token cannot be represented by an automaton
+     */
+    static Nfa buildSearching(final Token token) {
+        final Nfa nfa = build(token);
+        final int skip = nfa.newState();
+        nfa.sets.set(skip, CodePointSet.ALL);
+        nfa.targets.set(skip, nfa.start);
+        nfa.connect(nfa.start, skip);
+        return nfa;
+    }
+
+    /**
+     * Checks whether a token can be converted into an automaton.
+     *
+     * @param token the token to be checked
+     *
+     * @return a description of the first construct that cannot be converted, or null if there are none
+     */
+    static String findUnsupportedConstruct(final Token token) {
+        final Quantifier quantifier = token.quantifier();
+        if (quantifier != null && quantifier.isPossessive()) {
+            return "possessive quantifier";
+        }
+        switch (token.kind()) {
+            case RAW:
+                return "unrecognised expression '" + token + "'";
+            case BACKREFERENCE:
+                return "back-reference";
+            case DICTIONARY:
+                return "keyword dictionary";
+            case ANYTHING:
+             // Pattern makes '.*+' possessive and ignores a repetition count after '.*', rather than repeating it
+                if (quantifier != null) {
+                    return "quantified anything()";
+                }
+                break;
+            case GROUP:
+                if (token.groupType() == Token.GroupType.INDEPENDENT) {
+                    return "independent group";
+                }
+                if (token.groupType().isLookAround()) {
+                    return "look-around";
+                }
+                break;
+            default:
+                break;
+        }
+        for (Token child : token.children()) {
+            final String unsupported = findUnsupportedConstruct(child);
+            if (unsupported != null) {
+                return unsupported;
+            }
+        }
+        return null;
+    }
+
+    int start() {
+        return start;
+    }
+
+    int stateCount() {
+        return sets.size();
+    }
+
+    /**
+     * @return the characters consumed by the state, or null if it only has epsilon transitions
+     */
+    CodePointSet characters(final int state) {
+        return sets.get(state);
+    }
+
+    int target(final int state) {
+        return targets.get(state);
+    }
+
+    int[] epsilons(final int state) {
+        return epsilons.get(state);
+    }
+
+    /**
+     * @return the index of the rule accepted in this state, or -1 if it is not an accepting state
+     */
+    int acceptedRule(final int state) {
+        return accepts.get(state);
+    }
+
+    private int newState() {
+        if (sets.size() >= MAX_STATES) {
+            throw new IllegalArgumentException("The expression is too large to be converted into an automaton");
+        }
+        sets.add(null);
+        targets.add(-1);
+        epsilons.add(new int[0]);
+        accepts.add(-1);
+        return sets.size() - 1;
+    }
+
+    private void connect(final int from, final int to) {
+        final int[] existing = epsilons.get(from);
+        final int[] updated = new int[existing.length + 1];
+        System.arraycopy(existing, 0, updated, 0, existing.length);
+        updated[existing.length] = to;
+        epsilons.set(from, updated);
+    }
+
+ // Each fragment is represented by its start and end states, the end state has no outgoing transitions yet
+    private int[] add(final Token token) {
+        final String unsupported = findUnsupportedConstruct(token);
+        if (unsupported != null) {
+            throw new IllegalArgumentException("The expression contains a " + unsupported
+                    + ", which cannot be converted into an automaton");
+        }
+        return addQuantified(token);
+    }
+
+    private int[] addQuantified(final Token token) {
+        final Quantifier quantifier = token.quantifier();
+        if (quantifier == null) {
+            return addUnquantified(token);
+        }
+        final int start = newState();
+        int end = start;
+        for (int i = 0; i < quantifier.min(); i++) {
+            end = append(end, addUnquantified(token));
+        }
+        if (quantifier.max() == Token.UNBOUNDED) {
+            end = append(end, star(addUnquantified(token)));
+        } else {
+            for (int i = quantifier.min(); i < quantifier.max(); i++) {
+                end = append(end, optional(addUnquantified(token)));
+            }
+        }
+        return new int[]{start, end};
+    }
+
+    private int[] addUnquantified(final Token token) {
+        switch (token.kind()) {
+            case LITERAL:
+                final String text = token.text();
+                final int start = newState();
+                int end = start;
+                for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+                    end = append(end, single(CodePointSet.of(text.codePointAt(i))));
+                }
+                return new int[]{start, end};
+            case CHARACTER_CLASS:
+                return single(token.characters());
+            case ANYTHING:
+                return star(single(token.characters()));
+            case SEQUENCE:
+                final int sequenceStart = newState();
+                int sequenceEnd = sequenceStart;
+                for (Token child : token.children()) {
+                    sequenceEnd = append(sequenceEnd, addQuantified(child));
+                }
+                return new int[]{sequenceStart, sequenceEnd};
+            case ALTERNATION:
+                final int branchStart = newState(), branchEnd = newState();
+                for (Token branch : token.children()) {
+                    final int[] fragment = addQuantified(branch);
+                    connect(branchStart, fragment[0]);
+                    connect(fragment[1], branchEnd);
+                }
+                return new int[]{branchStart, branchEnd};
+            case GROUP:
+                return addQuantified(token.children()[0]);
+            default:
+                throw new IllegalStateException("Unexpected token kind " + token.kind());
+        }
+    }
+
+    private int[] single(final CodePointSet characters) {
+        final int from = newState(), to = newState();
+        sets.set(from, characters);
+        targets.set(from, to);
+        return new int[]{from, to};
+    }
+
+    private int append(final int end, final int[] fragment) {
+        connect(end, fragment[0]);
+        return fragment[1];
+    }
+
+    private int[] optional(final int[] fragment) {
+        connect(fragment[0], fragment[1]);
+        return fragment;
+    }
+
+    private int[] star(final int[] fragment) {
+        final int start = newState(), end = newState();
+        connect(start, fragment[0]);
+        connect(start, end);
+        connect(fragment[1], fragment[0]);
+        connect(fragment[1], end);
+        return new int[]{start, end};
+    }
+}
@@ -0,0 +1,91 @@
+package net.codebox.readableregex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Iterates lazily over the matches of a CompiledRegEx, or over the fields that lie between them, returning
+ * only the start and end offsets of each one. No objects are allocated as the cursor advances, so it is
+ * suitable for scanning very large inputs when the text of each match or field is not needed.
+ *
+ * When iterating over fields, the results are the same as those produced by Pattern.split(input, -1), so
+ * trailing empty fields are included.
+ *
+ * Instances are mutable, and should not be shared between threads.
+ */
+public class OffsetCursor {
+    private final Matcher matcher;
+    private final boolean fields;
+    private final int regionEnd;
+    private int fieldStart;
+    private int start = -1, end = -1;
+    private boolean finished;
+
+    OffsetCursor(final Pattern pattern, final CharSequence input, final int from, final int to, final boolean fields) {
+        this.matcher    = pattern.matcher(input).region(from, to).useTransparentBounds(true).useAnchoringBounds(false);
+        this.fields     = fields;
+        this.regionEnd  = to;
+        this.fieldStart = from;
+    }
+
+    /**
+     * Advances the cursor to the next match or field.
+     *
+     * @return the start offset of the next match or field, or -1 if there are no more
+     */
+    public int nextStart() {
+        if (finished) {
+            start = end = -1;
+            return -1;
+        }
+        while (matcher.find()) {
+            if (!fields) {
+                start = matcher.start();
+                end   = matcher.end();
+                return start;
+            }
+         // As with Pattern.split(), a zero-width match at the beginning of the input does not produce an empty field
+            if (fieldStart == 0 && matcher.end() == 0) {
+                continue;
+            }
+            start = fieldStart;
+            end   = matcher.start();
+            fieldStart = matcher.end();
+            return start;
+        }
+        finished = true;
+        if (fields) {
+            start = fieldStart;
+            end   = regionEnd;
+            return start;
+        }
+        start = end = -1;
+        return -1;
+    }
+
+    /**
+     * @return the end offset of the match or field whose start was returned by the most recent call to
+     * nextStart(), or -1 if there was none
+     */
+    public int nextEnd() {
+        return end;
+    }
+
+    /**
+     * Advances the cursor to the end of the input, counting the matches or fields that remain.
+     *
+     * @return the number of matches or fields that were skipped over
+     */
+    public int count() {
+        int count = 0;
+        while (nextStart() >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+ // Positioned at the most recent match, when iterating over matches
+    Matcher matcher() {
+        return matcher;
+    }
+}
@@ -0,0 +1,198 @@
+package net.codebox.readableregex;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Holds a set of named expressions, and compiles each of them once. Expressions are compiled lazily,
+ * the first time that they are requested, or in advance by calling {@link #compileAll(Executor)}, which
+ * divides the work between the threads of an Executor. If several threads request an expression that
+ * has not yet been compiled, only one of them compiles it and the others wait for the result.
+ *
+ * The time taken to compile each expression is recorded, so that expensive expressions can be identified.
+ *
+ * Instances are thread-safe. Expressions can be registered at any time, but a name cannot be re-used.
+ */
+public class PatternRegistry {
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+
+    private static final class Entry {
+        final FutureTask<CompiledRegEx> task;
+        volatile long compileNanos = -1;
+
+        Entry(final CharacterProfile profile, final Token[] tokens) {
+            this.task = new FutureTask<CompiledRegEx>(() -> {
+                final long start = System.nanoTime();
+                try {
+                    return RegExBuilder.compile(profile, tokens);
+                } finally {
+                    compileNanos = System.nanoTime() - start;
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers an expression, which will be compiled using the ASCII profile.
+     *
+     * @param name a name that identifies the expression
+     * @param tokens a series of Token instances which together define the expression
+     *
+     * @return this instance, so that calls can be chained
+     *
+     * @throws IllegalArgumentException if an expression with the same name has already been registered
+     */
+    public PatternRegistry register(final String name, final Token... tokens) {
+        return register(name, CharacterProfile.ASCII, tokens);
+    }
+
+    /**
+     * Registers an expression, which will be compiled using the specified profile.
+     *
+     * @param name a name that identifies the expression
+     * @param profile determines how character classes are rendered and which flags are used
+     * @param tokens a series of Token instances which together define the expression
+     *
+     * @return this instance, so that calls can be chained
+     *
+     * @throws IllegalArgumentException if an expression with the same name has already been registered
+     */
+    public PatternRegistry register(final String name, final CharacterProfile profile, final Token... tokens) {
+        if (entries.putIfAbsent(name, new Entry(profile, tokens.clone())) != null) {
+            throw new IllegalArgumentException(String.format("An expression named '%s' has already been registered", name));
+        }
+        names.add(name);
+        return this;
+    }
+
+    /**
+     * Returns a compiled expression, compiling it first if necessary. If another thread is already
+     * compiling the expression, this method waits for it to finish.
+     *
+     * @param name the name of the expression
+     *
+     * @return the compiled expression
+     *
+     * @throws IllegalArgumentException if no expression with that name has been registered, or if
+     * the expression could not be compiled
+     */
+    public CompiledRegEx get(final String name) {
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException(String.format("No expression named '%s' has been registered", name));
+        }
+        return compile(entry);
+    }
+
+    private static CompiledRegEx compile(final Entry entry) {
+     // FutureTask runs its callable at most once, concurrent callers return immediately and wait in get()
+        entry.task.run();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return entry.task.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException("Compilation failed", cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Compiles every registered expression that has not yet been compiled, using the threads of the
+     * executor. Expressions registered after this method is called are not included, and nor are
+     * expressions that an earlier attempt failed to compile; their failure is reported again by get().
+     *
+     * @param executor the Executor that will perform the compilation
+     *
+     * @return a future that completes when every expression has been compiled, or that completes
+     * exceptionally if any of the expressions compiled by this call could not be compiled
+     */
+    public CompletableFuture<Void> compileAll(final Executor executor) {
+        final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (String name : names()) {
+            final Entry entry = entries.get(name);
+            if (!entry.task.isDone()) {
+                futures.add(CompletableFuture.runAsync(() -> compile(entry), executor));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return the names of the registered expressions, in the order in which they were registered
+     */
+    public List<String> names() {
+        synchronized (names) {
+            return new ArrayList<String>(names);
+        }
+    }
+
+    /**
+     * @param name the name of an expression
+     *
+     * @return true if the expression has been compiled, or if an attempt to compile it has failed
+     */
+    public boolean isCompiled(final String name) {
+        final Entry entry = entries.get(name);
+        return entry != null && entry.task.isDone();
+    }
+
+    /**
+     * @param name the name of an expression
+     *
+     * @return the number of nanoseconds taken to compile the expression, or -1 if it has not been compiled
+     */
+    public long compileNanos(final String name) {
+        final Entry entry = entries.get(name);
+        return entry == null ? -1 : entry.compileNanos;
+    }
+
+    /**
+     * Returns the compile times of the expressions that have been compiled so far, so that the most
+     * expensive expressions can be identified.
+     *
+     * @return a map from the name of each compiled expression to the number of nanoseconds taken to
+     * compile it, ordered from the slowest to the fastest
+     */
+    public Map<String, Long> compileTimes() {
+        final List<Map.Entry<String, Long>> times = new ArrayList<Map.Entry<String, Long>>();
+        for (String name : names()) {
+            final long nanos = entries.get(name).compileNanos;
+            if (nanos >= 0) {
+                times.add(new AbstractMap.SimpleImmutableEntry<String, Long>(name, nanos));
+            }
+        }
+        times.sort(Collections.reverseOrder(Comparator.comparing(Map.Entry::getValue)));
+        final Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> time : times) {
+            result.put(time.getKey(), time.getValue());
+        }
+        return result;
+    }
+}
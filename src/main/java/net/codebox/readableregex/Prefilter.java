@@ -0,0 +1,453 @@
+package net.codebox.readableregex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Holds the literal text and characters that must appear in any match of a Token, and provides
+ * fast scanning methods that use this information to reject inputs without running the regex engine.
+ *
+ * The analysis walks the Token tree, concatenating fixed pieces of text that appear next to each
+ * other in a sequence and combining the requirements of each branch of an alternation.
+ */
+class Prefilter {
+ // Limits on the size of the sets of strings that are tracked while analysing the tree
+    private static final int MAX_EXACT_STRINGS = 32;
+    private static final int MAX_EXACT_LENGTH  = 64;
+    private static final int MAX_CHARACTER_CLASS_SIZE = 8;
+
+    static final Prefilter NONE = new Prefilter(null, null);
+
+    private final String[] requiredLiterals;
+    private final CodePointSet requiredCharacters;
+    private final CharacterScanner requiredCharacterScanner;
+
+    private Prefilter(final String[] requiredLiterals, final CodePointSet requiredCharacters) {
+        this.requiredLiterals   = requiredLiterals;
+        this.requiredCharacters = requiredCharacters;
+        this.requiredCharacterScanner = requiredCharacters == null ? null : CharacterScanner.forCharacters(requiredCharacters);
+    }
+
+    /**
+     * Analyses the Token tree and builds a Prefilter for it.
+     *
+     * @param token the root of the tree
+     *
+     * @return a new Prefilter instance, or NONE if the token has no requirements that can be checked
+     */
+    static Prefilter of(final Token token) {
+        final Info info = analyse(token);
+        if (info.literals == null && info.characters == null) {
+            return NONE;
+        }
+        final String[] literals = info.literals == null ? null : info.literals.toArray(new String[info.literals.size()]);
+        return new Prefilter(literals, literals == null ? info.characters : null);
+    }
+
+    /**
+     * Recreates a Prefilter from the results of an earlier analysis, see TokenCodec.
+     *
+     * @param literals the required literals, or null if there are none
+     * @param characters the required characters, used only if there are no required literals, or null
+     *
+     * @return a new Prefilter instance, or NONE if there are no requirements
+     */
+    static Prefilter of(final String[] literals, final CodePointSet characters) {
+        if (literals == null && characters == null) {
+            return NONE;
+        }
+        return new Prefilter(literals == null ? null : literals.clone(), literals == null ? characters : null);
+    }
+
+    /**
+     * @return a set of strings, at least one of which will appear in every match, or an empty set
+     */
+    Set<String> requiredLiterals() {
+        if (requiredLiterals == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> literals = new LinkedHashSet<String>();
+        Collections.addAll(literals, requiredLiterals);
+        return literals;
+    }
+
+    /**
+     * @return a set of characters, at least one of which will appear in every match, or null
+     */
+    CodePointSet requiredCharacters() {
+        return requiredCharacters;
+    }
+
+    boolean isEmpty() {
+        return requiredLiterals == null && requiredCharacters == null;
+    }
+
+    /**
+     * Determines whether the input could possibly contain a match.
+     *
+     * @param input the text to be checked
+     *
+     * @return false if the input definitely does not contain a match
+     */
+    boolean mightMatch(final CharSequence input) {
+        if (requiredLiterals != null) {
+            for (String literal : requiredLiterals) {
+                if (indexOf(input, literal, 0) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (requiredCharacters != null) {
+            return requiredCharacterScanner.indexOf(input, 0, input.length()) >= 0;
+        }
+        return true;
+    }
+
+    /**
+     * Creates a scanner that finds the occurrences of the required literals in an input. Each literal is only
+     * searched for again once the scan has passed its previous occurrence, so scanning the whole input takes
+     * time proportional to its length however often one literal occurs and however rare the others are.
+     *
+     * @param input the text to be searched
+     *
+     * @return a new LiteralScanner, which must only be used by a single thread
+     */
+    LiteralScanner literalScanner(final CharSequence input) {
+        return new LiteralScanner(input, requiredLiterals);
+    }
+
+    /**
+     * Finds the required literals in one input, remembering where the next occurrence of each one lies.
+     */
+    static final class LiteralScanner {
+        private static final int NOT_SEARCHED = -2, NOT_FOUND = -1;
+
+        private final CharSequence input;
+        private final String[] literals;
+     // The first occurrence of each literal at or after the position from which it was last searched
+        private final int[] positions;
+
+        private LiteralScanner(final CharSequence input, final String[] literals) {
+            this.input     = input;
+            this.literals  = literals;
+            this.positions = new int[literals.length];
+            Arrays.fill(positions, NOT_SEARCHED);
+        }
+
+        /**
+         * Finds the next position, at or after 'from', at which one of the required literals begins. The value
+         * of 'from' must not decrease from one call to the next.
+         *
+         * @param from the index at which to start searching
+         * @param literalEnd a single element array, which will be updated to contain the end index of the literal found
+         *
+         * @return the start index of the literal, or -1 if none was found
+         */
+        int next(final int from, final int[] literalEnd) {
+            int best = -1;
+            for (int i = 0; i < literals.length; i++) {
+                if (positions[i] == NOT_SEARCHED || (positions[i] != NOT_FOUND && positions[i] < from)) {
+                    positions[i] = indexOf(input, literals[i], from);
+                }
+                if (positions[i] >= 0 && (best < 0 || positions[i] < best)) {
+                    best = positions[i];
+                    literalEnd[0] = best + literals[i].length();
+                }
+            }
+            return best;
+        }
+    }
+
+    boolean hasRequiredLiterals() {
+        return requiredLiterals != null;
+    }
+
+    static int indexOf(final CharSequence input, final String literal, final int from) {
+        if (input instanceof String) {
+            return ((String) input).indexOf(literal, from);
+        }
+        final int literalLength = literal.length();
+        if (literalLength == 0) {
+            return from <= input.length() ? from : -1;
+        }
+        final char first = literal.charAt(0);
+        final int last = input.length() - literalLength;
+        for (int i = from; i <= last; i++) {
+            if (input.charAt(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < literalLength && input.charAt(i + j) == literal.charAt(j)) {
+                j++;
+            }
+            if (j == literalLength) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+ // The results of analysing a single node in the tree
+    private static class Info {
+     // Every string that the node can match, or null if there are too many to track
+        final Set<String> exact;
+     // At least one of these strings will appear in every match, or null if nothing is required
+        final Set<String> literals;
+     // At least one of these characters will appear in every match, or null if nothing is required
+        final CodePointSet characters;
+
+        Info(final Set<String> exact, final Set<String> literals, final CodePointSet characters) {
+            this.exact      = exact;
+            this.literals   = literals;
+            this.characters = characters;
+        }
+    }
+
+    private static final Info NOTHING_REQUIRED = new Info(null, null, null);
+
+    /**
+     * Determines the set of characters that can appear at the start of a match of the Token.
+     *
+     * @param token the root of the tree
+     *
+     * @return the set of characters, or null if the token is able to match an empty string
+     */
+    static CodePointSet firstCharacters(final Token token) {
+        final CodePointSet[] characters = {CodePointSet.EMPTY};
+        return addFirstCharacters(token, characters) ? null : characters[0];
+    }
+
+ // Adds the possible first characters to the array element, and returns true if the token can match an empty string
+    private static boolean addFirstCharacters(final Token token, final CodePointSet[] characters) {
+        final Quantifier quantifier = token.quantifier();
+        final boolean optional = quantifier != null && quantifier.min() == 0;
+        boolean nullable;
+
+        switch (token.kind()) {
+            case LITERAL:
+                nullable = token.text().isEmpty();
+                if (!nullable) {
+                    characters[0] = characters[0].union(CodePointSet.of(token.text().codePointAt(0)));
+                }
+                break;
+            case CHARACTER_CLASS:
+                characters[0] = characters[0].union(token.characters());
+                nullable = false;
+                break;
+            case ANYTHING:
+                characters[0] = characters[0].union(token.characters());
+                nullable = true;
+                break;
+            case SEQUENCE:
+                nullable = true;
+                for (Token child : token.children()) {
+                    if (!addFirstCharacters(child, characters)) {
+                        nullable = false;
+                        break;
+                    }
+                }
+                break;
+            case ALTERNATION:
+                nullable = false;
+                for (Token branch : token.children()) {
+                    nullable |= addFirstCharacters(branch, characters);
+                }
+                break;
+            case GROUP:
+             // Look-arounds do not consume any characters, so the first character comes from whatever follows
+                nullable = token.groupType().isLookAround() || addFirstCharacters(token.children()[0], characters);
+                break;
+            default:
+                characters[0] = CodePointSet.ALL;
+                nullable = true;
+        }
+        return nullable || optional;
+    }
+
+    private static Info analyse(final Token token) {
+        final Info info = analyseUnquantified(token);
+        final Quantifier quantifier = token.quantifier();
+        if (quantifier == null || (quantifier.min() == 1 && quantifier.max() == 1)) {
+            return info;
+        }
+        if (token.kind() == Token.Kind.ANYTHING) {
+            return NOTHING_REQUIRED;
+        }
+        if (quantifier.min() == 0) {
+            if (quantifier.max() == 1 && info.exact != null) {
+                final Set<String> exact = new LinkedHashSet<String>(info.exact);
+                exact.add("");
+                return fromExact(limit(exact));
+            }
+            return NOTHING_REQUIRED;
+        }
+        if (quantifier.min() == quantifier.max() && info.exact != null) {
+            Set<String> exact = Collections.singleton("");
+            for (int i = 0; i < quantifier.min() && exact != null; i++) {
+                exact = concatenate(exact, info.exact);
+            }
+            if (exact != null) {
+                return fromExact(exact);
+            }
+        }
+        return new Info(null, info.literals, info.characters);
+    }
+
+    private static Info analyseUnquantified(final Token token) {
+        switch (token.kind()) {
+            case LITERAL:
+                return fromExact(Collections.singleton(token.text()));
+            case CHARACTER_CLASS:
+                return fromCharacters(token.characters());
+            case SEQUENCE:
+                return analyseSequence(token.children());
+            case ALTERNATION:
+                return analyseAlternation(token.children());
+            case GROUP:
+                return token.groupType().isLookAround() ? NOTHING_REQUIRED : analyse(token.children()[0]);
+            default:
+                return NOTHING_REQUIRED;
+        }
+    }
+
+    private static Info fromCharacters(final CodePointSet characters) {
+        if (characters.size() > MAX_CHARACTER_CLASS_SIZE) {
+            return new Info(null, null, characters);
+        }
+        final Set<String> exact = new LinkedHashSet<String>();
+        for (int i = 0; i < characters.rangeCount(); i++) {
+            for (int c = characters.rangeFrom(i); c <= characters.rangeTo(i); c++) {
+                exact.add(new String(Character.toChars(c)));
+            }
+        }
+        return new Info(exact, exact.isEmpty() ? null : exact, characters);
+    }
+
+    private static Info fromExact(final Set<String> exact) {
+        if (exact == null) {
+            return NOTHING_REQUIRED;
+        }
+        CodePointSet firstCharacters = CodePointSet.EMPTY;
+        for (String text : exact) {
+            if (text.isEmpty()) {
+                return new Info(exact, null, null);
+            }
+            firstCharacters = firstCharacters.union(CodePointSet.of(text.codePointAt(0)));
+        }
+        return new Info(exact, exact, firstCharacters);
+    }
+
+    private static Info analyseSequence(final Token[] children) {
+        Set<String> exact = Collections.singleton("");
+        Set<String> bestLiterals = null;
+        CodePointSet bestCharacters = null;
+     // Fixed text from adjacent children is concatenated, to produce longer required literals
+        Set<String> run = Collections.singleton("");
+
+        for (Token child : children) {
+            final Info info = analyse(child);
+            exact = (exact == null || info.exact == null) ? null : concatenate(exact, info.exact);
+
+            if (info.exact != null) {
+                final Set<String> extended = concatenate(run, info.exact);
+                run = extended == null ? info.exact : extended;
+            } else {
+                run = Collections.singleton("");
+            }
+            bestLiterals   = betterLiterals(bestLiterals, betterLiterals(info.literals, nonEmpty(run)));
+            bestCharacters = betterCharacters(bestCharacters, info.characters);
+        }
+        if (exact != null) {
+            return fromExact(exact);
+        }
+        return new Info(null, bestLiterals, bestCharacters);
+    }
+
+    private static Info analyseAlternation(final Token[] branches) {
+        Set<String> exact = new LinkedHashSet<String>();
+        Set<String> literals = new LinkedHashSet<String>();
+        CodePointSet characters = CodePointSet.EMPTY;
+
+        for (Token branch : branches) {
+            final Info info = analyse(branch);
+            if (exact != null && info.exact != null) {
+                exact.addAll(info.exact);
+                exact = limit(exact);
+            } else {
+                exact = null;
+            }
+            if (literals != null && info.literals != null) {
+                literals.addAll(info.literals);
+                literals = limit(literals);
+            } else {
+                literals = null;
+            }
+            characters = (characters == null || info.characters == null) ? null : characters.union(info.characters);
+        }
+        if (exact != null) {
+            return fromExact(exact);
+        }
+        return new Info(null, literals, characters);
+    }
+
+    private static Set<String> concatenate(final Set<String> prefixes, final Set<String> suffixes) {
+        if ((long) prefixes.size() * suffixes.size() > MAX_EXACT_STRINGS) {
+            return null;
+        }
+        final Set<String> result = new LinkedHashSet<String>();
+        for (String prefix : prefixes) {
+            for (String suffix : suffixes) {
+                if (prefix.length() + suffix.length() > MAX_EXACT_LENGTH) {
+                    return null;
+                }
+                result.add(prefix + suffix);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> limit(final Set<String> strings) {
+        return strings.size() > MAX_EXACT_STRINGS ? null : strings;
+    }
+
+    private static Set<String> nonEmpty(final Set<String> strings) {
+        return strings.contains("") ? null : strings;
+    }
+
+ // Prefers the set whose shortest member is longest, and then the set with the fewest members
+    private static Set<String> betterLiterals(final Set<String> a, final Set<String> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        final int aLength = shortest(a), bLength = shortest(b);
+        if (aLength != bLength) {
+            return aLength > bLength ? a : b;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private static int shortest(final Set<String> strings) {
+        int shortest = Integer.MAX_VALUE;
+        for (String text : strings) {
+            shortest = Math.min(shortest, text.length());
+        }
+        return shortest;
+    }
+
+ // Prefers the smallest set of characters, since it is less likely to appear in non-matching text
+    private static CodePointSet betterCharacters(final CodePointSet a, final CodePointSet b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+}
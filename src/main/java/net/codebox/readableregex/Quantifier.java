@@ -6,12 +6,36 @@ package net.codebox.readableregex;
  */
 public class Quantifier {
     private final String baseText, suffix;
+    private final int min, max;
     
-    private Quantifier(String baseText, final String suffix){
+    private Quantifier(String baseText, final String suffix, final int min, final int max){
         this.baseText = baseText;
         this.suffix   = suffix;
+        this.min      = min;
+        this.max      = max;
     }
     
+    /**
+     * Recreates a quantifier from its parts, see TokenCodec.
+     */
+    static Quantifier restore(final String baseText, final String suffix, final int min, final int max) {
+        return new Quantifier(baseText, suffix, min, max);
+    }
+
+    /**
+     * @return the text of the quantifier, excluding any lazy or possessive suffix
+     */
+    String baseText() {
+        return baseText;
+    }
+
+    /**
+     * @return the lazy or possessive suffix, or an empty string for a greedy quantifier
+     */
+    String suffix() {
+        return suffix;
+    }
+
     /**
      * Applies the quantifier represented by this instance to the specified sequence of tokens.
      *  
@@ -26,7 +50,7 @@ public class Quantifier {
             
         } else {
          // Multiple tokens will always require brackets
-            return of(new Token(RegExBuilder.build(tokens), true, null));
+            return of(Token.sequence(tokens, true));
         }
     }
     
@@ -47,7 +71,7 @@ public class Quantifier {
      * @return a new greedy Quantifier
      */
     public Quantifier greedy(){
-        return new Quantifier(baseText, "");
+        return new Quantifier(baseText, "", min, max);
     }
 
     /**
@@ -56,7 +80,7 @@ public class Quantifier {
      * @return a new lazy Quantifier
      */
     public Quantifier lazy(){
-        return new Quantifier(baseText, "?");
+        return new Quantifier(baseText, "?", min, max);
     }
 
     /**
@@ -65,7 +89,7 @@ public class Quantifier {
      * @return a new possessive Quantifier
      */
     public Quantifier possessive(){
-        return new Quantifier(baseText, "+");
+        return new Quantifier(baseText, "+", min, max);
     }
     
     @Override
@@ -73,6 +97,34 @@ public class Quantifier {
         return appendSuffix(baseText, suffix);
     }
     
+    /**
+     * @return the minimum number of repetitions permitted by this quantifier
+     */
+    public int min(){
+        return min;
+    }
+
+    /**
+     * @return the maximum number of repetitions permitted by this quantifier, or Token.UNBOUNDED
+     */
+    public int max(){
+        return max;
+    }
+
+    /**
+     * @return true if this is a possessive quantifier
+     */
+    public boolean isPossessive(){
+        return "+".equals(suffix);
+    }
+
+    /**
+     * @return true if this is a lazy quantifier
+     */
+    public boolean isLazy(){
+        return "?".equals(suffix);
+    }
+
     private static String appendSuffix(String txt, String suffix){
         return txt + (suffix == null ? "" : suffix);
     }
@@ -83,7 +135,7 @@ public class Quantifier {
      * @return Quantifier for matching one of more of the associated Tokens
      */
     public static Quantifier oneOrMore(){ 
-        return new Quantifier("+", "");
+        return new Quantifier("+", "", 1, Token.UNBOUNDED);
     }
 
     /**
@@ -92,7 +144,7 @@ public class Quantifier {
      * @return Quantifier for matching zero or one of the associated Tokens
      */
     public static Quantifier zeroOrOne(){ 
-        return new Quantifier("?", "");
+        return new Quantifier("?", "", 0, 1);
     }
 
     /**
@@ -101,7 +153,7 @@ public class Quantifier {
      * @return Quantifier for matching zero or more of the associated Tokens
      */
     public static Quantifier zeroOrMore(){
-        return new Quantifier("*", "");
+        return new Quantifier("*", "", 0, Token.UNBOUNDED);
     }
     
     /**
@@ -120,7 +172,7 @@ public class Quantifier {
             throw new IllegalArgumentException(
                     String.format("The 'from' argument value of %d was larger than the 'to' argument value of %d"));
         }
-        return new Quantifier("{" + from + "," + to + "}", "");
+        return new Quantifier("{" + from + "," + to + "}", "", from, to);
     }
 
     /**
@@ -134,7 +186,7 @@ public class Quantifier {
         if (count < 0) {
             throw new IllegalArgumentException("A negative value was passed to the exactly() method, value must be >= 0");
         }
-        return new Quantifier("{" + count + "}", "");
+        return new Quantifier("{" + count + "}", "", count, count);
     }
     
     /**
@@ -148,7 +200,7 @@ public class Quantifier {
         if (count < 0) {
             throw new IllegalArgumentException("A negative value was passed to the atLeast() method, value must be >= 0");
         }
-        return new Quantifier("{" + count + ",}", "");
+        return new Quantifier("{" + count + ",}", "", count, Token.UNBOUNDED);
     }
 
 }
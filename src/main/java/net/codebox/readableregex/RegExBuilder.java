@@ -34,4 +34,41 @@ public class RegExBuilder {
     public static String build(final Token... tokens) {
         return new RegExBuilder(tokens).toString();
     }
+
+    /**
+     * Convenience method which combines the specified list of Token objects into a single 
+     * expression, and compiles it.
+     * 
+     * @param tokens a series of Token instances, which will be used to construct the regular expression
+     * 
+     * @return the compiled expression
+     */
+    public static CompiledRegEx compile(final Token... tokens) {
+        return new CompiledRegEx(Token.sequence(tokens, false));
+    }
+
+    /**
+     * Constructs the text of a regular expression from the specified tokens, rendering the predefined
+     * character classes as described by the profile. The text must be compiled using the profile's flags.
+     *
+     * @param profile determines how character classes are rendered
+     * @param tokens a series of Token instances
+     *
+     * @return the text of the regular expression
+     */
+    public static String build(final CharacterProfile profile, final Token... tokens) {
+        return Token.sequence(tokens, false).withProfile(profile).toString();
+    }
+
+    /**
+     * Compiles the specified tokens using a CharacterProfile, see {@link #compile(Token...)}.
+     *
+     * @param profile determines how character classes are rendered and which flags are used
+     * @param tokens a series of Token instances
+     *
+     * @return a new CompiledRegEx instance
+     */
+    public static CompiledRegEx compile(final CharacterProfile profile, final Token... tokens) {
+        return new CompiledRegEx(Token.sequence(tokens, false).withProfile(profile), profile);
+    }
 }
@@ -0,0 +1,545 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+
+/**
+ * Converts the text of a java.util.regex expression into a tree of Tokens, so that expressions written by
+ * hand can be analysed, optimised and matched by the same engines as those made with the factory methods.
+ * This is the inverse of RegExBuilder.build(): rendering the parsed Token produces an expression that
+ * matches exactly the same text as the original, and in most cases the original text itself. Escapes such
+ * as \d and \w are converted into character classes, so the result may be longer than the original, and a
+ * quantifier that follows another, such as the {2} in a{1}{2}, is omitted because Pattern ignores it.
+ *
+ * Constructs that change the behaviour of the matcher, rather than describing what is matched, cannot be
+ * represented by a Token. These include inline flags such as (?i) (the (?iu:...) form, used by
+ * caseInsensitive(), is supported), named groups and named back-references, and the \R and \X escapes.
+ * When an expression contains any of them, an exception is thrown which lists every occurrence.
+ *
+ * The class is stateless, and its methods can be called from any thread.
+ */
+public final class RegExParser {
+    private static final String QUANTIFIER_CHARACTERS = "*+?{";
+    private static final CodePointSet WORD = CodePointSet.range('a', 'z').union(CodePointSet.range('A', 'Z'))
+            .union(CodePointSet.range('0', '9')).union(CodePointSet.of('_'));
+    private static final CodePointSet SPACE = CodePointSet.of(' ', '\t', '\n', '\u000B', '\f', '\r');
+    private static final CodePointSet DIGITS = CodePointSet.range('0', '9');
+
+ // Classes that cannot be described by CharacterTokenPart are evaluated by Pattern, which tests every code point
+    private static final Map<String, CodePointSet> EVALUATED_CLASSES = new ConcurrentHashMap<String, CodePointSet>();
+
+    private final String regex;
+    private final List<String> unsupported = new ArrayList<String>();
+    private int index;
+    private int groupCount;
+
+    private RegExParser(final String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Parses the text of a regular expression.
+     *
+     * @param regex an expression in the syntax accepted by java.util.regex.Pattern, without flags
+     *
+     * @return a Token which matches the same text as the expression
+     *
+     * @throws java.util.regex.PatternSyntaxException if the expression is not valid
+     * @throws IllegalArgumentException if the expression contains constructs that cannot be represented by a Token
+     */
+    public static Token parse(final String regex) {
+        Pattern.compile(regex);
+        final RegExParser parser = new RegExParser(regex);
+        final Token[] contents = parser.parseAlternatives();
+        if (!parser.unsupported.isEmpty()) {
+            throw new IllegalArgumentException(String.format("The expression '%s' cannot be represented by a Token, it contains %s",
+                regex, String.join(", ", parser.unsupported)));
+        }
+        return contents.length == 1 ? contents[0] : Token.sequence(contents, false);
+    }
+
+ // Returns the tokens that make up a single alternative, or a single 'or' token if there is more than one
+    private Token[] parseAlternatives() {
+        final List<Token> alternatives = new ArrayList<Token>();
+        List<Token> current = parseSequence();
+        while (index < regex.length() && regex.charAt(index) == '|') {
+            index++;
+            alternatives.add(sequenceOf(current));
+            current = parseSequence();
+        }
+        if (alternatives.isEmpty()) {
+            return current.toArray(new Token[current.size()]);
+        }
+        alternatives.add(sequenceOf(current));
+        return new Token[]{Token.or(alternatives.toArray(new Token[alternatives.size()]))};
+    }
+
+    private static Token sequenceOf(final List<Token> tokens) {
+        return tokens.size() == 1 ? tokens.get(0) : Token.sequence(tokens.toArray(new Token[tokens.size()]), false);
+    }
+
+    private List<Token> parseSequence() {
+        final List<Token> tokens = new ArrayList<Token>();
+        final StringBuilder literal = new StringBuilder();
+        while (index < regex.length()) {
+            final char c = regex.charAt(index);
+            if (c == '|' || c == ')') {
+                break;
+            }
+            if (regex.startsWith("\\Q", index)) {
+                final int end = regex.indexOf("\\E", index + 2);
+                final String quoted = regex.substring(index + 2, end < 0 ? regex.length() : end);
+                index = end < 0 ? regex.length() : end + 2;
+             // A quantifier that follows the quotation applies to its last character only
+                for (int i = 0; i < quoted.length(); i += Character.charCount(quoted.codePointAt(i))) {
+                    final boolean last = i + Character.charCount(quoted.codePointAt(i)) == quoted.length();
+                    addLiteral(tokens, literal, quoted.codePointAt(i), last && quantifierFollows());
+                }
+                continue;
+            }
+            Token token = null;
+            int codePoint = -1;
+            if (c == '(') {
+                token = parseGroup();
+            } else if (c == '[') {
+                token = parseClass();
+            } else if (c == '.') {
+                index++;
+                if (regex.startsWith("*", index) && !quantifierFollows(index + 1)) {
+                    index++;
+                    token = Token.anything();
+                } else {
+                    token = Token.characterClass(".", CodePointSet.DOT);
+                }
+            } else if (c == '^' || c == '$') {
+                index++;
+                token = new Token(String.valueOf(c), false, null);
+            } else if (c == '\\') {
+                token = parseEscape();
+            } else {
+                codePoint = regex.codePointAt(index);
+                index += Character.charCount(codePoint);
+            }
+            if (token != null && token.kind() == Token.Kind.LITERAL) {
+                codePoint = token.text().codePointAt(0);
+                token = null;
+            }
+
+            if (codePoint >= 0) {
+                addLiteral(tokens, literal, codePoint, quantifierFollows());
+            } else if (token != null) {
+                flush(tokens, literal);
+                tokens.add(quantified(token));
+            }
+        }
+        flush(tokens, literal);
+        return tokens;
+    }
+
+ // Adjacent characters are combined into a single text token, unless a quantifier applies to the last one
+    private void addLiteral(final List<Token> tokens, final StringBuilder literal, final int codePoint, final boolean quantified) {
+        if (!quantified) {
+            literal.appendCodePoint(codePoint);
+            return;
+        }
+        flush(tokens, literal);
+        tokens.add(quantified(Token.text(new String(Character.toChars(codePoint)))));
+    }
+
+    private static void flush(final List<Token> tokens, final StringBuilder literal) {
+        if (literal.length() > 0) {
+            tokens.add(Token.text(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    private boolean quantifierFollows() {
+        return quantifierFollows(index);
+    }
+
+    private boolean quantifierFollows(final int position) {
+        return position < regex.length() && QUANTIFIER_CHARACTERS.indexOf(regex.charAt(position)) >= 0;
+    }
+
+    private Token quantified(final Token token) {
+        if (!quantifierFollows()) {
+            return token;
+        }
+        final Quantifier quantifier = parseQuantifier();
+     // Pattern applies a second quantifier, such as the '{2}' in 'a{1}{2}', to an empty atom, so it has no effect
+        while (quantifierFollows()) {
+            parseQuantifier();
+        }
+        return quantifier.of(token.requiresBrackets() ? Token.nonCapturingGroup(token) : token);
+    }
+
+    private Quantifier parseQuantifier() {
+        final char c = regex.charAt(index++);
+        Quantifier quantifier;
+        if (c == '*') {
+            quantifier = Quantifier.zeroOrMore();
+        } else if (c == '+') {
+            quantifier = Quantifier.oneOrMore();
+        } else if (c == '?') {
+            quantifier = Quantifier.zeroOrOne();
+        } else {
+            final int end = regex.indexOf('}', index);
+            final String bounds = regex.substring(index, end);
+            index = end + 1;
+            final int comma = bounds.indexOf(',');
+            if (comma < 0) {
+                quantifier = Quantifier.exactly(Integer.parseInt(bounds.trim()));
+            } else if (comma == bounds.length() - 1) {
+                quantifier = Quantifier.atLeast(Integer.parseInt(bounds.substring(0, comma).trim()));
+            } else {
+                quantifier = Quantifier.between(Integer.parseInt(bounds.substring(0, comma).trim()), Integer.parseInt(bounds.substring(comma + 1).trim()));
+            }
+        }
+        if (regex.startsWith("?", index)) {
+            index++;
+            quantifier = quantifier.lazy();
+        } else if (regex.startsWith("+", index)) {
+            index++;
+            quantifier = quantifier.possessive();
+        }
+        return quantifier;
+    }
+
+    private Token parseGroup() {
+        final int start = index;
+        final Token.GroupType groupType;
+        if (!regex.startsWith("(?", index)) {
+            index++;
+            groupCount++;
+            groupType = Token.GroupType.CAPTURING;
+        } else if (regex.startsWith("(?iu:", index) || regex.startsWith("(?ui:", index)) {
+            index += 5;
+            groupType = Token.GroupType.CASE_INSENSITIVE;
+        } else if (regex.startsWith("(?<", index) && !regex.startsWith("(?<=", index) && !regex.startsWith("(?<!", index)) {
+            index = regex.indexOf('>', index) + 1;
+            unsupported(String.format("the named group '%s'", regex.substring(start, index)), start);
+            groupCount++;
+            groupType = Token.GroupType.CAPTURING;
+        } else {
+            Token.GroupType prefixed = null;
+            for (Token.GroupType type : Token.GroupType.values()) {
+                if (type != Token.GroupType.CAPTURING && type != Token.GroupType.CASE_INSENSITIVE && regex.startsWith(type.prefix, index)) {
+                    prefixed = type;
+                }
+            }
+            if (prefixed != null) {
+                index += prefixed.prefix.length();
+                groupType = prefixed;
+            } else {
+             // Inline flags, which apply either to the rest of the enclosing group, or to the group that follows them
+                int end = index + 2;
+                while (regex.charAt(end) != ')' && regex.charAt(end) != ':') {
+                    end++;
+                }
+                unsupported(String.format("the inline flags '%s'", regex.substring(start, end) + ")"), start);
+                index = end + 1;
+                if (regex.charAt(end) == ')') {
+                    return null;
+                }
+                groupType = Token.GroupType.NON_CAPTURING;
+            }
+        }
+
+        Token[] contents = parseAlternatives();
+        index++;
+        switch (groupType) {
+            case CAPTURING:
+                return Token.groupOf(contents);
+            case INDEPENDENT:
+                return Token.independentNonCapturingGroup(contents);
+            case CASE_INSENSITIVE:
+             // Alternatives are kept together, since case-insensitive tokens are not bracketed
+                if (contents.length == 1 && contents[0].kind() == Token.Kind.ALTERNATION) {
+                    contents = new Token[]{Token.nonCapturingGroup(contents)};
+                }
+                return Token.caseInsensitive(contents);
+            case POSITIVE_LOOK_AHEAD:
+                return Token.positiveLookAhead(contents);
+            case NEGATIVE_LOOK_AHEAD:
+                return Token.negativeLookAhead(contents);
+            case POSITIVE_LOOK_BEHIND:
+                return Token.positiveLookBehind(contents);
+            case NEGATIVE_LOOK_BEHIND:
+                return Token.negativeLookBehind(contents);
+            default:
+                return Token.nonCapturingGroup(contents);
+        }
+    }
+
+ // Returns a token for the escape sequence, a text token for an escaped character, or null if it is not supported
+    private Token parseEscape() {
+        final int start = index;
+        final char c = regex.charAt(index + 1);
+        index += 2;
+        switch (c) {
+            case 't':
+                return Token.tab();
+            case 'n':
+                return Token.newline();
+            case 'r':
+                return Token.carriageReturn();
+            case 'f':
+                return Token.formFeed();
+            case 'a':
+                return Token.alertCharacter();
+            case 'e':
+                return Token.escapeCharacter();
+            case 'c':
+                final char letter = regex.charAt(index++);
+                return Character.isLetter(letter) && letter < 128 ? Token.controlCharacter(letter) : Token.text(String.valueOf((char) (letter ^ 64)));
+            case '0':
+                final String octal = octalDigits();
+                final int value = Integer.parseInt(octal, 8);
+                return octal.length() == 3 && octal.charAt(0) == '3' ? Token.text(String.valueOf((char) value)) : Token.octalCharacter(octal);
+            case 'x':
+                if (regex.charAt(index) == '{') {
+                    final int end = regex.indexOf('}', index);
+                    final int codePoint = Integer.parseInt(regex.substring(index + 1, end), 16);
+                    index = end + 1;
+                    return Token.text(new String(Character.toChars(codePoint)));
+                }
+                index += 2;
+                return Token.hexCharacter(regex.substring(index - 2, index));
+            case 'u':
+                final char unit = (char) Integer.parseInt(regex.substring(index, index + 4), 16);
+                index += 4;
+             // Pattern combines an escaped surrogate pair into a single character
+                if (Character.isHighSurrogate(unit) && regex.startsWith("\\u", index) && index + 6 <= regex.length()) {
+                    final char low = (char) Integer.parseInt(regex.substring(index + 2, index + 6), 16);
+                    if (Character.isLowSurrogate(low)) {
+                        index += 6;
+                        return Token.text(new String(new char[]{unit, low}));
+                    }
+                }
+                return Token.unicodeCharacter(regex.substring(index - 4, index));
+            case 'd':
+                return Token.anyDigit();
+            case 'D':
+            case 'w':
+            case 'W':
+            case 's':
+            case 'S':
+                return Token.characterClass(regex.substring(start, index), predefinedClass(c));
+            case 'h':
+            case 'H':
+            case 'v':
+            case 'V':
+                return Token.characterClass(regex.substring(start, index), evaluatedClass(regex.substring(start, index)));
+            case 'p':
+            case 'P':
+                index = regex.charAt(index) == '{' ? regex.indexOf('}', index) + 1 : index + 1;
+                return Token.characterClass(regex.substring(start, index), evaluatedClass(regex.substring(start, index)));
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'G':
+            case 'z':
+            case 'Z':
+                return new Token(regex.substring(start, index), false, null);
+            case 'k':
+                index = regex.indexOf('>', index) + 1;
+                unsupported(String.format("the named back-reference '%s'", regex.substring(start, index)), start);
+                return null;
+            case 'R':
+            case 'X':
+                unsupported(String.format("the escape '%s'", regex.substring(start, index)), start);
+                return null;
+            case 'N':
+                index = regex.indexOf('}', index) + 1;
+                return Token.text(new String(Character.toChars(evaluatedClass(regex.substring(start, index)).rangeFrom(0))));
+            default:
+                if (c >= '1' && c <= '9') {
+                    return backReference(start, c - '0');
+                }
+                index = start + 1 + Character.charCount(regex.codePointAt(start + 1));
+                return Token.text(regex.substring(start + 1, index));
+        }
+    }
+
+ // As Pattern does, the longest number that refers to a group that has already been opened is used
+    private Token backReference(final int start, final int firstDigit) {
+        int groupNumber = firstDigit;
+        while (index < regex.length() && Character.isDigit(regex.charAt(index))) {
+            final int longer = groupNumber * 10 + (regex.charAt(index) - '0');
+            if (longer > groupCount) {
+                break;
+            }
+            groupNumber = longer;
+            index++;
+        }
+        if (groupNumber > groupCount) {
+            unsupported(String.format("the back-reference '%s' to a group that does not precede it", regex.substring(start, index)), start);
+            return null;
+        }
+        return Token.group(groupNumber);
+    }
+
+    private String octalDigits() {
+        final int start = index;
+        final int limit = index < regex.length() && regex.charAt(index) <= '3' ? 3 : 2;
+        while (index < regex.length() && index - start < limit && regex.charAt(index) >= '0' && regex.charAt(index) <= '7') {
+            index++;
+        }
+        return regex.substring(start, index);
+    }
+
+    private static CodePointSet predefinedClass(final char letter) {
+        switch (letter) {
+            case 'd':
+                return DIGITS;
+            case 'D':
+                return DIGITS.complement();
+            case 'w':
+                return WORD;
+            case 'W':
+                return WORD.complement();
+            case 's':
+                return SPACE;
+            default:
+                return SPACE.complement();
+        }
+    }
+
+    private static CodePointSet evaluatedClass(final String classText) {
+        CodePointSet characters = EVALUATED_CLASSES.get(classText);
+        if (characters == null) {
+            final Matcher matcher = Pattern.compile(classText).matcher("");
+            characters = CodePointSet.matching(codePoint -> matcher.reset(new String(Character.toChars(codePoint))).matches());
+            EVALUATED_CLASSES.put(classText, characters);
+        }
+        return characters;
+    }
+
+    private Token parseClass() {
+        final int start = index;
+        index++;
+        final boolean negated = regex.charAt(index) == '^';
+        if (negated) {
+            index++;
+        }
+        final List<int[]> ranges = new ArrayList<int[]>();
+        boolean evaluated = false;
+        boolean first = true;
+        while (first || regex.charAt(index) != ']') {
+            final char c = regex.charAt(index);
+            if (c == '[' || regex.startsWith("&&", index) || regex.startsWith("\\Q", index)) {
+                evaluated = true;
+                skipClassContents();
+                break;
+            }
+            first = false;
+            final int from = classCharacter(ranges);
+            if (from < 0) {
+                continue;
+            }
+            if (regex.charAt(index) == '-' && regex.charAt(index + 1) != ']') {
+                index++;
+                ranges.add(new int[]{from, classCharacter(ranges)});
+            } else {
+                ranges.add(new int[]{from, from});
+            }
+        }
+        index++;
+        final String classText = regex.substring(start, index);
+        for (int[] range : ranges) {
+            evaluated |= range[0] < 0 || range[1] > Character.MAX_VALUE;
+        }
+        if (evaluated) {
+            return Token.characterClass(classText, evaluatedClass(classText));
+        }
+
+        if (!negated && ranges.size() == 1 && ranges.get(0)[0] == '0' && ranges.get(0)[1] == '9') {
+            return Token.anyDigit();
+        }
+        if (!negated && ranges.size() == 2 && ranges.get(0)[0] == 'a' && ranges.get(0)[1] == 'z' && ranges.get(1)[0] == 'A' && ranges.get(1)[1] == 'Z') {
+            return Token.anyLetter();
+        }
+        final List<CharacterTokenPart> parts = new ArrayList<CharacterTokenPart>();
+        final List<Character> singles = new ArrayList<Character>();
+        for (int[] range : ranges) {
+            if (range[0] == range[1]) {
+                singles.add((char) range[0]);
+                continue;
+            }
+            if (!singles.isEmpty()) {
+                parts.add(characters(singles.toArray(new Character[singles.size()])));
+                singles.clear();
+            }
+            parts.add(range((char) range[0], (char) range[1]));
+        }
+        if (!singles.isEmpty()) {
+            parts.add(characters(singles.toArray(new Character[singles.size()])));
+        }
+        final CharacterTokenPart[] partArray = parts.toArray(new CharacterTokenPart[parts.size()]);
+        return negated ? Token.anyCharacterExcept(partArray) : Token.anyOneOf(partArray);
+    }
+
+ // Returns the next character in a class, or -1 if an escape was added to the list as one or more ranges
+    private int classCharacter(final List<int[]> ranges) {
+        if (regex.charAt(index) != '\\') {
+            final int codePoint = regex.codePointAt(index);
+            index += Character.charCount(codePoint);
+            return codePoint;
+        }
+        final int start = index;
+        final Token token = parseEscape();
+        if (token != null && token.kind() == Token.Kind.LITERAL) {
+            return token.text().codePointAt(0);
+        }
+        final CodePointSet characters = token == null ? null : token.characters();
+        if (characters == null || token.kind() != Token.Kind.CHARACTER_CLASS || "pPhHvV".indexOf(regex.charAt(start + 1)) >= 0) {
+         // The whole class will be evaluated by Pattern
+            ranges.add(new int[]{-1, -1});
+            return -1;
+        }
+        if (characters.rangeCount() == 1 && characters.rangeFrom(0) == characters.rangeTo(0)) {
+            return characters.rangeFrom(0);
+        }
+        for (int i = 0; i < characters.rangeCount(); i++) {
+            ranges.add(new int[]{characters.rangeFrom(i), characters.rangeTo(i)});
+        }
+        return -1;
+    }
+
+ // Moves to the closing bracket of a class containing nested classes, intersections or quotations
+    private void skipClassContents() {
+        int depth = 1;
+        while (true) {
+            if (regex.startsWith("\\Q", index)) {
+                final int end = regex.indexOf("\\E", index);
+                index = end < 0 ? regex.length() : end + 2;
+            } else if (regex.charAt(index) == '\\') {
+                index += 2;
+            } else if (regex.charAt(index) == '[') {
+                depth++;
+                index++;
+                if (regex.charAt(index) == '^') {
+                    index++;
+                }
+                if (regex.charAt(index) == ']') {
+                    index++;
+                }
+            } else if (regex.charAt(index) == ']' && --depth == 0) {
+                return;
+            } else {
+                index++;
+            }
+        }
+    }
+
+    private void unsupported(final String construct, final int position) {
+        unsupported.add(String.format("%s at index %d", construct, position));
+    }
+}
@@ -0,0 +1,166 @@
+package net.codebox.readableregex;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.MatchResult;
+
+/**
+ * A Spliterator over the matches of a CompiledRegEx, or over the fields that lie between them. Matches
+ * are located lazily as the Spliterator is advanced.
+ *
+ * The input can be divided between threads, but only at positions that no match of the expression can
+ * span, so that each part produces exactly the results that a sequential scan would have produced for
+ * it. If no such position can be found, or if the expression can match an empty string, the input is not
+ * divided. Splitting is only possible before traversal has begun.
+ */
+final class RegExSpliterator<T> implements Spliterator<T> {
+ // Parts shorter than this are not worth dividing any further
+    static final int MIN_SPLIT_LENGTH = 1 << 14;
+
+    private final CompiledRegEx regex;
+    private final CharSequence input;
+    private final boolean fields;
+    private int from;
+    private final int to;
+    private OffsetCursor cursor;
+
+    private RegExSpliterator(final CompiledRegEx regex, final CharSequence input, final int from, final int to, final boolean fields) {
+        this.regex  = regex;
+        this.input  = input;
+        this.from   = from;
+        this.to     = to;
+        this.fields = fields;
+    }
+
+    static Spliterator<MatchResult> matches(final CompiledRegEx regex, final CharSequence input) {
+        return new RegExSpliterator<MatchResult>(regex, input, 0, input.length(), false);
+    }
+
+    static Spliterator<String> fields(final CompiledRegEx regex, final CharSequence input) {
+        return new RegExSpliterator<String>(regex, input, 0, input.length(), true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        if (cursor == null) {
+            cursor = new OffsetCursor(regex.pattern(), input, from, to, fields);
+        }
+        final int start = cursor.nextStart();
+        if (start < 0) {
+            return false;
+        }
+        if (fields) {
+            action.accept((T) input.subSequence(start, cursor.nextEnd()).toString());
+        } else {
+            action.accept((T) new Match(input, cursor.matcher()));
+        }
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (cursor != null || to - from < MIN_SPLIT_LENGTH || regex.minLength() == 0) {
+            return null;
+        }
+        final int splitPoint = regex.findSplitPoint(input, from + (to - from) / 2, to);
+        if (splitPoint < 0) {
+            return null;
+        }
+        final RegExSpliterator<T> prefix;
+        if (fields) {
+         // The field boundary is the first match after the split point, which is one the sequential scan would find
+            final Matcher matcher = regex.pattern().matcher(input).region(splitPoint, to)
+                    .useTransparentBounds(true).useAnchoringBounds(false);
+            if (!matcher.find()) {
+                return null;
+            }
+            prefix = new RegExSpliterator<T>(regex, input, from, matcher.start(), true);
+            from = matcher.end();
+        } else {
+            prefix = new RegExSpliterator<T>(regex, input, from, splitPoint, false);
+            from = splitPoint;
+        }
+        return prefix;
+    }
+
+    /**
+     * @return the number of characters that remain to be examined, which is only a rough guide to the
+     * number of results
+     */
+    @Override
+    public long estimateSize() {
+        return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+ // Unlike Matcher.toMatchResult(), which copies the entire input, this retains only the group offsets
+    private static final class Match implements MatchResult {
+        private final CharSequence input;
+        private final int[] offsets;
+
+        Match(final CharSequence input, final Matcher matcher) {
+            this.input   = input;
+            this.offsets = new int[(matcher.groupCount() + 1) * 2];
+            for (int group = 0; group <= matcher.groupCount(); group++) {
+                offsets[group * 2]     = matcher.start(group);
+                offsets[group * 2 + 1] = matcher.end(group);
+            }
+        }
+
+        @Override
+        public int start() {
+            return offsets[0];
+        }
+
+        @Override
+        public int start(final int group) {
+            checkGroup(group);
+            return offsets[group * 2];
+        }
+
+        @Override
+        public int end() {
+            return offsets[1];
+        }
+
+        @Override
+        public int end(final int group) {
+            checkGroup(group);
+            return offsets[group * 2 + 1];
+        }
+
+        @Override
+        public String group() {
+            return group(0);
+        }
+
+        @Override
+        public String group(final int group) {
+            checkGroup(group);
+            final int start = offsets[group * 2];
+            return start < 0 ? null : input.subSequence(start, offsets[group * 2 + 1]).toString();
+        }
+
+        @Override
+        public int groupCount() {
+            return offsets.length / 2 - 1;
+        }
+
+        private void checkGroup(final int group) {
+            if (group < 0 || group > groupCount()) {
+                throw new IndexOutOfBoundsException("No group " + group);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return group();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.codebox.readableregex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The MatchEngine based on java.util.regex, which supports every expression except those containing a
+ * keyword dictionary. The regex engine is only invoked at positions where a match might begin, when these
+ * can be determined by analysing the Token tree.
+ */
+final class RegexEngine implements MatchEngine {
+    static final String NAME = "java.util.regex";
+
+ // Matches no longer than this are located by verifying the text surrounding each required literal
+    private static final int MAX_CANDIDATE_WINDOW_LENGTH = 256;
+ // Scanning for the first character of a match is only worthwhile if most characters are excluded
+    private static final int MAX_SCANNED_FIRST_CHARACTERS = 1024;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String unsupportedReason(final ExpressionFeatures features) {
+        return features.hasDictionaries() ? "keyword dictionaries cannot be rendered as a Pattern" : null;
+    }
+
+    @Override
+    public int priority(final ExpressionFeatures features) {
+        return 0;
+    }
+
+    @Override
+    public RegexProgram compile(final Token token, final ExpressionFeatures features) {
+        return new RegexProgram(token, Pattern.compile(token.toString(), features.patternFlags()));
+    }
+
+ // Windows around required literals are only examined when the matches are short
+    static boolean usesCandidateWindows(final ExpressionFeatures features) {
+        return features.hasRequiredLiterals() && features.maxLength() <= MAX_CANDIDATE_WINDOW_LENGTH;
+    }
+
+    static final class RegexProgram implements Program {
+        private final Pattern pattern;
+        private final Prefilter prefilter;
+        private final CharacterScanner firstCharacterScanner;
+        private final int maxLength;
+
+        private RegexProgram(final Token token, final Pattern pattern) {
+            this.pattern   = pattern;
+            this.prefilter = Prefilter.of(token);
+            this.maxLength = token.maxLength();
+
+            final CodePointSet firstCharacters = Prefilter.firstCharacters(token);
+            if (firstCharacters == null || firstCharacters.size() > MAX_SCANNED_FIRST_CHARACTERS) {
+                this.firstCharacterScanner = null;
+            } else {
+                this.firstCharacterScanner = CharacterScanner.forCharacters(firstCharacters);
+            }
+        }
+
+        Pattern pattern() {
+            return pattern;
+        }
+
+        @Override
+        public boolean matches(final CharSequence input) {
+            return pattern.matcher(input).matches();
+        }
+
+        @Override
+        public boolean find(final CharSequence input) {
+            if (prefilter.hasRequiredLiterals() && maxLength <= MAX_CANDIDATE_WINDOW_LENGTH) {
+                return findInCandidateWindows(input);
+            }
+            if (!prefilter.mightMatch(input)) {
+                return false;
+            }
+            if (firstCharacterScanner != null) {
+                return findAtCandidatePositions(input);
+            }
+            return pattern.matcher(input).find();
+        }
+
+        private boolean findAtCandidatePositions(final CharSequence input) {
+            final Matcher matcher = pattern.matcher(input).useTransparentBounds(true).useAnchoringBounds(false);
+            final int length = input.length();
+
+            int position = firstCharacterScanner.indexOf(input, 0, length);
+            while (position >= 0) {
+                matcher.region(position, length);
+                if (matcher.lookingAt()) {
+                    return true;
+                }
+                position = firstCharacterScanner.indexOf(input, position + 1, length);
+            }
+            return false;
+        }
+
+        private boolean findInCandidateWindows(final CharSequence input) {
+            final Matcher matcher = pattern.matcher(input).useTransparentBounds(true).useAnchoringBounds(false);
+            final int length = input.length();
+            final int[] literalEnd = new int[1];
+            final Prefilter.LiteralScanner literals = prefilter.literalScanner(input);
+
+            int literalStart = literals.next(0, literalEnd);
+            while (literalStart >= 0) {
+             // Any match containing this occurrence of the literal must lie within these bounds
+                matcher.region(Math.max(0, literalEnd[0] - maxLength), Math.min(length, literalStart + maxLength));
+                if (matcher.find()) {
+                    return true;
+                }
+                literalStart = literals.next(literalStart + 1, literalEnd);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package net.codebox.readableregex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies a list of replacement rules to text in a single left-to-right pass. All the rules are combined
+ * into one regular expression, and at each position the leftmost match is replaced. If more than one rule
+ * matches at that position, the rule that appears first in the list wins.
+ *
+ * Replacement templates use the same syntax as Matcher.appendReplacement(): '$n' inserts the text matched
+ * by capturing group n of the rule (with $0 representing the entire match), and a backslash causes the
+ * following character to be inserted literally. Templates are parsed once, when the Rewriter is created,
+ * and group numbers are checked against the groups that exist in each rule.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public class Rewriter {
+    private final Pattern pattern;
+    private final int[] ruleGroups;
+    private final Object[][] templates;
+
+    /**
+     * A replacement rule, used to construct a Rewriter.
+     */
+    public static class Rule {
+        private final String template;
+        private final Token token;
+
+        private Rule(final String template, final Token token) {
+            this.template = template;
+            this.token    = token;
+        }
+
+        @Override
+        public String toString() {
+            return token + " -> " + template;
+        }
+    }
+
+    /**
+     * Creates a new rule.
+     *
+     * @param template the replacement text, which may contain references to the capturing groups in the tokens
+     * @param tokens a series of tokens which together define the text to be replaced
+     *
+     * @return a new Rule instance
+     */
+    public static Rule rule(final String template, final Token... tokens) {
+        return new Rule(template, Token.sequence(tokens, false));
+    }
+
+    /**
+     * Initialises the instance.
+     *
+     * @param rules the rules, in priority order
+     *
+     * @throws IllegalArgumentException if a template is malformed, or refers to a group that does not exist
+     */
+    public Rewriter(final Rule... rules) {
+        final StringBuilder sb = new StringBuilder();
+        this.ruleGroups = new int[rules.length];
+        this.templates  = new Object[rules.length][];
+
+        int groupCount = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (i > 0) {
+                sb.append('|');
+            }
+         // Each rule is enclosed in a group, which identifies the rule that matched
+            final int ruleGroup = ++groupCount;
+            sb.append('(');
+            new TokenRenderer(ruleGroup).render(rules[i].token, sb);
+            sb.append(')');
+
+            final int localGroupCount = TokenRenderer.capturingGroupCount(rules[i].token);
+            ruleGroups[i] = ruleGroup;
+            templates[i]  = parseTemplate(rules[i].template, ruleGroup, localGroupCount);
+            groupCount += localGroupCount;
+        }
+        this.pattern = Pattern.compile(sb.toString());
+    }
+
+ // Returns a list containing Strings, to be inserted literally, and Integers, giving the absolute number of a group
+    private static Object[] parseTemplate(final String template, final int ruleGroup, final int localGroupCount) {
+        final List<Object> parts = new ArrayList<Object>();
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            final char c = template.charAt(i++);
+            if (c == '\\') {
+                if (i == template.length()) {
+                    throw new IllegalArgumentException(String.format("The template '%s' ends with an unescaped backslash", template));
+                }
+                literal.append(template.charAt(i++));
+
+            } else if (c == '$') {
+                if (i == template.length() || !Character.isDigit(template.charAt(i))) {
+                    throw new IllegalArgumentException(String.format(
+                            "The '$' at position %d of the template '%s' must be followed by a group number", i - 1, template));
+                }
+                int group = template.charAt(i++) - '0';
+                if (group > localGroupCount) {
+                    throw new IllegalArgumentException(String.format(
+                            "The template '%s' refers to group %d, but the rule only contains %d groups", template, group, localGroupCount));
+                }
+             // As with Matcher, additional digits are consumed for as long as they form a valid group number
+                while (i < template.length() && Character.isDigit(template.charAt(i))) {
+                    final int longerGroup = group * 10 + (template.charAt(i) - '0');
+                    if (longerGroup > localGroupCount) {
+                        break;
+                    }
+                    group = longerGroup;
+                    i++;
+                }
+                if (literal.length() > 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(ruleGroup + group);
+
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+        }
+        return parts.toArray();
+    }
+
+    /**
+     * Applies the rules to the input.
+     *
+     * @param input the text to be rewritten
+     *
+     * @return the rewritten text, or the input instance itself if no changes were made
+     */
+    public String rewrite(final String input) {
+        final Matcher matcher = pattern.matcher(input);
+        if (!findFirstChange(input, matcher)) {
+            return input;
+        }
+        final StringBuilder sb = new StringBuilder(input.length() + 16);
+        try {
+            appendRewritten(input, matcher, sb);
+        } catch (IOException ex) {
+            throw new IllegalStateException("StringBuilder threw an IOException", ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Applies the rules to the input, and appends the result to the output.
+     *
+     * @param input the text to be rewritten
+     * @param output the StringBuilder to which the rewritten text will be appended
+     *
+     * @return true if any changes were made to the text
+     */
+    public boolean rewrite(final CharSequence input, final StringBuilder output) {
+        try {
+            return rewrite(input, (Appendable) output);
+        } catch (IOException ex) {
+            throw new IllegalStateException("StringBuilder threw an IOException", ex);
+        }
+    }
+
+    /**
+     * Applies the rules to the input, and appends the result to the output.
+     *
+     * @param input the text to be rewritten
+     * @param output the Appendable to which the rewritten text will be appended
+     *
+     * @return true if any changes were made to the text
+     *
+     * @throws IOException if the output throws an IOException
+     */
+    public boolean rewrite(final CharSequence input, final Appendable output) throws IOException {
+        final Matcher matcher = pattern.matcher(input);
+        if (!findFirstChange(input, matcher)) {
+            output.append(input);
+            return false;
+        }
+        appendRewritten(input, matcher, output);
+        return true;
+    }
+
+ // Positions the matcher at the first match whose replacement differs from the text that was matched
+    private boolean findFirstChange(final CharSequence input, final Matcher matcher) {
+        while (matcher.find()) {
+            if (!replacementIsUnchanged(input, matcher)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+ // Appends the text before the matcher's current match, and everything that follows, with replacements applied
+    private void appendRewritten(final CharSequence input, final Matcher matcher, final Appendable output) throws IOException {
+        int copiedTo = 0;
+        do {
+            output.append(input, copiedTo, matcher.start());
+            appendReplacement(input, matcher, output);
+            copiedTo = matcher.end();
+        } while (matcher.find());
+        output.append(input, copiedTo, input.length());
+    }
+
+    private int matchedRule(final Matcher matcher) {
+        for (int i = 0; i < ruleGroups.length; i++) {
+            if (matcher.start(ruleGroups[i]) >= 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No rule matched");
+    }
+
+    private void appendReplacement(final CharSequence input, final Matcher matcher, final Appendable output) throws IOException {
+        for (Object part : templates[matchedRule(matcher)]) {
+            if (part instanceof String) {
+                output.append((String) part);
+            } else {
+                final int group = (Integer) part;
+                if (matcher.start(group) >= 0) {
+                    output.append(input, matcher.start(group), matcher.end(group));
+                }
+            }
+        }
+    }
+
+ // Compares the replacement with the matched text, without building the replacement
+    private boolean replacementIsUnchanged(final CharSequence input, final Matcher matcher) {
+        int position = matcher.start();
+        final int end = matcher.end();
+        for (Object part : templates[matchedRule(matcher)]) {
+            final CharSequence text;
+            final int from, to;
+            if (part instanceof String) {
+                text = (String) part;
+                from = 0;
+                to   = text.length();
+            } else {
+                final int group = (Integer) part;
+                if (matcher.start(group) < 0) {
+                    continue;
+                }
+                text = input;
+                from = matcher.start(group);
+                to   = matcher.end(group);
+            }
+            if (position + (to - from) > end) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (text.charAt(i) != input.charAt(position++)) {
+                    return false;
+                }
+            }
+        }
+        return position == end;
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+}
@@ -0,0 +1,444 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the rules in a rule set that are redundant, because every string they match is also matched by
+ * another rule. A rule is a duplicate if another rule matches exactly the same strings, and is subsumed if
+ * another rule matches a strict superset of them; for example, text("foo") is subsumed by
+ * or(text("foo"), text("bar")). Removing redundant rules does not change which inputs are matched, or
+ * found, by at least one rule in the set.
+ *
+ * Rules that belong to the regular subset of the Token API are compared exactly, by exploring the product
+ * of their automata. Other rules, and rules whose automata would be too large, are compared conservatively:
+ * they are only treated as redundant if their text is identical to that of another rule, or to one of the
+ * alternatives of an 'or' token that forms another rule.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public final class RuleSetAnalysis {
+    private static final int A_IN_B = 1, B_IN_A = 2;
+
+    private final List<Token> rules;
+    private final List<Redundancy> redundancies;
+    private final boolean exact;
+
+    /**
+     * A rule that can be removed from the rule set.
+     */
+    public static final class Redundancy {
+        private final int index, coveredBy;
+        private final Token rule, coveringRule;
+        private final boolean duplicate;
+
+        private Redundancy(final int index, final Token rule, final int coveredBy, final Token coveringRule, final boolean duplicate) {
+            this.index        = index;
+            this.rule         = rule;
+            this.coveredBy    = coveredBy;
+            this.coveringRule = coveringRule;
+            this.duplicate    = duplicate;
+        }
+
+        /**
+         * @return the index of the redundant rule within the rule set
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * @return the redundant rule
+         */
+        public Token rule() {
+            return rule;
+        }
+
+        /**
+         * @return the index of a rule that is not redundant, and which matches every string that the redundant rule matches
+         */
+        public int coveredBy() {
+            return coveredBy;
+        }
+
+        /**
+         * @return the rule at the index returned by coveredBy()
+         */
+        public Token coveringRule() {
+            return coveringRule;
+        }
+
+        /**
+         * @return true if the redundant rule matches exactly the same strings as the covering rule, false if it matches fewer
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rule %d '%s' %s rule %d '%s'", index, rule, duplicate ? "is a duplicate of" : "is subsumed by",
+                coveredBy, coveringRule);
+        }
+    }
+
+    /**
+     * Analyses a rule set. When several rules are duplicates of each other, the first one is kept.
+     *
+     * @param rules the rules to be analysed, in order
+     */
+    public RuleSetAnalysis(final List<? extends Token> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<Token>(rules));
+        final Rule[] analysed = new Rule[rules.size()];
+        for (int i = 0; i < analysed.length; i++) {
+            analysed[i] = new Rule(this.rules.get(i));
+        }
+
+     // Each rule points to the first rule that covers it; the covering rule either matches more strings, or has a lower index
+        final int[] coveredBy = new int[analysed.length];
+        final boolean[] duplicate = new boolean[analysed.length];
+        for (int i = 0; i < analysed.length; i++) {
+            coveredBy[i] = -1;
+            for (int j = 0; j < analysed.length && coveredBy[i] < 0; j++) {
+                if (i != j) {
+                    final int relation = compare(analysed[i], analysed[j], A_IN_B | (j < i ? 0 : B_IN_A));
+                    if ((relation & A_IN_B) != 0 && (j < i || (relation & B_IN_A) == 0)) {
+                        coveredBy[i] = j;
+                        duplicate[i] = j < i ? (compare(analysed[j], analysed[i], A_IN_B) & A_IN_B) != 0 : false;
+                    }
+                }
+            }
+        }
+
+     // Follows each chain to a rule that is kept, the chains cannot loop because each step either moves to a larger language or a lower index
+        final List<Redundancy> found = new ArrayList<Redundancy>();
+        for (int i = 0; i < analysed.length; i++) {
+            if (coveredBy[i] >= 0) {
+                int kept = coveredBy[i];
+                boolean same = duplicate[i];
+                while (coveredBy[kept] >= 0) {
+                    same &= duplicate[kept];
+                    kept = coveredBy[kept];
+                }
+                found.add(new Redundancy(i, this.rules.get(i), kept, this.rules.get(kept), same));
+            }
+        }
+        this.redundancies = Collections.unmodifiableList(found);
+
+     // Automata are only built for the pairs that the cheaper checks cannot settle, so one that is too large only matters if it was needed
+        boolean exact = true;
+        for (Rule rule : analysed) {
+            exact &= rule.regular && !rule.dfaUnavailable;
+        }
+        this.exact = exact;
+    }
+
+    /**
+     * Determines whether two expressions match exactly the same strings.
+     *
+     * @param a the first expression
+     * @param b the second expression
+     *
+     * @return true if the expressions are equivalent; if either one is outside the regular subset of the Token API, a result
+     * of false means only that equivalence could not be shown
+     */
+    public static boolean isEquivalent(final Token a, final Token b) {
+        return compare(new Rule(a), new Rule(b), A_IN_B | B_IN_A) == (A_IN_B | B_IN_A);
+    }
+
+    /**
+     * Determines whether one expression matches every string that is matched by another.
+     *
+     * @param general the expression that may match more strings
+     * @param specific the expression that may match fewer strings
+     *
+     * @return true if every match of 'specific' is also a match of 'general'; if either one is outside the regular subset of
+     * the Token API, a result of false means only that this could not be shown
+     */
+    public static boolean subsumes(final Token general, final Token specific) {
+        return compare(new Rule(specific), new Rule(general), A_IN_B) == A_IN_B;
+    }
+
+    /**
+     * @return the rules that were analysed
+     */
+    public List<Token> rules() {
+        return rules;
+    }
+
+    /**
+     * @return the redundant rules, in order of their index
+     */
+    public List<Redundancy> redundancies() {
+        return redundancies;
+    }
+
+    /**
+     * @return the rules that are not redundant, in their original order
+     */
+    public List<Token> reducedRules() {
+        final boolean[] redundant = new boolean[rules.size()];
+        for (Redundancy redundancy : redundancies) {
+            redundant[redundancy.index()] = true;
+        }
+        final List<Token> reduced = new ArrayList<Token>();
+        for (int i = 0; i < rules.size(); i++) {
+            if (!redundant[i]) {
+                reduced.add(rules.get(i));
+            }
+        }
+        return Collections.unmodifiableList(reduced);
+    }
+
+    /**
+     * @return true if every rule was compared exactly, false if some were compared conservatively, so that other
+     * redundant rules may exist
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Redundancy redundancy : redundancies) {
+            sb.append(redundancy).append('\n');
+        }
+        return sb.append(String.format("%d of %d rules are redundant%s", redundancies.size(), rules.size(),
+            exact ? "" : " (some rules were compared conservatively)")).toString();
+    }
+
+    /**
+     * A rule, together with the information used to compare it with other rules.
+     */
+    private static final class Rule {
+        private final Token token;
+        private final String text;
+     // The single string matched by the rule, or null if it can match more than one
+        private final String literal;
+        private final CodePointSet firstCharacters;
+        private final boolean backReferences;
+        private final boolean regular;
+     // Built on demand, since most pairs of rules are distinguished by the cheaper checks
+        private Dfa dfa;
+        private boolean dfaUnavailable;
+        private String shortestMatch;
+
+        Rule(final Token token) {
+            this.token           = token;
+            this.text            = token.toString();
+            this.literal         = ExpressionFeatures.literalText(token);
+            this.firstCharacters = Prefilter.firstCharacters(token);
+            this.backReferences  = ExpressionFeatures.containsBackReference(token);
+            this.regular         = Nfa.findUnsupportedConstruct(token) == null;
+        }
+
+        Dfa dfa() {
+            if (dfa == null && !dfaUnavailable) {
+                if (regular) {
+                    try {
+                        dfa = Dfa.build(token);
+                    } catch (IllegalArgumentException ex) {
+                        dfaUnavailable = true;
+                    }
+                } else {
+                    dfaUnavailable = true;
+                }
+            }
+            return dfa;
+        }
+
+     // Returns one of the shortest strings accepted by the automaton, which must be available
+        String shortestMatch() {
+            if (shortestMatch == null) {
+                final Dfa dfa = dfa();
+                final int[] previous = new int[dfa.stateCount()], previousClass = new int[dfa.stateCount()];
+                Arrays.fill(previous, -2);
+                previous[0] = -1;
+                final int[] queue = new int[dfa.stateCount()];
+                int head = 0, tail = 0, accepting = -1;
+                queue[tail++] = 0;
+                while (head < tail && accepting < 0) {
+                    final int state = queue[head++];
+                    if (dfa.acceptedRule(state) >= 0) {
+                        accepting = state;
+                        break;
+                    }
+                    for (int c = 0; c < dfa.classCount(); c++) {
+                        final int next = dfa.transition(state, c);
+                        if (next != Dfa.DEAD && previous[next] == -2) {
+                            previous[next]      = state;
+                            previousClass[next] = c;
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+                final StringBuilder sb = new StringBuilder();
+                for (int state = accepting; state > 0; state = previous[state]) {
+                    sb.insert(0, new String(Character.toChars(dfa.classStart(previousClass[state]))));
+                }
+                shortestMatch = sb.toString();
+            }
+            return shortestMatch;
+        }
+
+     // True if it is possible that every match of this rule is a match of the other rule
+        boolean mayBeWithin(final Rule other) {
+            if (token.minLength() < other.token.minLength() || token.maxLength() > other.token.maxLength()) {
+                return false;
+            }
+            return firstCharacters == null || other.firstCharacters == null || firstCharacters.minus(other.firstCharacters).isEmpty();
+        }
+
+     // True if the text of this rule is one of the alternatives of the other rule
+        boolean isAlternativeOf(final Rule other) {
+            if (backReferences || other.backReferences) {
+                return false;
+            }
+            Token root = other.token;
+            while (root.kind() == Token.Kind.GROUP && root.quantifier() == null
+                    && (root.groupType() == Token.GroupType.CAPTURING || root.groupType() == Token.GroupType.NON_CAPTURING)
+                    && root.children().length == 1) {
+                root = root.children()[0];
+            }
+            if (root.kind() != Token.Kind.ALTERNATION || root.quantifier() != null) {
+                return false;
+            }
+            for (Token branch : root.children()) {
+                if (branch.toString().equals(text)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Compares the strings matched by two rules.
+     *
+     * @param checks the relations to be checked, A_IN_B and/or B_IN_A
+     *
+     * @return the subset of the checked relations that hold
+     */
+    private static int compare(final Rule a, final Rule b, final int checks) {
+        if (a.text.hashCode() == b.text.hashCode() && a.text.equals(b.text)) {
+            return checks;
+        }
+        int possible = checks;
+        if ((possible & A_IN_B) != 0 && !a.mayBeWithin(b)) {
+            possible &= ~A_IN_B;
+        }
+        if ((possible & B_IN_A) != 0 && !b.mayBeWithin(a)) {
+            possible &= ~B_IN_A;
+        }
+        if (possible == 0) {
+            return 0;
+        }
+        if (a.literal != null && b.literal != null) {
+            return a.literal.equals(b.literal) ? checks : 0;
+        }
+     // A literal is within another language if the other automaton accepts it, which is cheaper than comparing the
+     // languages, and if it is not accepted then the other language cannot be within the literal either
+        int known = 0;
+        if (a.literal != null && b.dfa() != null) {
+            if (!accepts(b.dfa(), a.literal)) {
+                return 0;
+            }
+            known |= possible & A_IN_B;
+            possible &= ~A_IN_B;
+        }
+        if (b.literal != null && a.dfa() != null) {
+            if (!accepts(a.dfa(), b.literal)) {
+                return known;
+            }
+            known |= possible & B_IN_A;
+            possible &= ~B_IN_A;
+        }
+        if (possible == 0) {
+            return known;
+        }
+        if (a.dfa() != null && b.dfa() != null) {
+         // Most pairs that survive the checks above are distinguished by the shortest string that one of them matches
+            if ((possible & A_IN_B) != 0 && !accepts(b.dfa(), a.shortestMatch())) {
+                possible &= ~A_IN_B;
+            }
+            if ((possible & B_IN_A) != 0 && !accepts(a.dfa(), b.shortestMatch())) {
+                possible &= ~B_IN_A;
+            }
+            if (possible == 0) {
+                return known;
+            }
+            return known | compareLanguages(a.dfa(), b.dfa(), possible);
+        }
+        int result = 0;
+        if ((possible & A_IN_B) != 0 && a.isAlternativeOf(b)) {
+            result |= A_IN_B;
+        }
+        if ((possible & B_IN_A) != 0 && b.isAlternativeOf(a)) {
+            result |= B_IN_A;
+        }
+        return result;
+    }
+
+    private static boolean accepts(final Dfa dfa, final String text) {
+        return dfa.longestMatch(text, 0, text.length(), new int[1]) == text.length();
+    }
+
+    /**
+     * Explores the states of both automata in step, looking for a string that one accepts and the other
+     * does not. The alphabet classes of the two automata are merged, so that each pair of states needs
+     * one transition per merged class.
+     */
+    private static int compareLanguages(final Dfa a, final Dfa b, final int checks) {
+        final List<Integer> starts = new ArrayList<Integer>();
+        for (int c = 0; c < a.classCount(); c++) {
+            starts.add(a.classStart(c));
+        }
+        for (int c = 0; c < b.classCount(); c++) {
+            starts.add(b.classStart(c));
+        }
+        Collections.sort(starts);
+        final List<int[]> classes = new ArrayList<int[]>();
+        for (int i = 0; i < starts.size(); i++) {
+            if (i == 0 || !starts.get(i).equals(starts.get(i - 1))) {
+                classes.add(new int[]{a.classOf(starts.get(i)), b.classOf(starts.get(i))});
+            }
+        }
+
+     // Pairs are numbered with DEAD as 0, so that a state of either automaton can be dead while the other is live
+        final int width = b.stateCount() + 1;
+        final BitSet visited = new BitSet();
+        final List<Integer> pending = new ArrayList<Integer>();
+        visited.set(width + 1);
+        pending.add(width + 1);
+        int result = checks;
+        while (!pending.isEmpty() && result != 0) {
+            final int pair = pending.remove(pending.size() - 1);
+            final int stateA = pair / width - 1, stateB = pair % width - 1;
+            final boolean acceptsA = stateA != Dfa.DEAD && a.acceptedRule(stateA) >= 0;
+            final boolean acceptsB = stateB != Dfa.DEAD && b.acceptedRule(stateB) >= 0;
+            if (acceptsA && !acceptsB) {
+                result &= ~A_IN_B;
+            }
+            if (acceptsB && !acceptsA) {
+                result &= ~B_IN_A;
+            }
+            for (int[] alphabetClass : classes) {
+                final int nextA = stateA == Dfa.DEAD ? Dfa.DEAD : a.transition(stateA, alphabetClass[0]);
+                final int nextB = stateB == Dfa.DEAD ? Dfa.DEAD : b.transition(stateB, alphabetClass[1]);
+                if (nextA == Dfa.DEAD && nextB == Dfa.DEAD) {
+                    continue;
+                }
+                final int next = (nextA + 1) * width + nextB + 1;
+                if (!visited.get(next)) {
+                    visited.set(next);
+                    pending.add(next);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,442 @@
+package net.codebox.readableregex;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random strings that match an expression, and 'near misses' that are similar to matching
+ * strings but do not match, for use as test data and benchmark inputs. The Token tree is converted into
+ * a generator once, when the instance is created, so producing each sample is cheap.
+ *
+ * Characters are chosen from the set that each part of the expression accepts, preferring printable
+ * ASCII characters where the set contains any. Alternatives are chosen with equal probability, and the
+ * number of iterations of each quantifier is chosen using a configurable distribution. The sequence of
+ * samples is determined by the seed, so runs can be repeated.
+ *
+ * Expressions that use only the regular subset of the Token API, or back-references, always produce a
+ * matching string. For expressions with look-arounds or atomic constructs, candidates are checked with
+ * the regex engine and discarded if they do not match. Expressions containing raw text are not supported.
+ *
+ * Instances are mutable, and should not be shared between threads; create one generator per thread,
+ * each with its own seed.
+ */
+public class SampleGenerator {
+ // Attempts made to produce a sample that satisfies the regex engine, before giving up
+    private static final int MAX_ATTEMPTS = 100;
+ // Characters preferred when a set contains them, so that samples look like ordinary text
+    private static final CodePointSet PRINTABLE = CodePointSet.range(0x20, 0x7E);
+ // Probability of choosing from the printable characters in a set that also contains others
+    private static final double PRINTABLE_PROBABILITY = 0.9;
+    private static final CodePointSet SURROGATES = CodePointSet.range(Character.MIN_SURROGATE, Character.MAX_SURROGATE);
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    /**
+     * The ways in which the number of iterations of a quantifier can be chosen.
+     */
+    public enum Repetitions {
+        /**
+         * Every permitted number of iterations is equally likely, up to the limit for unbounded quantifiers.
+         */
+        UNIFORM,
+        /**
+         * Each iteration beyond the minimum is added with a probability of one half, up to the limit, so short
+         * repetitions are most common.
+         */
+        GEOMETRIC,
+        /**
+         * The minimum number of iterations is always used.
+         */
+        MINIMUM
+    }
+
+    private final CompiledRegEx regex;
+    private final Node root;
+    private final Repetitions repetitions;
+    private final int maxExtraRepetitions;
+    private final boolean verify;
+    private final SplittableRandom random;
+    private final StringBuilder sample = new StringBuilder();
+    private final int[] groupStarts, groupEnds;
+    private char[] buffer = new char[0];
+
+    /**
+     * Initialises the instance, using GEOMETRIC repetitions with at most 8 iterations beyond the minimum.
+     *
+     * @param regex the expression for which samples will be generated
+     * @param seed the seed for the random number generator
+     *
+     * @throws IllegalArgumentException if the expression contains raw text
+     */
+    public SampleGenerator(final CompiledRegEx regex, final long seed) {
+        this(regex, seed, Repetitions.GEOMETRIC, 8);
+    }
+
+    /**
+     * Initialises the instance.
+     *
+     * @param regex the expression for which samples will be generated
+     * @param seed the seed for the random number generator
+     * @param repetitions determines how the number of iterations of each quantifier is chosen
+     * @param maxExtraRepetitions the largest number of iterations beyond the minimum that will be generated
+     * for a quantifier, if the quantifier does not have a lower maximum
+     *
+     * @throws IllegalArgumentException if the expression contains raw text, or if maxExtraRepetitions is negative
+     */
+    public SampleGenerator(final CompiledRegEx regex, final long seed, final Repetitions repetitions, final int maxExtraRepetitions) {
+        if (maxExtraRepetitions < 0) {
+            throw new IllegalArgumentException(String.format("The maximum number of extra repetitions (%d) cannot be negative", maxExtraRepetitions));
+        }
+        final ExpressionFeatures features = regex.features();
+        if (features.hasUnrecognisedText()) {
+            throw new IllegalArgumentException(String.format("Samples cannot be generated for '%s', because it contains raw text", regex));
+        }
+        this.regex               = regex;
+        this.repetitions         = repetitions;
+        this.maxExtraRepetitions = maxExtraRepetitions;
+        this.verify              = features.hasLookArounds() || features.hasAtomicConstructs() || features.hasBackReferences();
+        this.random              = new SplittableRandom(seed);
+
+        final int[] groupCount = {0};
+        this.root        = build(regex.token(), groupCount);
+        this.groupStarts = new int[groupCount[0] + 1];
+        this.groupEnds   = new int[groupCount[0] + 1];
+    }
+
+    /**
+     * @return a new string that matches the expression
+     *
+     * @throws IllegalStateException if the expression uses look-arounds or atomic constructs, and no
+     * matching string could be found
+     */
+    public String next() {
+        generate();
+        return sample.toString();
+    }
+
+    /**
+     * @return a new string that is similar to a matching string but does not match the expression, or
+     * null if no such string could be found, for example because the expression matches everything
+     */
+    public String nextNearMiss() {
+        return generateNearMiss() ? sample.toString() : null;
+    }
+
+    /**
+     * Writes matching strings to the output, each followed by a line feed. Strings are written through
+     * an internal buffer, so the output does not need to be buffered.
+     *
+     * @param output the destination for the samples
+     * @param count the number of samples to write
+     *
+     * @throws IOException if the output throws an IOException
+     */
+    public void write(final Writer output, final long count) throws IOException {
+        write(output, count, 0);
+    }
+
+    /**
+     * Writes a mixture of matching strings and near misses to the output, each followed by a line feed.
+     *
+     * @param output the destination for the samples
+     * @param count the number of samples to write
+     * @param nearMissFraction the proportion of the samples, between 0 and 1, that should be near misses
+     *
+     * @throws IOException if the output throws an IOException
+     */
+    public void write(final Writer output, final long count, final double nearMissFraction) throws IOException {
+        int buffered = 0;
+        for (long i = 0; i < count; i++) {
+            if (nearMissFraction > 0 && random.nextDouble() < nearMissFraction && generateNearMiss()) {
+                sample.append('\n');
+            } else {
+                generate();
+                sample.append('\n');
+            }
+            final int length = sample.length();
+            if (buffered + length > buffer.length) {
+                if (buffered > 0) {
+                    output.write(buffer, 0, buffered);
+                    buffered = 0;
+                }
+                if (length > buffer.length) {
+                    buffer = new char[Math.max(length, WRITE_BUFFER_SIZE)];
+                }
+            }
+            sample.getChars(0, length, buffer, buffered);
+            buffered += length;
+        }
+        output.write(buffer, 0, buffered);
+    }
+
+ // Leaves a matching string in 'sample'
+    private void generate() {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            sample.setLength(0);
+         // A group that did not take part in the match is marked with a start of -1
+            Arrays.fill(groupStarts, -1);
+            root.generate(this, sample);
+            if (!verify || regex.matches(sample)) {
+                return;
+            }
+        }
+        throw new IllegalStateException(String.format("Unable to generate a string matching '%s' after %d attempts", regex, MAX_ATTEMPTS));
+    }
+
+ // Leaves a non-matching string in 'sample', derived from a matching one by a single random edit
+    private boolean generateNearMiss() {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            generate();
+            final int length = sample.length();
+            switch (random.nextInt(length == 0 ? 1 : 4)) {
+                case 0:
+                    sample.insert(length == 0 ? 0 : random.nextInt(length + 1), randomPrintable());
+                    break;
+                case 1:
+                    sample.deleteCharAt(random.nextInt(length));
+                    break;
+                case 2:
+                    sample.setCharAt(random.nextInt(length), randomPrintable());
+                    break;
+                default:
+                    sample.setLength(random.nextInt(length));
+            }
+            if (!regex.matches(sample)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private char randomPrintable() {
+        return (char) (0x20 + random.nextInt(0x7F - 0x20));
+    }
+
+    private int repetitionCount(final int min, final int max) {
+        final int limit = max == Token.UNBOUNDED ? maxExtraRepetitions : Math.min(max - min, maxExtraRepetitions);
+        switch (repetitions) {
+            case UNIFORM:
+                return min + random.nextInt(limit + 1);
+            case GEOMETRIC:
+                int extra = 0;
+                while (extra < limit && random.nextBoolean()) {
+                    extra++;
+                }
+                return min + extra;
+            default:
+                return min;
+        }
+    }
+
+    private Node build(final Token token, final int[] groupCount) {
+        final Quantifier quantifier = token.quantifier();
+        if (quantifier == null) {
+            return buildUnquantified(token, groupCount);
+        }
+     // A quantifier applied to a token that requires brackets creates a capturing group, holding the last iteration
+        final int group = token.requiresBrackets() ? ++groupCount[0] : -1;
+        final Node repeated = buildUnquantified(token, groupCount);
+        return new Repeat(group >= 0 ? new Capture(repeated, group) : repeated, quantifier.min(), quantifier.max());
+    }
+
+    private Node buildUnquantified(final Token token, final int[] groupCount) {
+        switch (token.kind()) {
+            case LITERAL:
+                return new Literal(token.text());
+            case CHARACTER_CLASS:
+                return new CharacterClass(token.characters());
+            case ANYTHING:
+                return new Repeat(new CharacterClass(token.characters()), 0, Token.UNBOUNDED);
+            case SEQUENCE:
+            case ALTERNATION:
+                final Token[] children = token.children();
+                final Node[] nodes = new Node[children.length];
+                for (int i = 0; i < children.length; i++) {
+                    nodes[i] = build(children[i], groupCount);
+                }
+                return token.kind() == Token.Kind.SEQUENCE ? new Sequence(nodes) : new Choice(nodes);
+            case GROUP:
+                final int group = token.groupType() == Token.GroupType.CAPTURING ? ++groupCount[0] : -1;
+                final Node child = build(token.children()[0], groupCount);
+                if (token.groupType().isLookAround()) {
+                 // Look-arounds consume nothing, candidates are checked against the regex engine instead
+                    return new Sequence(new Node[0]);
+                }
+                return group >= 0 ? new Capture(child, group) : child;
+            case BACKREFERENCE:
+                return new BackReference(token.groupNumber());
+            case DICTIONARY:
+                return new Keyword(token.dictionary());
+            default:
+                throw new IllegalStateException("Unexpected token kind " + token.kind());
+        }
+    }
+
+    private abstract static class Node {
+        abstract void generate(SampleGenerator generator, StringBuilder sb);
+    }
+
+    private static final class Literal extends Node {
+        private final String text;
+
+        Literal(final String text) {
+            this.text = text;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            sb.append(text);
+        }
+    }
+
+    private static final class Keyword extends Node {
+        private final KeywordDictionary dictionary;
+
+        Keyword(final KeywordDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            sb.append(dictionary.randomKeyword(generator.random));
+        }
+    }
+
+    private static final class CharacterClass extends Node {
+        private final CodePointSet printable, other;
+        private final int[] printableStarts, otherStarts;
+        private final long[] printableOffsets, otherOffsets;
+
+        CharacterClass(final CodePointSet characters) {
+            this.printable = characters.intersect(PRINTABLE);
+            this.other     = characters.minus(SURROGATES);
+            if (other.isEmpty()) {
+                throw new IllegalArgumentException(String.format("No characters can be generated for the set %s", characters));
+            }
+            this.printableStarts  = starts(printable);
+            this.printableOffsets = offsets(printable);
+            this.otherStarts      = starts(other);
+            this.otherOffsets     = offsets(other);
+        }
+
+        private static int[] starts(final CodePointSet set) {
+            final int[] starts = new int[set.rangeCount()];
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = set.rangeFrom(i);
+            }
+            return starts;
+        }
+
+     // The number of code points in the ranges before each one, so that an index can be mapped to a code point
+        private static long[] offsets(final CodePointSet set) {
+            final long[] offsets = new long[set.rangeCount() + 1];
+            for (int i = 0; i < set.rangeCount(); i++) {
+                offsets[i + 1] = offsets[i] + set.rangeTo(i) - set.rangeFrom(i) + 1;
+            }
+            return offsets;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            final boolean usePrintable = !printable.isEmpty()
+                    && (printable.equals(other) || generator.random.nextDouble() < PRINTABLE_PROBABILITY);
+            final int[] starts   = usePrintable ? printableStarts : otherStarts;
+            final long[] offsets = usePrintable ? printableOffsets : otherOffsets;
+            final long index = generator.random.nextLong(offsets[starts.length]);
+
+            int low = 0, high = starts.length - 1;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (offsets[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            sb.appendCodePoint((int) (starts[low] + index - offsets[low]));
+        }
+    }
+
+    private static final class Sequence extends Node {
+        private final Node[] nodes;
+
+        Sequence(final Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            for (Node node : nodes) {
+                node.generate(generator, sb);
+            }
+        }
+    }
+
+    private static final class Choice extends Node {
+        private final Node[] nodes;
+
+        Choice(final Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            nodes[generator.random.nextInt(nodes.length)].generate(generator, sb);
+        }
+    }
+
+    private static final class Repeat extends Node {
+        private final Node node;
+        private final int min, max;
+
+        Repeat(final Node node, final int min, final int max) {
+            this.node = node;
+            this.min  = min;
+            this.max  = max;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            final int count = generator.repetitionCount(min, max);
+            for (int i = 0; i < count; i++) {
+                node.generate(generator, sb);
+            }
+        }
+    }
+
+    private static final class Capture extends Node {
+        private final Node node;
+        private final int group;
+
+        Capture(final Node node, final int group) {
+            this.node  = node;
+            this.group = group;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            final int start = sb.length();
+            node.generate(generator, sb);
+            generator.groupStarts[group] = start;
+            generator.groupEnds[group]   = sb.length();
+        }
+    }
+
+    private static final class BackReference extends Node {
+        private final int group;
+
+        BackReference(final int group) {
+            this.group = group;
+        }
+
+        @Override
+        void generate(final SampleGenerator generator, final StringBuilder sb) {
+            if (group < generator.groupStarts.length && generator.groupStarts[group] >= 0) {
+                for (int i = generator.groupStarts[group]; i < generator.groupEnds[group]; i++) {
+                    sb.append(sb.charAt(i));
+                }
+            }
+        }
+    }
+}
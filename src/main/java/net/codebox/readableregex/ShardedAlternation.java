@@ -0,0 +1,294 @@
+package net.codebox.readableregex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An alternation of many branches, such as a blocklist, which can be updated cheaply. Rather than combining
+ * every branch into a single expression, the branches are divided between a fixed number of shards by a hash
+ * of their text, and each shard is compiled separately, the first time that it is needed.
+ *
+ * Instances are immutable. Adding or removing a branch creates a new instance which shares every other shard,
+ * including its compiled expression, with the original, so an update only copies the list of shards and the
+ * branches of one shard, and only that shard is recompiled. With s shards and n branches, an update costs
+ * O(s + n/s) and compiles about n/s branches, rather than O(n) for a single expression; in return, matching
+ * applies up to s expressions to the input (each of which is skipped quickly if its required literals are
+ * absent). A shard count close to the square root of the expected number of branches balances the two.
+ *
+ * The set of branches is unordered, and a branch that is already present is not added again. Branches are
+ * identified by their text, so two Tokens that render the same way are treated as the same branch. Branches
+ * may not contain back-references, since the groups of a shard are numbered across all of its branches.
+ */
+public final class ShardedAlternation {
+    private final CharacterProfile profile;
+    private final Shard[] shards;
+    private final int size;
+
+    private static final class Shard {
+        static final Shard EMPTY = new Shard(new Token[0], new String[0]);
+
+        final Token[] branches;
+        final String[] texts;
+     // Compiled on demand, and shared by every version of the alternation that contains this shard
+        volatile CompiledRegEx regex;
+
+        Shard(final Token[] branches, final String[] texts) {
+            this.branches = branches;
+            this.texts = texts;
+        }
+
+        int indexOf(final String text) {
+            for (int i = 0; i < texts.length; i++) {
+                if (texts[i].equals(text)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        CompiledRegEx regex(final CharacterProfile profile) {
+            CompiledRegEx compiled = regex;
+            if (compiled == null && branches.length > 0) {
+                compiled = RegExBuilder.compile(profile, branches.length == 1 ? branches[0] : Token.or(branches));
+                regex = compiled;
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * Creates an empty alternation, whose shards will be compiled using the ASCII profile.
+     *
+     * @param shardCount the number of shards into which branches are divided
+     */
+    public ShardedAlternation(final int shardCount) {
+        this(CharacterProfile.ASCII, shardCount);
+    }
+
+    /**
+     * Creates an empty alternation.
+     *
+     * @param profile the profile used to compile each shard
+     * @param shardCount the number of shards into which branches are divided
+     */
+    public ShardedAlternation(final CharacterProfile profile, final int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException(String.format("The number of shards (%d) must be at least 1", shardCount));
+        }
+        this.profile = profile;
+        this.shards = new Shard[shardCount];
+        Arrays.fill(shards, Shard.EMPTY);
+        this.size = 0;
+    }
+
+    private ShardedAlternation(final CharacterProfile profile, final Shard[] shards, final int size) {
+        this.profile = profile;
+        this.shards = shards;
+        this.size = size;
+    }
+
+    private int shardOf(final String text) {
+        final int hash = text.hashCode() * 0x9E3779B9;
+        return (int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % shards.length);
+    }
+
+    /**
+     * Adds a branch.
+     *
+     * @param branch the branch to be added
+     *
+     * @return an alternation that also contains the branch, or this instance if it is already present
+     *
+     * @throws IllegalArgumentException if the branch contains a back-reference
+     */
+    public ShardedAlternation with(final Token branch) {
+        return withAll(Collections.singletonList(branch));
+    }
+
+    /**
+     * Adds several branches, copying each affected shard once.
+     *
+     * @param branches the branches to be added
+     *
+     * @return an alternation that also contains the branches, or this instance if they are all present
+     *
+     * @throws IllegalArgumentException if any of the branches contains a back-reference
+     */
+    public ShardedAlternation withAll(final Collection<? extends Token> branches) {
+        final List<List<Token>> added = new ArrayList<List<Token>>(Collections.<List<Token>>nCopies(shards.length, null));
+        final List<List<String>> addedTexts = new ArrayList<List<String>>(Collections.<List<String>>nCopies(shards.length, null));
+        int addedCount = 0;
+        for (Token branch : branches) {
+            final String text = branch.toString();
+            if (ExpressionFeatures.containsBackReference(branch)) {
+                throw new IllegalArgumentException(String.format(
+                        "The branch '%s' contains a back-reference, which would refer to the groups of other branches in its shard", text));
+            }
+            final int shard = shardOf(text);
+            if (shards[shard].indexOf(text) >= 0 || (addedTexts.get(shard) != null && addedTexts.get(shard).contains(text))) {
+                continue;
+            }
+            if (added.get(shard) == null) {
+                added.set(shard, new ArrayList<Token>());
+                addedTexts.set(shard, new ArrayList<String>());
+            }
+            added.get(shard).add(branch);
+            addedTexts.get(shard).add(text);
+            addedCount++;
+        }
+        if (addedCount == 0) {
+            return this;
+        }
+
+        final Shard[] newShards = shards.clone();
+        for (int i = 0; i < shards.length; i++) {
+            if (added.get(i) != null) {
+                final Token[] newBranches = Arrays.copyOf(shards[i].branches, shards[i].branches.length + added.get(i).size());
+                final String[] newTexts = Arrays.copyOf(shards[i].texts, newBranches.length);
+                for (int j = 0; j < added.get(i).size(); j++) {
+                    newBranches[shards[i].branches.length + j] = added.get(i).get(j);
+                    newTexts[shards[i].texts.length + j] = addedTexts.get(i).get(j);
+                }
+                newShards[i] = new Shard(newBranches, newTexts);
+            }
+        }
+        return new ShardedAlternation(profile, newShards, size + addedCount);
+    }
+
+    /**
+     * Removes a branch.
+     *
+     * @param branch the branch to be removed, or any Token that renders the same way
+     *
+     * @return an alternation that does not contain the branch, or this instance if it was not present
+     */
+    public ShardedAlternation without(final Token branch) {
+        final String text = branch.toString();
+        final int shard = shardOf(text);
+        final int index = shards[shard].indexOf(text);
+        if (index < 0) {
+            return this;
+        }
+
+        final Shard old = shards[shard];
+        final Shard[] newShards = shards.clone();
+        if (old.branches.length == 1) {
+            newShards[shard] = Shard.EMPTY;
+        } else {
+            final Token[] newBranches = new Token[old.branches.length - 1];
+            final String[] newTexts = new String[newBranches.length];
+            System.arraycopy(old.branches, 0, newBranches, 0, index);
+            System.arraycopy(old.branches, index + 1, newBranches, index, newBranches.length - index);
+            System.arraycopy(old.texts, 0, newTexts, 0, index);
+            System.arraycopy(old.texts, index + 1, newTexts, index, newTexts.length - index);
+            newShards[shard] = new Shard(newBranches, newTexts);
+        }
+        return new ShardedAlternation(profile, newShards, size - 1);
+    }
+
+    /**
+     * @param branch a Token
+     *
+     * @return true if a branch that renders the same way as the Token is present
+     */
+    public boolean contains(final Token branch) {
+        final String text = branch.toString();
+        return shards[shardOf(text)].indexOf(text) >= 0;
+    }
+
+    /**
+     * @return the number of branches
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of shards into which the branches are divided
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return the branches, grouped by shard
+     */
+    public List<Token> branches() {
+        final List<Token> branches = new ArrayList<Token>(size);
+        for (Shard shard : shards) {
+            branches.addAll(Arrays.asList(shard.branches));
+        }
+        return Collections.unmodifiableList(branches);
+    }
+
+    /**
+     * Combines the branches into a single Token, for use where one expression is required. The Token must be
+     * built again after every update, so this should not be used on the update path.
+     *
+     * @return an alternation of every branch
+     */
+    public Token toToken() {
+        final List<Token> branches = branches();
+        return branches.size() == 1 ? branches.get(0) : Token.or(branches.toArray(new Token[branches.size()]));
+    }
+
+    /**
+     * Compiles every shard that has not yet been compiled, so that the next match does not pay for it. This
+     * is usually called after an update, before the new version is published to the threads that use it.
+     *
+     * @return this instance
+     */
+    public ShardedAlternation compile() {
+        for (Shard shard : shards) {
+            shard.regex(profile);
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether a branch matches the whole of the input.
+     *
+     * @param input the text to be checked
+     *
+     * @return true if any branch matches the whole of the input
+     */
+    public boolean matches(final CharSequence input) {
+        for (Shard shard : shards) {
+            final CompiledRegEx regex = shard.regex(profile);
+            if (regex != null && regex.matches(input)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a branch matches any part of the input.
+     *
+     * @param input the text to be searched
+     *
+     * @return true if any branch matches part of the input
+     */
+    public boolean find(final CharSequence input) {
+        for (Shard shard : shards) {
+            final CompiledRegEx regex = shard.regex(profile);
+            if (regex != null && regex.find(input)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+ // The compiled expression for a shard, or null if it is empty, exposed so that tests can check what is shared
+    CompiledRegEx shardRegEx(final int shard) {
+        return shards[shard].regex(profile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d branches in %d shards", size, shards.length);
+    }
+}
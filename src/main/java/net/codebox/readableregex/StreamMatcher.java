@@ -0,0 +1,149 @@
+package net.codebox.readableregex;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+
+/**
+ * Finds the matches of a CompiledRegEx in text that arrives as a series of chunks. The matches reported
+ * are the same as those that Matcher.find() would report if the entire stream were available at once,
+ * including matches that span chunk boundaries.
+ *
+ * A match is only reported once it is certain that later text cannot change it, so the text from the
+ * earliest undecided position onwards is carried over to the next chunk. For expressions with a bounded
+ * maximum length (see CompiledRegEx.maxLength()) that can be converted into an automaton, fewer than
+ * maxLength() characters are carried; otherwise the amount carried depends on how far the regex engine
+ * needs to look ahead. A few characters preceding the carried text are also retained, so that word
+ * boundaries and short look-behinds behave as they would for the complete text.
+ *
+ * Instances are mutable, and should not be shared between threads.
+ */
+public class StreamMatcher {
+ // Characters kept before the resume position, so that look-behinds and boundary checks have some context
+    private static final int CONTEXT_LENGTH = 16;
+
+    private final int decidingLength;
+    private final StringBuilder buffer = new StringBuilder();
+    private final Matcher matcher;
+    private long bufferStart;
+    private int scanFrom;
+    private long lastEmptyMatch = -1;
+    private boolean finished;
+
+    /**
+     * Initialises the instance.
+     *
+     * @param regex the expression to be matched
+     */
+    public StreamMatcher(final CompiledRegEx regex) {
+        this.matcher = regex.pattern().matcher(buffer);
+     // When the engine cannot look beyond the end of a match, the text within maxLength of its start decides it
+        final boolean bounded = regex.maxLength() != Token.UNBOUNDED && Nfa.findUnsupportedConstruct(regex.token()) == null;
+        this.decidingLength = bounded ? regex.maxLength() : -1;
+    }
+
+    /**
+     * Initialises the instance with state previously taken from another instance, so that a stream can
+     * be resumed, see FileFollower.
+     */
+    StreamMatcher(final CompiledRegEx regex, final CharSequence carried, final long bufferStart, final int scanFrom, final long lastEmptyMatch) {
+        this(regex);
+        this.buffer.append(carried);
+        this.bufferStart    = bufferStart;
+        this.scanFrom       = scanFrom;
+        this.lastEmptyMatch = lastEmptyMatch;
+    }
+
+    /**
+     * Adds a chunk of text to the stream, and reports any matches that can now be decided.
+     *
+     * @param chunk the next part of the stream
+     * @param sink receives the matches, in the order in which they occur
+     *
+     * @throws IllegalStateException if finish() has already been called
+     */
+    public void append(final CharSequence chunk, final Consumer<? super MatchEvent> sink) {
+        if (finished) {
+            throw new IllegalStateException("The end of the stream has already been reached");
+        }
+        buffer.append(chunk);
+        scan(false, sink);
+    }
+
+    /**
+     * Marks the end of the stream, and reports any matches that remain.
+     *
+     * @param sink receives the matches, in the order in which they occur
+     */
+    public void finish(final Consumer<? super MatchEvent> sink) {
+        if (!finished) {
+            scan(true, sink);
+            finished = true;
+        }
+    }
+
+    /**
+     * @return the number of chars that have been added to the stream
+     */
+    public long position() {
+        return bufferStart + buffer.length();
+    }
+
+    /**
+     * @return the number of chars currently held over until more of the stream is available
+     */
+    public int carriedLength() {
+        return buffer.length();
+    }
+
+    String carriedText() {
+        return buffer.toString();
+    }
+
+    long carriedStart() {
+        return bufferStart;
+    }
+
+    int scanFrom() {
+        return scanFrom;
+    }
+
+    long lastEmptyMatch() {
+        return lastEmptyMatch;
+    }
+
+    private void scan(final boolean endOfStream, final Consumer<? super MatchEvent> sink) {
+        final int length = buffer.length();
+        matcher.reset(buffer).useTransparentBounds(true).useAnchoringBounds(false).region(scanFrom, length);
+
+        int findFrom = scanFrom;
+        while (matcher.find()) {
+            if (!endOfStream && matcher.hitEnd()) {
+             // Reading further might change this match, or allow an earlier one
+                discardBefore(undecidedFrom(findFrom, length));
+                return;
+            }
+            final int start = matcher.start(), end = matcher.end();
+            findFrom = end;
+            if (start == end) {
+                if (bufferStart + start == lastEmptyMatch) {
+                    continue;
+                }
+                lastEmptyMatch = bufferStart + start;
+            }
+            sink.accept(new MatchEvent(bufferStart + start, bufferStart + end, buffer.substring(start, end)));
+        }
+        final int resume = !endOfStream && matcher.hitEnd() ? undecidedFrom(findFrom, length) : length;
+        discardBefore(resume);
+    }
+
+    private int undecidedFrom(final int findFrom, final int length) {
+        return decidingLength < 0 ? findFrom : Math.max(findFrom, length - decidingLength + 1);
+    }
+
+    private void discardBefore(final int resume) {
+        final int keepFrom = Math.max(0, resume - CONTEXT_LENGTH);
+        buffer.delete(0, keepFrom);
+        bufferStart += keepFrom;
+        scanFrom = resume - keepFrom;
+    }
+}
@@ -1,25 +1,652 @@
 package net.codebox.readableregex;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
  * Class representing part of a regular expression.
  */
 public class Token {
+    /**
+     * Value returned by {@link #maxLength()} when there is no upper limit on the length of a match.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * The different types of Token that can appear in an expression tree. The kind determines which of the
+     * accessors describe the token: text() for a LITERAL, characters() for a CHARACTER_CLASS or ANYTHING, the
+     * children for a SEQUENCE, ALTERNATION or GROUP, groupNumber() for a BACKREFERENCE and dictionary() for a
+     * DICTIONARY. A RAW token was created from text that could not be analysed, and has only its rendered form.
+     */
+    public enum Kind {
+        RAW, LITERAL, CHARACTER_CLASS, ANYTHING, SEQUENCE, ALTERNATION, GROUP, BACKREFERENCE, DICTIONARY
+    }
+
+    /**
+     * The different types of bracketed group that can be created.
+     */
+    public enum GroupType {
+        CAPTURING("("), NON_CAPTURING("(?:"), INDEPENDENT("(?>"), CASE_INSENSITIVE("(?iu:"),
+        POSITIVE_LOOK_AHEAD("(?="), NEGATIVE_LOOK_AHEAD("(?!"),
+        POSITIVE_LOOK_BEHIND("(?<="), NEGATIVE_LOOK_BEHIND("(?<!");
+
+        final String prefix;
+
+        GroupType(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * @return true if the group is a look-ahead or look-behind, which matches without consuming any characters
+         */
+        public boolean isLookAround() {
+            return this != CAPTURING && this != NON_CAPTURING && this != INDEPENDENT && this != CASE_INSENSITIVE;
+        }
+    }
+
+    /**
+     * The character classes whose rendering depends on the CharacterProfile in use.
+     */
+    enum PredefinedClass {
+        DIGIT, LETTER
+    }
+
     private Quantifier quantifier;
     private boolean requiresBrackets;
     private String tokenString;
-    
+    private PredefinedClass predefinedClass;
+
+    private final Kind kind;
+    private final Token[] children;
+    private final String text;
+    private final CodePointSet characters;
+    private final int groupNumber;
+    private final GroupType groupType;
+    private final KeywordDictionary dictionary;
+    private final int minLength, maxLength;
+
     protected Token(String tokenString, boolean requiresBrackets, Quantifier quantifier) {
+        this(tokenString, requiresBrackets, quantifier, Kind.RAW, new Token[0], null, null, 0, null);
+    }
+    
+    protected Token(Token token, Quantifier quantifier) {
+        this(token.tokenString, token.requiresBrackets, quantifier, token.kind, token.children, token.text,
+                token.characters, token.groupNumber, token.groupType, token.dictionary);
+        this.predefinedClass = token.predefinedClass;
+    }
+
+    private Token(final String tokenString, final boolean requiresBrackets, final Quantifier quantifier,
+            final Kind kind, final Token[] children, final String text, final CodePointSet characters,
+            final int groupNumber, final GroupType groupType) {
+        this(tokenString, requiresBrackets, quantifier, kind, children, text, characters, groupNumber, groupType, null);
+    }
+
+    private Token(final String tokenString, final boolean requiresBrackets, final Quantifier quantifier,
+            final Kind kind, final Token[] children, final String text, final CodePointSet characters,
+            final int groupNumber, final GroupType groupType, final KeywordDictionary dictionary) {
         this.tokenString      = tokenString;
         this.requiresBrackets = requiresBrackets;
         this.quantifier       = quantifier;
+        this.kind             = kind;
+        this.children         = children;
+        this.text             = text;
+        this.characters       = characters;
+        this.groupNumber      = groupNumber;
+        this.groupType        = groupType;
+        this.dictionary       = dictionary;
+
+        final int innerMin = innerMinLength(), innerMax = innerMaxLength();
+        if (quantifier == null || kind == Kind.ANYTHING){
+         // Pattern ignores a repetition count after '.*', and '+' or '?' only make it possessive or lazy
+            this.minLength = innerMin;
+            this.maxLength = innerMax;
+        } else {
+            this.minLength = multiply(innerMin, quantifier.min());
+            this.maxLength = multiply(innerMax, quantifier.max());
+        }
     }
-    
-    protected Token(Token token, Quantifier quantifier) {
-        this.tokenString      = token.tokenString;
-        this.requiresBrackets = token.requiresBrackets;
-        this.quantifier       = quantifier;        
+
+    /**
+     * Recreates a token from its parts, without re-rendering or re-analysing anything, see TokenCodec.
+     */
+    static Token restore(final String tokenString, final boolean requiresBrackets, final Quantifier quantifier, final Kind kind,
+            final Token[] children, final String text, final CodePointSet characters, final int groupNumber, final GroupType groupType,
+            final PredefinedClass predefinedClass) {
+        final Token token = new Token(tokenString, requiresBrackets, quantifier, kind, children, text, characters, groupNumber, groupType);
+        token.predefinedClass = predefinedClass;
+        return token;
+    }
+
+    private static Token literal(final String tokenString, final boolean requiresBrackets, final String text) {
+        return new Token(tokenString, requiresBrackets, null, Kind.LITERAL, new Token[0], text, null, 0, null);
+    }
+
+    static Token characterClass(final String tokenString, final CodePointSet characters) {
+        return new Token(tokenString, false, null, Kind.CHARACTER_CLASS, new Token[0], null, characters, 0, null);
+    }
+
+    private static Token singleCharacter(final String tokenString, final int codePoint) {
+        return characterClass(tokenString, CodePointSet.of(codePoint));
+    }
+
+    private static Token bracketedGroup(final GroupType groupType, final Token[] tokens) {
+        return new Token(groupType.prefix + RegExBuilder.build(tokens) + ")", false, null, Kind.GROUP,
+                new Token[]{sequence(tokens, false)}, null, null, 0, groupType);
+    }
+
+    /**
+     * Combines a series of tokens into a single Token that matches each of them in turn. An 'or' token
+     * that appears without a quantifier is not enclosed in brackets when it is rendered, so its
+     * alternatives extend outwards to the neighbouring tokens - this is reflected in the structure of
+     * the returned Token, which will be an alternation of sequences in that case.
+     *
+     * @param tokens the tokens to be combined
+     * @param requiresBrackets true if the result must be enclosed in brackets when a quantifier is applied
+     *
+     * @return a new Token instance
+     */
+    static Token sequence(final Token[] tokens, final boolean requiresBrackets) {
+        final String tokenString = RegExBuilder.build(tokens);
+        final List<Token> branches = new ArrayList<Token>();
+        List<Token> current = new ArrayList<Token>();
+
+        for (Token token : tokens) {
+            if (token.isUnbracketedAlternation()) {
+                final int last = token.children.length - 1;
+                current.add(token.children[0]);
+                branches.add(sequenceOf(current));
+                for (int i = 1; i < last; i++) {
+                    branches.add(token.children[i]);
+                }
+                current = new ArrayList<Token>();
+                current.add(token.children[last]);
+            } else {
+                current.add(token);
+            }
+        }
+
+        if (branches.isEmpty()) {
+            return new Token(tokenString, requiresBrackets, null, Kind.SEQUENCE, tokens.clone(), null, null, 0, null);
+        }
+        branches.add(sequenceOf(current));
+        return new Token(tokenString, requiresBrackets, null, Kind.ALTERNATION,
+                branches.toArray(new Token[branches.size()]), null, null, 0, null);
+    }
+
+    private static Token sequenceOf(final List<Token> tokens) {
+        if (tokens.size() == 1) {
+            return tokens.get(0);
+        }
+        return sequence(tokens.toArray(new Token[tokens.size()]), true);
+    }
+
+    private boolean isUnbracketedAlternation() {
+        return kind == Kind.ALTERNATION && quantifier == null && children.length > 1;
+    }
+
+    private int innerMinLength() {
+        switch (kind) {
+            case LITERAL:
+                return text.length();
+            case CHARACTER_CLASS:
+                return 1;
+            case SEQUENCE:
+                int sum = 0;
+                for (Token child : children) {
+                    sum = add(sum, child.minLength);
+                }
+                return sum;
+            case ALTERNATION:
+                int min = UNBOUNDED;
+                for (Token child : children) {
+                    min = Math.min(min, child.minLength);
+                }
+                return min;
+            case GROUP:
+                return groupType.isLookAround() ? 0 : children[0].minLength;
+            case DICTIONARY:
+                return dictionary.minLength();
+            default:
+                return 0;
+        }
+    }
+
+    private int innerMaxLength() {
+        switch (kind) {
+            case LITERAL:
+                return text.length();
+            case CHARACTER_CLASS:
+             // A supplementary character occupies 2 chars, but is matched as a single code point
+                return characters.hasSupplementary() ? 2 : 1;
+            case SEQUENCE:
+                int sum = 0;
+                for (Token child : children) {
+                    sum = add(sum, child.maxLength);
+                }
+                return sum;
+            case ALTERNATION:
+                int max = 0;
+                for (Token child : children) {
+                    max = Math.max(max, child.maxLength);
+                }
+                return max;
+            case GROUP:
+                return groupType.isLookAround() ? 0 : children[0].maxLength;
+            case DICTIONARY:
+                return dictionary.maxLength();
+            default:
+             // Back-references and unrecognised tokens could match text of any length
+                return UNBOUNDED;
+        }
+    }
+
+    private static int add(final int a, final int b) {
+        if (a == UNBOUNDED || b == UNBOUNDED) {
+            return UNBOUNDED;
+        }
+        return (int) Math.min((long) a + b, UNBOUNDED);
+    }
+
+    private static int multiply(final int a, final int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        if (a == UNBOUNDED || b == UNBOUNDED) {
+            return UNBOUNDED;
+        }
+        return (int) Math.min((long) a * b, UNBOUNDED);
+    }
+
+    /**
+     * Returns the minimum number of characters that any match of this token will contain.
+     * 
+     * @return the minimum length of a match
+     */
+    public int minLength() {
+        return minLength;
+    }
+
+    /**
+     * Returns the maximum number of characters that any match of this token can contain.
+     * 
+     * @return the maximum length of a match, or UNBOUNDED if there is no upper limit
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return the type of this token, which determines which of the other accessors describe it
+     */
+    public final Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return the number of tokens directly contained by this one
+     */
+    public final int childCount() {
+        return children.length;
+    }
+
+    /**
+     * @param index the position of the child, from 0 to childCount() - 1
+     *
+     * @return a token contained by this one: a part of a SEQUENCE, an alternative of an ALTERNATION, or
+     * the contents of a GROUP
+     */
+    public final Token child(final int index) {
+        return children[index];
+    }
+
+ // The array is shared rather than copied, so it is only available within the package
+    Token[] children() {
+        return children;
+    }
+
+    /**
+     * @return the text matched by a LITERAL token, or null for other kinds
+     */
+    public final String text() {
+        return text;
+    }
+
+    /**
+     * @return the characters matched by a CHARACTER_CLASS token, or by each character of an ANYTHING token,
+     * or null for other kinds
+     */
+    public final CodePointSet characters() {
+        return characters;
+    }
+
+    /**
+     * @return the number of the group referred to by a BACKREFERENCE token, or 0 for other kinds
+     */
+    public final int groupNumber() {
+        return groupNumber;
+    }
+
+    /**
+     * @return the type of a GROUP token, or null for other kinds
+     */
+    public final GroupType groupType() {
+        return groupType;
+    }
+
+    /**
+     * @return the keyword dictionary matched by a DICTIONARY token, or null for other kinds
+     */
+    public final KeywordDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the quantifier applied to this token, or null if it is matched exactly once
+     */
+    public final Quantifier quantifier() {
+        return quantifier;
+    }
+
+    PredefinedClass predefinedClass() {
+        return predefinedClass;
+    }
+
+    boolean requiresBrackets() {
+        return requiresBrackets;
+    }
+
+    /**
+     * @return the text of the token, excluding any quantifier and the brackets that accompany it
+     */
+    String tokenString() {
+        return tokenString;
+    }
+
+    /**
+     * @return the text rendered by text() for the same literal
+     */
+    static String escapedLiteral(final String text) {
+        return Utils.escapeSpecial(text, SPECIAL_CHARS);
+    }
+
+    /**
+     * Creates a copy of this token that matches text regardless of case, using Unicode simple case
+     * mapping (as Pattern does with the CASE_INSENSITIVE and UNICODE_CASE flags). Each part of the token
+     * is given the cheapest form: character classes, and literal text containing only a few letters, are
+     * expanded to list every case variant (for example text("ab") becomes [aA][bB]), so the regex engine
+     * performs ordinary comparisons; longer text, back-references and unrecognised expressions are wrapped
+     * in a scoped (?iu:...) group, so that only those parts pay the cost of case folding. Parts that are not
+     * affected by case are left unchanged.
+     *
+     * @return a case-insensitive Token instance
+     *
+     * @throws IllegalArgumentException if the token contains a keyword dictionary, whose keywords are always matched exactly
+     */
+    public Token ignoreCase() {
+        if (!isAffectedByCase()) {
+            return this;
+        }
+        switch (kind) {
+            case LITERAL:
+                if (casedCharacterCount(text) <= MAX_EXPANDED_LETTERS) {
+                    return expandCaseVariants();
+                }
+                return caseInsensitiveGroup();
+            case CHARACTER_CLASS:
+                return expandCaseVariants();
+            case DICTIONARY:
+                throw new IllegalArgumentException("A keyword dictionary cannot be made case-insensitive, its keywords must be folded before it is built");
+            case SEQUENCE:
+            case ALTERNATION:
+            case GROUP:
+                final Token[] converted = new Token[children.length];
+                for (int i = 0; i < children.length; i++) {
+                    converted[i] = children[i].ignoreCase();
+                }
+                return withChildren(kind, converted, null);
+            default:
+             // Unrecognised text cannot be rewritten, and back-references must compare text case-insensitively
+                return caseInsensitiveGroup();
+        }
+    }
+
+    /**
+     * Creates a token that matches the specified series of tokens regardless of case, see {@link #ignoreCase()}.
+     *
+     * @param tokens the tokens to be matched
+     *
+     * @return a new Token instance
+     */
+    public static Token caseInsensitive(final Token... tokens) {
+        return sequence(tokens, true).ignoreCase();
+    }
+
+ // Literals containing more letters than this are matched using a scoped flag rather than one class per letter
+    private static final int MAX_EXPANDED_LETTERS = 3;
+
+    private Token caseInsensitiveGroup() {
+        return new Token(GroupType.CASE_INSENSITIVE.prefix + this + ")", false, null, Kind.GROUP,
+                new Token[]{foldCase()}, null, null, 0, GroupType.CASE_INSENSITIVE);
+    }
+
+    private boolean isAffectedByCase() {
+        switch (kind) {
+            case LITERAL:
+                return casedCharacterCount(text) > 0;
+            case CHARACTER_CLASS:
+                return !foldedCharacters().equals(characters);
+            case ANYTHING:
+                return false;
+            case RAW:
+            case BACKREFERENCE:
+            case DICTIONARY:
+                return true;
+            default:
+                for (Token child : children) {
+                    if (child.isAffectedByCase()) {
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+
+    private static int casedCharacterCount(final String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+            if (CaseFolding.isCased(text.codePointAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+ // A negated class excludes every case variant of the characters it lists, as it would under the CASE_INSENSITIVE flag
+    private CodePointSet foldedCharacters() {
+        if (isNegatedClass()) {
+            return CaseFolding.closure(characters.complement()).complement();
+        }
+        return CaseFolding.closure(characters);
+    }
+
+    private boolean isNegatedClass() {
+        return tokenString.startsWith("[^");
+    }
+
+ // Rewrites a literal or class so that every case variant is listed explicitly in a character class
+    private Token expandCaseVariants() {
+        if (kind == Kind.CHARACTER_CLASS) {
+            final CodePointSet folded = foldedCharacters();
+            final String classString = isNegatedClass()
+                    ? "[^" + classContents(folded.complement()) + "]"
+                    : "[" + classContents(folded) + "]";
+            return new Token(classString, requiresBrackets, quantifier, kind, children, null, folded, 0, null);
+        }
+        final List<Token> parts = new ArrayList<Token>();
+        for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+            final int codePoint = text.codePointAt(i);
+            final CodePointSet variants = CaseFolding.variantsOf(codePoint);
+            if (variants.size() > 1) {
+                parts.add(characterClass("[" + classContents(variants) + "]", variants));
+            } else {
+                parts.add(literal(escapedText(codePoint), false, new String(Character.toChars(codePoint))));
+            }
+        }
+        return withChildren(Kind.SEQUENCE, parts.toArray(new Token[parts.size()]), null);
+    }
+
+ // Rewrites the tree so that it describes case-insensitive matching, without changing the way it is rendered
+    private Token foldCase() {
+        switch (kind) {
+            case LITERAL:
+                if (casedCharacterCount(text) == 0) {
+                    return this;
+                }
+                final List<Token> parts = new ArrayList<Token>();
+                for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+                    final int codePoint = text.codePointAt(i);
+                    parts.add(characterClass(escapedText(codePoint), CaseFolding.variantsOf(codePoint)));
+                }
+                return new Token(tokenString, requiresBrackets, quantifier, Kind.SEQUENCE,
+                        parts.toArray(new Token[parts.size()]), null, null, 0, null);
+            case CHARACTER_CLASS:
+                return new Token(tokenString, requiresBrackets, quantifier, kind, children, null, foldedCharacters(), 0, null);
+            case SEQUENCE:
+            case ALTERNATION:
+            case GROUP:
+                final Token[] folded = new Token[children.length];
+                for (int i = 0; i < children.length; i++) {
+                    folded[i] = children[i].foldCase();
+                }
+                return new Token(tokenString, requiresBrackets, quantifier, kind, folded, text, characters, groupNumber, groupType);
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * @param newChildren the children to replace those of this token
+     *
+     * @return a Token of the same kind, with the same quantifier, containing the new children
+     */
+    Token withChildren(final Token[] newChildren) {
+        return withChildren(kind, newChildren, null);
+    }
+
+ // Creates a copy of this token with different children, re-rendering the text from them if none is supplied
+    private Token withChildren(final Kind newKind, final Token[] newChildren, final String newTokenString) {
+        final StringBuilder sb = new StringBuilder();
+        if (newTokenString != null) {
+            sb.append(newTokenString);
+        } else if (newKind == Kind.GROUP) {
+            sb.append(groupType.prefix).append(newChildren[0]).append(')');
+        } else {
+            for (int i = 0; i < newChildren.length; i++) {
+                if (i > 0 && newKind == Kind.ALTERNATION) {
+                    sb.append('|');
+                }
+                sb.append(newChildren[i]);
+            }
+        }
+        return new Token(sb.toString(), requiresBrackets, quantifier, newKind, newChildren, null, null, groupNumber, groupType);
+    }
+
+    private static String escapedText(final int codePoint) {
+        return Utils.escapeSpecial(new String(Character.toChars(codePoint)), SPECIAL_CHARS);
+    }
+
+ // Lists the contents of a set in the form used between the square brackets of a character class
+    private static String classContents(final CodePointSet set) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < set.rangeCount(); i++) {
+            final int from = set.rangeFrom(i), to = set.rangeTo(i);
+            appendClassCharacter(sb, from);
+            if (to > from + 1) {
+                sb.append('-');
+            }
+            if (to > from) {
+                appendClassCharacter(sb, to);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendClassCharacter(final StringBuilder sb, final int codePoint) {
+        if (codePoint < 0x20 || codePoint > 0x7E) {
+            sb.append("\\x{").append(Integer.toHexString(codePoint).toUpperCase()).append('}');
+        } else {
+            if ("\\[]^-&".indexOf(codePoint) >= 0) {
+                sb.append('\\');
+            }
+            sb.append((char) codePoint);
+        }
+    }
+
+    /**
+     * Renders the tree using the specified profile, which determines the characters matched by the
+     * predefined classes and restricts the characters that any class is assumed to match.
+     *
+     * @param profile the profile to be applied
+     *
+     * @return a Token rendered with the profile, which is this instance if nothing needed to change
+     */
+    Token withProfile(final CharacterProfile profile) {
+        switch (kind) {
+            case CHARACTER_CLASS:
+                if (predefinedClass != null) {
+                    final Token token = new Token(profile.render(predefinedClass), requiresBrackets, quantifier, kind, children,
+                            null, profile.restrict(profile.characters(predefinedClass)), 0, null);
+                    token.predefinedClass = predefinedClass;
+                    return token;
+                }
+                return withCharacters(profile.restrict(characters));
+            case ANYTHING:
+                return withCharacters(profile.restrict(characters));
+            case SEQUENCE:
+            case ALTERNATION:
+            case GROUP:
+                final Token[] converted = new Token[children.length];
+                boolean changed = false;
+                for (int i = 0; i < children.length; i++) {
+                    converted[i] = children[i].withProfile(profile);
+                    changed |= converted[i] != children[i];
+                }
+                return changed ? withChildren(kind, converted, null) : this;
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Rebuilds the tree with the alternatives of some 'or' tokens placed in a different order.
+     *
+     * @param orders maps each 'or' token to be changed (by identity) to the new order of its alternatives,
+     * as a list of indexes into its current children
+     *
+     * @return a Token with the new orders applied, which is this instance if nothing needed to change
+     */
+    Token withBranchOrders(final Map<Token, int[]> orders) {
+        if (children.length == 0) {
+            return this;
+        }
+        final int[] order = kind == Kind.ALTERNATION ? orders.get(this) : null;
+        final Token[] converted = new Token[children.length];
+        boolean changed = false;
+        for (int i = 0; i < children.length; i++) {
+            final int index = order == null ? i : order[i];
+            converted[i] = children[index].withBranchOrders(orders);
+            changed |= converted[i] != children[i];
+        }
+        return changed ? withChildren(kind, converted, null) : this;
+    }
+
+    private Token withCharacters(final CodePointSet newCharacters) {
+        if (newCharacters.equals(characters)) {
+            return this;
+        }
+        return new Token(tokenString, requiresBrackets, quantifier, kind, children, text, newCharacters, groupNumber, groupType);
     }
 
     private static char[] SPECIAL_CHARS = new char[]{'\\', '[', '^', '$', '.', '|', '?', '*', '+', '(', ')', '{', '}'};
@@ -46,9 +673,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token groupOf(final Token... tokens) {
-        return new Token(
-            "(" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.CAPTURING, tokens);
     }
     
     /**
@@ -59,9 +684,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token nonCapturingGroup(final Token... tokens) {
-        return new Token(
-            "(?:" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.NON_CAPTURING, tokens);
     }
 
     /**
@@ -72,9 +695,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token independentNonCapturingGroup(final Token... tokens) {
-        return new Token(
-            "(?>" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.INDEPENDENT, tokens);
     }
     
     /**
@@ -85,9 +706,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token positiveLookAhead(final Token... tokens) {
-        return new Token(
-            "(?=" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.POSITIVE_LOOK_AHEAD, tokens);
     }
 
     /**
@@ -98,9 +717,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token negativeLookAhead(final Token... tokens) {
-        return new Token(
-            "(?!" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.NEGATIVE_LOOK_AHEAD, tokens);
     }
     
     /**
@@ -111,9 +728,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token positiveLookBehind(final Token... tokens) {
-        return new Token(
-            "(?<=" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.POSITIVE_LOOK_BEHIND, tokens);
     }
 
     /**
@@ -124,9 +739,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token negativeLookBehind(final Token... tokens) {
-        return new Token(
-            "(?<!" + RegExBuilder.build(tokens) + ")", false, null
-        );
+        return bracketedGroup(GroupType.NEGATIVE_LOOK_BEHIND, tokens);
     }
 
     /**
@@ -137,16 +750,30 @@ public class Token {
      * @return a new Token instance
      */
     public static Token group(final int groupNumber) {
-        return new Token("\\" + groupNumber, false, null);
+        return new Token("\\" + groupNumber, false, null, Kind.BACKREFERENCE, new Token[0], null, null, groupNumber, null);
     }
     
+    /**
+     * Creates a token that matches any one of the keywords in a dictionary. The keywords are matched
+     * exactly, and the longest keyword is tried first. java.util.regex cannot match a dictionary, so
+     * expressions containing one are matched by the 'dictionary' engine, and their CompiledRegEx only
+     * supports matches() and find().
+     *
+     * @param dictionary the keywords to be matched
+     *
+     * @return a new Token instance
+     */
+    public static Token dictionary(final KeywordDictionary dictionary) {
+        return new Token("(?{" + dictionary + "})", false, null, Kind.DICTIONARY, new Token[0], null, null, 0, null, dictionary);
+    }
+
     /**
      * Creates a token that matches any sequence of characters, of any length.
      * 
      * @return a new Token instance
      */
     public static Token anything(){ 
-        return new Token(".*", false, null);
+        return new Token(".*", false, null, Kind.ANYTHING, new Token[0], null, CodePointSet.DOT, 0, null);
     }
     
     private static final Pattern OCTAL_PATTERN = Pattern.compile("([0-7]|[0-7][0-7]|[0-2][0-7][0-7])");
@@ -162,7 +789,7 @@ public class Token {
         if (!OCTAL_PATTERN.matcher(octalNumber).matches()){
             throw new IllegalArgumentException("Bad octal value");
         }
-        return new Token("\\0" + octalNumber, false, null);
+        return singleCharacter("\\0" + octalNumber, Integer.parseInt(octalNumber, 8));
     }
     
     private static final Pattern HEX_PATTERN = Pattern.compile("[a-fA-F0-9]{2}([a-fA-F0-9]{2})?");
@@ -177,7 +804,12 @@ public class Token {
         if (!HEX_PATTERN.matcher(hexNumber).matches()){
             throw new IllegalArgumentException("Bad hex value");
         }
-        return new Token("\\x" + hexNumber.toUpperCase(), false, null);
+        final String tokenString = "\\x" + hexNumber.toUpperCase();
+        if (hexNumber.length() == 2){
+            return singleCharacter(tokenString, Integer.parseInt(hexNumber, 16));
+        }
+     // The \x escape only consumes 2 digits, any remaining digits are matched as separate characters
+        return new Token(tokenString, false, null);
     }
 
     private static final Pattern UNICODE_PATTERN = Pattern.compile("[a-fA-F0-9]{4}");
@@ -192,7 +824,7 @@ public class Token {
         if (!UNICODE_PATTERN.matcher(unicodeNumber).matches()){
             throw new IllegalArgumentException("Bad unicode value");
         }
-        return new Token("\\u" + unicodeNumber.toUpperCase(), false, null);
+        return singleCharacter("\\u" + unicodeNumber.toUpperCase(), Integer.parseInt(unicodeNumber, 16));
     }
 
     /**
@@ -201,7 +833,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token tab(){ 
-        return new Token("\\t", false, null);
+        return singleCharacter("\\t", '\t');
     }
 
     /**
@@ -210,7 +842,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token newline(){ 
-        return new Token("\\n", false, null);
+        return singleCharacter("\\n", '\n');
     }
 
     /**
@@ -219,7 +851,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token carriageReturn(){ 
-        return new Token("\\r", false, null);
+        return singleCharacter("\\r", '\r');
     }
 
     /**
@@ -228,7 +860,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token formFeed(){ 
-        return new Token("\\f", false, null);
+        return singleCharacter("\\f", '\f');
     }
 
     /**
@@ -237,7 +869,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token alertCharacter(){ 
-        return new Token("\\a", false, null);
+        return singleCharacter("\\a", 7);
     }
     
     /**
@@ -246,7 +878,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token escapeCharacter(){ 
-        return new Token("\\e", false, null);
+        return singleCharacter("\\e", 27);
     }
 
     /**
@@ -262,7 +894,7 @@ public class Token {
         }
         final char upperCaseLetter = Character.toUpperCase(character);
         
-        return new Token("\\c" + upperCaseLetter, false, null);
+        return singleCharacter("\\c" + upperCaseLetter, upperCaseLetter ^ 64);
     }
 
     /**
@@ -271,7 +903,7 @@ public class Token {
      * @return a new Token instance
      */
     public static Token anyDigit(){ 
-        return anyOneOf(CharacterTokenPart.range('0', '9'));
+        return predefined(PredefinedClass.DIGIT, anyOneOf(CharacterTokenPart.range('0', '9')));
     }
     
     /**
@@ -280,7 +912,12 @@ public class Token {
      * @return a new Token instance
      */
     public static Token anyLetter(){ 
-        return anyOneOf(CharacterTokenPart.range('a', 'z'), CharacterTokenPart.range('A', 'Z'));
+        return predefined(PredefinedClass.LETTER, anyOneOf(CharacterTokenPart.range('a', 'z'), CharacterTokenPart.range('A', 'Z')));
+    }
+
+    private static Token predefined(final PredefinedClass predefinedClass, final Token token) {
+        token.predefinedClass = predefinedClass;
+        return token;
     }
 
     /**
@@ -291,8 +928,8 @@ public class Token {
      * @return a new Token instance
      */
     public static Token text(final String text) {
-        return new Token(
-            Utils.escapeSpecial(text, SPECIAL_CHARS), text.length() > 1, null
+        return literal(
+            Utils.escapeSpecial(text, SPECIAL_CHARS), text.length() > 1, text
         );
     }
     
@@ -310,7 +947,7 @@ public class Token {
         String txt = Utils.appendObjects(characterTokens);
         tokenString = "[^" + txt + "]";
         
-        return new Token(tokenString, false, null);
+        return characterClass(tokenString, toCodePointSet(characterTokens).complement());
     }
     
     /**
@@ -327,9 +964,17 @@ public class Token {
         String txt = Utils.appendObjects(characterTokens);
         tokenString = "[" + txt + "]";
         
-        return new Token(tokenString, false, null);
+        return characterClass(tokenString, toCodePointSet(characterTokens));
     }
     
+    private static CodePointSet toCodePointSet(final CharacterTokenPart... characterTokens){
+        CodePointSet codePoints = CodePointSet.EMPTY;
+        for (CharacterTokenPart characterToken : characterTokens){
+            codePoints = codePoints.union(characterToken.toCodePointSet());
+        }
+        return codePoints;
+    }
+
     private static void setFirstAndLastParts(final CharacterTokenPart... characterTokens){
         final int count = characterTokens.length;
         for(int i=0; i<count; i++){
@@ -353,12 +998,21 @@ public class Token {
      */
     public static Token or(final Token... tokens) {
         final StringBuilder sb = new StringBuilder();
+        final List<Token> branches = new ArrayList<Token>();
         
         for(Token token : tokens){
             if (sb.length() > 0){
                 sb.append("|");
             }
             sb.append(token.toString());
+
+            if (token.isUnbracketedAlternation()){
+                for (Token branch : token.children){
+                    branches.add(branch);
+                }
+            } else {
+                branches.add(token);
+            }
         }
         
         final boolean requiresBrackets;
@@ -368,7 +1022,8 @@ public class Token {
             requiresBrackets = tokens[0].requiresBrackets;
         }
         
-        return new Token(sb.toString(), requiresBrackets, null);
+        return new Token(sb.toString(), requiresBrackets, null, Kind.ALTERNATION,
+                branches.toArray(new Token[branches.size()]), null, null, 0, null);
     }
     
     /**
@@ -0,0 +1,569 @@
+package net.codebox.readableregex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes Token trees in a compact, versioned binary form, so that large rule sets can be
+ * distributed and loaded without being rebuilt from the factory methods. Decoding recreates each node
+ * directly, without escaping text or combining character sets again.
+ *
+ * The encoding begins with a header and two tables, holding every distinct string and character set used
+ * by the trees, followed by each tree in pre-order. Character sets are stored as inversion lists, and all
+ * counts, lengths and quantifier bounds are stored as variable-length integers, so that typical nodes
+ * occupy two or three bytes. When CompiledRegEx instances are written, the profile and the results of
+ * the literal analysis are included, so that they need not be recalculated when the expressions are read.
+ *
+ * The class is stateless, and its methods can be called from any thread.
+ */
+public final class TokenCodec {
+    private static final byte[] MAGIC = {'R', 'R', 'X'};
+    private static final int VERSION = 1;
+    private static final int FLAG_ANALYSIS = 1;
+
+ // Bits of the header byte written for each node
+    private static final int KIND_MASK        = 0x07;
+    private static final int QUANTIFIED       = 0x08;
+    private static final int BRACKETED        = 0x10;
+    private static final int EXPLICIT_TEXT    = 0x20;
+    private static final int PREDEFINED_SHIFT = 6;
+
+ // The forms in which a quantifier can be rendered, from which its text is recreated
+    private static final String[] QUANTIFIER_SUFFIXES = {"", "?", "+"};
+    private static final int ONE_OR_MORE = 0, ZERO_OR_ONE = 1, ZERO_OR_MORE = 2, EXACTLY = 3, AT_LEAST = 4, BETWEEN = 5;
+
+    private static final int NO_PREFILTER = 0, LITERAL_PREFILTER = 1, CHARACTER_PREFILTER = 2;
+
+    private TokenCodec() {
+    }
+
+    /**
+     * Writes a list of Token trees.
+     *
+     * @param tokens the trees to be written
+     * @param out the stream to which they are written, which is flushed but not closed
+     *
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalArgumentException if a tree contains a keyword dictionary, which is written separately
+     */
+    public static void write(final List<? extends Token> tokens, final OutputStream out) throws IOException {
+        new Writer(out).write(tokens, null);
+    }
+
+    /**
+     * Writes a list of compiled expressions, including their profiles and the results of analysing them.
+     *
+     * @param expressions the expressions to be written
+     * @param out the stream to which they are written, which is flushed but not closed
+     *
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalArgumentException if an expression contains a keyword dictionary, which is written separately
+     */
+    public static void writeCompiled(final List<CompiledRegEx> expressions, final OutputStream out) throws IOException {
+        final List<Token> tokens = new ArrayList<Token>();
+        for (CompiledRegEx expression : expressions) {
+            tokens.add(expression.token());
+        }
+        new Writer(out).write(tokens, expressions);
+    }
+
+    /**
+     * Reads a list of Token trees written by write() or writeCompiled().
+     *
+     * @param in the stream from which the trees are read
+     *
+     * @return the trees, in the order in which they were written
+     *
+     * @throws IOException if the stream cannot be read, or does not contain trees in a supported version of the format
+     */
+    public static List<Token> read(final InputStream in) throws IOException {
+        final Reader reader = new Reader(in);
+        final List<Token> tokens = new ArrayList<Token>();
+        for (int i = reader.readHeader(); i > 0; i--) {
+            tokens.add(reader.readNode());
+            if (reader.hasAnalysis) {
+                reader.readAnalysis();
+            }
+        }
+        return Collections.unmodifiableList(tokens);
+    }
+
+    /**
+     * Reads a list of expressions, and compiles them. The results of the analysis are used if the stream
+     * was written by writeCompiled(); otherwise each expression is analysed, and compiled with the ASCII profile.
+     *
+     * @param in the stream from which the expressions are read
+     *
+     * @return the compiled expressions, in the order in which they were written
+     *
+     * @throws IOException if the stream cannot be read, or does not contain trees in a supported version of the format
+     */
+    public static List<CompiledRegEx> readCompiled(final InputStream in) throws IOException {
+        final Reader reader = new Reader(in);
+        final List<CompiledRegEx> expressions = new ArrayList<CompiledRegEx>();
+        for (int i = reader.readHeader(); i > 0; i--) {
+            final Token token = reader.readNode();
+            if (reader.hasAnalysis) {
+                final Object[] analysis = reader.readAnalysis();
+                expressions.add(new CompiledRegEx(token, (CharacterProfile) analysis[0], (Prefilter) analysis[1]));
+            } else {
+                expressions.add(new CompiledRegEx(token));
+            }
+        }
+        return Collections.unmodifiableList(expressions);
+    }
+
+ // The text that the node would have if it were rendered from its children, or null if it cannot be derived
+    private static String derivedText(final Token.Kind kind, final Token[] children, final String text, final Token.GroupType groupType) {
+        switch (kind) {
+            case LITERAL:
+                return Token.escapedLiteral(text);
+            case SEQUENCE:
+            case ALTERNATION:
+                final StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < children.length; i++) {
+                    if (i > 0 && kind == Token.Kind.ALTERNATION) {
+                        sb.append('|');
+                    }
+                    sb.append(children[i]);
+                }
+                return sb.toString();
+            case GROUP:
+                return children.length == 1 ? groupType.prefix + children[0] + ")" : null;
+            default:
+                return null;
+        }
+    }
+
+    private static final class Writer {
+        private final OutputStream out;
+        private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        private final Map<CodePointSet, Integer> sets = new LinkedHashMap<CodePointSet, Integer>();
+
+        Writer(final OutputStream out) {
+            this.out = new BufferedOutputStream(out);
+        }
+
+        void write(final List<? extends Token> tokens, final List<CompiledRegEx> expressions) throws IOException {
+            for (Token token : tokens) {
+                collect(token);
+            }
+            if (expressions != null) {
+                for (CompiledRegEx expression : expressions) {
+                    final Prefilter prefilter = expression.prefilter();
+                    for (String literal : prefilter.requiredLiterals()) {
+                        addString(literal);
+                    }
+                    if (prefilter.requiredCharacters() != null) {
+                        addSet(prefilter.requiredCharacters());
+                    }
+                }
+            }
+
+            out.write(MAGIC);
+            writeInt(VERSION);
+            writeInt(expressions == null ? 0 : FLAG_ANALYSIS);
+            writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                writeString(string);
+            }
+            writeInt(sets.size());
+            for (CodePointSet set : sets.keySet()) {
+                writeSet(set);
+            }
+            writeInt(tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                writeNode(tokens.get(i));
+                if (expressions != null) {
+                    writeAnalysis(expressions.get(i));
+                }
+            }
+            out.flush();
+        }
+
+        private void collect(final Token token) {
+            if (token.kind() == Token.Kind.DICTIONARY) {
+                throw new IllegalArgumentException(String.format(
+                        "The %s cannot be encoded, it must be written with KeywordDictionary.write()", token.dictionary()));
+            }
+            if (!token.tokenString().equals(derivedText(token.kind(), token.children(), token.text(), token.groupType()))) {
+                addString(token.tokenString());
+            }
+            if (token.text() != null) {
+                addString(token.text());
+            }
+            if (token.characters() != null) {
+                addSet(token.characters());
+            }
+            for (Token child : token.children()) {
+                collect(child);
+            }
+        }
+
+        private void addString(final String string) {
+            if (!strings.containsKey(string)) {
+                strings.put(string, strings.size());
+            }
+        }
+
+        private void addSet(final CodePointSet set) {
+            if (!sets.containsKey(set)) {
+                sets.put(set, sets.size());
+            }
+        }
+
+        private void writeNode(final Token token) throws IOException {
+            final boolean explicitText = !token.tokenString().equals(derivedText(token.kind(), token.children(), token.text(), token.groupType()));
+            final Token.PredefinedClass predefinedClass = token.predefinedClass();
+            out.write(token.kind().ordinal()
+                | (token.quantifier() != null ? QUANTIFIED : 0)
+                | (token.requiresBrackets() ? BRACKETED : 0)
+                | (explicitText ? EXPLICIT_TEXT : 0)
+                | (predefinedClass == null ? 0 : predefinedClass.ordinal() + 1) << PREDEFINED_SHIFT);
+            if (explicitText) {
+                writeInt(strings.get(token.tokenString()));
+            }
+            if (token.quantifier() != null) {
+                writeQuantifier(token.quantifier());
+            }
+         // Each kind of node only uses some of the fields, the others always have their default values
+            switch (token.kind()) {
+                case LITERAL:
+                    writeInt(strings.get(token.text()));
+                    break;
+                case CHARACTER_CLASS:
+                case ANYTHING:
+                    writeInt(token.characters() == null ? 0 : sets.get(token.characters()) + 1);
+                    break;
+                case GROUP:
+                    out.write(token.groupType().ordinal());
+                    writeChildren(token);
+                    break;
+                case SEQUENCE:
+                case ALTERNATION:
+                    writeChildren(token);
+                    break;
+                case BACKREFERENCE:
+                    writeInt(token.groupNumber());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void writeChildren(final Token token) throws IOException {
+            writeInt(token.children().length);
+            for (Token child : token.children()) {
+                writeNode(child);
+            }
+        }
+
+        private void writeQuantifier(final Quantifier quantifier) throws IOException {
+            final int min = quantifier.min(), max = quantifier.max();
+            final String baseText = quantifier.baseText();
+            final int form;
+            if (baseText.equals("+")) {
+                form = ONE_OR_MORE;
+            } else if (baseText.equals("?")) {
+                form = ZERO_OR_ONE;
+            } else if (baseText.equals("*")) {
+                form = ZERO_OR_MORE;
+            } else if (baseText.equals("{" + min + "}")) {
+                form = EXACTLY;
+            } else if (baseText.equals("{" + min + ",}")) {
+                form = AT_LEAST;
+            } else {
+                form = BETWEEN;
+            }
+            int suffix = 0;
+            while (!QUANTIFIER_SUFFIXES[suffix].equals(quantifier.suffix())) {
+                suffix++;
+            }
+            out.write(form | suffix << 3);
+            if (form >= EXACTLY) {
+                writeInt(min);
+            }
+            if (form == BETWEEN) {
+                writeInt(max);
+            }
+        }
+
+        private void writeAnalysis(final CompiledRegEx expression) throws IOException {
+            out.write(expression.profile().ordinal());
+            final Prefilter prefilter = expression.prefilter();
+            if (prefilter.hasRequiredLiterals()) {
+                out.write(LITERAL_PREFILTER);
+                writeInt(prefilter.requiredLiterals().size());
+                for (String literal : prefilter.requiredLiterals()) {
+                    writeInt(strings.get(literal));
+                }
+            } else if (prefilter.requiredCharacters() != null) {
+                out.write(CHARACTER_PREFILTER);
+                writeInt(sets.get(prefilter.requiredCharacters()));
+            } else {
+                out.write(NO_PREFILTER);
+            }
+        }
+
+     // Strings are written as chars rather than UTF-8, so that unpaired surrogates are preserved
+        private void writeString(final String string) throws IOException {
+            writeInt(string.length());
+            for (int i = 0; i < string.length(); i++) {
+                writeInt(string.charAt(i));
+            }
+        }
+
+     // Each bound is written as the distance from the previous one, the ranges are sorted and cannot touch
+        private void writeSet(final CodePointSet set) throws IOException {
+            writeInt(set.rangeCount());
+            int previous = -2;
+            for (int i = 0; i < set.rangeCount(); i++) {
+                writeInt(set.rangeFrom(i) - previous - 2);
+                writeInt(set.rangeTo(i) - set.rangeFrom(i));
+                previous = set.rangeTo(i);
+            }
+        }
+
+        private void writeInt(final int value) throws IOException {
+            int remaining = value;
+            while ((remaining & ~0x7F) != 0) {
+                out.write((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            out.write(remaining);
+        }
+    }
+
+    private static final class Reader {
+        private final InputStream in;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<CodePointSet> sets = new ArrayList<CodePointSet>();
+        private final Map<String, String> derivedTexts = new HashMap<String, String>();
+        private boolean hasAnalysis;
+
+        Reader(final InputStream in) {
+            this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+        }
+
+     // Reads everything that precedes the trees, and returns the number of trees
+        int readHeader() throws IOException {
+            for (byte expected : MAGIC) {
+                if (readByte() != expected) {
+                    throw new IOException("The stream does not contain encoded Token trees");
+                }
+            }
+            final int version = readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("The encoding has version %d, only version %d is supported", version, VERSION));
+            }
+            hasAnalysis = (readInt() & FLAG_ANALYSIS) != 0;
+            for (int i = readInt(); i > 0; i--) {
+                strings.add(readString());
+            }
+            for (int i = readInt(); i > 0; i--) {
+                sets.add(readSet());
+            }
+            return readInt();
+        }
+
+        Token readNode() throws IOException {
+            final int header = readByte();
+            final Token.Kind[] kinds = Token.Kind.values();
+            if ((header & KIND_MASK) >= kinds.length || header >>> PREDEFINED_SHIFT > Token.PredefinedClass.values().length) {
+                throw new IOException("The encoding is corrupt");
+            }
+            final Token.Kind kind = kinds[header & KIND_MASK];
+            final String explicitText = (header & EXPLICIT_TEXT) != 0 ? string(readInt()) : null;
+            final Quantifier quantifier = (header & QUANTIFIED) != 0 ? readQuantifier() : null;
+            String text = null;
+            CodePointSet characters = null;
+            Token.GroupType groupType = null;
+            int groupNumber = 0;
+            Token[] children = new Token[0];
+            switch (kind) {
+                case LITERAL:
+                    text = string(readInt());
+                    break;
+                case CHARACTER_CLASS:
+                case ANYTHING:
+                    final int setIndex = readInt();
+                    characters = setIndex == 0 ? null : set(setIndex - 1);
+                    break;
+                case GROUP:
+                    final int ordinal = readByte();
+                    if (ordinal >= Token.GroupType.values().length) {
+                        throw new IOException("The encoding is corrupt");
+                    }
+                    groupType = Token.GroupType.values()[ordinal];
+                    children = readChildren();
+                    break;
+                case SEQUENCE:
+                case ALTERNATION:
+                    children = readChildren();
+                    break;
+                case BACKREFERENCE:
+                    groupNumber = readInt();
+                    break;
+                default:
+                    break;
+            }
+            final String tokenString = explicitText != null ? explicitText : derived(kind, children, text, groupType);
+            if (tokenString == null || (kind == Token.Kind.CHARACTER_CLASS && characters == null) || (kind == Token.Kind.GROUP && children.length != 1)) {
+                throw new IOException("The encoding is corrupt");
+            }
+            final int predefined = header >>> PREDEFINED_SHIFT;
+            return Token.restore(tokenString, (header & BRACKETED) != 0, quantifier, kind, children, text, characters, groupNumber, groupType,
+                predefined == 0 ? null : Token.PredefinedClass.values()[predefined - 1]);
+        }
+
+        private Token[] readChildren() throws IOException {
+            final int count = readInt();
+            final List<Token> children = new ArrayList<Token>(Math.min(count, 64));
+            for (int i = 0; i < count; i++) {
+                children.add(readNode());
+            }
+            return children.toArray(new Token[children.size()]);
+        }
+
+     // Literals are escaped once for each distinct text, since the same text usually appears many times
+        private String derived(final Token.Kind kind, final Token[] children, final String text, final Token.GroupType groupType) {
+            if (kind == Token.Kind.LITERAL && text != null) {
+                String escaped = derivedTexts.get(text);
+                if (escaped == null) {
+                    escaped = Token.escapedLiteral(text);
+                    derivedTexts.put(text, escaped);
+                }
+                return escaped;
+            }
+            return derivedText(kind, children, text, groupType);
+        }
+
+        private Quantifier readQuantifier() throws IOException {
+            final int header = readByte();
+            final int form = header & 0x07, suffix = header >>> 3;
+            if (suffix >= QUANTIFIER_SUFFIXES.length) {
+                throw new IOException("The encoding is corrupt");
+            }
+            switch (form) {
+                case ONE_OR_MORE:
+                    return Quantifier.restore("+", QUANTIFIER_SUFFIXES[suffix], 1, Token.UNBOUNDED);
+                case ZERO_OR_ONE:
+                    return Quantifier.restore("?", QUANTIFIER_SUFFIXES[suffix], 0, 1);
+                case ZERO_OR_MORE:
+                    return Quantifier.restore("*", QUANTIFIER_SUFFIXES[suffix], 0, Token.UNBOUNDED);
+                case EXACTLY:
+                    final int count = readInt();
+                    return Quantifier.restore("{" + count + "}", QUANTIFIER_SUFFIXES[suffix], count, count);
+                case AT_LEAST:
+                    final int least = readInt();
+                    return Quantifier.restore("{" + least + ",}", QUANTIFIER_SUFFIXES[suffix], least, Token.UNBOUNDED);
+                case BETWEEN:
+                    final int from = readInt(), to = readInt();
+                    return Quantifier.restore("{" + from + "," + to + "}", QUANTIFIER_SUFFIXES[suffix], from, to);
+                default:
+                    throw new IOException("The encoding is corrupt");
+            }
+        }
+
+        Object[] readAnalysis() throws IOException {
+            final int profile = readByte();
+            if (profile >= CharacterProfile.values().length) {
+                throw new IOException("The encoding is corrupt");
+            }
+            final Prefilter prefilter;
+            switch (readByte()) {
+                case NO_PREFILTER:
+                    prefilter = Prefilter.NONE;
+                    break;
+                case LITERAL_PREFILTER:
+                    final String[] literals = new String[readInt()];
+                    for (int i = 0; i < literals.length; i++) {
+                        literals[i] = string(readInt());
+                    }
+                    prefilter = Prefilter.of(literals, null);
+                    break;
+                case CHARACTER_PREFILTER:
+                    prefilter = Prefilter.of(null, set(readInt()));
+                    break;
+                default:
+                    throw new IOException("The encoding is corrupt");
+            }
+            return new Object[]{CharacterProfile.values()[profile], prefilter};
+        }
+
+        private String string(final int index) throws IOException {
+            if (index < 0 || index >= strings.size()) {
+                throw new IOException("The encoding is corrupt");
+            }
+            return strings.get(index);
+        }
+
+        private CodePointSet set(final int index) throws IOException {
+            if (index < 0 || index >= sets.size()) {
+                throw new IOException("The encoding is corrupt");
+            }
+            return sets.get(index);
+        }
+
+        private String readString() throws IOException {
+            final int length = readInt();
+            final StringBuilder sb = new StringBuilder(Math.min(length, 1024));
+            for (int i = 0; i < length; i++) {
+                sb.append((char) readInt());
+            }
+            return sb.toString();
+        }
+
+        private CodePointSet readSet() throws IOException {
+            final int rangeCount = readInt();
+            if (rangeCount > Character.MAX_CODE_POINT / 2 + 1) {
+                throw new IOException("The encoding is corrupt");
+            }
+            final int[] ranges = new int[rangeCount * 2];
+            long previous = -2;
+            for (int i = 0; i < rangeCount; i++) {
+                final long from = previous + 2 + readInt(), to = from + readInt();
+                if (to > Character.MAX_CODE_POINT) {
+                    throw new IOException("The encoding is corrupt");
+                }
+                ranges[i * 2]     = (int) from;
+                ranges[i * 2 + 1] = (int) to;
+                previous = to;
+            }
+            return CodePointSet.fromRanges(ranges);
+        }
+
+        private int readByte() throws IOException {
+            final int value = in.read();
+            if (value < 0) {
+                throw new EOFException("The encoding ended unexpectedly");
+            }
+            return value;
+        }
+
+        private int readInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IOException("The encoding is corrupt");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("The encoding is corrupt");
+        }
+    }
+}
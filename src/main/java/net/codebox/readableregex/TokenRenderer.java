@@ -0,0 +1,114 @@
+package net.codebox.readableregex;
+
+import java.util.regex.Pattern;
+
+/**
+ * Produces the text of a regular expression by walking a Token tree. With the default settings the
+ * result is identical to the value returned by Token.toString(), but the rendering can be adjusted,
+ * for example so that an expression can be embedded inside a larger one.
+ */
+class TokenRenderer {
+    private final int groupOffset;
+
+    /**
+     * Initialises the instance.
+     *
+     * @param groupOffset the number of capturing groups that will precede the rendered text in the final
+     * expression, back-references are adjusted by this amount
+     */
+    TokenRenderer(final int groupOffset) {
+        this.groupOffset = groupOffset;
+    }
+
+    /**
+     * @param token the root of the tree to be rendered
+     *
+     * @return the text of the regular expression
+     */
+    String render(final Token token) {
+        final StringBuilder sb = new StringBuilder();
+        render(token, sb);
+        return sb.toString();
+    }
+
+    void render(final Token token, final StringBuilder sb) {
+        final Quantifier quantifier = token.quantifier();
+        final boolean brackets = quantifier != null && token.requiresBrackets();
+        if (brackets) {
+            sb.append('(');
+        }
+        renderUnquantified(token, sb);
+        if (brackets) {
+            sb.append(')');
+        }
+        if (quantifier != null) {
+            sb.append(quantifier);
+        }
+    }
+
+    protected void renderUnquantified(final Token token, final StringBuilder sb) {
+        switch (token.kind()) {
+            case SEQUENCE:
+                for (Token child : token.children()) {
+                    render(child, sb);
+                }
+                break;
+            case ALTERNATION:
+                final Token[] branches = token.children();
+                for (int i = 0; i < branches.length; i++) {
+                    if (i > 0) {
+                        sb.append('|');
+                    }
+                    render(branches[i], sb);
+                }
+                break;
+            case GROUP:
+                sb.append(token.groupType().prefix);
+                render(token.children()[0], sb);
+                sb.append(')');
+                break;
+            case BACKREFERENCE:
+                if (groupOffset == 0) {
+                    sb.append(unquantifiedText(token));
+                } else {
+                 // Enclosed in a group so that following digits are not read as part of the group number
+                    sb.append("(?:\\").append(token.groupNumber() + groupOffset).append(')');
+                }
+                break;
+            default:
+                sb.append(unquantifiedText(token));
+        }
+    }
+
+    /**
+     * @return the text of the token, excluding any quantifier and the brackets that accompany it
+     */
+    static String unquantifiedText(final Token token) {
+        return token.quantifier() == null ? token.toString() : new Token(token, null).toString();
+    }
+
+    /**
+     * Counts the capturing groups in the expression represented by the token, including the groups that
+     * are created implicitly when a quantifier is applied to a token that requires brackets.
+     *
+     * @param token the root of the tree
+     *
+     * @return the number of capturing groups
+     */
+    static int capturingGroupCount(final Token token) {
+        if (token.kind() == Token.Kind.RAW) {
+            return Pattern.compile(token.toString()).matcher("").groupCount();
+        }
+        int count = 0;
+        if (token.quantifier() != null && token.requiresBrackets()) {
+            count++;
+        }
+        if (token.kind() == Token.Kind.GROUP && token.groupType() == Token.GroupType.CAPTURING) {
+            count++;
+        }
+        for (Token child : token.children()) {
+            count += capturingGroupCount(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,796 @@
+package net.codebox.readableregex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * An index of the trigrams (runs of three chars) that occur in each file beneath a directory, used to
+ * find the files that might contain a match of an expression without reading the others.
+ *
+ * The Token tree of an expression is converted into a boolean query over trigrams: every trigram of the
+ * text in a sequence must occur, including those that span neighbouring tokens; at least one branch of an
+ * alternation must be satisfied; and parts that can match text without containing any particular trigram,
+ * such as anything(), a quantifier with a minimum of zero or a large character class, require nothing. The
+ * query is answered by intersecting and merging sorted posting lists, and only the candidate files are read
+ * and matched with find(). An expression that requires no trigram at all makes every file a candidate.
+ *
+ * Files are identified by their paths relative to the root, and the index describes them as they were when
+ * it was built; files that are added or changed later are not found until the index is rebuilt. The index
+ * is saved to a single file with {@link #write(Path)} and loaded with {@link #read(Path)}.
+ *
+ * Instances are immutable, and can be shared between threads.
+ */
+public final class TrigramIndex {
+    private static final byte[] MAGIC = {'R', 'R', 'T'};
+    private static final int VERSION = 1;
+ // Limits on the size of the sets of strings that are tracked while converting a Token tree, as in Prefilter
+    private static final int MAX_EXACT_STRINGS = 32;
+    private static final int MAX_EXACT_LENGTH  = 64;
+    private static final int MAX_CHARACTER_CLASS_SIZE = 8;
+
+    private final Path root;
+    private final Charset charset;
+    private final String[] documents;
+ // The distinct trigrams in ascending order, and the start of each one's posting list within 'postings'
+    private final long[] trigrams;
+    private final int[] offsets;
+ // Each posting list holds ascending document numbers, stored as the differences between them in 7-bit groups
+    private final byte[] postings;
+
+    private TrigramIndex(final Path root, final Charset charset, final String[] documents, final long[] trigrams,
+            final int[] offsets, final byte[] postings) {
+        this.root      = root;
+        this.charset   = charset;
+        this.documents = documents;
+        this.trigrams  = trigrams;
+        this.offsets   = offsets;
+        this.postings  = postings;
+    }
+
+    /**
+     * Indexes every regular file beneath the root, decoding the files as UTF-8.
+     *
+     * @param root the directory to be indexed
+     *
+     * @return a new TrigramIndex instance
+     *
+     * @throws IOException if the directory tree cannot be walked, or a file cannot be read
+     */
+    public static TrigramIndex build(final Path root) throws IOException {
+        return build(root, path -> true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Indexes the regular files beneath the root that are accepted by the filter. Bytes that are not valid
+     * in the charset are replaced, as they are by DirectoryGrep, and the same charset is used to read the
+     * candidate files when searching.
+     *
+     * @param root the directory to be indexed
+     * @param filter selects the files to be indexed
+     * @param charset the encoding of the files
+     *
+     * @return a new TrigramIndex instance
+     *
+     * @throws IOException if the directory tree cannot be walked, or a file cannot be read
+     */
+    public static TrigramIndex build(final Path root, final Predicate<? super Path> filter, final Charset charset) throws IOException {
+        final Path absoluteRoot = root.toAbsolutePath().normalize();
+        final List<Path> paths = new ArrayList<Path>();
+        try (Stream<Path> walk = Files.walk(absoluteRoot)) {
+            walk.filter(path -> Files.isRegularFile(path) && filter.test(path)).forEach(paths::add);
+        }
+        Collections.sort(paths);
+
+        final Builder builder = new Builder();
+        final String[] documents = new String[paths.size()];
+        for (int document = 0; document < documents.length; document++) {
+            final Path path = paths.get(document);
+            documents[document] = absoluteRoot.relativize(path).toString().replace(File.separatorChar, '/');
+            final String text = decode(Files.readAllBytes(path), charset);
+            for (int i = 0; i + 2 < text.length(); i++) {
+                builder.add(trigram(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2)), document);
+            }
+        }
+
+        final long[] trigrams = Arrays.copyOf(builder.trigrams, builder.trigramCount);
+        Arrays.sort(trigrams);
+        final int[] offsets = new int[trigrams.length + 1];
+        final Postings encoded = new Postings();
+        for (int i = 0; i < trigrams.length; i++) {
+            offsets[i] = encoded.byteCount;
+            final int id = builder.idOf(trigrams[i], false);
+            int previous = 0;
+            for (int j = 0; j < builder.counts[id]; j++) {
+                encoded.addVarint(builder.documents[id][j] - previous);
+                previous = builder.documents[id][j];
+            }
+        }
+        offsets[trigrams.length] = encoded.byteCount;
+        return new TrigramIndex(absoluteRoot, charset, documents, trigrams, offsets, Arrays.copyOf(encoded.bytes, encoded.byteCount));
+    }
+
+    /**
+     * Loads an index that was written by {@link #write(Path)}.
+     *
+     * @param file the file to be read
+     *
+     * @return a new TrigramIndex instance
+     *
+     * @throws IOException if the file cannot be read, or does not contain an index in a supported version of the format
+     */
+    public static TrigramIndex read(final Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (byte expected : MAGIC) {
+                if (in.read() != expected) {
+                    throw new IOException(String.format("The file '%s' does not contain a trigram index", file));
+                }
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("The index has version %d, only version %d is supported", version, VERSION));
+            }
+            final Path root = Paths.get(in.readUTF());
+            final String charsetName = in.readUTF();
+            final Charset charset;
+            try {
+                charset = Charset.forName(charsetName);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+                throw new IOException(String.format("The index uses the charset '%s', which is not supported", charsetName), ex);
+            }
+            final String[] documents = new String[in.readInt()];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = in.readUTF();
+            }
+            final long[] trigrams = new long[in.readInt()];
+            for (int i = 0; i < trigrams.length; i++) {
+                trigrams[i] = in.readLong();
+            }
+            final int[] offsets = new int[trigrams.length + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readInt();
+            }
+            final byte[] postings = new byte[in.readInt()];
+            in.readFully(postings);
+            if (in.read() >= 0) {
+                throw new IOException(String.format("The file '%s' does not contain a trigram index", file));
+            }
+            return new TrigramIndex(root, charset, documents, trigrams, offsets, postings);
+        } catch (EOFException ex) {
+            throw new IOException(String.format("The index in '%s' is incomplete", file), ex);
+        }
+    }
+
+    /**
+     * Writes the index to a file, in the form that {@link #read(Path)} loads.
+     *
+     * @param file the file to be written, which is replaced if it exists
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeUTF(charset.name());
+            out.writeInt(documents.length);
+            for (String document : documents) {
+                out.writeUTF(document);
+            }
+            out.writeInt(trigrams.length);
+            for (long trigram : trigrams) {
+                out.writeLong(trigram);
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(postings.length);
+            out.write(postings);
+        }
+    }
+
+    /**
+     * @return the directory that was indexed
+     */
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * @return the number of files in the index
+     */
+    public int documentCount() {
+        return documents.length;
+    }
+
+    /**
+     * @return the number of distinct trigrams found in the files
+     */
+    public int trigramCount() {
+        return trigrams.length;
+    }
+
+    /**
+     * Finds the files that might contain a match of the token, without reading any of them.
+     *
+     * @param token the expression to be searched for
+     *
+     * @return the paths of the candidate files, in ascending order
+     */
+    public List<Path> candidates(final Token token) {
+        final int[] selected = evaluate(toQuery(token));
+        final List<Path> paths = new ArrayList<Path>();
+        if (selected == null) {
+            for (String document : documents) {
+                paths.add(root.resolve(document));
+            }
+        } else {
+            for (int document : selected) {
+                paths.add(root.resolve(documents[document]));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Finds the files that contain a match of the expression, by reading and matching only the candidate
+     * files. Candidates that have been deleted since the index was built are skipped.
+     *
+     * @param regex the expression to be searched for
+     *
+     * @return the paths of the matching files, in ascending order
+     *
+     * @throws IOException if a candidate file cannot be read
+     */
+    public List<Path> search(final CompiledRegEx regex) throws IOException {
+        final List<Path> matches = new ArrayList<Path>();
+        for (Path path : candidates(regex.token())) {
+            final byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(path);
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+            if (regex.find(decode(bytes, charset))) {
+                matches.add(path);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Describes the trigram query for a token, for diagnostic purposes. Trigrams are shown in quotes, those
+     * that must all occur are separated by spaces, alternatives are enclosed in brackets and separated by
+     * '|', and a query that every file satisfies is shown as '*'.
+     *
+     * @param token the expression to be converted
+     *
+     * @return the text of the query
+     */
+    public static String query(final Token token) {
+        return toQuery(token).toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("trigram index of %s, %d documents, %d trigrams", root, documents.length, trigrams.length);
+    }
+
+    private static Query toQuery(final Token token) {
+        return analyse(token).query();
+    }
+
+    private static String decode(final byte[] bytes, final Charset charset) throws CharacterCodingException {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(ByteBuffer.wrap(bytes))
+                .toString();
+    }
+
+    private static long trigram(final char first, final char second, final char third) {
+        return (long) first << 32 | (long) second << 16 | third;
+    }
+
+ // Returns the matching documents in ascending order, or null if every document matches
+    private int[] evaluate(final Query query) {
+        switch (query.type) {
+            case ALL:
+                return null;
+            case NONE:
+                return new int[0];
+            case TRIGRAM:
+                return postingList(query.trigram);
+            case AND:
+                final List<int[]> lists = new ArrayList<int[]>();
+                for (Query child : query.children) {
+                    final int[] list = evaluate(child);
+                    if (list != null) {
+                        lists.add(list);
+                    }
+                }
+                if (lists.isEmpty()) {
+                    return null;
+                }
+             // Intersecting the shortest lists first keeps the intermediate results small
+                lists.sort(Comparator.comparingInt(list -> list.length));
+                int[] result = lists.get(0);
+                for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                    result = intersect(result, lists.get(i));
+                }
+                return result;
+            default:
+                int[] union = new int[0];
+                for (Query child : query.children) {
+                    final int[] list = evaluate(child);
+                    if (list == null) {
+                        return null;
+                    }
+                    union = union(union, list);
+                }
+                return union;
+        }
+    }
+
+    private int[] postingList(final long trigram) {
+        final int index = Arrays.binarySearch(trigrams, trigram);
+        if (index < 0) {
+            return new int[0];
+        }
+        final int[] list = new int[offsets[index + 1] - offsets[index]];
+        int count = 0, document = 0, shift = 0, delta = 0;
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+            delta |= (postings[i] & 0x7F) << shift;
+            shift += 7;
+            if ((postings[i] & 0x80) == 0) {
+                document += delta;
+                list[count++] = document;
+                delta = 0;
+                shift = 0;
+            }
+        }
+        return Arrays.copyOf(list, count);
+    }
+
+    private static int[] intersect(final int[] a, final int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] union(final int[] a, final int[] b) {
+        final int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Collects the documents containing each trigram while the index is built. The trigrams are numbered in
+     * the order in which they are first seen, using an open-addressing hash table, and each document is added
+     * to a trigram's list once however often the trigram occurs in it, since documents are added in order.
+     */
+    private static final class Builder {
+     // Each used slot holds a trigram plus one, so that zero marks a free slot
+        private long[] slots = new long[1 << 12];
+        private int[] slotIds = new int[1 << 12];
+        long[] trigrams = new long[1024];
+        int[][] documents = new int[1024][];
+        int[] counts = new int[1024];
+        int trigramCount;
+
+        void add(final long trigram, final int document) {
+            final int id = idOf(trigram, true);
+            final int count = counts[id];
+            if (count > 0 && documents[id][count - 1] == document) {
+                return;
+            }
+            if (documents[id] == null) {
+                documents[id] = new int[4];
+            } else if (count == documents[id].length) {
+                documents[id] = Arrays.copyOf(documents[id], count * 2);
+            }
+            documents[id][count] = document;
+            counts[id] = count + 1;
+        }
+
+     // Returns the number of the trigram, adding it if 'create' is true and it has not been seen, or -1
+        int idOf(final long trigram, final boolean create) {
+            final int mask = slots.length - 1;
+            int slot = (int) ((trigram * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == trigram + 1) {
+                    return slotIds[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!create) {
+                return -1;
+            }
+            if (trigramCount == trigrams.length) {
+                trigrams  = Arrays.copyOf(trigrams, trigramCount * 2);
+                documents = Arrays.copyOf(documents, trigramCount * 2);
+                counts    = Arrays.copyOf(counts, trigramCount * 2);
+            }
+            trigrams[trigramCount] = trigram;
+            slots[slot] = trigram + 1;
+            slotIds[slot] = trigramCount;
+            if (++trigramCount * 2 > slots.length) {
+                rehash();
+            }
+            return trigramCount - 1;
+        }
+
+        private void rehash() {
+            slots = new long[slots.length * 2];
+            slotIds = new int[slotIds.length * 2];
+            final int mask = slots.length - 1;
+            for (int id = 0; id < trigramCount; id++) {
+                int slot = (int) ((trigrams[id] * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = trigrams[id] + 1;
+                slotIds[slot] = id;
+            }
+        }
+    }
+
+ // The encoded posting lists, in one growing array
+    private static final class Postings {
+        byte[] bytes = new byte[1024];
+        int byteCount;
+
+        void addVarint(int value) {
+            while (true) {
+                if (byteCount == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                if ((value & ~0x7F) == 0) {
+                    bytes[byteCount++] = (byte) value;
+                    return;
+                }
+                bytes[byteCount++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+        }
+    }
+
+    /**
+     * A boolean query over trigrams, simplified as it is built so that ALL and NONE only appear at the root.
+     */
+    private static final class Query {
+        enum Type { ALL, NONE, TRIGRAM, AND, OR }
+
+        static final Query ALL  = new Query(Type.ALL, 0, Collections.<Query>emptyList());
+        static final Query NONE = new Query(Type.NONE, 0, Collections.<Query>emptyList());
+
+        final Type type;
+        final long trigram;
+        final List<Query> children;
+
+        private Query(final Type type, final long trigram, final List<Query> children) {
+            this.type     = type;
+            this.trigram  = trigram;
+            this.children = children;
+        }
+
+        static Query trigram(final long trigram) {
+            return new Query(Type.TRIGRAM, trigram, Collections.<Query>emptyList());
+        }
+
+        static Query and(final Query a, final Query b) {
+            if (a.type == Type.NONE || b.type == Type.NONE) {
+                return NONE;
+            }
+            return combine(Type.AND, a, b, ALL);
+        }
+
+        static Query or(final Query a, final Query b) {
+            if (a.type == Type.ALL || b.type == Type.ALL) {
+                return ALL;
+            }
+            return combine(Type.OR, a, b, NONE);
+        }
+
+     // Flattens nested queries of the same type, and drops duplicates and the identity element
+        private static Query combine(final Type type, final Query a, final Query b, final Query identity) {
+            final Set<Query> children = new LinkedHashSet<Query>();
+            for (Query query : Arrays.asList(a, b)) {
+                if (query.type == type) {
+                    children.addAll(query.children);
+                } else if (query != identity) {
+                    children.add(query);
+                }
+            }
+            if (children.isEmpty()) {
+                return identity;
+            }
+            if (children.size() == 1) {
+                return children.iterator().next();
+            }
+            return new Query(type, 0, Collections.unmodifiableList(new ArrayList<Query>(children)));
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Query)) {
+                return false;
+            }
+            final Query query = (Query) other;
+            return type == query.type && trigram == query.trigram && children.equals(query.children);
+        }
+
+        @Override
+        public int hashCode() {
+            return (type.hashCode() * 31 + Long.hashCode(trigram)) * 31 + children.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case ALL:
+                    return "*";
+                case NONE:
+                    return "-";
+                case TRIGRAM:
+                    return "\"" + (char) (trigram >>> 32) + (char) (trigram >>> 16 & 0xFFFF) + (char) (trigram & 0xFFFF) + "\"";
+                default:
+                    final StringBuilder sb = new StringBuilder();
+                    for (Query child : children) {
+                        if (sb.length() > 0) {
+                            sb.append(type == Type.AND ? " " : " | ");
+                        }
+                        sb.append(child);
+                    }
+                    return type == Type.AND ? sb.toString() : "(" + sb + ")";
+            }
+        }
+    }
+
+ // The results of converting a single node in the tree
+    private static final class Info {
+     // Every string that the node can match, or null if there are too many to track
+        final Set<String> exact;
+     // When exact is null: every match begins with one of the prefixes and ends with one of the suffixes,
+     // each of which is at most two chars long, and every document containing a match satisfies the query
+        final Set<String> prefixes, suffixes;
+        final Query query;
+
+        Info(final Set<String> exact, final Set<String> prefixes, final Set<String> suffixes, final Query query) {
+            this.exact    = exact;
+            this.prefixes = prefixes;
+            this.suffixes = suffixes;
+            this.query    = query;
+        }
+
+        Set<String> prefixes() {
+            return exact == null ? prefixes : trim(exact, true);
+        }
+
+        Set<String> suffixes() {
+            return exact == null ? suffixes : trim(exact, false);
+        }
+
+     // The query satisfied by every document containing a match
+        Query query() {
+            return exact == null ? query : stringsQuery(exact);
+        }
+    }
+
+    private static final Set<String> EMPTY_STRING = Collections.singleton("");
+    private static final Info UNKNOWN = new Info(null, EMPTY_STRING, EMPTY_STRING, Query.ALL);
+
+    private static Info analyse(final Token token) {
+        final Info info = analyseUnquantified(token);
+        final Quantifier quantifier = token.quantifier();
+        if (quantifier == null || (quantifier.min() == 1 && quantifier.max() == 1)) {
+            return info;
+        }
+        if (token.kind() == Token.Kind.ANYTHING) {
+            return UNKNOWN;
+        }
+        if (quantifier.min() == 0) {
+            if (quantifier.max() == 1 && info.exact != null) {
+                final Set<String> exact = new LinkedHashSet<String>(info.exact);
+                exact.add("");
+                return fromExact(exact);
+            }
+            return UNKNOWN;
+        }
+        if (quantifier.min() == quantifier.max() && info.exact != null) {
+            Info repeated = fromExact(EMPTY_STRING);
+            for (int i = 0; i < quantifier.min(); i++) {
+                repeated = concatenate(repeated, info);
+            }
+            return repeated;
+        }
+     // At least one repetition is required, and the match begins and ends with one
+        return new Info(null, info.prefixes(), info.suffixes(), info.query());
+    }
+
+    private static Info analyseUnquantified(final Token token) {
+        switch (token.kind()) {
+            case LITERAL:
+                return fromExact(Collections.singleton(token.text()));
+            case CHARACTER_CLASS:
+                if (token.characters().size() > MAX_CHARACTER_CLASS_SIZE) {
+                    return UNKNOWN;
+                }
+                final Set<String> exact = new LinkedHashSet<String>();
+                final CodePointSet characters = token.characters();
+                for (int i = 0; i < characters.rangeCount(); i++) {
+                    for (int c = characters.rangeFrom(i); c <= characters.rangeTo(i); c++) {
+                        exact.add(new String(Character.toChars(c)));
+                    }
+                }
+                return fromExact(exact);
+            case SEQUENCE:
+                Info info = fromExact(EMPTY_STRING);
+                for (Token child : token.children()) {
+                    info = concatenate(info, analyse(child));
+                }
+                return info;
+            case ALTERNATION:
+                return alternate(token.children());
+            case GROUP:
+                switch (token.groupType()) {
+                    case CAPTURING:
+                    case NON_CAPTURING:
+                    case INDEPENDENT:
+                    case CASE_INSENSITIVE:
+                     // The contents of a case-insensitive group list every case variant of each character
+                        return analyse(token.children()[0]);
+                    default:
+                     // A look-around consumes nothing, so the text on either side of it is adjacent in the match
+                        return fromExact(EMPTY_STRING);
+                }
+            default:
+             // Back-references, unrecognised text, keyword dictionaries and anything() may match any trigrams
+                return UNKNOWN;
+        }
+    }
+
+    private static Info fromExact(final Set<String> exact) {
+        if (exact.size() > MAX_EXACT_STRINGS) {
+            return new Info(null, trim(exact, true), trim(exact, false), stringsQuery(exact));
+        }
+        return new Info(exact, null, null, null);
+    }
+
+    private static Info concatenate(final Info first, final Info second) {
+        if (first.exact != null && second.exact != null) {
+            final Set<String> exact = product(first.exact, second.exact, MAX_EXACT_LENGTH);
+            if (exact != null) {
+                return fromExact(exact);
+            }
+        }
+     // Trigrams that span the two parts are found by joining the end of one to the beginning of the other
+        final Set<String> joins = product(first.suffixes(), second.prefixes(), 4);
+        Query query = Query.and(first.query(), second.query());
+        if (joins != null) {
+            query = Query.and(query, stringsQuery(joins));
+        }
+        Set<String> prefixes = first.prefixes();
+        if (first.exact != null) {
+            final Set<String> extended = product(first.exact, second.prefixes(), MAX_EXACT_LENGTH);
+            prefixes = extended == null ? EMPTY_STRING : trim(extended, true);
+        }
+        Set<String> suffixes = second.suffixes();
+        if (second.exact != null) {
+            final Set<String> extended = product(first.suffixes(), second.exact, MAX_EXACT_LENGTH);
+            suffixes = extended == null ? EMPTY_STRING : trim(extended, false);
+        }
+        return new Info(null, prefixes, suffixes, query);
+    }
+
+    private static Info alternate(final Token[] branches) {
+        Set<String> exact = new LinkedHashSet<String>();
+        final Set<String> prefixes = new LinkedHashSet<String>(), suffixes = new LinkedHashSet<String>();
+        Query query = Query.NONE;
+        for (Token branch : branches) {
+            final Info info = analyse(branch);
+            if (exact != null && info.exact != null) {
+                exact.addAll(info.exact);
+            } else {
+                exact = null;
+            }
+            prefixes.addAll(info.prefixes());
+            suffixes.addAll(info.suffixes());
+            query = Query.or(query, info.query());
+        }
+        if (exact != null) {
+            return fromExact(exact);
+        }
+        return new Info(null, limit(prefixes), limit(suffixes), query);
+    }
+
+ // Returns every concatenation of a string from the first set with one from the second, or null if there would be too many
+    private static Set<String> product(final Set<String> first, final Set<String> second, final int maxLength) {
+        if ((long) first.size() * second.size() > MAX_EXACT_STRINGS) {
+            return null;
+        }
+        final Set<String> result = new LinkedHashSet<String>();
+        for (String a : first) {
+            for (String b : second) {
+                if (a.length() + b.length() > maxLength) {
+                    return null;
+                }
+                result.add(a + b);
+            }
+        }
+        return result;
+    }
+
+ // Keeps the first or last two chars of each string, which are all that can form trigrams with a neighbour
+    private static Set<String> trim(final Set<String> strings, final boolean keepStart) {
+        final Set<String> trimmed = new LinkedHashSet<String>();
+        for (String s : strings) {
+            trimmed.add(s.length() <= 2 ? s : keepStart ? s.substring(0, 2) : s.substring(s.length() - 2));
+        }
+        return limit(trimmed);
+    }
+
+    private static Set<String> limit(final Set<String> strings) {
+        return strings.size() > MAX_EXACT_STRINGS ? EMPTY_STRING : strings;
+    }
+
+ // Requires every trigram of at least one of the strings
+    private static Query stringsQuery(final Set<String> strings) {
+        Query query = Query.NONE;
+        for (String s : strings) {
+            Query trigrams = Query.ALL;
+            for (int i = 0; i + 2 < s.length(); i++) {
+                trigrams = Query.and(trigrams, Query.trigram(trigram(s.charAt(i), s.charAt(i + 1), s.charAt(i + 2))));
+            }
+            query = Query.or(query, trigrams);
+        }
+        return query;
+    }
+}
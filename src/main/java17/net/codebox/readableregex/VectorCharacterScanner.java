@@ -0,0 +1,112 @@
+package net.codebox.readableregex;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * CharacterScanner that uses the Vector API to compare a full vector of chars with each range of the
+ * set in a single step. This class is compiled for Java 17 and packaged in the multi-release layer of
+ * the jar, it is only loaded when the jdk.incubator.vector module is available.
+ */
+final class VectorCharacterScanner extends CharacterScanner {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int BUFFER_LENGTH = 1024;
+ // Below this length the cost of setting up the vectors outweighs the benefit
+    private static final int MIN_VECTOR_LENGTH = SPECIES.length() * 2;
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[BUFFER_LENGTH]);
+
+    private final short[] rangeStarts, rangeSpans;
+    private final boolean[] ascii = new boolean[128];
+
+    VectorCharacterScanner(final CodePointSet characters) {
+        super(characters);
+        final int rangeCount = characters.rangeCount();
+        this.rangeStarts = new short[rangeCount];
+        this.rangeSpans  = new short[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            rangeStarts[i] = (short) characters.rangeFrom(i);
+            rangeSpans[i]  = (short) (characters.rangeTo(i) - characters.rangeFrom(i));
+        }
+        for (int c = 0; c < ascii.length; c++) {
+            ascii[c] = characters.contains(c);
+        }
+    }
+
+    @Override
+    int indexOf(final CharSequence input, final int from, final int to) {
+        if (to - from < MIN_VECTOR_LENGTH) {
+            return scalarIndexOf(input, from, to);
+        }
+        final char[] buffer = BUFFER.get();
+     // Blocks start small and grow, so that little copying is wasted when a match is found close to 'from'
+        int blockLength = MIN_VECTOR_LENGTH * 2;
+        for (int blockStart = from; blockStart < to; blockStart += blockLength) {
+            blockLength = Math.min(Math.min(blockLength * 2, BUFFER_LENGTH), to - blockStart);
+            copy(input, blockStart, blockStart + blockLength, buffer);
+            final int index = indexOf(buffer, 0, blockLength);
+            if (index >= 0) {
+                return blockStart + index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first char, between 'from' (inclusive) and 'to' (exclusive), that belongs to the set.
+     *
+     * @param chars the array to be searched
+     * @param from the index at which to start searching
+     * @param to the index at which to stop searching
+     *
+     * @return the index of the char that was found, or -1 if there were none
+     */
+    int indexOf(final char[] chars, final int from, final int to) {
+        final int step = SPECIES.length();
+        final int vectorEnd = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < vectorEnd; i += step) {
+            final ShortVector vector = ShortVector.fromCharArray(SPECIES, chars, i);
+         // A char c lies within [start, start + span] if (c - start), treated as unsigned, is no greater than span
+            VectorMask<Short> mask = vector.sub(rangeStarts[0]).compare(VectorOperators.UNSIGNED_LE, rangeSpans[0]);
+            for (int r = 1; r < rangeStarts.length; r++) {
+                mask = mask.or(vector.sub(rangeStarts[r]).compare(VectorOperators.UNSIGNED_LE, rangeSpans[r]));
+            }
+            if (mask.anyTrue()) {
+                return i + mask.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (matches(chars[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int scalarIndexOf(final CharSequence input, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (matches(input.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(final char c) {
+        return c < 128 ? ascii[c] : characters.contains(c);
+    }
+
+    private static void copy(final CharSequence input, final int from, final int to, final char[] buffer) {
+        if (input instanceof String) {
+            ((String) input).getChars(from, to, buffer, 0);
+        } else if (input instanceof StringBuilder) {
+            ((StringBuilder) input).getChars(from, to, buffer, 0);
+        } else {
+            for (int i = from; i < to; i++) {
+                buffer[i - from] = input.charAt(i);
+            }
+        }
+    }
+}
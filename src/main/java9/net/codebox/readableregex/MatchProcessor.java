@@ -0,0 +1,408 @@
+package net.codebox.readableregex;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A Flow.Processor that receives chunks of text and publishes a MatchEvent for each match of a
+ * CompiledRegEx. Matches that span chunk boundaries are found, and their offsets are counted from the
+ * start of the stream (see StreamMatcher).
+ *
+ * Chunks are processed on the supplied Executor, at most 'batchSize' at a time before the task is
+ * resubmitted. No more than 'batchSize' chunks are requested from upstream in advance, and no further
+ * chunks are processed while 'batchSize' or more events are waiting for downstream demand, so memory
+ * use remains bounded when the subscriber is slow. The number of chunks and events waiting at any moment
+ * is available for monitoring. Only one subscriber is supported.
+ *
+ * This class requires Java 9 or later.
+ *
+ * @param <T> the type of the chunks, CharSequence or ByteBuffer
+ */
+public final class MatchProcessor<T> implements Flow.Processor<T, MatchEvent> {
+    private final StreamMatcher streamMatcher;
+    private final ChunkDecoder<T> decoder;
+    private final Executor executor;
+    private final int batchSize;
+
+    private final Queue<T> chunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedChunks = new AtomicInteger();
+    private final AtomicInteger maxQueuedChunks = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger workInProgress = new AtomicInteger();
+    private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+    private final AtomicReference<Flow.Subscriber<? super MatchEvent>> downstream = new AtomicReference<>();
+    private volatile boolean downstreamReady;
+    private volatile boolean upstreamDone;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private volatile int pendingEventCount;
+
+ // The following are only accessed by the drain task, which never runs on more than one thread at a time
+    private final ArrayDeque<MatchEvent> events = new ArrayDeque<>();
+    private int consumedSinceRequest;
+    private boolean finished;
+    private boolean terminated;
+
+    private MatchProcessor(final CompiledRegEx regex, final ChunkDecoder<T> decoder, final Executor executor, final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("The batch size must be at least 1, but was %d", batchSize));
+        }
+        this.streamMatcher = new StreamMatcher(regex);
+        this.decoder   = decoder;
+        this.executor  = Objects.requireNonNull(executor);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Creates a processor for a stream of text.
+     *
+     * @param regex the expression to be matched
+     * @param executor runs the tasks that process chunks and deliver events
+     * @param batchSize the number of chunks processed in each task, and the number requested in advance
+     *
+     * @return a new MatchProcessor instance
+     */
+    public static MatchProcessor<CharSequence> forText(final CompiledRegEx regex, final Executor executor, final int batchSize) {
+        return new MatchProcessor<>(regex, new TextDecoder(), executor, batchSize);
+    }
+
+    /**
+     * Creates a processor for a stream of encoded bytes. Multi-byte characters may be split between
+     * chunks, and malformed input is replaced with the charset's replacement character. The ByteBuffers
+     * that are received are not modified.
+     *
+     * @param regex the expression to be matched
+     * @param charset the encoding of the bytes
+     * @param executor runs the tasks that process chunks and deliver events
+     * @param batchSize the number of chunks processed in each task, and the number requested in advance
+     *
+     * @return a new MatchProcessor instance
+     */
+    public static MatchProcessor<ByteBuffer> forBytes(final CompiledRegEx regex, final Charset charset, final Executor executor,
+                                                      final int batchSize) {
+        return new MatchProcessor<>(regex, new ByteDecoder(charset), executor, batchSize);
+    }
+
+    /**
+     * @return the number of chunks received from upstream that have not yet been processed
+     */
+    public int queuedChunks() {
+        return queuedChunks.get();
+    }
+
+    /**
+     * @return the largest value that queuedChunks() has reached
+     */
+    public int maxQueuedChunks() {
+        return maxQueuedChunks.get();
+    }
+
+    /**
+     * @return the number of events waiting for demand from the subscriber, as of the end of the most recent batch
+     */
+    public int pendingEvents() {
+        return pendingEventCount;
+    }
+
+    /**
+     * @return the number of events requested by the subscriber that have not yet been delivered
+     */
+    public long outstandingDemand() {
+        return demand.get();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (!upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        if (cancelled) {
+            subscription.cancel();
+        } else {
+            subscription.request(batchSize);
+        }
+    }
+
+    @Override
+    public void onNext(final T item) {
+        Objects.requireNonNull(item);
+        chunks.offer(item);
+        final int depth = queuedChunks.incrementAndGet();
+        maxQueuedChunks.accumulateAndGet(depth, Math::max);
+        schedule();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        error = Objects.requireNonNull(throwable);
+        upstreamDone = true;
+        schedule();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        schedule();
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super MatchEvent> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {}
+
+                @Override
+                public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("A MatchProcessor can only have one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException(String.format("The number of events requested must be positive, but was %d", n));
+                    cancelUpstream();
+                } else {
+                    demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                }
+                schedule();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                schedule();
+            }
+        });
+        downstreamReady = true;
+        schedule();
+    }
+
+    private void cancelUpstream() {
+        final Flow.Subscription subscription = upstream.getAndSet(CANCELLED);
+        if (subscription != null && subscription != CANCELLED) {
+            subscription.cancel();
+        }
+    }
+
+    private void schedule() {
+        if (workInProgress.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        while (true) {
+            if (drainBatch()) {
+             // The batch limit was reached, resubmit so that other tasks on the executor get a turn
+                executor.execute(this::drain);
+                return;
+            }
+            missed = workInProgress.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+ // Returns true if the batch limit was reached while there was still work to do
+    private boolean drainBatch() {
+        if (terminated) {
+            return false;
+        }
+        if (cancelled) {
+            terminate();
+            return false;
+        }
+        final Flow.Subscriber<? super MatchEvent> subscriber = downstreamReady ? downstream.get() : null;
+        if (error != null) {
+         // Errors are delivered without waiting for the subscriber to consume the pending events
+            if (subscriber != null) {
+                terminate();
+                subscriber.onError(error);
+            }
+            return false;
+        }
+
+        int processed = 0;
+        while (true) {
+            deliver(subscriber);
+            if (cancelled || events.size() >= batchSize) {
+                break;
+            }
+            if (processed == batchSize) {
+                requestMoreChunks();
+                pendingEventCount = events.size();
+                return !chunks.isEmpty();
+            }
+            final T chunk = chunks.poll();
+            if (chunk == null) {
+                break;
+            }
+            queuedChunks.decrementAndGet();
+            consumedSinceRequest++;
+            processed++;
+            try {
+                streamMatcher.append(decoder.decode(chunk), events::add);
+            } catch (RuntimeException ex) {
+                error = ex;
+                cancelUpstream();
+                return true;
+            }
+        }
+        requestMoreChunks();
+
+        if (upstreamDone && error == null && !finished && chunks.isEmpty()) {
+            finished = true;
+            try {
+                streamMatcher.append(decoder.finish(), events::add);
+                streamMatcher.finish(events::add);
+            } catch (RuntimeException ex) {
+                error = ex;
+                return true;
+            }
+            deliver(subscriber);
+        }
+        pendingEventCount = events.size();
+        if (finished && events.isEmpty() && subscriber != null && !cancelled) {
+            terminate();
+            subscriber.onComplete();
+        }
+        return false;
+    }
+
+    private void deliver(final Flow.Subscriber<? super MatchEvent> subscriber) {
+        while (subscriber != null && !cancelled && !events.isEmpty() && demand.get() > 0) {
+            if (demand.get() != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            subscriber.onNext(events.poll());
+        }
+    }
+
+    private void requestMoreChunks() {
+        final Flow.Subscription subscription = upstream.get();
+        if (consumedSinceRequest > 0 && subscription != null && subscription != CANCELLED && !upstreamDone) {
+            subscription.request(consumedSinceRequest);
+            consumedSinceRequest = 0;
+        }
+    }
+
+    private void terminate() {
+        terminated = true;
+        events.clear();
+        chunks.clear();
+        queuedChunks.set(0);
+        pendingEventCount = 0;
+    }
+
+    private static final Flow.Subscription CANCELLED = new Flow.Subscription() {
+        @Override
+        public void request(final long n) {}
+
+        @Override
+        public void cancel() {}
+    };
+
+ // Converts chunks into text, retaining any state needed to decode the following chunk
+    private interface ChunkDecoder<T> {
+        CharSequence decode(T chunk);
+
+        CharSequence finish();
+    }
+
+    private static final class TextDecoder implements ChunkDecoder<CharSequence> {
+        @Override
+        public CharSequence decode(final CharSequence chunk) {
+            return chunk;
+        }
+
+        @Override
+        public CharSequence finish() {
+            return "";
+        }
+    }
+
+    private static final class ByteDecoder implements ChunkDecoder<ByteBuffer> {
+        private final CharsetDecoder decoder;
+        private ByteBuffer leftover = ByteBuffer.allocate(0);
+
+        ByteDecoder(final Charset charset) {
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public CharSequence decode(final ByteBuffer chunk) {
+            final ByteBuffer input;
+            if (leftover.hasRemaining()) {
+                input = ByteBuffer.allocate(leftover.remaining() + chunk.remaining());
+                input.put(leftover).put(chunk.duplicate()).flip();
+            } else {
+                input = chunk.duplicate();
+            }
+            final CharBuffer output = decode(input, false);
+         // Bytes belonging to a character that continues in the next chunk are kept until it arrives
+            leftover = ByteBuffer.allocate(input.remaining()).put(input);
+            leftover.flip();
+            return output;
+        }
+
+        @Override
+        public CharSequence finish() {
+            final CharBuffer output = decode(leftover, true);
+            leftover = ByteBuffer.allocate(0);
+            return output;
+        }
+
+        private CharBuffer decode(final ByteBuffer input, final boolean endOfInput) {
+            CharBuffer output = CharBuffer.allocate((int) (input.remaining() * decoder.maxCharsPerByte()) + 1);
+            CoderResult result;
+            while ((result = decoder.decode(input, output, endOfInput)).isOverflow()) {
+                output = enlarge(output);
+            }
+            if (endOfInput && result.isUnderflow()) {
+                while ((result = decoder.flush(output)).isOverflow()) {
+                    output = enlarge(output);
+                }
+                decoder.reset();
+            }
+            if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException ex) {
+                    throw new IllegalStateException("Unable to decode the input", ex);
+                }
+            }
+            output.flip();
+            return output;
+        }
+
+        private static CharBuffer enlarge(final CharBuffer output) {
+            output.flip();
+            return CharBuffer.allocate(output.capacity() * 2 + 1).put(output);
+        }
+    }
+}
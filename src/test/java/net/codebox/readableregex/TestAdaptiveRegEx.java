@@ -0,0 +1,88 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestAdaptiveRegEx {
+    @Test
+    public void whenAlternativesAreDisjoint_thenHottestIsMovedFirst(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(or(text("FTP"), text("SMTP"), text("HTTP")), text("/")));
+        profiler.record("HTTP/ HTTP/ SMTP/ HTTP/");
+        assertThat(profiler.reorderedRegEx().toString(), is("HTTP/|SMTP|FTP"));
+    }
+
+    @Test
+    public void whenAlternativesOverlap_thenTheirOrderIsPreserved(){
+     // 'ab' must stay ahead of 'a', otherwise 'a' would win at positions where both match
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(nonCapturingGroup(or(text("ab"), text("a"), text("x")))));
+        profiler.record("a a a x x x x ab");
+        assertThat(profiler.reorderedRegEx().toString(), is("(?:x|ab|a)"));
+    }
+
+    @Test
+    public void whenFirstCharactersDiffer_thenAlternativesAreDisjoint(){
+        assertThat(BranchOrder.areDisjoint(oneOrMore().of(anyDigit()), oneOrMore().of(anyLetter())), is(true));
+        assertThat(BranchOrder.areDisjoint(oneOrMore().of(anyLetter()), text("abc")), is(false));
+        assertThat(BranchOrder.areDisjoint(text("abc"), text("abd")), is(true));
+        assertThat(BranchOrder.areDisjoint(zeroOrOne().of(text("a")), text("b")), is(false));
+        assertThat(BranchOrder.areDisjoint(groupOf(text("a")), text("b")), is(false));
+    }
+
+    @Test
+    public void whenOrderIsUnchanged_thenSameExpressionIsReturned(){
+        final CompiledRegEx regex = RegExBuilder.compile(or(text("a"), text("b")));
+        final MatchProfiler profiler = new MatchProfiler(regex);
+        profiler.record("aab");
+        assertThat(profiler.reorderedRegEx(), is(sameInstance(regex)));
+    }
+
+    @Test
+    public void whenEnoughMatchesObserved_thenExpressionIsRecompiled(){
+        final AdaptiveRegEx adaptive = new AdaptiveRegEx(
+                RegExBuilder.compile(text("proto="), nonCapturingGroup(or(text("ftp"), text("smtp"), text("http")))), 2, 10);
+        for (int i = 0; i < 40; i++) {
+            assertThat(adaptive.find("x proto=http y"), is(true));
+            assertThat(adaptive.find("nothing"), is(false));
+        }
+        assertThat(adaptive.recompilations(), is(1L));
+        assertThat(adaptive.current().toString(), is("proto=(?:http|ftp|smtp)"));
+        assertThat(adaptive.matches("proto=smtp"), is(true));
+        assertThat(adaptive.matches("proto=smtpx"), is(false));
+    }
+
+    @Test
+    public void whenSampledMatchIsVeryLong_thenCallStillSucceeds(){
+        final AdaptiveRegEx adaptive = new AdaptiveRegEx(RegExBuilder.compile(or(text("x"), oneOrMore().of(anyDigit()))), 1, 1000);
+        final StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            digits.append('7');
+        }
+        assertThat(adaptive.find(digits), is(true));
+        assertThat(adaptive.matches(digits), is(true));
+        assertThat(adaptive.find(digits.append('x')), is(true));
+    }
+
+    @Test
+    public void whenExpressionCannotBeProfiled_thenItIsUsedUnchanged(){
+        final CompiledRegEx regex = RegExBuilder.compile(groupOf(anyLetter()), group(1));
+        final AdaptiveRegEx adaptive = new AdaptiveRegEx(regex, 1, 1);
+        assertThat(adaptive.find("abba"), is(true));
+        assertThat(adaptive.current(), is(sameInstance(regex)));
+    }
+
+    @Test
+    public void whenSampleIntervalIsInvalid_thenExceptionIsThrown(){
+        try {
+            new AdaptiveRegEx(RegExBuilder.compile(text("a")), 0, 10);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The sample interval (0) and matches per period (10) must both be at least 1"));
+        }
+    }
+}
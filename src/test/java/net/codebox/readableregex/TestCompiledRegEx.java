@@ -0,0 +1,313 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Token.*;
+import static net.codebox.readableregex.Quantifier.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TestCompiledRegEx {
+    @Test
+    public void whenFixedWidthTokensUsed_thenMinAndMaxLengthsAreEqual(){
+        final CompiledRegEx regex = RegExBuilder.compile(exactly(4).of(anyDigit()), text("-"), exactly(2).of(anyDigit()));
+        assertThat(regex.minLength(), is(7));
+        assertThat(regex.maxLength(), is(7));
+    }
+
+    @Test
+    public void whenQuantifiersUsed_thenLengthsAreCorrect(){
+        assertThat(between(2, 5).of(text("ab")).minLength(), is(4));
+        assertThat(between(2, 5).of(text("ab")).maxLength(), is(10));
+        assertThat(atLeast(3).of(anyLetter()).minLength(), is(3));
+        assertThat(atLeast(3).of(anyLetter()).maxLength(), is(UNBOUNDED));
+        assertThat(zeroOrOne().of(anyDigit(), text("xy")).minLength(), is(0));
+        assertThat(zeroOrOne().of(anyDigit(), text("xy")).maxLength(), is(3));
+        assertThat(zeroOrMore().of(positiveLookAhead(text("x"))).maxLength(), is(0));
+    }
+
+    @Test
+    public void whenOrUsed_thenLengthsCoverAllBranches(){
+        final Token token = or(text("A"), text("BCD"), exactly(2).of(anyDigit()));
+        assertThat(token.minLength(), is(1));
+        assertThat(token.maxLength(), is(3));
+    }
+
+    @Test
+    public void whenUnbracketedOrUsedInSequence_thenLengthsReflectRenderedExpression(){
+     // Renders as "xa|bcd" which matches either "xa" or "bcd"
+        final CompiledRegEx regex = RegExBuilder.compile(text("x"), or(text("a"), text("bcd")));
+        assertThat(regex.minLength(), is(2));
+        assertThat(regex.maxLength(), is(3));
+        assertThat(regex.matches("bcd"), is(true));
+        assertThat(regex.matches("xa"), is(true));
+    }
+
+    @Test
+    public void whenUnboundedTokensUsed_thenMaxLengthIsUnbounded(){
+        assertThat(anything().maxLength(), is(UNBOUNDED));
+        assertThat(group(1).maxLength(), is(UNBOUNDED));
+        assertThat(exactly(Integer.MAX_VALUE).of(text("xyz")).maxLength(), is(UNBOUNDED));
+    }
+
+    @Test
+    public void whenNegatedCharacterClassUsed_thenSurrogatePairsAreAllowedFor(){
+        final CompiledRegEx regex = RegExBuilder.compile(anyCharacterExcept(characters('a')));
+        assertThat(regex.maxLength(), is(2));
+        assertThat(regex.matches("\uD83D\uDE00"), is(true));
+    }
+
+    @Test
+    public void whenInputLengthIsOutsideBounds_thenMatchFails(){
+        final CompiledRegEx regex = RegExBuilder.compile(exactly(4).of(anyDigit()));
+        assertThat(regex.matches("1234"), is(true));
+        assertThat(regex.matches("123"), is(false));
+        assertThat(regex.matches("12345"), is(false));
+        assertThat(regex.find("123"), is(false));
+        assertThat(regex.find("x12345"), is(true));
+    }
+
+    @Test
+    public void whenAdjacentLiteralsUsed_thenTheyAreCombinedIntoARequiredLiteral(){
+        final CompiledRegEx regex = RegExBuilder.compile(oneOrMore().of(anyDigit()), text(" ERR"), text("OR: "), anything());
+        assertThat(regex.prefilter().requiredLiterals(), is(set(" ERROR: ")));
+    }
+
+    @Test
+    public void whenOrUsed_thenRequiredLiteralsAreTakenFromEachBranch(){
+        final CompiledRegEx regex = RegExBuilder.compile(
+            anything(), groupOf(or(text("WARN"), sequenceOf(text("ERR"), oneOrMore().of(anyDigit())))), anything());
+        assertThat(regex.prefilter().requiredLiterals(), is(set("WARN", "ERR")));
+    }
+
+    @Test
+    public void whenOptionalTextUsed_thenItIsNotRequired(){
+        final CompiledRegEx regex = RegExBuilder.compile(zeroOrOne().of(text("http")), oneOrMore().of(anyLetter()));
+        assertThat(regex.prefilter().requiredLiterals().isEmpty(), is(true));
+        assertThat(regex.prefilter().requiredCharacters(), is(CodePointSet.range('A', 'Z').union(CodePointSet.range('a', 'z'))));
+    }
+
+    @Test
+    public void whenSmallCharacterClassesUsed_thenAllCombinationsAreRequired(){
+        final CompiledRegEx regex = RegExBuilder.compile(anyOneOf(characters('x', 'y')), text("="), anyOneOf(range('0', '1')));
+        assertThat(regex.prefilter().requiredLiterals(), is(set("x=0", "x=1", "y=0", "y=1")));
+    }
+
+    @Test
+    public void whenRequiredTextIsMissing_thenFindFails(){
+        final CompiledRegEx regex = RegExBuilder.compile(exactly(2).of(anyDigit()), text("@"), oneOrMore().of(anyLetter()));
+        assertThat(regex.find("no at sign 12 here"), is(false));
+        assertThat(regex.find("12 @ abc"), is(false));
+        assertThat(regex.find("user 12@abc"), is(true));
+        assertThat(regex.matches("12@abc"), is(true));
+        assertThat(regex.matches("12#abc"), is(false));
+    }
+
+    @Test
+    public void whenPrefilterIsUsed_thenResultsAgreeWithPattern(){
+        final CompiledRegEx[] expressions = {
+            RegExBuilder.compile(text("ab"), between(0, 3).of(anyDigit()), text("c")),
+            RegExBuilder.compile(or(text("cat"), text("dog")), zeroOrMore().of(text("s"))),
+            RegExBuilder.compile(positiveLookBehind(text("a")), text("b"), negativeLookAhead(text("c"))),
+            RegExBuilder.compile(groupOf(anyLetter()), text("-"), group(1)),
+            RegExBuilder.compile(atLeast(2).of(text("x")), anything(), text("y"))
+        };
+        final String[] inputs = {"", "abc", "ab12c", "ab1234c", "xxab9c", "cats", "dogdog", "bird", "ab", "abc", "xbc",
+                "a-a", "a-b", "zz-z", "xx y", "x y", "xxxxy", "ab\nc", "xx\ny"};
+        for (CompiledRegEx regex : expressions) {
+            for (String input : inputs) {
+                assertThat(regex + " / " + input, regex.find(input), is(regex.pattern().matcher(input).find()));
+                assertThat(regex + " / " + input, regex.matches(input), is(regex.pattern().matcher(input).matches()));
+            }
+        }
+    }
+
+    @Test
+    public void whenOneRequiredLiteralIsFrequentAndAnotherIsAbsent_thenTheInputIsScannedOnce(){
+        final CompiledRegEx regex = RegExBuilder.compile(nonCapturingGroup(or(text("cat"), text("dog"))), text("!"), anyDigit())
+                .usingEngine("java.util.regex");
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("cat!x");
+        }
+        final int[] reads = new int[1];
+        final CharSequence input = new CharSequence() {
+            @Override
+            public int length() {
+                return sb.length();
+            }
+
+            @Override
+            public char charAt(final int index) {
+                reads[0]++;
+                return sb.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(final int start, final int end) {
+                return sb.subSequence(start, end);
+            }
+        };
+
+        assertThat(regex.find(input), is(false));
+        assertThat(regex.find(sb + "dog!7"), is(true));
+     // Searching for "dog!" again after each occurrence of "cat!" would read the input thousands of times
+        assertThat("reads: " + reads[0], reads[0] < 20 * sb.length(), is(true));
+    }
+
+    @Test
+    public void whenTokenCannotMatchEmptyString_thenFirstCharactersAreFound(){
+        assertThat(Prefilter.firstCharacters(RegExBuilder.compile(zeroOrOne().of(text("-")), anyDigit()).token()),
+                is(CodePointSet.of('-').union(CodePointSet.range('0', '9'))));
+        assertThat(Prefilter.firstCharacters(RegExBuilder.compile(positiveLookBehind(text("a")), or(text("x"), text("yz"))).token()),
+                is(CodePointSet.of('x', 'y')));
+        assertThat(Prefilter.firstCharacters(RegExBuilder.compile(zeroOrMore().of(anyDigit())).token()), is((CodePointSet) null));
+    }
+
+    @Test
+    public void whenCharacterScannerUsed_thenFirstMatchingCharacterIsFound(){
+        final CodePointSet characters = CodePointSet.of('<', '&').union(CodePointSet.range('\u0400', '\u04FF'));
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        final String input = sb.toString();
+        for (CharacterScanner scanner : new CharacterScanner[]{CharacterScanner.forCharacters(characters), CharacterScanner.scalar(characters)}) {
+            assertThat(scanner.indexOf(input, 0, input.length()), is(-1));
+            assertThat(scanner.indexOf(input.substring(0, 4321) + "&" + input, 0, input.length() + 1), is(4321));
+            assertThat(scanner.indexOf(input + "\u0410", 100, input.length() + 1), is(input.length()));
+            assertThat(scanner.indexOf(new StringBuilder("ab<cd<"), 3, 6), is(5));
+        }
+    }
+
+    @Test
+    public void whenSparseMatchesPresent_thenFindAgreesWithPattern(){
+        final CompiledRegEx regex = RegExBuilder.compile(anyOneOf(characters('<', '&')), oneOrMore().of(anyLetter()), zeroOrOne().of(text(";")));
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append(i % 7 == 0 ? " " : "x");
+        }
+        assertThat(regex.find(sb), is(false));
+        assertThat(regex.find(sb + "&<"), is(false));
+        assertThat(regex.find(sb + "&<amp;"), is(true));
+    }
+
+    @Test
+    public void whenIgnoreCaseUsed_thenResultsAgreeWithCaseInsensitiveFlags(){
+        final Token[] tokens = {
+            text("ab"), text("select"), text("k"), anyLetter(), anyCharacterExcept(range('a', 'z')),
+            between(1, 2).of(text("st")), caseInsensitive(or(text("id"), text("x")), anyDigit())
+        };
+        final String[] inputs = {"ab", "AB", "aB", "SELECT", "sElEcT", "\u017Felect", "K", "\u212A", "k", "I", "\u0131", "\u0130",
+                "1", "\u00E9", "StsT", "sT", "ID1", "x9", "Id"};
+        for (Token token : tokens) {
+            final CompiledRegEx regex = RegExBuilder.compile(token.ignoreCase());
+            final Pattern flagged = Pattern.compile(token.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            final Dfa dfa = Dfa.build(regex.token());
+            for (String input : inputs) {
+                final boolean expected = flagged.matcher(input).matches();
+                assertThat(regex + " / " + input, regex.matches(input), is(expected));
+                assertThat(regex + " / " + input, regex.find(input), is(flagged.matcher(input).find()));
+                assertThat(regex + " / " + input, dfa.longestMatch(input, 0, input.length(), new int[1]) == input.length(), is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void whenIgnoreCaseUsed_thenLengthsAreUnchanged(){
+        final Token token = sequenceOf(text("select"), between(1, 3).of(anyLetter()));
+        assertThat(token.ignoreCase().minLength(), is(token.minLength()));
+        assertThat(token.ignoreCase().maxLength(), is(token.maxLength()));
+    }
+
+    @Test
+    public void whenUnicodeProfileUsed_thenNonAsciiLettersAndDigitsMatch(){
+        final CompiledRegEx ascii = RegExBuilder.compile(oneOrMore().of(anyLetter()), anyDigit());
+        final CompiledRegEx unicode = RegExBuilder.compile(CharacterProfile.UNICODE, oneOrMore().of(anyLetter()), anyDigit());
+        final String input = "\u00E9t\u00E9\u0663";
+        assertThat(ascii.matches(input), is(false));
+        assertThat(unicode.matches(input), is(true));
+        assertThat(unicode.profile(), is(CharacterProfile.UNICODE));
+        assertThat(unicode.pattern().flags() & Pattern.UNICODE_CHARACTER_CLASS, is(Pattern.UNICODE_CHARACTER_CLASS));
+    }
+
+    @Test
+    public void whenBytesProfileUsed_thenClassesAreRestrictedToByteValues(){
+        final CompiledRegEx regex = RegExBuilder.compile(CharacterProfile.BYTES, text("<"), oneOrMore().of(anyCharacterExcept(characters('>'))), text(">"));
+        assertThat(Prefilter.firstCharacters(regex.token()), is(CodePointSet.of('<')));
+        assertThat(Prefilter.firstCharacters(regex.token().children()[1]).size(), is(255L));
+        assertThat(anyCharacterExcept(characters('>')).withProfile(CharacterProfile.BYTES).maxLength(), is(1));
+
+        final byte[] bytes = "abc <caf\u00E9> def".getBytes(StandardCharsets.UTF_8);
+        final Latin1Text text = Latin1Text.of(bytes);
+        assertThat(regex.find(text), is(true));
+        assertThat(regex.count(Latin1Text.of(bytes, 0, 6)), is(0));
+        assertThat(text.subSequence(4, 9).toString(), is("<caf\u00C3"));
+    }
+
+    private static Token sequenceOf(final Token... tokens){
+        return nonCapturingGroup(tokens);
+    }
+
+    private static HashSet<String> set(final String... values){
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+    @Test
+    public void whenExpressionStartsWithAnything_thenFindIgnoresIt(){
+        final CompiledRegEx regex = RegExBuilder.compile(anything(), text("x"), positiveLookAhead(text("y")));
+        assertThat(regex.engine().name(), is("java.util.regex"));
+        assertThat(regex.diagnostics().toString(), is("[find() searches for 'x(?=y)', the anything() at the start or end of '.*x(?=y)' cannot change whether a match exists]"));
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append('x');
+        }
+     // Without the rewrite, the regex engine would scan to the end of the line from every position
+        assertThat(regex.find(sb), is(false));
+        assertThat(regex.find(sb.append('y')), is(true));
+    }
+
+    @Test
+    public void whenAnythingAtEdges_thenFindAgreesWithPattern(){
+        final CompiledRegEx[] expressions = {
+            RegExBuilder.compile(anything(), text("ab"), anything()),
+            RegExBuilder.compile(text("a"), anything()),
+            RegExBuilder.compile(or(Token.sequence(new Token[]{anything(), text("a")}, false), text("bc"))),
+            RegExBuilder.compile(nonCapturingGroup(or(anything(), text("b"))), text("c")),
+            RegExBuilder.compile(groupOf(anything(), text("q")), positiveLookBehind(text("q"))),
+            RegExBuilder.compile(anything()),
+            RegExBuilder.compile(anything(), text("a"), anything(), text("b"))
+        };
+        final String[] inputs = {"", "a", "ab", "xxab\n", "\nab", "bc", "c", "qq", "a\nb", "axxb", "zzz"};
+        for (CompiledRegEx regex : expressions) {
+            for (String input : inputs) {
+                assertThat(regex + " / " + input, regex.find(input), is(regex.pattern().matcher(input).find()));
+            }
+        }
+        assertThat(RegExBuilder.compile(anything()).diagnostics().toString(),
+                is("[find() always succeeds, the expression '.*' can match an empty string at any position]"));
+    }
+
+    @Test
+    public void whenAnythingInMiddleUsedWithRegexEngine_thenWarningIsReported(){
+        final CompiledRegEx regex = RegExBuilder.compile(text("a"), anything(), text("b"), positiveLookAhead(text("c")));
+        assertThat(regex.diagnostics().toString(), is("[find() may take quadratic time on long lines without a match, the anything() in 'a.*b(?=c)' could not be removed]"));
+        assertThat(RegExBuilder.compile(text("a"), anything(), text("b")).diagnostics().isEmpty(), is(true));
+    }
+
+    @Test
+    public void whenExpressionHasBackReference_thenAnythingIsKept(){
+        final CompiledRegEx regex = RegExBuilder.compile(groupOf(anything()), text("-"), group(1));
+        assertThat(regex.diagnostics().size(), is(1));
+        assertThat(regex.diagnostics().get(0).startsWith("find() may take quadratic time"), is(true));
+        assertThat(regex.find("ab-ab"), is(true));
+    }
+}
@@ -0,0 +1,184 @@
+package net.codebox.readableregex;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestDirectoryGrep {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService io = Executors.newFixedThreadPool(8);
+    private final ExecutorService cpu = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        io.shutdownNow();
+        cpu.shutdownNow();
+    }
+
+    private Path write(final String name, final String content) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static String describe(final DirectoryGrep.FileResult result) {
+        final StringBuilder sb = new StringBuilder(result.path().getFileName().toString());
+        for (DirectoryGrep.Match match : result.matches()) {
+            sb.append(' ').append(match.lineNumber()).append(':').append(match.expression())
+                .append(':').append(match.start()).append('-').append(match.end());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void whenTreeSearched_thenMatchingLinesAreReportedInOrderForEachFile() throws Exception {
+        write("a.conf", "port=80\nhost=example\r\nport=8080\n");
+        write("sub/b.conf", "host=other\rport=443");
+        write("sub/deeper/c.conf", "nothing here\n");
+
+        final Map<String, CompiledRegEx> expressions = new LinkedHashMap<String, CompiledRegEx>();
+        expressions.put("port", RegExBuilder.compile(text("port="), oneOrMore().of(anyDigit())));
+        expressions.put("host", RegExBuilder.compile(text("host=")));
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final DirectoryGrep.Summary summary = new DirectoryGrep(expressions, io, cpu, 4)
+            .search(folder.getRoot().toPath(), result -> results.add(describe(result)));
+
+        Collections.sort(results);
+        assertThat(results.toString(), is("[a.conf 1:port:0-7 2:host:0-5 3:port:0-9, b.conf 1:host:0-5 2:port:0-8]"));
+        assertThat(summary.filesSearched(), is(3L));
+        assertThat(summary.filesMatched(), is(2L));
+        assertThat(summary.matches(), is(5L));
+        assertThat(summary.failures().isEmpty(), is(true));
+    }
+
+    @Test
+    public void whenFilterSupplied_thenOnlyAcceptedFilesAreSearched() throws Exception {
+        write("a.conf", "secret\n");
+        write("a.txt", "secret\n");
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final DirectoryGrep.Summary summary = new DirectoryGrep(RegExBuilder.compile(text("secret")), io, cpu, 1)
+            .search(folder.getRoot().toPath(), path -> path.toString().endsWith(".conf"), StandardCharsets.UTF_8,
+                result -> results.add(describe(result)));
+
+        assertThat(results.toString(), is("[a.conf 1:secret:0-6]"));
+        assertThat(summary.filesSearched(), is(1L));
+    }
+
+    @Test
+    public void whenManyFilesSearched_thenConcurrencyIsBounded() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            write("f" + i + ".conf", (i % 3 == 0 ? "key=" + i : "other") + "\n");
+        }
+        final BlockingQueue<Runnable> reads = new LinkedBlockingQueue<Runnable>();
+        final DirectoryGrep grep = new DirectoryGrep(RegExBuilder.compile(text("key="), oneOrMore().of(anyDigit())), reads::add, cpu, 3);
+        final Future<DirectoryGrep.Summary> search = io.submit(() -> grep.search(folder.getRoot().toPath(), result -> {}));
+
+        while (reads.size() < 3) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        assertThat(reads.size(), is(3));
+
+        while (!search.isDone()) {
+            final Runnable read = reads.poll(1, TimeUnit.MILLISECONDS);
+            if (read != null) {
+                read.run();
+            }
+        }
+        assertThat(search.get().filesSearched(), is(200L));
+        assertThat(search.get().filesMatched(), is(67L));
+    }
+
+    @Test
+    public void whenLookAheadUsed_thenLinesAreMatchedIndependently() throws Exception {
+        write("a.conf", "end\nnext\n");
+        final List<String> results = new ArrayList<String>();
+        new DirectoryGrep(RegExBuilder.compile(new Token("end(?![\\s\\S])", false, null){}), io, cpu, 2)
+            .search(folder.getRoot().toPath(), result -> results.add(describe(result)));
+
+        assertThat(results.toString(), is("[a.conf 1:end(?![\\s\\S]):0-3]"));
+    }
+
+    @Test
+    public void whenExpressionContainsDictionary_thenMatchesAreLocatedWithoutAPattern() throws Exception {
+        write("a.log", "user bob logged in\nuser carol logged in\nadmin: user alice\n");
+        final List<String> results = new ArrayList<String>();
+        final Map<String, CompiledRegEx> expressions = new LinkedHashMap<String, CompiledRegEx>();
+        expressions.put("login", RegExBuilder.compile(text("user "), dictionary(KeywordDictionary.build(Arrays.asList("bob", "alice")))));
+        final DirectoryGrep.Summary summary = new DirectoryGrep(expressions, io, cpu, 2)
+            .search(folder.getRoot().toPath(), result -> results.add(describe(result)));
+
+        assertThat(results.toString(), is("[a.log 1:login:0-8 3:login:7-17]"));
+        assertThat(summary.toString(), is("1 files searched, 1 matched, 2 matches, 0 failures"));
+    }
+
+    @Test
+    public void whenSinkThrows_thenSearchCompletesAndRethrows() throws Exception {
+        write("a.conf", "x\n");
+        write("b.conf", "x\n");
+        try {
+            new DirectoryGrep(RegExBuilder.compile(text("x")), io, cpu, 2).search(folder.getRoot().toPath(), result -> {
+                throw new IllegalStateException("sink failed");
+            });
+            fail();
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("sink failed"));
+        }
+    }
+
+    @Test
+    public void whenMatchingFails_thenTheFileIsReportedAsAFailure() throws Exception {
+        write("a.conf", "c\n");
+        final StringBuilder pathological = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            pathological.append("ab");
+        }
+        final Path failed = write("b.conf", pathological.toString());
+        final List<String> results = new ArrayList<String>();
+     // Pattern recurses once for each repetition of the group, and overflows the stack on the long line
+        final DirectoryGrep.Summary summary = new DirectoryGrep(RegExBuilder.compile(new Token("(?:a|b)*c", false, null){}), io, cpu, 2)
+            .search(folder.getRoot().toPath(), result -> results.add(describe(result)));
+
+        assertThat(results.toString(), is("[a.conf 1:(?:a|b)*c:0-1]"));
+        assertThat(summary.filesSearched(), is(1L));
+        assertThat(summary.failures().keySet().toString(), is("[" + failed + "]"));
+        assertThat(summary.failures().get(failed).getCause() instanceof StackOverflowError, is(true));
+    }
+
+    @Test
+    public void whenConcurrencyLimitInvalid_thenExceptionIsThrown() {
+        try {
+            new DirectoryGrep(RegExBuilder.compile(text("x")), io, cpu, 0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The maximum number of concurrent files (0) must be at least 1"));
+        }
+    }
+}
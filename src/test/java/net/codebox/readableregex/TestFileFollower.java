@@ -0,0 +1,171 @@
+package net.codebox.readableregex;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestFileFollower {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CompiledRegEx regex = RegExBuilder.compile(text("id="), oneOrMore().of(anyDigit()));
+
+    private Path log() {
+        return folder.getRoot().toPath().resolve("app.log");
+    }
+
+    private void append(final Path path, final String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void whenFileIsAppendedTo_thenOnlyNewTextIsRead() throws Exception {
+        final List<MatchEvent> matches = new ArrayList<MatchEvent>();
+        final FileFollower follower = new FileFollower(regex, log(), StandardCharsets.UTF_8);
+        assertThat(follower.poll(matches::add), is(0L));
+
+        append(log(), "start id=12 and id=3");
+        assertThat(follower.poll(matches::add), is(20L));
+        assertThat(matches.toString(), is("[6-11:id=12]"));
+
+        append(log(), "4 end\n");
+        assertThat(follower.poll(matches::add), is(6L));
+        assertThat(follower.poll(matches::add), is(0L));
+        assertThat(matches.toString(), is("[6-11:id=12, 16-21:id=34]"));
+        assertThat(follower.position(), is(26L));
+    }
+
+    @Test
+    public void whenMultiByteCharacterIsSplitBetweenAppends_thenItIsDecodedOnce() throws Exception {
+        final List<MatchEvent> matches = new ArrayList<MatchEvent>();
+        final FileFollower follower = new FileFollower(RegExBuilder.compile(text("\u00E9t\u00E9")), log(), StandardCharsets.UTF_8);
+        final byte[] encoded = "\u00E9t\u00E9".getBytes(StandardCharsets.UTF_8);
+        Files.write(log(), new byte[]{encoded[0]});
+        follower.poll(matches::add);
+        Files.write(log(), new byte[]{encoded[1], encoded[2], encoded[3], encoded[4], ' '}, StandardOpenOption.APPEND);
+        follower.poll(matches::add);
+
+        assertThat(matches.toString(), is("[0-3:\u00E9t\u00E9]"));
+    }
+
+    @Test
+    public void whenResumedFromCheckpoint_thenNothingIsReadTwice() throws Exception {
+        final List<MatchEvent> matches = new ArrayList<MatchEvent>();
+        append(log(), "id=1 id=2");
+        final FileFollower first = new FileFollower(regex, log(), StandardCharsets.UTF_8);
+        first.poll(matches::add);
+        final Path saved = folder.getRoot().toPath().resolve("app.checkpoint");
+        first.checkpoint().save(saved);
+
+        append(log(), "3 id=4 ");
+        final FileFollower.Checkpoint checkpoint = FileFollower.Checkpoint.load(saved);
+        assertThat(checkpoint.position(), is(9L));
+        final FileFollower second = new FileFollower(regex, log(), StandardCharsets.UTF_8, checkpoint);
+        assertThat(second.poll(matches::add), is(7L));
+
+        assertThat(matches.toString(), is("[0-4:id=1, 5-10:id=23, 11-15:id=4]"));
+    }
+
+    @Test
+    public void whenCheckpointWritten_thenItRoundTrips() throws Exception {
+        append(log(), "id=9");
+        final FileFollower follower = new FileFollower(regex, log(), StandardCharsets.UTF_8);
+        follower.poll(event -> {});
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        follower.checkpoint().writeTo(out);
+
+        final List<MatchEvent> matches = new ArrayList<MatchEvent>();
+        new FileFollower(regex, log(), StandardCharsets.UTF_8, FileFollower.Checkpoint.readFrom(new ByteArrayInputStream(out.toByteArray())))
+            .finish(matches::add);
+        assertThat(matches.toString(), is("[0-4:id=9]"));
+    }
+
+    @Test
+    public void whenCheckpointIsForAnotherExpression_thenExceptionIsThrown() throws Exception {
+        final FileFollower.Checkpoint checkpoint = new FileFollower(regex, log(), StandardCharsets.UTF_8).checkpoint();
+        try {
+            new FileFollower(RegExBuilder.compile(text("x")), log(), StandardCharsets.UTF_8, checkpoint);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The checkpoint was not taken while matching the expression 'x'"));
+        }
+    }
+
+    @Test
+    public void whenFileIsTruncated_thenItIsReadFromTheStart() throws Exception {
+        final List<MatchEvent> matches = new ArrayList<MatchEvent>();
+        append(log(), "a long line with id=1 in it\n");
+        final FileFollower follower = new FileFollower(regex, log(), StandardCharsets.UTF_8);
+        follower.poll(matches::add);
+
+        Files.write(log(), "id=2\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        follower.poll(matches::add);
+
+        assertThat(matches.toString(), is("[17-21:id=1, 0-4:id=2]"));
+        assertThat(follower.generation(), is(1L));
+    }
+
+    @Test
+    public void whenFileIsRotated_thenTheOldFileIsFinishedBeforeTheNewOneIsRead() throws Exception {
+        final List<MatchEvent> matches = new ArrayList<MatchEvent>();
+        append(log(), "id=1 id=2");
+        final FileFollower follower = new FileFollower(regex, log(), StandardCharsets.UTF_8);
+        follower.poll(matches::add);
+
+        append(log(), "2");
+        Files.move(log(), folder.getRoot().toPath().resolve("app.log.1"));
+        assertThat(follower.poll(matches::add), is(1L));
+        append(log(), "id=3");
+        follower.poll(matches::add);
+        follower.finish(matches::add);
+
+        assertThat(matches.toString(), is("[0-4:id=1, 5-10:id=22, 0-4:id=3]"));
+    }
+
+    @Test
+    public void whenFollowing_thenAppendedMatchesAreReportedAndCheckpointed() throws Exception {
+        final List<MatchEvent> matches = new CopyOnWriteArrayList<MatchEvent>();
+        final Path saved = folder.getRoot().toPath().resolve("app.checkpoint");
+        final FileFollower follower = new FileFollower(regex, log(), StandardCharsets.UTF_8);
+        final Thread thread = new Thread(() -> {
+            try {
+                follower.follow(matches::add, 10, TimeUnit.MILLISECONDS, saved);
+            } catch (InterruptedException ex) {
+                // Expected when the test finishes
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        thread.start();
+        try {
+            append(log(), "id=1 ");
+            final long deadline = System.currentTimeMillis() + 10000;
+            while ((matches.isEmpty() || !Files.exists(saved)) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(matches.toString(), is("[0-4:id=1]"));
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+        assertThat(FileFollower.Checkpoint.load(saved).position(), is(5L));
+    }
+}
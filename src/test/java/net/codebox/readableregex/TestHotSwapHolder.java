@@ -0,0 +1,191 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestHotSwapHolder {
+    @Test
+    public void whenValueIsSwapped_thenTheNewVersionIsUsedAndTheOldOneIsReleased() {
+        final List<CompiledRegEx> released = new ArrayList<CompiledRegEx>();
+        final CompiledRegEx first = RegExBuilder.compile(text("alpha"));
+        final HotSwapHolder<CompiledRegEx> holder = new HotSwapHolder<CompiledRegEx>(first, released::add);
+
+        assertThat(holder.version(), is(1L));
+        assertThat(holder.lastReloadNanos(), is(-1L));
+        assertThat(holder.reload(() -> RegExBuilder.compile(text("beta"))), is(2L));
+
+        assertThat(holder.apply(regex -> regex.find("the beta test")), is(true));
+        assertThat(holder.apply(regex -> regex.find("the alpha test")), is(false));
+        assertThat(released.size(), is(1));
+        assertThat(released.get(0), is(sameInstance(first)));
+        assertThat(holder.reloads(), is(1L));
+        assertThat(holder.lastReloadNanos() >= 0, is(true));
+        assertThat(holder.maxReloadNanos(), is(holder.lastReloadNanos()));
+        assertThat(holder.toString(), is("version 2, 1 reloads, 0 retained"));
+    }
+
+    @Test
+    public void whenReplacedVersionIsInUse_thenItIsReleasedWhenTheLastUserFinishes() throws Exception {
+        final List<String> released = Collections.synchronizedList(new ArrayList<String>());
+        final HotSwapHolder<String> holder = new HotSwapHolder<String>("v1", released::add);
+        final CountDownLatch using = new CountDownLatch(1), finish = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> seen = executor.submit(() -> holder.apply(value -> {
+                using.countDown();
+                await(finish);
+                return value;
+            }));
+            using.await();
+            holder.swap("v2");
+
+            assertThat(holder.get(), is("v2"));
+            assertThat(holder.retainedVersions(), is(1));
+            assertThat(released.isEmpty(), is(true));
+
+            finish.countDown();
+            assertThat(seen.get(10, TimeUnit.SECONDS), is("v1"));
+            assertThat(holder.retainedVersions(), is(0));
+            assertThat(released, is(Collections.singletonList("v1")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenReloadIsInProgress_thenReadersAreNotBlocked() throws Exception {
+        final HotSwapHolder<CompiledRegEx> holder = new HotSwapHolder<CompiledRegEx>(RegExBuilder.compile(text("old")));
+        final CountDownLatch building = new CountDownLatch(1), finish = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Long> reloaded = executor.submit(() -> holder.reload(() -> {
+                building.countDown();
+                await(finish);
+                return RegExBuilder.compile(text("new"));
+            }));
+            building.await();
+            for (int i = 0; i < 10000; i++) {
+                assertThat(holder.apply(regex -> regex.matches("old")), is(true));
+            }
+            finish.countDown();
+
+            assertThat(reloaded.get(10, TimeUnit.SECONDS), is(2L));
+            assertThat(holder.apply(regex -> regex.matches("new")), is(true));
+            assertThat(holder.lastReloadNanos() >= holder.meanReloadNanos(), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenManyThreadsReadAndUpdate_thenNoUpdateIsLostAndNoVersionIsReleasedWhileInUse() throws Exception {
+        final int readers = 8, writers = 4, updatesPerWriter = 50;
+        final Set<ShardedAlternation> released = Collections.newSetFromMap(new IdentityHashMap<ShardedAlternation, Boolean>());
+        final AtomicBoolean releasedTwice = new AtomicBoolean();
+        final HotSwapHolder<ShardedAlternation> holder = new HotSwapHolder<ShardedAlternation>(new ShardedAlternation(4), value -> {
+            synchronized (released) {
+                if (!released.add(value)) {
+                    releasedTwice.set(true);
+                }
+            }
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(readers + writers);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch reading = new CountDownLatch(readers);
+        try {
+            final List<Future<Long>> readResults = new ArrayList<Future<Long>>();
+            for (int r = 0; r < readers; r++) {
+                readResults.add(executor.submit(() -> {
+                    long reads = 0, lastVersion = 0;
+                    while (!stop.get()) {
+                        final long version = holder.version();
+                        if (version < lastVersion) {
+                            throw new AssertionError("The version went backwards");
+                        }
+                        lastVersion = version;
+                        holder.apply(alternation -> {
+                            synchronized (released) {
+                                if (released.contains(alternation)) {
+                                    throw new AssertionError("A version was released while it was in use");
+                                }
+                            }
+                            return alternation.find("visit host1-7.example today");
+                        });
+                        if (reads++ == 0) {
+                            reading.countDown();
+                        }
+                    }
+                    return reads;
+                }));
+            }
+            final List<Future<?>> writeResults = new ArrayList<Future<?>>();
+            for (int w = 0; w < writers; w++) {
+                final int writer = w;
+                writeResults.add(executor.submit(() -> {
+                 // Updates begin once every reader is running, so that they overlap with the reads
+                    reading.await();
+                    for (int i = 0; i < updatesPerWriter; i++) {
+                        final Token rule = text("host" + writer + "-" + i + ".example");
+                        holder.update(alternation -> alternation.with(rule));
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : writeResults) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+            stop.set(true);
+            for (Future<Long> result : readResults) {
+                assertThat(result.get(60, TimeUnit.SECONDS) > 0, is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final int updates = writers * updatesPerWriter;
+        assertThat(holder.get().size(), is(updates));
+        assertThat(holder.version(), is(1L + updates));
+        assertThat(holder.reloads(), is((long) updates));
+        assertThat(holder.retainedVersions(), is(0));
+        assertThat(released.size(), is(updates));
+        assertThat(releasedTwice.get(), is(false));
+        assertThat(holder.apply(alternation -> alternation.find("visit host1-7.example today")), is(true));
+    }
+
+    @Test
+    public void whenInitialValueIsNull_thenExceptionIsThrown() {
+        try {
+            new HotSwapHolder<String>(null);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The initial value must not be null"));
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package net.codebox.readableregex;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestKeywordDictionary {
+    private static final List<String> KEYWORDS = Arrays.asList("alice", "al", "bob", "bobby", "caf\u00E9", "\u65E5\u672C", "\uD83D\uDE00smile", "bob");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void whenDictionaryIsBuilt_thenItContainsExactlyTheKeywords() {
+        final KeywordDictionary dictionary = KeywordDictionary.build(KEYWORDS);
+
+        assertThat(dictionary.size(), is(7));
+        assertThat(dictionary.minLength(), is(2));
+        assertThat(dictionary.maxLength(), is(7));
+        for (String keyword : KEYWORDS) {
+            assertThat(keyword, dictionary.contains(keyword), is(true));
+        }
+        for (String other : Arrays.asList("", "a", "ali", "alices", "bo", "cafe", "\u65E5", "\uD83D\uDE00", "smile")) {
+            assertThat(other, dictionary.contains(other), is(false));
+        }
+    }
+
+    @Test
+    public void whenLongestMatchIsFound_thenTheLongestKeywordAtThatPositionIsUsed() {
+        final KeywordDictionary dictionary = KeywordDictionary.build(KEYWORDS);
+
+        assertThat(dictionary.longestMatch("hi bobby!", 3), is(8));
+        assertThat(dictionary.longestMatch("hi bobb!", 3), is(6));
+        assertThat(dictionary.longestMatch("alfa", 0), is(2));
+        assertThat(dictionary.longestMatch("x\uD83D\uDE00smiley", 1), is(8));
+        assertThat(dictionary.longestMatch("hi bobby!", 0), is(-1));
+    }
+
+    @Test
+    public void whenManyRandomKeywordsAreBuilt_thenLookupsAgreeWithASet() {
+        final Random random = new Random(7);
+        final Set<String> keywords = new HashSet<String>();
+        while (keywords.size() < 20000) {
+            keywords.add(randomWord(random));
+        }
+        final KeywordDictionary dictionary = KeywordDictionary.build(keywords);
+
+        assertThat(dictionary.size(), is(keywords.size()));
+        for (String keyword : keywords) {
+            assertThat(keyword, dictionary.contains(keyword), is(true));
+        }
+        for (int i = 0; i < 20000; i++) {
+            final String word = randomWord(random);
+            assertThat(word, dictionary.contains(word), is(keywords.contains(word)));
+        }
+    }
+
+    @Test
+    public void whenDictionaryIsWrittenAndMapped_thenItIsUnchanged() throws IOException {
+        final KeywordDictionary built = KeywordDictionary.build(KEYWORDS);
+        final Path file = folder.newFile("keywords.dict").toPath();
+        built.write(file);
+        final KeywordDictionary mapped = KeywordDictionary.map(file);
+
+        assertThat(Files.size(file), is(built.sizeInBytes()));
+        assertThat(mapped.size(), is(built.size()));
+        assertThat(mapped.checksum(), is(built.checksum()));
+        assertThat(mapped.toString(), is(built.toString()));
+        for (String keyword : KEYWORDS) {
+            assertThat(keyword, mapped.contains(keyword), is(true));
+        }
+        assertThat(mapped.contains("bobb"), is(false));
+    }
+
+    @Test
+    public void whenFileIsNotAValidDictionary_thenExceptionIsThrown() throws IOException {
+        final Path file = folder.newFile("keywords.dict").toPath();
+        KeywordDictionary.build(KEYWORDS).write(file);
+        final byte[] valid = Files.readAllBytes(file);
+
+        final byte[] truncated = Arrays.copyOf(valid, valid.length - 8);
+        assertMapFails(file, truncated, String.format("The dictionary in '%s' is incomplete", file));
+
+        final byte[] newer = valid.clone();
+        ByteBuffer.wrap(newer).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 2);
+        assertMapFails(file, newer, "The dictionary has version 2, only version 1 is supported");
+
+        assertMapFails(file, "alice\nbob\n".getBytes("UTF-8"), String.format("The file '%s' does not contain a keyword dictionary", file));
+    }
+
+    private static void assertMapFails(final Path file, final byte[] contents, final String message) throws IOException {
+        Files.write(file, contents);
+        try {
+            KeywordDictionary.map(file);
+            fail();
+        } catch (IOException ex) {
+            assertThat(ex.getMessage(), is(message));
+        }
+    }
+
+    @Test
+    public void whenDictionaryIsUsedInAnExpression_thenTheDictionaryEngineMatchesIt() {
+        final KeywordDictionary dictionary = KeywordDictionary.build(KEYWORDS);
+        final CompiledRegEx regex = RegExBuilder.compile(text("user="), dictionary(dictionary), oneOrMore().of(anyDigit()), text(";"));
+
+        assertThat(regex.engine().name(), is("dictionary"));
+        assertThat(regex.matches("user=bobby42;"), is(true));
+        assertThat(regex.matches("user=caf\u00E91;"), is(true));
+        assertThat(regex.matches("user=bobb42;"), is(false));
+        assertThat(regex.find("login user=\uD83D\uDE00smile7; ok"), is(true));
+        assertThat(regex.find("login user=smile7; ok"), is(false));
+        assertThat(regex.toString(), is("user=(?{" + dictionary + "})[0-9]+;"));
+    }
+
+    @Test
+    public void whenDictionaryIsRepeatedOrAlternated_thenShorterKeywordsAreTriedOnBacktracking() {
+        final KeywordDictionary dictionary = KeywordDictionary.build(KEYWORDS);
+        final CompiledRegEx repeated = RegExBuilder.compile(oneOrMore().of(dictionary(dictionary)), text("by"));
+        final CompiledRegEx alternated = RegExBuilder.compile(nonCapturingGroup(or(text("guest"), dictionary(dictionary))), text(":"), anyDigit());
+
+        assertThat(repeated.matches("bobby"), is(true));
+        assertThat(repeated.matches("alalicebobby"), is(true));
+        assertThat(repeated.matches("bobbyby"), is(true));
+        assertThat(repeated.matches("by"), is(false));
+        assertThat(alternated.matches("guest:1"), is(true));
+        assertThat(alternated.matches("al:2"), is(true));
+        assertThat(alternated.find("x alice:"), is(false));
+    }
+
+    @Test
+    public void whenPatternIsRequested_thenExceptionIsThrown() {
+        final CompiledRegEx regex = RegExBuilder.compile(dictionary(KeywordDictionary.build(KEYWORDS)));
+        try {
+            regex.pattern();
+            fail();
+        } catch (UnsupportedOperationException ex) {
+            assertThat(ex.getMessage().endsWith("contains a keyword dictionary, so it has no Pattern and only supports matches() and find()"), is(true));
+        }
+    }
+
+    @Test
+    public void whenDictionaryIsMadeCaseInsensitive_thenExceptionIsThrown() {
+        try {
+            caseInsensitive(text("id="), dictionary(KeywordDictionary.build(KEYWORDS)));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("A keyword dictionary cannot be made case-insensitive, its keywords must be folded before it is built"));
+        }
+    }
+
+    @Test
+    public void whenDictionaryIsEncodedWithTokenCodec_thenExceptionIsThrown() throws IOException {
+        final KeywordDictionary dictionary = KeywordDictionary.build(KEYWORDS);
+        try {
+            TokenCodec.write(Collections.singletonList(nonCapturingGroup(text("a"), dictionary(dictionary))), new ByteArrayOutputStream());
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The " + dictionary + " cannot be encoded, it must be written with KeywordDictionary.write()"));
+        }
+    }
+
+    @Test
+    public void whenSamplesAreGenerated_thenTheyContainKeywords() {
+        final CompiledRegEx regex = RegExBuilder.compile(text("<"), dictionary(KeywordDictionary.build(KEYWORDS)), text(">"));
+        final SampleGenerator generator = new SampleGenerator(regex, 42);
+        final Set<String> seen = new HashSet<String>();
+        for (int i = 0; i < 500; i++) {
+            final String sample = generator.next();
+            assertThat(sample, regex.matches(sample), is(true));
+            seen.add(sample);
+        }
+        assertThat(seen.size(), is(7));
+    }
+
+    @Test
+    public void whenNoKeywordsAreGiven_thenExceptionIsThrown() {
+        try {
+            KeywordDictionary.build(new ArrayList<String>());
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("A keyword dictionary must contain at least one keyword"));
+        }
+    }
+
+    private static String randomWord(final Random random) {
+        final StringBuilder word = new StringBuilder();
+        final int length = 1 + random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            final int kind = random.nextInt(20);
+            word.append(kind == 0 ? (char) ('\u00E0' + random.nextInt(20)) : (char) ('a' + random.nextInt(6)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Lexer.rule;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestLexer {
+    private final Lexer lexer = new Lexer(
+        rule("IF", text("if")),
+        rule("IDENTIFIER", anyLetter(), zeroOrMore().of(anyOneOf(range('a', 'z'), range('A', 'Z'), range('0', '9')))),
+        rule("NUMBER", oneOrMore().of(anyDigit()), zeroOrOne().of(text("."), oneOrMore().of(anyDigit()))),
+        rule("EQUALS", text("==")),
+        rule("ASSIGN", text("=")),
+        rule("SPACE", oneOrMore().of(anyOneOf(characters(' ', '\t'))))
+    );
+
+    @Test
+    public void whenInputIsValid_thenLongestMatchesAreReturned(){
+        final LexemeBuffer buffer = new LexemeBuffer(2);
+        final String input = "if iffy == 3.14";
+        assertThat(lexer.tokenize(input, buffer), is(input.length()));
+        assertLexemes(lexer, input, buffer, "IF:if", "SPACE: ", "IDENTIFIER:iffy", "SPACE: ", "EQUALS:==", "SPACE: ", "NUMBER:3.14");
+    }
+
+    @Test
+    public void whenRulesMatchSameLength_thenEarlierRuleWins(){
+        final LexemeBuffer buffer = new LexemeBuffer();
+        lexer.tokenize("if", buffer);
+        assertLexemes(lexer, "if", buffer, "IF:if");
+    }
+
+    @Test
+    public void whenNoRuleMatches_thenTokenizationStops(){
+        final LexemeBuffer buffer = new LexemeBuffer();
+        assertThat(lexer.tokenize("x = 1 ; y", buffer), is(6));
+        assertLexemes(lexer, "x = 1 ; y", buffer, "IDENTIFIER:x", "SPACE: ", "ASSIGN:=", "SPACE: ", "NUMBER:1", "SPACE: ");
+    }
+
+    @Test
+    public void whenBufferIsReused_thenPreviousContentsAreDiscarded(){
+        final LexemeBuffer buffer = new LexemeBuffer();
+        lexer.tokenize("a b c d", buffer);
+        lexer.tokenize("42", buffer);
+        assertLexemes(lexer, "42", buffer, "NUMBER:42");
+    }
+
+    @Test
+    public void whenRangeSpecified_thenOnlyThatPartIsTokenized(){
+        final LexemeBuffer buffer = new LexemeBuffer();
+        assertThat(lexer.tokenize("abc123", 1, 4, buffer), is(4));
+        assertLexemes(lexer, "abc123", buffer, "IDENTIFIER:bc1");
+    }
+
+    @Test
+    public void whenSupplementaryCharactersUsed_thenTheyAreMatchedAsSingleCharacters(){
+        final Lexer emojiLexer = new Lexer(rule("ANY", anyCharacterExcept(characters(' '))), rule("SPACE", text(" ")));
+        final LexemeBuffer buffer = new LexemeBuffer();
+        final String input = "\uD83D\uDE00 x";
+        assertThat(emojiLexer.tokenize(input, buffer), is(input.length()));
+        assertLexemes(emojiLexer, input, buffer, "ANY:\uD83D\uDE00", "SPACE: ", "ANY:x");
+    }
+
+    @Test
+    public void whenRuleMatchesEmptyString_thenExceptionIsThrown(){
+        try {
+            new Lexer(rule("OPTIONAL", zeroOrOne().of(text("x"))));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The rule 'OPTIONAL' can match an empty string"));
+        }
+    }
+
+    @Test
+    public void whenRuleUsesBackReference_thenExceptionIsThrown(){
+        try {
+            new Lexer(rule("REPEATED", groupOf(anyLetter()), group(1)));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The rule 'REPEATED' contains a back-reference, which cannot be used in a Lexer"));
+        }
+    }
+
+    @Test
+    public void whenAutomatonIsUsed_thenResultsAgreeWithPattern(){
+        final Token[] expressions = {
+            RegExBuilder.compile(text("a"), or(text("b"), text("cd")), zeroOrMore().of(anyDigit())).token(),
+            RegExBuilder.compile(between(2, 3).of(text("ab")), anything()).token(),
+            RegExBuilder.compile(atLeast(2).of(anyOneOf(characters('x'), range('0', '1'))), zeroOrOne().of(text("-"))).token(),
+            RegExBuilder.compile(oneOrMore().of(or(text("ab"), text("a"))), text("b")).token(),
+            RegExBuilder.compile(anyCharacterExcept(characters('a')), anything()).token()
+        };
+        final String[] inputs = {"", "a", "ab", "acd", "acd12", "b9", "abab", "ababab", "abababab", "ababxyz",
+                "ababab\n", "xx", "x01-", "x", "0-", "ab", "aab", "abb", "abab", "aabab", "b", "\n", "\uD83D\uDE00",
+                "aa\nb"};
+        for (Token expression : expressions) {
+            final Dfa dfa = Dfa.build(expression);
+            for (String input : inputs) {
+                final boolean matched = dfa.longestMatch(input, 0, input.length(), new int[1]) == input.length();
+                assertThat(expression + " / " + input, matched, is(input.matches(expression.toString())));
+            }
+        }
+    }
+
+    private static void assertLexemes(final Lexer lexer, final String input, final LexemeBuffer buffer, final String... expected){
+        assertThat(buffer.size(), is(expected.length));
+        for (int i = 0; i < expected.length; i++) {
+            final String actual = lexer.ruleName(buffer.ruleId(i)) + ":" + input.substring(buffer.start(i), buffer.end(i));
+            assertThat(actual, is(expected[i]));
+        }
+    }
+}
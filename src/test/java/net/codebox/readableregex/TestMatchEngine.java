@@ -0,0 +1,154 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestMatchEngine {
+    @Test
+    public void whenExpressionIsLiteral_thenLiteralEngineIsChosen(){
+        final CompiledRegEx regex = RegExBuilder.compile(text("a.b"), nonCapturingGroup(text("c")), anyOneOf(characters('d')));
+        assertThat(regex.engine().name(), is("literal"));
+        assertThat(regex.features().literal(), is("a.bcd"));
+        assertThat(regex.matches("a.bcd"), is(true));
+        assertThat(regex.matches("axbcd"), is(false));
+        assertThat(regex.find("xxa.bcdxx"), is(true));
+        assertThat(regex.find("xxa.bcxx"), is(false));
+    }
+
+    @Test
+    public void whenExpressionIsRegular_thenDfaEngineIsChosen(){
+        final CompiledRegEx regex = RegExBuilder.compile(oneOrMore().of(anyLetter()), zeroOrMore().of(anyDigit()));
+        assertThat(regex.engine().name(), is("dfa"));
+        assertThat(regex.engineSelection(), is("dfa (length 1..unbounded); literal rejected: the expression is not a literal"));
+    }
+
+    @Test
+    public void whenExpressionHasShortRequiredLiteral_thenRegexEngineIsPreferred(){
+        final CompiledRegEx regex = RegExBuilder.compile(exactly(3).of(anyDigit()), text("-"), exactly(4).of(anyDigit()));
+        assertThat(regex.features().hasRequiredLiterals(), is(true));
+        assertThat(regex.engine().name(), is("java.util.regex"));
+    }
+
+    @Test
+    public void whenExpressionUsesBackReference_thenRegexEngineIsChosen(){
+        final CompiledRegEx regex = RegExBuilder.compile(groupOf(anyLetter()), group(1));
+        assertThat(regex.features().hasBackReferences(), is(true));
+        assertThat(regex.engine().name(), is("java.util.regex"));
+        assertThat(regex.engineSelection(), is("java.util.regex (length 1..unbounded, back-references); "
+                + "literal rejected: the expression is not a literal; dfa rejected: back-references cannot be matched by an automaton"));
+        assertThat(regex.find("xyzzy"), is(true));
+        assertThat(regex.find("xyz"), is(false));
+    }
+
+    @Test
+    public void whenFeaturesAnalysed_thenConstructsAreDetected(){
+        assertThat(RegExBuilder.compile(text("a"), positiveLookAhead(text("b"))).features().hasLookArounds(), is(true));
+        assertThat(RegExBuilder.compile(independentNonCapturingGroup(text("a"))).features().hasAtomicConstructs(), is(true));
+        assertThat(RegExBuilder.compile(oneOrMore().possessive().of(text("a"))).features().hasAtomicConstructs(), is(true));
+        assertThat(RegExBuilder.compile(exactly(2).of(text("ab"))).features().isBounded(), is(true));
+        assertThat(RegExBuilder.compile(exactly(2).of(text("ab"))).features().isLiteral(), is(false));
+        assertThat(RegExBuilder.compile(caseInsensitive(text("select"))).features().isLiteral(), is(false));
+    }
+
+    @Test
+    public void whenEngineOverridden_thenRequestedEngineIsUsed(){
+        final CompiledRegEx regex = RegExBuilder.compile(text("abc")).usingEngine("java.util.regex");
+        assertThat(regex.engine().name(), is("java.util.regex"));
+        assertThat(regex.engineSelection(), is("java.util.regex (length 3..3, literal, required literals); requested explicitly"));
+        assertThat(regex.find("xabcx"), is(true));
+    }
+
+    @Test
+    public void whenUnknownEngineRequested_thenExceptionIsThrown(){
+        try {
+            RegExBuilder.compile(text("abc")).usingEngine("nfa");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("There is no engine named 'nfa'"));
+        }
+    }
+
+    @Test
+    public void whenUnsupportedEngineRequested_thenExceptionIsThrown(){
+        try {
+            RegExBuilder.compile(text("a"), negativeLookBehind(text("b"))).usingEngine("dfa");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The engine 'dfa' cannot match the expression 'a(?<!b)': look-arounds cannot be matched by an automaton"));
+        }
+    }
+
+    @Test
+    public void whenBuiltInEnginesListed_thenAllAreAvailable(){
+        assertThat(MatchEngines.named("literal"), is(notNullValue()));
+        assertThat(MatchEngines.named("dfa"), is(notNullValue()));
+        assertThat(MatchEngines.named("java.util.regex"), is(notNullValue()));
+        assertThat(MatchEngines.available().size() >= 3, is(true));
+    }
+
+    @Test
+    public void whenEachSupportingEngineUsed_thenResultsAgreeWithPattern(){
+        final CompiledRegEx[] expressions = {
+            RegExBuilder.compile(text("ab")),
+            RegExBuilder.compile(text("a"), or(text("b"), text("cd")), zeroOrMore().of(anyDigit())),
+            RegExBuilder.compile(between(2, 3).of(text("ab")), anything()),
+            RegExBuilder.compile(atLeast(2).of(anyOneOf(characters('x'), range('0', '1'))), zeroOrOne().of(text("-"))),
+            RegExBuilder.compile(oneOrMore().of(or(text("ab"), text("a"))), text("b")),
+            RegExBuilder.compile(anyCharacterExcept(characters('a')), exactly(2).of(anything())),
+            RegExBuilder.compile(zeroOrOne().of(text("x"))),
+            RegExBuilder.compile(text("\uD83D\uDE00"), anyDigit()),
+            RegExBuilder.compile(caseInsensitive(text("abcd")), exactly(2).of(anyDigit()))
+        };
+        final String[] inputs = {"", "a", "ab", "acd", "acd12", "b9", "abab", "ababab", "abababab", "ababxyz",
+                "ababab\n", "xx", "x01-", "x", "0-", "aab", "abb", "aabab", "b", "\n", "\uD83D\uDE00", "\uD83D\uDE007",
+                "aa\nb", "zzABCD12", "abCd1", "--\uDE00x--"};
+        for (CompiledRegEx expression : expressions) {
+            final Pattern pattern = expression.pattern();
+            for (MatchEngine engine : MatchEngines.available()) {
+                if (engine.unsupportedReason(expression.features()) != null) {
+                    continue;
+                }
+                final CompiledRegEx regex = expression.usingEngine(engine.name());
+                for (String input : inputs) {
+                    final String description = engine.name() + ": " + expression + " / " + input;
+                    assertThat(description, regex.matches(input), is(pattern.matcher(input).matches()));
+                    assertThat(description, regex.find(input), is(pattern.matcher(input).find()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void whenAnythingIsQuantified_thenResultsAgreeWithPattern(){
+        final Quantifier[] quantifiers = {oneOrMore(), zeroOrOne(), exactly(0), exactly(2), between(1, 3), atLeast(2), exactly(2).possessive()};
+        final String[] inputs = {"", "a", "Ab", "xxb", "b\nA", "\n"};
+        for (Quantifier quantifier : quantifiers) {
+            final CompiledRegEx expression = RegExBuilder.compile(quantifier.of(anything()), anyOneOf(characters('a', 'b')));
+            final Pattern pattern = expression.pattern();
+            assertThat(expression.toString(), expression.engine().name(), is("java.util.regex"));
+            assertThat(expression.toString(), expression.minLength(), is(1));
+            assertThat(expression.toString(), expression.maxLength(), is(Token.UNBOUNDED));
+            for (MatchEngine engine : MatchEngines.available()) {
+                if (engine.unsupportedReason(expression.features()) != null) {
+                    continue;
+                }
+                final CompiledRegEx regex = expression.usingEngine(engine.name());
+                for (String input : inputs) {
+                    final String description = engine.name() + ": " + expression + " / " + input;
+                    assertThat(description, regex.matches(input), is(pattern.matcher(input).matches()));
+                    assertThat(description, regex.find(input), is(pattern.matcher(input).find()));
+                }
+            }
+        }
+    }
+}
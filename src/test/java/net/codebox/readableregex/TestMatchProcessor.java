@@ -0,0 +1,151 @@
+package net.codebox.readableregex;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestMatchProcessor {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void whenTextIsPublished_thenMatchesAcrossChunksAreDelivered() throws Exception {
+        final MatchProcessor<CharSequence> processor = MatchProcessor.forText(RegExBuilder.compile(oneOrMore().of(anyDigit())), executor, 2);
+        final CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        processor.subscribe(subscriber);
+        try (SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<>(executor, 4)) {
+            publisher.subscribe(processor);
+            for (String chunk : new String[]{"a1", "23b", "4", "", "5c", "6"}) {
+                publisher.submit(chunk);
+            }
+        }
+        subscriber.await();
+        assertThat(subscriber.events.toString(), is("[1-4:123, 5-7:45, 8-9:6]"));
+        assertThat(subscriber.error, is((Throwable) null));
+        assertThat(processor.queuedChunks(), is(0));
+    }
+
+    @Test
+    public void whenSubscriberIsSlow_thenEventsWaitForDemand() throws Exception {
+        final MatchProcessor<CharSequence> processor = MatchProcessor.forText(RegExBuilder.compile(text("x")), executor, 4);
+        final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        processor.subscribe(subscriber);
+        final SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<>(executor, 64);
+        publisher.subscribe(processor);
+        for (int i = 0; i < 50; i++) {
+            publisher.submit("xxxx");
+        }
+        Thread.sleep(200);
+        assertThat(subscriber.events.size(), is(0));
+        assertTrue(processor.pendingEvents() <= 4 + 4);
+        assertTrue(processor.maxQueuedChunks() <= 4);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        publisher.close();
+        subscriber.await();
+        assertThat(subscriber.events.size(), is(200));
+        assertThat(subscriber.events.get(199).start(), is(199L));
+    }
+
+    @Test
+    public void whenBytesArePublished_thenCharactersSplitBetweenChunksAreDecoded() throws Exception {
+        final MatchProcessor<ByteBuffer> processor = MatchProcessor.forBytes(
+                RegExBuilder.compile(text("caf\u00E9")), StandardCharsets.UTF_8, executor, 8);
+        final CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        final byte[] bytes = "un caf\u00E9".getBytes(StandardCharsets.UTF_8);
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>(executor, 8)) {
+            publisher.subscribe(processor);
+            publisher.submit(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+            publisher.submit(ByteBuffer.wrap(bytes, bytes.length - 1, 1));
+        }
+        subscriber.await();
+        assertThat(subscriber.events.toString(), is("[3-7:caf\u00E9]"));
+    }
+
+    @Test
+    public void whenUpstreamFails_thenErrorIsDelivered() throws Exception {
+        final MatchProcessor<CharSequence> processor = MatchProcessor.forText(RegExBuilder.compile(text("x")), executor, 2);
+        final CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        final SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<>(executor, 4);
+        publisher.subscribe(processor);
+        publisher.closeExceptionally(new IllegalStateException("failed"));
+        subscriber.await();
+        assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void whenSecondSubscriberAdded_thenItReceivesAnError() throws Exception {
+        final MatchProcessor<CharSequence> processor = MatchProcessor.forText(RegExBuilder.compile(text("x")), executor, 2);
+        processor.subscribe(new CollectingSubscriber(1));
+        final CollectingSubscriber second = new CollectingSubscriber(1);
+        processor.subscribe(second);
+        second.await();
+        assertThat(second.error, instanceOf(IllegalStateException.class));
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<MatchEvent> {
+        private final long batch;
+        private final List<MatchEvent> events = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+
+        CollectingSubscriber(final long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onNext(final MatchEvent event) {
+            events.add(event);
+            if (batch > 0 && batch < Long.MAX_VALUE) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
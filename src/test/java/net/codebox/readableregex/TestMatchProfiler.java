@@ -0,0 +1,134 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestMatchProfiler {
+    @Test
+    public void whenAlternativesMatch_thenEachBranchIsCounted(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(or(text("GET"), text("POST"), text("PUT")), text(" ")));
+        assertThat(profiler.record("GET / POST /a GET /b"), is(3));
+        assertThat(profiler.record("PATCH"), is(0));
+
+        final List<MatchProfiler.Site> sites = profiler.sites();
+        assertThat(sites.size(), is(1));
+        assertThat(sites.get(0).isAlternation(), is(true));
+        assertThat(sites.get(0).branches().toString(), is("[GET, POST, PUT ]"));
+        assertThat(sites.get(0).branchCounts(), is(new long[]{2, 1, 0}));
+        assertThat(profiler.inputs(), is(2L));
+        assertThat(profiler.matches(), is(3L));
+        assertThat(profiler.unattributedMatches(), is(0L));
+    }
+
+    @Test
+    public void whenQuantifierMatches_thenIterationsAreCounted(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(text("<"), oneOrMore().of(anyDigit()), text(">")));
+        profiler.record("<1> <23> <456>");
+        final MatchProfiler.Site site = profiler.sites().get(0);
+        assertThat(site.isAlternation(), is(false));
+        assertThat(site.path(), is("/1"));
+        assertThat(site.matches(), is(3L));
+        assertThat(site.iterations(), is(6L));
+        assertThat(site.maxIterations(), is(3L));
+    }
+
+    @Test
+    public void whenBacktrackingOccurs_thenSuccessfulPathIsRecorded(){
+     // The greedy first quantifier must give back one iteration, and the first alternative fails after matching
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(
+                oneOrMore().of(anyLetter()), nonCapturingGroup(or(text("ab1"), text("b2")))));
+        profiler.record("xab2");
+        final List<MatchProfiler.Site> sites = profiler.sites();
+        assertThat(sites.get(0).iterations(), is(2L));
+        assertThat(sites.get(1).branchCounts(), is(new long[]{0, 1}));
+    }
+
+    @Test
+    public void whenQuantifiedAlternationMatches_thenBothIterationsAndBranchesAreCounted(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(oneOrMore().of(or(text("ab"), text("c")))));
+        profiler.record("ababc-c");
+        final List<MatchProfiler.Site> sites = profiler.sites();
+        assertThat(sites.size(), is(2));
+        assertThat(sites.get(0).iterations(), is(4L));
+        assertThat(sites.get(1).expression(), is("ab|c"));
+        assertThat(sites.get(1).branchCounts(), is(new long[]{2, 2}));
+    }
+
+    @Test
+    public void whenLazyQuantifierUsed_thenFewestIterationsAreRecorded(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(
+                text("\""), zeroOrMore().lazy().of(anyCharacterExcept(characters('\n'))), text("\"")));
+        profiler.record("\"a\" \"bc\"");
+        assertThat(profiler.matches(), is(2L));
+        assertThat(profiler.sites().get(0).iterations(), is(3L));
+        assertThat(profiler.unattributedMatches(), is(0L));
+    }
+
+    @Test
+    public void whenVariedExpressionsProfiled_thenEveryMatchIsReplayed(){
+        final CompiledRegEx[] expressions = {
+            RegExBuilder.compile(text("a"), or(text("b"), text("cd")), zeroOrMore().of(anyDigit())),
+            RegExBuilder.compile(between(2, 3).of(text("ab")), anything()),
+            RegExBuilder.compile(oneOrMore().of(or(text("ab"), text("a"))), text("b")),
+            RegExBuilder.compile(zeroOrMore().of(zeroOrOne().of(text("a"))), text("b")),
+            RegExBuilder.compile(caseInsensitive(text("abc")), between(1, 2).lazy().of(anyDigit()))
+        };
+        final String input = "acd12 ababab\nxabab aab b abcABC12 \uD83D\uDE00 aaab";
+        for (CompiledRegEx expression : expressions) {
+            final MatchProfiler profiler = new MatchProfiler(expression);
+            profiler.record(input);
+            assertThat(expression.toString(), profiler.matches() > 0, is(true));
+            assertThat(expression.toString(), profiler.unattributedMatches(), is(0L));
+        }
+    }
+
+    @Test
+    public void whenReportRequested_thenItDescribesEverySite(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(or(text("a"), text("b")), zeroOrOne().of(anyDigit())));
+        profiler.record("a1 b");
+        assertThat(profiler.report(), is("a|b[0-9]?: 1 inputs, 2 matches\n/ a|b[0-9]?: a=1, b[0-9]?=1\n/1/1 [0-9]?: 1 matches, 0 iterations, at most 0"));
+    }
+
+    @Test
+    public void whenFindIsRecorded_thenOnlyTheFirstMatchIsReplayed(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(or(text("a"), text("b"))));
+        assertThat(profiler.recordFind("b a a a"), is(true));
+        assertThat(profiler.recordFind("xyz"), is(false));
+        assertThat(profiler.inputs(), is(2L));
+        assertThat(profiler.matches(), is(1L));
+        assertThat(profiler.sites().get(0).branchCounts()[1], is(1L));
+    }
+
+    @Test
+    public void whenMatchIsTooLongToReplay_thenItIsCountedButNotAttributed(){
+        final MatchProfiler profiler = new MatchProfiler(RegExBuilder.compile(oneOrMore().of(anyDigit())));
+        final char[] digits = new char[MatchProfiler.MAX_REPLAY_LENGTH + 1];
+        Arrays.fill(digits, '7');
+        assertThat(profiler.recordMatch(new String(digits)), is(true));
+        assertThat(profiler.record("12 " + new String(digits)), is(2));
+        assertThat(profiler.matches(), is(3L));
+        assertThat(profiler.skippedMatches(), is(2L));
+        assertThat(profiler.unattributedMatches(), is(0L));
+        assertThat(profiler.sites().get(0).iterations(), is(2L));
+        assertThat(profiler.report().startsWith("[0-9]+: 2 inputs, 3 matches, 2 not replayed"), is(true));
+    }
+
+    @Test
+    public void whenExpressionUsesLookAround_thenExceptionIsThrown(){
+        try {
+            new MatchProfiler(RegExBuilder.compile(text("a"), positiveLookAhead(text("b"))));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The expression 'a(?=b)' cannot be profiled, it contains an unsupported construct: look-around"));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestOffsetCursor {
+    @Test
+    public void whenMatchCursorUsed_thenOffsetsOfEachMatchAreReturned(){
+        final OffsetCursor cursor = RegExBuilder.compile(oneOrMore().of(anyDigit())).matchCursor("a12b3cc456");
+        assertThat(offsets(cursor), is(Arrays.asList("1-3", "4-5", "7-10")));
+        assertThat(cursor.nextStart(), is(-1));
+        assertThat(cursor.nextEnd(), is(-1));
+    }
+
+    @Test
+    public void whenFieldCursorUsed_thenFieldsAgreeWithSplit(){
+        final CompiledRegEx comma = RegExBuilder.compile(text(","));
+        final CompiledRegEx optionalSpace = RegExBuilder.compile(zeroOrMore().of(text(" ")));
+        final String[] inputs = {"", ",", "a,b", ",a,,b,", "abc", "a,,", " a b"};
+        for (CompiledRegEx regex : Arrays.asList(comma, optionalSpace)) {
+            for (String input : inputs) {
+                final List<String> fields = new ArrayList<String>();
+                final OffsetCursor cursor = regex.fieldCursor(input);
+                for (int start = cursor.nextStart(); start >= 0; start = cursor.nextStart()) {
+                    fields.add(input.substring(start, cursor.nextEnd()));
+                }
+                assertThat(regex + " / " + input, fields, is(Arrays.asList(regex.pattern().split(input, -1))));
+            }
+        }
+    }
+
+    @Test
+    public void whenCountUsed_thenMatchesAndFieldsAreCounted(){
+        final CompiledRegEx regex = RegExBuilder.compile(text(","));
+        assertThat(regex.count("a,b,,c"), is(3));
+        assertThat(regex.count("abc"), is(0));
+        assertThat(regex.fieldCursor("a,b,,c").count(), is(4));
+    }
+
+    @Test
+    public void whenParallelStreamUsed_thenFieldsAgreeWithSplit(){
+        final String input = csv(20000);
+        final CompiledRegEx regex = RegExBuilder.compile(anyOneOf(characters(',', '\n')));
+        final List<String> fields = StreamSupport.stream(regex.fieldSpliterator(input), true).collect(Collectors.toList());
+        assertThat(fields, is(Arrays.asList(regex.pattern().split(input, -1))));
+    }
+
+    @Test
+    public void whenParallelStreamUsed_thenMatchesAgreeWithMatcher(){
+        final String input = csv(20000);
+        final CompiledRegEx regex = RegExBuilder.compile(text("row"), between(1, 3).of(anyDigit()), zeroOrOne().of(text(",")));
+        final List<String> expected = new ArrayList<String>();
+        final Matcher matcher = regex.pattern().matcher(input);
+        while (matcher.find()) {
+            expected.add(matcher.start() + ":" + matcher.group());
+        }
+        final List<String> actual = StreamSupport.stream(regex.matchSpliterator(input), true)
+                .map(m -> m.start() + ":" + m.group()).collect(Collectors.toList());
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void whenMatchesCanOverlap_thenInputIsOnlyDividedWhereNoMatchCanSpan(){
+        final String input = repeat("a", 3 * RegExSpliterator.MIN_SPLIT_LENGTH);
+        final CompiledRegEx unsplittable = RegExBuilder.compile(text("aa"));
+        final String alternating = repeat("ab", 1000);
+        assertThat(RegExBuilder.compile(text("ab")).findSplitPoint(alternating, 101, 200), is(102));
+        assertThat(unsplittable.findSplitPoint(input, 100, 200), is(-1));
+        assertThat(unsplittable.matchSpliterator(input).trySplit(), is(nullValue()));
+        assertThat(RegExBuilder.compile(text("b")).matchSpliterator(input).trySplit(), is(notNullValue()));
+        assertThat(StreamSupport.stream(unsplittable.matchSpliterator(input), true).count(), is((long) input.length() / 2));
+    }
+
+    @Test
+    public void whenMatchResultReturned_thenGroupsAreAvailable(){
+        final CompiledRegEx regex = RegExBuilder.compile(groupOf(anyLetter()), zeroOrOne().of(groupOf(anyDigit())));
+        final List<MatchResult> results = StreamSupport.stream(regex.matchSpliterator("a1 b"), false).collect(Collectors.toList());
+        assertThat(results.size(), is(2));
+        assertThat(results.get(0).group(2), is("1"));
+        assertThat(results.get(1).group(1), is("b"));
+        assertThat(results.get(1).group(2), is(nullValue()));
+        assertThat(results.get(1).start(), is(3));
+    }
+
+    private static List<String> offsets(final OffsetCursor cursor){
+        final List<String> offsets = new ArrayList<String>();
+        for (int start = cursor.nextStart(); start >= 0; start = cursor.nextStart()) {
+            offsets.add(start + "-" + cursor.nextEnd());
+        }
+        return offsets;
+    }
+
+    private static String csv(final int rows){
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            sb.append("row").append(i % 1000).append(',').append(i % 7 == 0 ? "" : "value").append(",,x\n");
+        }
+        return sb.toString();
+    }
+
+    private static String repeat(final String text, final int count){
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+}
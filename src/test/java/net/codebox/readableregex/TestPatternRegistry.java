@@ -0,0 +1,128 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestPatternRegistry {
+    @Test
+    public void whenExpressionRequested_thenItIsCompiledOnce(){
+        final PatternRegistry registry = new PatternRegistry().register("year", exactly(4).of(anyDigit()));
+        assertThat(registry.isCompiled("year"), is(false));
+        assertThat(registry.compileNanos("year"), is(-1L));
+
+        final CompiledRegEx regex = registry.get("year");
+        assertThat(regex.matches("2024"), is(true));
+        assertThat(registry.get("year"), is(sameInstance(regex)));
+        assertThat(registry.isCompiled("year"), is(true));
+        assertThat(registry.compileNanos("year") >= 0, is(true));
+    }
+
+    @Test
+    public void whenProfileSpecified_thenItIsUsed(){
+        final PatternRegistry registry = new PatternRegistry().register("word", CharacterProfile.UNICODE, oneOrMore().of(anyLetter()));
+        assertThat(registry.get("word").profile(), is(CharacterProfile.UNICODE));
+        assertThat(registry.get("word").matches("\u00E9t\u00E9"), is(true));
+    }
+
+    @Test
+    public void whenNameReused_thenExceptionIsThrown(){
+        final PatternRegistry registry = new PatternRegistry().register("x", text("x"));
+        try {
+            registry.register("x", text("y"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("An expression named 'x' has already been registered"));
+        }
+    }
+
+    @Test
+    public void whenUnknownNameRequested_thenExceptionIsThrown(){
+        try {
+            new PatternRegistry().get("missing");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("No expression named 'missing' has been registered"));
+        }
+    }
+
+    @Test
+    public void whenCompileAllCalled_thenEveryExpressionIsCompiledInParallel() throws Exception {
+        final PatternRegistry registry = new PatternRegistry();
+        for (int i = 0; i < 50; i++) {
+            registry.register("p" + i, text("id"), exactly(i + 1).of(anyDigit()));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            registry.compileAll(executor).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        for (String name : registry.names()) {
+            assertThat(registry.isCompiled(name), is(true));
+        }
+        assertThat(registry.compileTimes().size(), is(50));
+        final List<Long> times = new ArrayList<Long>(registry.compileTimes().values());
+        for (int i = 1; i < times.size(); i++) {
+            assertThat(times.get(i - 1) >= times.get(i), is(true));
+        }
+        assertThat(registry.get("p2").matches("id123"), is(true));
+    }
+
+    @Test
+    public void whenManyThreadsRequestSameExpression_thenAllReceiveSameInstance() throws Exception {
+        final PatternRegistry registry = new PatternRegistry().register("words", oneOrMore().of(anyLetter(), text(" ")));
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<CompiledRegEx>> results = new ArrayList<Future<CompiledRegEx>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return registry.get("words");
+                }));
+            }
+            start.countDown();
+            final CompiledRegEx first = results.get(0).get();
+            for (Future<CompiledRegEx> result : results) {
+                assertThat(result.get(), is(sameInstance(first)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void whenExpressionIsInvalid_thenFailureIsReported() throws Exception {
+        final PatternRegistry registry = new PatternRegistry().register("bad", text("a"), new Token("(", false, null){});
+        try {
+            registry.get("bad");
+            fail("Expected an exception");
+        } catch (PatternSyntaxException ex) {
+            assertThat(registry.isCompiled("bad"), is(true));
+        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            registry.compileAll(executor).get();
+        } catch (ExecutionException ex) {
+            fail("Expressions that have already failed are not compiled again");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
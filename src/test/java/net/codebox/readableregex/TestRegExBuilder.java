@@ -350,7 +350,7 @@ public class TestRegExBuilder {
         assertThat(RegExBuilder.build(anyOneOf(characters('a'), characters('b', ']'))), is("[ab\\]]"));
         assertThat(RegExBuilder.build(anyOneOf(characters('a', 'b'), characters(']'))), is("[ab\\]]"));
         
-        assertThat(RegExBuilder.build(anyCharacterExcept(characters('[', ']','\\'))), is("[^[\\]\\\\]"));
+        assertThat(RegExBuilder.build(anyCharacterExcept(characters('[', ']','\\'))), is("[^\\[\\]\\\\]"));
     }
 
  // Literal Closing Bracket in negative character matcher    
@@ -631,4 +631,32 @@ public class TestRegExBuilder {
             )
         ), is("[_\\-A-Za-z0-9]+(\\.[_\\-A-Za-z0-9]+)*@[A-Za-z0-9]+(\\.[A-Za-z0-9]+)*\\.[a-zA-Z]{2,}"));
     }
+
+    @Test
+    public void whenIgnoreCaseUsed_thenCheapestFormIsRendered(){
+        assertThat(RegExBuilder.build(text("ab").ignoreCase()), is("[Aa][Bb]"));
+        assertThat(RegExBuilder.build(text("a-1").ignoreCase()), is("[Aa]-1"));
+        assertThat(RegExBuilder.build(text("select").ignoreCase()), is("(?iu:select)"));
+        assertThat(RegExBuilder.build(anyOneOf(range('a', 'c')).ignoreCase()), is("[A-Ca-c]"));
+        assertThat(RegExBuilder.build(anyCharacterExcept(characters('x')).ignoreCase()), is("[^Xx]"));
+        assertThat(RegExBuilder.build(oneOrMore().of(text("ab")).ignoreCase()), is("([Aa][Bb])+"));
+        assertThat(RegExBuilder.build(exactly(2).of(text("select")).ignoreCase()), is("(?iu:(select){2})"));
+        assertThat(RegExBuilder.build(caseInsensitive(text("select"), anyDigit(), text("x"))), is("(?iu:select)[0-9][Xx]"));
+        assertThat(RegExBuilder.build(caseInsensitive(groupOf(text("x")), group(1))), is("([Xx])(?iu:\\1)"));
+    }
+
+    @Test
+    public void whenIgnoreCaseUsedWithoutLetters_thenTokenIsUnchanged(){
+        final Token digits = oneOrMore().of(anyDigit());
+        assertThat(digits.ignoreCase() == digits, is(true));
+        assertThat(RegExBuilder.build(text("1-2").ignoreCase()), is("1-2"));
+    }
+
+    @Test
+    public void whenProfileSpecified_thenPredefinedClassesAreRenderedForIt(){
+        assertThat(RegExBuilder.build(CharacterProfile.ASCII, anyDigit(), anyLetter()), is("[0-9][a-zA-Z]"));
+        assertThat(RegExBuilder.build(CharacterProfile.UNICODE, oneOrMore().of(anyDigit()), or(anyLetter(), text("_"))), is("\\p{Nd}+\\p{L}|_"));
+        assertThat(RegExBuilder.build(CharacterProfile.UNICODE, groupOf(anyLetter(), anyOneOf(range('a', 'f')))), is("(\\p{L}[a-f])"));
+        assertThat(RegExBuilder.build(CharacterProfile.BYTES, anyDigit(), anyCharacterExcept(characters('x'))), is("[0-9][^x]"));
+    }
 }
@@ -0,0 +1,260 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestRegExParser {
+    private static final String LITERAL_CHARACTERS = "ab-_ .,:;/\\[]{}()|^$?*+&#'\"\t\u00E9\u4E2D";
+
+    private static String render(final String regex) {
+        return RegExParser.parse(regex).toString();
+    }
+
+    @Test
+    public void whenExpressionIsParsed_thenTokensHaveTheExpectedStructure() {
+        final Token token = RegExParser.parse("id=(\\d+)|(?:ab|cd)*");
+
+        assertThat(token.kind(), is(Token.Kind.ALTERNATION));
+        assertThat(token.children()[0].kind(), is(Token.Kind.SEQUENCE));
+        assertThat(token.children()[0].children()[0].text(), is("id="));
+        assertThat(token.children()[0].children()[1].children()[0].children()[0].predefinedClass(), is(Token.PredefinedClass.DIGIT));
+        assertThat(token.children()[1].kind(), is(Token.Kind.GROUP));
+        assertThat(token.children()[1].quantifier().toString(), is("*"));
+        assertThat(token.toString(), is("id=([0-9]+)|(?:ab|cd)*"));
+    }
+
+    @Test
+    public void whenExpressionUsesShorthands_thenTheyAreConvertedToCharacterClasses() {
+        assertThat(render("\\d{3}-\\d{4}"), is("[0-9]{3}-[0-9]{4}"));
+        assertThat(render("[a-zA-Z]+\\s*"), is("[a-zA-Z]+\\s*"));
+        assertThat(RegExParser.parse("[a-zA-Z]").predefinedClass(), is(Token.PredefinedClass.LETTER));
+        assertThat(render("[\\d_]"), is("[0-9_]"));
+        assertThat(render("a.*b.*?c"), is("a.*b.*?c"));
+        assertThat(RegExParser.parse(".*").kind(), is(Token.Kind.ANYTHING));
+    }
+
+    @Test
+    public void whenLiteralsAreEscapedOrQuoted_thenTheyAreCombinedIntoText() {
+        assertThat(RegExParser.parse("a\\.b\\Q*+\\Ec").text(), is("a.b*+c"));
+        assertThat(render("a\\.b\\Q*+\\Ec"), is("a\\.b\\*\\+c"));
+        assertThat(render("\\Qab\\E+"), is("ab+"));
+        assertThat(render("\\x41\\u00e9\\t\\0101"), is("\\x41\\u00E9\\t\\0101"));
+    }
+
+    @Test
+    public void whenQuantifiersAreParsed_thenAllFormsAreRecognised() {
+        for (String quantifier : new String[]{"*", "+", "?", "{2}", "{2,}", "{2,5}"}) {
+            for (String suffix : new String[]{"", "?", "+"}) {
+                assertThat(render("x" + quantifier + suffix), is("x" + quantifier + suffix));
+            }
+        }
+        assertThat(render("x{2}{3}"), is("x{2}"));
+        assertThat(render("x?{2}"), is("x?"));
+        assertThat(render("(ab){0,2}?{2}+"), is("(ab){0,2}?"));
+        for (String expression : new String[]{"x{1}{2}", "x?{2}", "x{0,2}?{2}", "x{2}{0}"}) {
+            final CompiledRegEx parsed = RegExBuilder.compile(RegExParser.parse(expression));
+            for (String input : new String[]{"", "x", "xx", "xxx", "xxxx"}) {
+                assertThat(expression + " / " + input, parsed.matches(input), is(input.matches(expression)));
+            }
+        }
+        assertThat(render("\\x{1F600}+"), is("(?:\uD83D\uDE00)+"));
+    }
+
+    @Test
+    public void whenGroupsAreParsed_thenBackReferencesAreNumberedAsPatternNumbersThem() {
+        assertThat(RegExParser.parse("(a)(b)\\2").children()[2].groupNumber(), is(2));
+        assertThat(RegExParser.parse("(a)\\10").children()[1].groupNumber(), is(1));
+        assertThat(render("(?>a)(?=b)(?!c)(?<=d)(?<!e)"), is("(?>a)(?=b)(?!c)(?<=d)(?<!e)"));
+        assertThat(render("(?iu:abcd)"), is("(?iu:abcd)"));
+        assertThat(render("(?iu:a|b)c"), is("(?:[Aa]|[Bb])c"));
+    }
+
+    @Test
+    public void whenClassCannotBeDescribedByParts_thenPatternDeterminesItsCharacters() {
+        final CompiledRegEx regex = RegExBuilder.compile(RegExParser.parse("[a-z&&[^aeiou]]+\\p{Lu}"));
+
+        assertThat(regex.toString(), is("[a-z&&[^aeiou]]+\\p{Lu}"));
+        assertThat(RegExParser.parse("\\p{Lu}").characters().contains('\u00C9'), is(true));
+        assertThat(regex.usingEngine("dfa").matches("xyzQ"), is(true));
+        assertThat(regex.usingEngine("dfa").matches("xyaQ"), is(false));
+    }
+
+    @Test
+    public void whenExpressionContainsUnsupportedConstructs_thenEachIsReported() {
+        try {
+            RegExParser.parse("(?i)(?<year>\\d{4})-\\k<year>\\R");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The expression '(?i)(?<year>\\d{4})-\\k<year>\\R' cannot be represented by a Token, it contains "
+                + "the inline flags '(?i)' at index 0, the named group '(?<year>' at index 4, "
+                + "the named back-reference '\\k<year>' at index 19, the escape '\\R' at index 27"));
+        }
+    }
+
+    @Test
+    public void whenBackReferenceHasNoGroup_thenItIsReported() {
+        try {
+            RegExParser.parse("\\1(a)");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The expression '\\1(a)' cannot be represented by a Token, it contains "
+                + "the back-reference '\\1' to a group that does not precede it at index 0"));
+        }
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void whenExpressionIsInvalid_thenExceptionIsThrown() {
+        RegExParser.parse("a{2");
+    }
+
+    @Test
+    public void whenBuiltExpressionsAreParsed_thenTheyRenderUnchanged() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 3000; i++) {
+            final List<Token> tokens = new ArrayList<Token>();
+            final int[] groups = {0};
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                tokens.add(randomToken(random, 3, groups));
+            }
+            final String built = RegExBuilder.build(tokens.toArray(new Token[tokens.size()]));
+            try {
+                Pattern.compile(built);
+            } catch (PatternSyntaxException ex) {
+             // Look-behinds of unbounded length
+                continue;
+            }
+            assertThat(built, render(built), is(built));
+        }
+    }
+
+    @Test
+    public void whenHandWrittenExpressionsAreParsed_thenTheyMatchTheSameText() {
+        final String[] expressions = {
+            "\\d{1,3}(?:\\.\\d{1,3}){3}", "[\\w.+-]+@[\\w-]+\\.[a-z]{2,}", "(\\w+)\\s*=\\s*\"([^\"]*)\"",
+            "\\p{Lu}\\p{Ll}+\\s\\P{L}?", "(?:GET|POST|PUT) /[^\\s?]*(?:\\?\\S+)? HTTP/1\\.[01]", "[^\\D5]{2}\\W\\S",
+            "\\Q1+1=2\\E|\\x{1F600}{2}|[\\x{1F600}-\\x{1F64F}]", "a*?b++c?+", "(?iu:stra\u00DFe|\u00E9t\u00E9)\\d", "[a-c[x-z]]\\h\\v?",
+            "a{1}{2}b?{2}", "x{0,2}?{2}(?:yz){2}{0}"
+        };
+        for (String expression : expressions) {
+            final Pattern original = Pattern.compile(expression);
+            final CompiledRegEx parsed = RegExBuilder.compile(RegExParser.parse(expression));
+            final SampleGenerator generator = new SampleGenerator(parsed, 7);
+            final CompiledRegEx automaton = parsed.features().isRegular() ? parsed.usingEngine("dfa") : parsed;
+            for (int i = 0; i < 300; i++) {
+                final String sample = i % 2 == 0 ? generator.next() : generator.nextNearMiss();
+                assertThat(expression + " / " + sample, parsed.matches(sample), is(original.matcher(sample).matches()));
+                assertThat(expression + " / " + sample, automaton.matches(sample), is(original.matcher(sample).matches()));
+            }
+         // Escapes in character classes may be replaced by the characters themselves once, after which the text is stable
+            final String normalised = render(parsed.toString());
+            assertThat(render(normalised), is(normalised));
+        }
+    }
+
+    private static Token randomToken(final Random random, final int depth, final int[] groups) {
+        final int choice = random.nextInt(depth > 0 ? 20 : 12);
+        Token token;
+        switch (choice) {
+            case 0:
+            case 1:
+            case 2:
+                final StringBuilder sb = new StringBuilder();
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    sb.append(LITERAL_CHARACTERS.charAt(random.nextInt(LITERAL_CHARACTERS.length())));
+                }
+                token = text(sb.toString());
+                break;
+            case 3:
+                token = random.nextBoolean() ? anyDigit() : anyLetter();
+                break;
+            case 4:
+                token = anyOneOf(randomParts(random));
+                break;
+            case 5:
+                token = anyCharacterExcept(randomParts(random));
+                break;
+            case 6:
+                token = new Token[]{tab(), newline(), carriageReturn(), formFeed(), alertCharacter(), escapeCharacter(),
+                    controlCharacter('m'), hexCharacter("7e"), unicodeCharacter("00e9"), octalCharacter("101")}[random.nextInt(10)];
+                break;
+            case 7:
+                token = anything();
+                break;
+            case 8:
+                token = groups[0] > 0 ? group(1 + random.nextInt(groups[0])) : text("x");
+                break;
+            case 9:
+            case 10:
+            case 11:
+                token = text(String.valueOf("xyz".charAt(random.nextInt(3))));
+                break;
+            case 12:
+            case 13:
+                groups[0]++;
+                token = groupOf(randomTokens(random, depth, groups));
+                break;
+            case 14:
+                token = nonCapturingGroup(randomTokens(random, depth, groups));
+                break;
+            case 15:
+                final Token[] contents = randomTokens(random, depth, groups);
+                token = new Token[]{independentNonCapturingGroup(contents), positiveLookAhead(contents), negativeLookAhead(contents),
+                    positiveLookBehind(contents), negativeLookBehind(contents)}[random.nextInt(5)];
+                break;
+            case 16:
+            case 17:
+                final Token[] alternatives = new Token[2 + random.nextInt(2)];
+                for (int i = 0; i < alternatives.length; i++) {
+                    alternatives[i] = randomToken(random, depth - 1, groups);
+                }
+                token = or(alternatives);
+                break;
+            default:
+                token = randomToken(random, depth - 1, groups);
+                break;
+        }
+        if (random.nextInt(3) == 0 && token.kind() != Token.Kind.ANYTHING) {
+            Quantifier quantifier = new Quantifier[]{oneOrMore(), zeroOrOne(), zeroOrMore(), exactly(2), atLeast(1), between(0, 3)}[random.nextInt(6)];
+            quantifier = random.nextBoolean() ? quantifier : random.nextBoolean() ? quantifier.lazy() : quantifier.possessive();
+            token = quantifier.of(token);
+        }
+        return token;
+    }
+
+    private static Token[] randomTokens(final Random random, final int depth, final int[] groups) {
+        final Token[] tokens = new Token[1 + random.nextInt(3)];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = randomToken(random, depth - 1, groups);
+        }
+        return tokens;
+    }
+
+    private static CharacterTokenPart[] randomParts(final Random random) {
+        final CharacterTokenPart[] parts = new CharacterTokenPart[1 + random.nextInt(3)];
+        for (int i = 0; i < parts.length; i++) {
+            if (random.nextBoolean()) {
+                parts[i] = range((char) ('a' + random.nextInt(5)), (char) ('m' + random.nextInt(5)));
+            } else {
+                final Character[] characters = new Character[1 + random.nextInt(3)];
+                for (int j = 0; j < characters.length; j++) {
+                    characters[j] = "-]^[&\\ab9".charAt(random.nextInt(9));
+                }
+                parts[i] = characters(characters);
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,101 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Rewriter.rule;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestRewriter {
+    private final Rewriter redactor = new Rewriter(
+        rule("$1=***", groupOf(or(text("password"), text("secret"))), text("="), oneOrMore().of(anyCharacterExcept(characters(' ', '&')))),
+     // The quantified sequence is rendered inside brackets, so the last 4 digits are in group 2
+        rule("****-****-****-$2", exactly(3).of(exactly(4).of(anyDigit()), text("-")), groupOf(exactly(4).of(anyDigit()))),
+        rule("<email>", oneOrMore().of(anyLetter()), text("@"), oneOrMore().of(anyLetter()), text("."), atLeast(2).of(anyLetter()))
+    );
+
+    @Test
+    public void whenRulesMatch_thenAllAreAppliedInOnePass(){
+        assertThat(redactor.rewrite("user=bob&password=hunter2&card=1234-5678-9012-3456 from bob@example.com"),
+                is("user=bob&password=***&card=****-****-****-3456 from <email>"));
+    }
+
+    @Test
+    public void whenNothingMatches_thenOriginalInstanceIsReturned(){
+        final String input = "nothing to see here";
+        assertThat(redactor.rewrite(input), is(sameInstance(input)));
+    }
+
+    @Test
+    public void whenReplacementIsIdentical_thenOriginalInstanceIsReturned(){
+        final Rewriter rewriter = new Rewriter(rule("$0", text("abc")), rule("x$1", text("x"), groupOf(anyDigit())));
+        final String input = "abc x1 abc";
+        assertThat(rewriter.rewrite(input), is(sameInstance(input)));
+        assertThat(rewriter.rewrite("abc x1 y2 x"), is(sameInstance("abc x1 y2 x")));
+    }
+
+    @Test
+    public void whenRulesOverlap_thenLeftmostThenEarliestRuleWins(){
+        final Rewriter rewriter = new Rewriter(rule("[short]", text("ab")), rule("[long]", text("abc")), rule("[b]", text("bcd")));
+        assertThat(rewriter.rewrite("abcd"), is("[short]cd"));
+        assertThat(rewriter.rewrite("xbcd"), is("x[b]"));
+    }
+
+    @Test
+    public void whenRulesContainBackReferences_thenTheyReferToTheirOwnGroups(){
+        final Rewriter rewriter = new Rewriter(
+            rule("<$1>", groupOf(anyDigit()), group(1)),
+            rule("[$1]", groupOf(anyLetter()), group(1), anyDigit())
+        );
+        assertThat(rewriter.rewrite("11 aa2 ab3 22"), is("<1> [a] ab3 <2>"));
+    }
+
+    @Test
+    public void whenAppendableUsed_thenOutputIsAppended(){
+        final StringBuilder sb = new StringBuilder("> ");
+        assertThat(redactor.rewrite("secret=x", sb), is(true));
+        assertThat(redactor.rewrite(" ok", sb), is(false));
+        assertThat(sb.toString(), is("> secret=*** ok"));
+    }
+
+    @Test
+    public void whenTemplateContainsEscapes_thenTheyAreInsertedLiterally(){
+        final Rewriter rewriter = new Rewriter(rule("\\$$1\\\\", groupOf(oneOrMore().of(anyDigit()))));
+        assertThat(rewriter.rewrite("cost 42"), is("cost $42\\"));
+    }
+
+    @Test
+    public void whenTemplateRefersToMissingGroup_thenExceptionIsThrown(){
+        try {
+            new Rewriter(rule("$2", groupOf(anyDigit())));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The template '$2' refers to group 2, but the rule only contains 1 groups"));
+        }
+    }
+
+    @Test
+    public void whenRenderedWithoutOffset_thenTextMatchesToString(){
+        final Token[] tokens = {
+            sequence(text("x"), or(text("a"), text("bc")), text("y")),
+            exactly(2).of(or(text("ab"), anyDigit())),
+            oneOrMore().of(text("ab"), group(1)),
+            nonCapturingGroup(or(or(text("a"), text("b")), text("c")), zeroOrOne().of(text("d"))),
+            or(oneOrMore().of(text("ab")))
+        };
+        for (Token token : tokens) {
+            assertThat(new TokenRenderer(0).render(token), is(token.toString()));
+        }
+        assertThat(TokenRenderer.capturingGroupCount(tokens[1]), is(1));
+        assertThat(TokenRenderer.capturingGroupCount(groupOf(oneOrMore().of(text("ab")), groupOf(anyDigit()))), is(3));
+    }
+
+    private static Token sequence(final Token... tokens){
+        return Token.sequence(tokens, false);
+    }
+}
@@ -0,0 +1,92 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TestRuleSetAnalysis {
+    @Test
+    public void whenLanguagesCompared_thenSubsumptionIsExact(){
+        assertThat(RuleSetAnalysis.subsumes(or(text("foo"), text("bar")), text("foo")), is(true));
+        assertThat(RuleSetAnalysis.subsumes(text("foo"), or(text("foo"), text("bar"))), is(false));
+        assertThat(RuleSetAnalysis.subsumes(oneOrMore().of(anyDigit()), exactly(4).of(anyDigit())), is(true));
+        assertThat(RuleSetAnalysis.subsumes(exactly(4).of(anyDigit()), oneOrMore().of(anyDigit())), is(false));
+        assertThat(RuleSetAnalysis.subsumes(oneOrMore().of(anyLetter()), text("abc")), is(true));
+        assertThat(RuleSetAnalysis.subsumes(oneOrMore().of(anyOneOf(range('a', 'z'))), text("aBc")), is(false));
+        assertThat(RuleSetAnalysis.subsumes(caseInsensitive(text("abc")), text("aBc")), is(true));
+        assertThat(RuleSetAnalysis.subsumes(zeroOrMore().of(text("ab")), text("ababab")), is(true));
+        assertThat(RuleSetAnalysis.subsumes(zeroOrMore().of(text("ab")), text("ababa")), is(false));
+    }
+
+    @Test
+    public void whenStructurallyDifferentExpressionsMatchTheSameStrings_thenTheyAreEquivalent(){
+        assertThat(RuleSetAnalysis.isEquivalent(oneOrMore().of(anyDigit()), nonCapturingGroup(anyDigit(), zeroOrMore().of(anyDigit()))), is(true));
+        assertThat(RuleSetAnalysis.isEquivalent(or(text("ab"), text("ac")), nonCapturingGroup(text("a"), anyOneOf(range('b', 'c')))), is(true));
+        assertThat(RuleSetAnalysis.isEquivalent(between(1, 3).of(text("a")), between(1, 4).of(text("a"))), is(false));
+        assertThat(RuleSetAnalysis.isEquivalent(text("x"), text("x")), is(true));
+    }
+
+    @Test
+    public void whenRuleSetAnalysed_thenDuplicateAndSubsumedRulesAreReported(){
+        final List<Token> rules = Arrays.asList(
+            text("foo"),
+            or(text("foo"), text("bar")),
+            exactly(3).of(anyDigit()),
+            nonCapturingGroup(or(text("bar"), text("foo"))),
+            oneOrMore().of(anyDigit()),
+            text("baz")
+        );
+        final RuleSetAnalysis analysis = new RuleSetAnalysis(rules);
+
+        assertThat(analysis.isExact(), is(true));
+        assertThat(analysis.redundancies().size(), is(3));
+        assertThat(analysis.redundancies().get(0).toString(), is("rule 0 'foo' is subsumed by rule 1 'foo|bar'"));
+        assertThat(analysis.redundancies().get(1).toString(), is("rule 2 '[0-9]{3}' is subsumed by rule 4 '[0-9]+'"));
+        assertThat(analysis.redundancies().get(2).toString(), is("rule 3 '(?:bar|foo)' is a duplicate of rule 1 'foo|bar'"));
+        assertThat(analysis.redundancies().get(2).isDuplicate(), is(true));
+        assertThat(analysis.reducedRules().toString(), is("[foo|bar, [0-9]+, baz]"));
+    }
+
+    @Test
+    public void whenDuplicatesAreSubsumed_thenTheyPointToTheKeptRule(){
+        final RuleSetAnalysis analysis = new RuleSetAnalysis(Arrays.asList(text("a"), text("a"), oneOrMore().of(text("a"))));
+
+        assertThat(analysis.redundancies().get(0).toString(), is("rule 0 'a' is subsumed by rule 2 'a+'"));
+        assertThat(analysis.redundancies().get(1).toString(), is("rule 1 'a' is subsumed by rule 2 'a+'"));
+        assertThat(analysis.reducedRules().toString(), is("[a+]"));
+    }
+
+    @Test
+    public void whenRulesAreNotRegular_thenTheyAreComparedConservatively(){
+        final Token lookAhead = nonCapturingGroup(text("a"), positiveLookAhead(text("b")));
+        final RuleSetAnalysis analysis = new RuleSetAnalysis(Arrays.asList(
+            lookAhead,
+            nonCapturingGroup(or(lookAhead, text("c"))),
+            nonCapturingGroup(text("a"), positiveLookAhead(text("b"))),
+            groupOf(text("x")), group(1)
+        ));
+
+        assertThat(analysis.isExact(), is(false));
+        assertThat(analysis.reducedRules().toString(), is("[(?:(?:a(?=b))|c), (x), \\1]"));
+        assertThat(analysis.toString().endsWith("2 of 5 rules are redundant (some rules were compared conservatively)"), is(true));
+    }
+
+    @Test
+    public void whenAutomatonIsTooLarge_thenAnalysisIsOnlyConservativeIfItWasNeeded(){
+     // Any string whose 15th character from the end is 'a', which needs more than Dfa.MAX_STATES states
+        final Token large = nonCapturingGroup(zeroOrMore().of(anyOneOf(characters('a', 'b'))), text("a"), exactly(14).of(anyOneOf(characters('a', 'b'))));
+
+        assertThat(new RuleSetAnalysis(Arrays.asList(large, text("xyz"))).isExact(), is(true));
+        final RuleSetAnalysis analysis = new RuleSetAnalysis(Arrays.asList(large, nonCapturingGroup(large, text("a"))));
+        assertThat(analysis.isExact(), is(false));
+        assertThat(analysis.redundancies().isEmpty(), is(true));
+    }
+}
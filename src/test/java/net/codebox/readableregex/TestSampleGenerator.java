@@ -0,0 +1,106 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestSampleGenerator {
+    private static final CompiledRegEx[] EXPRESSIONS = {
+        RegExBuilder.compile(exactly(4).of(anyDigit()), text("-"), exactly(2).of(anyDigit())),
+        RegExBuilder.compile(oneOrMore().of(anyOneOf(characters('_', '-'), range('A', 'Z'), range('a', 'z'))), text("@"),
+                oneOrMore().of(anyLetter()), atLeast(2).of(text("."), between(2, 3).of(anyLetter()))),
+        RegExBuilder.compile(or(text("GET"), text("POST")), text(" /"), zeroOrMore().of(anyCharacterExcept(characters(' ', '\n')))),
+        RegExBuilder.compile(groupOf(oneOrMore().of(anyLetter())), text("="), group(1)),
+        RegExBuilder.compile(text("a"), anything(), negativeLookAhead(text("b")), anyLetter()),
+        RegExBuilder.compile(caseInsensitive(text("select")), text(" "), oneOrMore().of(anyDigit())),
+        RegExBuilder.compile(CharacterProfile.UNICODE, oneOrMore().of(anyLetter()))
+    };
+
+    @Test
+    public void whenSamplesGenerated_thenTheyMatch(){
+        for (CompiledRegEx regex : EXPRESSIONS) {
+            final SampleGenerator generator = new SampleGenerator(regex, 42);
+            for (int i = 0; i < 1000; i++) {
+                final String sample = generator.next();
+                assertThat(regex + " / " + sample, regex.matches(sample), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void whenNearMissesGenerated_thenTheyDoNotMatch(){
+        for (CompiledRegEx regex : EXPRESSIONS) {
+            final SampleGenerator generator = new SampleGenerator(regex, 7);
+            for (int i = 0; i < 200; i++) {
+                final String nearMiss = generator.nextNearMiss();
+                assertThat(regex + " / " + nearMiss, regex.matches(nearMiss), is(false));
+            }
+        }
+    }
+
+    @Test
+    public void whenExpressionMatchesEverything_thenNoNearMissIsFound(){
+        assertThat(new SampleGenerator(RegExBuilder.compile(anything()), 1).nextNearMiss(), is(nullValue()));
+    }
+
+    @Test
+    public void whenSameSeedUsed_thenSamplesAreRepeated(){
+        final SampleGenerator a = new SampleGenerator(EXPRESSIONS[1], 99), b = new SampleGenerator(EXPRESSIONS[1], 99);
+        for (int i = 0; i < 100; i++) {
+            assertThat(a.next(), is(b.next()));
+        }
+    }
+
+    @Test
+    public void whenMinimumRepetitionsUsed_thenShortestSamplesAreGenerated(){
+        final SampleGenerator generator = new SampleGenerator(RegExBuilder.compile(atLeast(3).of(text("ab"))), 1,
+                SampleGenerator.Repetitions.MINIMUM, 8);
+        assertThat(generator.next(), is("ababab"));
+    }
+
+    @Test
+    public void whenUniformRepetitionsUsed_thenEveryCountIsProduced(){
+        final SampleGenerator generator = new SampleGenerator(RegExBuilder.compile(between(1, 3).of(text("x"))), 5,
+                SampleGenerator.Repetitions.UNIFORM, 10);
+        final boolean[] seen = new boolean[4];
+        for (int i = 0; i < 100; i++) {
+            seen[generator.next().length()] = true;
+        }
+        assertThat(seen[1] && seen[2] && seen[3], is(true));
+    }
+
+    @Test
+    public void whenSamplesWritten_thenEachIsOnItsOwnLine() throws Exception {
+        final CompiledRegEx regex = EXPRESSIONS[0];
+        final StringWriter writer = new StringWriter();
+        new SampleGenerator(regex, 3).write(writer, 5000, 0.25);
+        final String[] lines = writer.toString().split("\n", -1);
+        assertThat(lines.length, is(5001));
+        int nearMisses = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (!regex.matches(lines[i])) {
+                nearMisses++;
+            }
+        }
+        assertThat(nearMisses > 1000 && nearMisses < 1500, is(true));
+    }
+
+    @Test
+    public void whenExpressionContainsRawText_thenExceptionIsThrown(){
+        try {
+            new SampleGenerator(RegExBuilder.compile(new Token("a|b", false, null){}), 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("Samples cannot be generated for 'a|b', because it contains raw text"));
+        }
+    }
+}
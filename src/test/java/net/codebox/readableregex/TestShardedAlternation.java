@@ -0,0 +1,105 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestShardedAlternation {
+    private static ShardedAlternation blocklist(final int count) {
+        final List<Token> branches = new ArrayList<Token>();
+        for (int i = 0; i < count; i++) {
+            branches.add(text("host" + i + ".example"));
+        }
+        return new ShardedAlternation(8).withAll(branches);
+    }
+
+    @Test
+    public void whenBranchesAreAdded_thenAnyOfThemMatches() {
+        final ShardedAlternation alternation = blocklist(100).with(nonCapturingGroup(text("ad"), oneOrMore().of(anyDigit())));
+
+        assertThat(alternation.size(), is(101));
+        assertThat(alternation.matches("host42.example"), is(true));
+        assertThat(alternation.matches("ad123"), is(true));
+        assertThat(alternation.matches("host100.example"), is(false));
+        assertThat(alternation.find("see host7.example/page"), is(true));
+        assertThat(alternation.find("nothing here"), is(false));
+    }
+
+    @Test
+    public void whenBranchIsRemoved_thenOnlyTheNewVersionChanges() {
+        final ShardedAlternation before = blocklist(100);
+        final ShardedAlternation after = before.without(text("host42.example"));
+
+        assertThat(after.size(), is(99));
+        assertThat(after.matches("host42.example"), is(false));
+        assertThat(after.contains(text("host42.example")), is(false));
+        assertThat(before.matches("host42.example"), is(true));
+        assertThat(after.without(text("host42.example")), is(sameInstance(after)));
+    }
+
+    @Test
+    public void whenBranchIsAdded_thenOnlyOneShardIsRecompiled() {
+        final ShardedAlternation before = blocklist(100).compile();
+        final ShardedAlternation after = before.with(text("tracker.example"));
+
+        int changed = 0;
+        for (int i = 0; i < before.shardCount(); i++) {
+            if (after.shardRegEx(i) != before.shardRegEx(i)) {
+                changed++;
+            }
+        }
+        assertThat(changed, is(1));
+        assertThat(after.branches().size(), is(101));
+    }
+
+    @Test
+    public void whenBranchIsAlreadyPresent_thenTheSameInstanceIsReturned() {
+        final ShardedAlternation alternation = blocklist(10);
+
+        assertThat(alternation.with(text("host3.example")), is(sameInstance(alternation)));
+        assertThat(alternation.with(text("host10.example")), is(not(sameInstance(alternation))));
+    }
+
+    @Test
+    public void whenAllBranchesAreCombined_thenTheTokenMatchesTheSameText() {
+        final ShardedAlternation alternation = blocklist(20);
+        final CompiledRegEx combined = RegExBuilder.compile(alternation.toToken());
+
+        for (String input : new String[]{"host0.example", "host19.example", "host20.example", "host1"}) {
+            assertThat(input, combined.matches(input), is(alternation.matches(input)));
+        }
+        assertThat(alternation.toString(), is("20 branches in 8 shards"));
+    }
+
+    @Test
+    public void whenBranchContainsBackReference_thenExceptionIsThrown() {
+        final ShardedAlternation alternation = new ShardedAlternation(1).with(nonCapturingGroup(groupOf(text("x")), text("y")));
+        try {
+            alternation.withAll(Arrays.asList(text("z"), nonCapturingGroup(groupOf(text("a")), group(1))));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The branch '(?:(a)\\1)' contains a back-reference, which would refer to the groups of other branches in its shard"));
+        }
+        assertThat(alternation.size(), is(1));
+    }
+
+    @Test
+    public void whenShardCountIsInvalid_thenExceptionIsThrown() {
+        try {
+            new ShardedAlternation(0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("The number of shards (0) must be at least 1"));
+        }
+    }
+}
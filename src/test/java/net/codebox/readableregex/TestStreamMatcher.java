@@ -0,0 +1,96 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestStreamMatcher {
+    @Test
+    public void whenMatchSpansChunks_thenItIsReportedOnce(){
+        final StreamMatcher matcher = new StreamMatcher(RegExBuilder.compile(text("needle")));
+        final List<MatchEvent> events = new ArrayList<MatchEvent>();
+        matcher.append("hay nee", events::add);
+        assertThat(events.size(), is(0));
+        matcher.append("dle hay", events::add);
+        matcher.finish(events::add);
+        assertThat(events.toString(), is("[4-10:needle]"));
+    }
+
+    @Test
+    public void whenMaxLengthIsBounded_thenLittleTextIsCarried(){
+        final StreamMatcher matcher = new StreamMatcher(RegExBuilder.compile(exactly(4).of(anyDigit())));
+        final List<MatchEvent> events = new ArrayList<MatchEvent>();
+        for (int i = 0; i < 1000; i++) {
+            matcher.append("abcdefgh", events::add);
+        }
+        assertTrue(matcher.carriedLength() <= 16 + 3);
+        assertThat(matcher.position(), is(8000L));
+    }
+
+    @Test
+    public void whenGreedyMatchReachesEndOfChunk_thenItIsExtendedByTheNextChunk(){
+        final StreamMatcher matcher = new StreamMatcher(RegExBuilder.compile(oneOrMore().of(anyDigit())));
+        final List<MatchEvent> events = new ArrayList<MatchEvent>();
+        matcher.append("x12", events::add);
+        matcher.append("34", events::add);
+        matcher.append("5y6", events::add);
+        matcher.finish(events::add);
+        assertThat(events.toString(), is("[1-6:12345, 7-8:6]"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenAppendCalledAfterFinish_thenExceptionIsThrown(){
+        final StreamMatcher matcher = new StreamMatcher(RegExBuilder.compile(text("a")));
+        matcher.finish(e -> {});
+        matcher.append("a", e -> {});
+    }
+
+    @Test
+    public void whenInputIsChunked_thenMatchesAgreeWithMatcher(){
+        final CompiledRegEx[] expressions = {
+            RegExBuilder.compile(text("ab"), zeroOrMore().of(anyDigit())),
+            RegExBuilder.compile(or(text("a"), text("abc")), zeroOrOne().of(text("!"))),
+            RegExBuilder.compile(zeroOrMore().of(text("b"))),
+            RegExBuilder.compile(anyLetter(), positiveLookAhead(anyDigit())),
+            RegExBuilder.compile(negativeLookBehind(text("a")), text("b")),
+            RegExBuilder.compile(text("a"), zeroOrMore().lazy().of(anyCharacterExcept(characters('!'))), text("c")),
+            RegExBuilder.compile(between(2, 3).of(anyOneOf(characters('a', 'b'))))
+        };
+        final Random random = new Random(31);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            final StringBuilder sb = new StringBuilder();
+            final int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                sb.append("abc1!\n".charAt(random.nextInt(6)));
+            }
+            final String input = sb.toString();
+            for (CompiledRegEx regex : expressions) {
+                final List<String> expected = new ArrayList<String>();
+                final Matcher matcher = regex.matcher(input);
+                while (matcher.find()) {
+                    expected.add(matcher.start() + "-" + matcher.end() + ":" + matcher.group());
+                }
+                final List<String> actual = new ArrayList<String>();
+                final StreamMatcher streamMatcher = new StreamMatcher(regex);
+                int position = 0;
+                while (position < input.length()) {
+                    final int end = Math.min(input.length(), position + 1 + random.nextInt(5));
+                    streamMatcher.append(input.substring(position, end), e -> actual.add(e.toString()));
+                    position = end;
+                }
+                streamMatcher.finish(e -> actual.add(e.toString()));
+                assertThat(regex + " / " + input, actual, is(expected));
+            }
+        }
+    }
+}
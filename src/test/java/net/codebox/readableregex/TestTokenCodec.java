@@ -0,0 +1,132 @@
+package net.codebox.readableregex;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestTokenCodec {
+    private static byte[] encode(final List<? extends Token> tokens) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TokenCodec.write(tokens, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameTree(final Token actual, final Token expected) {
+        assertThat(actual.toString(), is(expected.toString()));
+        assertThat(actual.kind(), is(expected.kind()));
+        assertThat(actual.minLength(), is(expected.minLength()));
+        assertThat(actual.maxLength(), is(expected.maxLength()));
+        assertThat(actual.predefinedClass(), is(expected.predefinedClass()));
+        assertThat(actual.children().length, is(expected.children().length));
+        for (int i = 0; i < actual.children().length; i++) {
+            assertSameTree(actual.children()[i], expected.children()[i]);
+        }
+    }
+
+    @Test
+    public void whenTreesAreWrittenAndRead_thenTheyAreUnchanged() throws IOException {
+        final List<Token> tokens = Arrays.asList(
+            text("a.b*c"),
+            nonCapturingGroup(groupOf(oneOrMore().of(anyDigit())), text("-"), group(1)),
+            or(text("GET"), text("POST"), between(2, 5).lazy().of(anyLetter())),
+            caseInsensitive(text("select"), zeroOrMore().of(tab())),
+            anyCharacterExcept(range('a', 'z'), range('0', '9')),
+            nonCapturingGroup(text("x"), negativeLookAhead(text("y")), positiveLookBehind(text("z"))),
+            atLeast(3).possessive().of(anything()),
+            exactly(2).of(text("\uD83D\uDE00\uD800")),
+            octalCharacter("101"), new Token("\\b", false, null) {}
+        );
+        final List<Token> read = TokenCodec.read(new ByteArrayInputStream(encode(tokens)));
+
+        assertThat(read.size(), is(tokens.size()));
+        for (int i = 0; i < tokens.size(); i++) {
+            assertSameTree(read.get(i), tokens.get(i));
+        }
+    }
+
+    @Test
+    public void whenCompiledExpressionsAreRead_thenTheyMatchLikeTheOriginals() throws IOException {
+        final List<CompiledRegEx> expressions = Arrays.asList(
+            RegExBuilder.compile(text("id="), oneOrMore().of(anyDigit())),
+            RegExBuilder.compile(or(text("error"), text("warning"))),
+            RegExBuilder.compile(CharacterProfile.UNICODE, oneOrMore().of(anyLetter()))
+        );
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TokenCodec.writeCompiled(expressions, out);
+        final List<CompiledRegEx> read = TokenCodec.readCompiled(new ByteArrayInputStream(out.toByteArray()));
+
+        for (int i = 0; i < expressions.size(); i++) {
+            assertThat(read.get(i).toString(), is(expressions.get(i).toString()));
+            assertThat(read.get(i).profile(), is(expressions.get(i).profile()));
+            assertThat(read.get(i).prefilter().requiredLiterals(), is(expressions.get(i).prefilter().requiredLiterals()));
+        }
+        assertThat(read.get(0).count("x id=12 id=3"), is(2));
+        assertThat(read.get(1).matches("warning"), is(true));
+        assertThat(read.get(2).matches("\u00E9t\u00E9"), is(true));
+    }
+
+    @Test
+    public void whenTreesAreReadWithoutAnalysis_thenTheyAreCompiledWithTheDefaultProfile() throws IOException {
+        final List<CompiledRegEx> read = TokenCodec.readCompiled(new ByteArrayInputStream(encode(Arrays.asList(text("abc")))));
+
+        assertThat(read.get(0).profile(), is(CharacterProfile.ASCII));
+        assertThat(read.get(0).find("xxabc"), is(true));
+    }
+
+    @Test
+    public void whenManySimilarRulesAreWritten_thenRepeatedPartsAreStoredOnce() throws IOException {
+        final List<Token> rules = new ArrayList<Token>();
+        for (int i = 0; i < 1000; i++) {
+            rules.add(nonCapturingGroup(text("user"), exactly(4).of(anyDigit()), text("@example.com")));
+        }
+        final int size = encode(rules).length;
+
+        assertThat(size < 1000 * 16, is(true));
+    }
+
+    @Test
+    public void whenStreamIsNotAnEncoding_thenExceptionIsThrown() throws IOException {
+        try {
+            TokenCodec.read(new ByteArrayInputStream("hello".getBytes("US-ASCII")));
+            fail();
+        } catch (IOException ex) {
+            assertThat(ex.getMessage(), is("The stream does not contain encoded Token trees"));
+        }
+    }
+
+    @Test
+    public void whenVersionIsUnsupported_thenExceptionIsThrown() throws IOException {
+        final byte[] encoded = encode(Arrays.asList(text("a")));
+        encoded[3] = 2;
+        try {
+            TokenCodec.read(new ByteArrayInputStream(encoded));
+            fail();
+        } catch (IOException ex) {
+            assertThat(ex.getMessage(), is("The encoding has version 2, only version 1 is supported"));
+        }
+    }
+
+    @Test
+    public void whenEncodingIsTruncated_thenExceptionIsThrown() throws IOException {
+        final byte[] encoded = encode(Arrays.asList(nonCapturingGroup(text("a"), anyDigit())));
+        try {
+            TokenCodec.read(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1)));
+            fail();
+        } catch (EOFException ex) {
+            assertThat(ex.getMessage(), is("The encoding ended unexpectedly"));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package net.codebox.readableregex;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestTrigramIndex {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void writeDocuments() throws IOException {
+        root = folder.newFolder("docs").toPath();
+        write("a.txt", "GET /index.html 200\nuser=alice id=4021\n");
+        write("b.txt", "POST /login 302\nuser=bob id=17\n");
+        write("logs/c.log", "Hello World, checksum abxc\n");
+        write("logs/d.log", "nothing to see here\n");
+    }
+
+    private void write(final String name, final String content) throws IOException {
+        final Path path = root.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> names(final List<Path> paths) {
+        final List<String> names = new ArrayList<String>();
+        for (Path path : paths) {
+            names.add(root.relativize(path).toString().replace('\\', '/'));
+        }
+        return names;
+    }
+
+    private static String query(final Token... tokens) {
+        return TrigramIndex.query(RegExBuilder.compile(tokens).token());
+    }
+
+    @Test
+    public void whenTokensAreConverted_thenSequencesRequireEveryTrigramAndAlternativesRequireOneBranch() {
+        assertThat(query(text("login")), is("\"log\" \"ogi\" \"gin\""));
+        assertThat(query(or(text("GET"), text("POST"))), is("(\"GET\" | \"POS\" \"OST\")"));
+        assertThat(query(text("ab"), anyOneOf(characters('x', 'y')), text("c")), is("(\"abx\" \"bxc\" | \"aby\" \"byc\")"));
+        assertThat(query(text("id="), oneOrMore().of(anyDigit()), text("end")), is("\"id=\" \"end\""));
+        assertThat(query(text("ab"), oneOrMore().of(text("c"))), is("\"abc\""));
+        assertThat(query(caseInsensitive(text("ab")), text("c")), is("(\"ABc\" | \"Abc\" | \"aBc\" | \"abc\")"));
+    }
+
+    @Test
+    public void whenPartsAreUnbounded_thenTheyRequireNothing() {
+        assertThat(query(text("ab"), zeroOrMore().of(text("xyz")), text("c")), is("*"));
+        assertThat(query(text("abc"), anything(), text("xyz")), is("\"abc\" \"xyz\""));
+        assertThat(query(oneOrMore().of(anyLetter())), is("*"));
+        assertThat(query(or(text("abc"), oneOrMore().of(anyDigit()))), is("*"));
+        assertThat(query(groupOf(text("ab")), group(1)), is("*"));
+    }
+
+    @Test
+    public void whenIndexIsSearched_thenOnlyCandidateDocumentsAreMatched() throws IOException {
+        final TrigramIndex index = TrigramIndex.build(root);
+
+        assertThat(index.documentCount(), is(4));
+        assertThat(names(index.candidates(RegExBuilder.compile(text("user="), oneOrMore().of(anyLetter())).token())),
+                is(Arrays.asList("a.txt", "b.txt")));
+        assertThat(names(index.search(RegExBuilder.compile(text("id="), exactly(4).of(anyDigit())))), is(Arrays.asList("a.txt")));
+        assertThat(names(index.search(RegExBuilder.compile(caseInsensitive(text("hello world"))))), is(Arrays.asList("logs/c.log")));
+        assertThat(names(index.search(RegExBuilder.compile(text("ab"), anyOneOf(characters('x', 'y')), text("c")))), is(Arrays.asList("logs/c.log")));
+        assertThat(index.candidates(RegExBuilder.compile(text("missing")).token()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void whenExpressionRequiresNoTrigrams_thenEveryDocumentIsACandidate() throws IOException {
+        final TrigramIndex index = TrigramIndex.build(root);
+        final CompiledRegEx regex = RegExBuilder.compile(oneOrMore().of(anyDigit()));
+
+        assertThat(index.candidates(regex.token()).size(), is(4));
+        assertThat(names(index.search(regex)), is(Arrays.asList("a.txt", "b.txt")));
+    }
+
+    @Test
+    public void whenIndexIsWrittenAndRead_thenItFindsTheSameDocuments() throws IOException {
+        final Path file = folder.newFile("docs.idx").toPath();
+        final TrigramIndex built = TrigramIndex.build(root, path -> path.toString().endsWith(".txt"), StandardCharsets.UTF_8);
+        built.write(file);
+        final TrigramIndex read = TrigramIndex.read(file);
+
+        assertThat(read.toString(), is(built.toString()));
+        assertThat(read.trigramCount(), is(built.trigramCount()));
+        final CompiledRegEx regex = RegExBuilder.compile(or(text("alice"), text("bob")));
+        assertThat(names(read.search(regex)), is(Arrays.asList("a.txt", "b.txt")));
+
+        Files.delete(root.resolve("b.txt"));
+        assertThat(names(read.search(regex)), is(Arrays.asList("a.txt")));
+    }
+
+    @Test
+    public void whenFileIsNotAValidIndex_thenExceptionIsThrown() throws IOException {
+        final Path file = folder.newFile("docs.idx").toPath();
+        TrigramIndex.build(root).write(file);
+        final byte[] valid = Files.readAllBytes(file);
+
+        assertReadFails(file, Arrays.copyOf(valid, valid.length - 1), String.format("The index in '%s' is incomplete", file));
+        assertReadFails(file, "not an index".getBytes(StandardCharsets.UTF_8), String.format("The file '%s' does not contain a trigram index", file));
+
+        final byte[] newer = valid.clone();
+        newer[6] = 2;
+        assertReadFails(file, newer, "The index has version 2, only version 1 is supported");
+    }
+
+    private static void assertReadFails(final Path file, final byte[] contents, final String message) throws IOException {
+        Files.write(file, contents);
+        try {
+            TrigramIndex.read(file);
+            fail();
+        } catch (IOException ex) {
+            assertThat(ex.getMessage(), is(message));
+        }
+    }
+}
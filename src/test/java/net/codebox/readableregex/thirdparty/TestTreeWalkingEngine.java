@@ -0,0 +1,76 @@
+package net.codebox.readableregex.thirdparty;
+
+import net.codebox.readableregex.CompiledRegEx;
+import net.codebox.readableregex.MatchEngine;
+import net.codebox.readableregex.RegExBuilder;
+import net.codebox.readableregex.Token;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static net.codebox.readableregex.CharacterTokenPart.characters;
+import static net.codebox.readableregex.CharacterTokenPart.range;
+import static net.codebox.readableregex.Quantifier.*;
+import static net.codebox.readableregex.Token.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestTreeWalkingEngine {
+    @Test
+    public void whenTreeIsReadOutsideThePackage_thenEveryPartIsVisible(){
+        final Token token = RegExBuilder.compile(text("id="), between(2, 4).lazy().of(anyDigit()), nonCapturingGroup(or(text("a"), text("b")))).token();
+
+        assertThat(token.kind(), is(Token.Kind.SEQUENCE));
+        assertThat(token.childCount(), is(3));
+        assertThat(token.child(0).kind(), is(Token.Kind.LITERAL));
+        assertThat(token.child(0).text(), is("id="));
+        final Token digits = token.child(1);
+        assertThat(digits.kind(), is(Token.Kind.CHARACTER_CLASS));
+        assertThat(digits.characters().rangeCount(), is(1));
+        assertThat(digits.characters().rangeFrom(0), is((int) '0'));
+        assertThat(digits.characters().rangeTo(0), is((int) '9'));
+        assertThat(digits.quantifier().min(), is(2));
+        assertThat(digits.quantifier().max(), is(4));
+        assertThat(digits.quantifier().isLazy(), is(true));
+        final Token group = token.child(2);
+        assertThat(group.groupType(), is(Token.GroupType.NON_CAPTURING));
+        assertThat(group.groupType().isLookAround(), is(false));
+        assertThat(group.child(0).kind(), is(Token.Kind.ALTERNATION));
+        assertThat(group.child(0).child(1).text(), is("b"));
+        assertThat(group.quantifier(), is(nullValue()));
+        assertThat(group(1).groupNumber(), is(1));
+    }
+
+    @Test
+    public void whenExpressionsAreMatchedByWalkingTheTree_thenResultsAgreeWithPattern(){
+        final MatchEngine engine = new TreeWalkingEngine();
+        final CompiledRegEx[] expressions = {
+            RegExBuilder.compile(text("a"), or(text("b"), text("cd")), zeroOrMore().of(anyDigit())),
+            RegExBuilder.compile(between(2, 3).of(text("ab")), anything()),
+            RegExBuilder.compile(atLeast(2).of(anyOneOf(characters('x'), range('0', '1'))), zeroOrOne().of(text("-"))),
+            RegExBuilder.compile(oneOrMore().lazy().of(or(text("ab"), text("a"))), text("b")),
+            RegExBuilder.compile(anyCharacterExcept(characters('a')), anything(), text("b")),
+            RegExBuilder.compile(text("\uD83D\uDE00"), anyDigit()),
+            RegExBuilder.compile(caseInsensitive(text("abcd")), exactly(2).of(anyDigit()))
+        };
+        final String[] inputs = {"", "a", "ab", "acd", "acd12", "b9", "abab", "ababab", "ababxyz", "ababab\n", "xx",
+                "x01-", "0-", "aab", "abb", "b", "\n", "zb", "\uD83D\uDE007", "aa\nb", "zzABCD12", "abCd1"};
+        for (CompiledRegEx expression : expressions) {
+            assertThat(expression.toString(), engine.unsupportedReason(expression.features()), is(nullValue()));
+            final MatchEngine.Program program = engine.compile(expression.token(), expression.features());
+            final Pattern pattern = expression.pattern();
+            for (String input : inputs) {
+                final String description = expression + " / " + input;
+                assertThat(description, program.matches(input), is(pattern.matcher(input).matches()));
+                assertThat(description, program.find(input), is(pattern.matcher(input).find()));
+            }
+        }
+    }
+
+    @Test
+    public void whenExpressionIsNotRegular_thenEngineDeclinesIt(){
+        final CompiledRegEx regex = RegExBuilder.compile(groupOf(anyLetter()), group(1));
+        assertThat(new TreeWalkingEngine().unsupportedReason(regex.features()), is("only the regular subset of the Token API is supported"));
+    }
+}
@@ -0,0 +1,140 @@
+package net.codebox.readableregex.thirdparty;
+
+import net.codebox.readableregex.CodePointSet;
+import net.codebox.readableregex.ExpressionFeatures;
+import net.codebox.readableregex.MatchEngine;
+import net.codebox.readableregex.Quantifier;
+import net.codebox.readableregex.Token;
+
+/**
+ * An engine written outside the package, as a third party would, which matches the regular subset of the
+ * Token API by walking the tree with a backtracking interpreter. Only the public view of the tree is used.
+ */
+public class TreeWalkingEngine implements MatchEngine {
+    @Override
+    public String name() {
+        return "tree-walking";
+    }
+
+    @Override
+    public String unsupportedReason(final ExpressionFeatures features) {
+        if (features.hasBackReferences() || features.hasLookArounds() || features.hasAtomicConstructs()
+                || features.hasUnrecognisedText() || features.hasDictionaries()) {
+            return "only the regular subset of the Token API is supported";
+        }
+        return null;
+    }
+
+    @Override
+    public int priority(final ExpressionFeatures features) {
+        return -50;
+    }
+
+    @Override
+    public Program compile(final Token token, final ExpressionFeatures features) {
+        return new Program() {
+            @Override
+            public boolean matches(final CharSequence input) {
+                return new Interpreter(input).match(token, 0, position -> position == input.length());
+            }
+
+            @Override
+            public boolean find(final CharSequence input) {
+                final Interpreter interpreter = new Interpreter(input);
+                for (int start = 0; start <= input.length(); start++) {
+                    if (interpreter.match(token, start, position -> true)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private interface Continuation {
+        boolean resume(int position);
+    }
+
+    private static final class Interpreter {
+        private final CharSequence input;
+
+        Interpreter(final CharSequence input) {
+            this.input = input;
+        }
+
+        boolean match(final Token token, final int position, final Continuation next) {
+            final Quantifier quantifier = token.quantifier();
+            if (quantifier == null) {
+                return matchUnquantified(token, position, next);
+            }
+            return repeat(token, quantifier, 0, position, next);
+        }
+
+        private boolean repeat(final Token token, final Quantifier quantifier, final int count, final int position, final Continuation next) {
+            final boolean canRepeat = quantifier.max() == Token.UNBOUNDED || count < quantifier.max();
+            final boolean canStop = count >= quantifier.min();
+            final Continuation again = after -> (after == position && canStop) ? false : repeat(token, quantifier, count + 1, after, next);
+            if (!quantifier.isLazy() && canRepeat && matchUnquantified(token, position, again)) {
+                return true;
+            }
+            if (canStop && next.resume(position)) {
+                return true;
+            }
+            return quantifier.isLazy() && canRepeat && matchUnquantified(token, position, again);
+        }
+
+        private boolean matchUnquantified(final Token token, final int position, final Continuation next) {
+            switch (token.kind()) {
+                case LITERAL:
+                    final String text = token.text();
+                    if (position + text.length() > input.length()) {
+                        return false;
+                    }
+                    for (int i = 0; i < text.length(); i++) {
+                        if (input.charAt(position + i) != text.charAt(i)) {
+                            return false;
+                        }
+                    }
+                    return next.resume(position + text.length());
+                case CHARACTER_CLASS:
+                    final int end = matchCharacter(token.characters(), position);
+                    return end >= 0 && next.resume(end);
+                case ANYTHING:
+                    return matchAnything(token.characters(), position, next);
+                case SEQUENCE:
+                    return matchSequence(token, 0, position, next);
+                case ALTERNATION:
+                    for (int i = 0; i < token.childCount(); i++) {
+                        if (match(token.child(i), position, next)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case GROUP:
+                    return match(token.child(0), position, next);
+                default:
+                    throw new IllegalStateException("Unexpected token kind " + token.kind());
+            }
+        }
+
+        private int matchCharacter(final CodePointSet characters, final int position) {
+            if (position >= input.length()) {
+                return -1;
+            }
+            final int codePoint = Character.codePointAt(input, position);
+            return characters.contains(codePoint) ? position + Character.charCount(codePoint) : -1;
+        }
+
+        private boolean matchAnything(final CodePointSet characters, final int position, final Continuation next) {
+            final int end = matchCharacter(characters, position);
+            return (end >= 0 && matchAnything(characters, end, next)) || next.resume(position);
+        }
+
+        private boolean matchSequence(final Token sequence, final int index, final int position, final Continuation next) {
+            if (index == sequence.childCount()) {
+                return next.resume(position);
+            }
+            return match(sequence.child(index), position, after -> matchSequence(sequence, index + 1, after, next));
+        }
+    }
+}